@@ -0,0 +1,40 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble;
+
+import android.annotation.TargetApi;
+import android.bluetooth.le.ScanFilter;
+
+import java.util.List;
+
+/**
+ * A ScanMatcher whose criteria can be pushed down to the Bluetooth controller as hardware {@link
+ * ScanFilter}s, so that advertisements which cannot match never wake the application processor.
+ *
+ * <p>Hardware filters are a pre-filter only; {@link #match()} is still applied to the results, so
+ * the filters may be broader than the matcher but must never be narrower.
+ */
+public interface HardwareScanMatcher extends ScanMatcher {
+
+  /**
+   * Get the hardware filters for this matcher. Any advertisement that may match must pass at least
+   * one of the filters.
+   *
+   * @return list of ScanFilters, or an empty list if the criteria cannot be expressed as filters.
+   */
+  @TargetApi(21)
+  List<ScanFilter> hardwareFilters();
+}
@@ -2,10 +2,17 @@ package com.uber.rxcentralble;
 
 import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 public interface ParsedAdvertisement {
 
+  /** AD type of the TX power level. */
+  int AD_TX_POWER_LEVEL = 0x0A;
+
+  /** TX power level reported when none is advertised, matching the platform ScanRecord. */
+  int TX_POWER_LEVEL_NOT_PRESENT = Integer.MIN_VALUE;
+
   /**
    * Get the advertised device name, either shortened or complete, with preference for complete.
    *
@@ -22,6 +29,66 @@ public interface ParsedAdvertisement {
    */
   boolean hasService(UUID svc);
 
+  /**
+   * Check if a 16bit service UUID of the Bluetooth Base UUID was advertised, without building a
+   * UUID.
+   *
+   * @param uuid16 16bit value of the service UUID
+   * @return true if service was advertised
+   */
+  default boolean hasService16(int uuid16) {
+    return hasService(Utils.uuidFromInteger(uuid16));
+  }
+
+  /**
+   * Get the service data for a service UUID, without copying it out of the advertisement. 16, 32
+   * and 128bit service data UUIDs are all matched.
+   *
+   * @param serviceUuid UUID of the service
+   * @return read only view of the service data following the UUID, or null if not advertised.
+   */
+  @Nullable
+  default ByteBuffer getServiceData(UUID serviceUuid) {
+    return Utils.findServiceData(getRawAdvertisement(), serviceUuid);
+  }
+
+  /**
+   * Check if service data for a service UUID was advertised and starts with a prefix, without
+   * copying it out of the advertisement.
+   *
+   * @param serviceUuid UUID of the service
+   * @param prefix prefix of the service data; empty to only check that service data is present.
+   * @param mask mask of the bits of the prefix to compare, of the same length as the prefix, or null
+   *             to compare all bits.
+   * @return true if the service data starts with the prefix.
+   */
+  default boolean hasServiceData(UUID serviceUuid, byte[] prefix, @Nullable byte[] mask) {
+    ByteBuffer serviceData = getServiceData(serviceUuid);
+    if (serviceData == null || serviceData.remaining() < prefix.length) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      int bits = mask != null ? mask[i] : 0xFF;
+      if (((serviceData.get(i) ^ prefix[i]) & bits) != 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the TX power level advertised by the device (AD type 0x0A), the transmit power of the
+   * advertisement.
+   *
+   * @return the TX power level in dBm, or {@link #TX_POWER_LEVEL_NOT_PRESENT} if not advertised.
+   */
+  default int getTxPowerLevel() {
+    byte[] txPowerLevel = getEIRData(AD_TX_POWER_LEVEL);
+    return txPowerLevel != null && txPowerLevel.length == 1 ? txPowerLevel[0] : TX_POWER_LEVEL_NOT_PRESENT;
+  }
+
   /**
    * Get manufacturer data for a given manufacturer id.
    *
@@ -50,5 +117,18 @@ public interface ParsedAdvertisement {
   interface Factory {
 
     ParsedAdvertisement produce(byte[] rawAdData);
+
+    /**
+     * Produce a ParsedAdvertisement for an advertisement received from a known device.
+     *
+     * <p>Implementations may use the address to recognize advertisements a device repeats.
+     *
+     * @param address the address of the advertising device.
+     * @param rawAdData the raw advertisement data.
+     * @return the parsed advertisement.
+     */
+    default ParsedAdvertisement produce(String address, byte[] rawAdData) {
+      return produce(rawAdData);
+    }
   }
 }
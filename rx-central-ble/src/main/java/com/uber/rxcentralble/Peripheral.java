@@ -22,6 +22,16 @@ public interface Peripheral {
     CONNECTED
   }
 
+  /** Preferred write type for characteristics that support both writes with and without response. */
+  enum WriteType {
+    /** Write without response if the characteristic supports it, otherwise with response. */
+    DEFAULT,
+    /** Write with response if the characteristic supports it. */
+    WITH_RESPONSE,
+    /** Write without response if the characteristic supports it. */
+    WITHOUT_RESPONSE
+  }
+
   /** CCCD UUID for notifications. */
   UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
 
@@ -87,6 +97,31 @@ public interface Peripheral {
   @SchedulerSupport(SchedulerSupport.NONE)
   Completable write(UUID svc, UUID chr, byte[] data);
 
+  /**
+   * Perform a GATT write operation upon subscription using the preferred write type. Supports
+   * reactive Retry operators. Immediately returns an error if disconnected.
+   *
+   * <p>The preference is only honored if the characteristic supports the preferred write type;
+   * otherwise the write behaves as {@link #write(UUID, UUID, byte[])}. Implementations that do not
+   * distinguish write types may rely on the default, which ignores the preference.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>{@code write} does not operate by default on a particular {@link Scheduler}.
+   * </dl>
+   *
+   * @param svc the UUID of the GATT Service containing the desired Characteristic.
+   * @param chr the UUID of the GATT Characteristic to write.
+   * @param data raw data to write to the Characteristic.
+   * @param writeType the preferred write type.
+   * @return Completable of the operation success, or else an error. Expect {@link PeripheralError} for
+   *     errors that may be retried.
+   */
+  @SchedulerSupport(SchedulerSupport.NONE)
+  default Completable write(UUID svc, UUID chr, byte[] data, WriteType writeType) {
+    return write(svc, chr, data);
+  }
+
   /**
    * Register for characteristic notifications upon subscription. Supports reactive Retry operators.
    * Immediately returns an error if disconnected.
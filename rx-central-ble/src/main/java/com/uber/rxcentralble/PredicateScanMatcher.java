@@ -0,0 +1,46 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble;
+
+import io.reactivex.ObservableTransformer;
+
+/**
+ * ScanMatcher whose criteria can be evaluated for each advertisement on its own, without state
+ * across the stream.
+ *
+ * <p>Implementations should keep {@link #matches(ScanData)} free of allocation, since it runs for
+ * every advertisement received.
+ */
+public interface PredicateScanMatcher extends ScanMatcher {
+
+  /**
+   * Check if an advertisement matches.
+   *
+   * <p>Scanners call this on the platform callback thread, before the advertisement enters the Rx
+   * chain, with a reused ScanData whose contents change on the next advertisement. The argument
+   * is only valid for the duration of the call and must not be retained, and the call should not
+   * block.
+   *
+   * @param scanData the advertisement, valid only during the call.
+   * @return true if the advertisement matches.
+   */
+  boolean matches(ScanData scanData);
+
+  @Override
+  default ObservableTransformer<ScanData, ScanData> match() {
+    return scanData -> scanData.filter(this::matches);
+  }
+}
@@ -23,6 +23,30 @@ import androidx.annotation.Nullable;
 /** Provides an abstraction layer for accessing details of a peripheral's advertisement data. */
 public interface ScanData {
 
+  // The platform constants below were added in API 26; their values are repeated here so that they
+  // can be used on any API level without being inlined from a newer SDK.
+
+  /** The LE 1M PHY, {@link BluetoothDevice#PHY_LE_1M}. */
+  int PHY_LE_1M = 1;
+
+  /** The LE 2M PHY, {@link BluetoothDevice#PHY_LE_2M}. */
+  int PHY_LE_2M = 2;
+
+  /** The LE coded PHY, {@link BluetoothDevice#PHY_LE_CODED}. */
+  int PHY_LE_CODED = 3;
+
+  /** Secondary PHY of a legacy advertisement, {@link ScanResult#PHY_UNUSED}. */
+  int PHY_UNUSED = 0;
+
+  /** Advertising SID of an advertisement without one, {@link ScanResult#SID_NOT_PRESENT}. */
+  int SID_NOT_PRESENT = 0xFF;
+
+  /** Periodic interval of an advertisement without one, {@link ScanResult#PERIODIC_INTERVAL_NOT_PRESENT}. */
+  int PERIODIC_INTERVAL_NOT_PRESENT = 0;
+
+  /** Transmit power of an advertisement without one, {@link ScanResult#TX_POWER_NOT_PRESENT}. */
+  int TX_POWER_NOT_PRESENT = 0x7F;
+
   /**
    * Get the RSSI of the advertisement.
    *
@@ -51,4 +75,60 @@ public interface ScanData {
   @TargetApi(21)
   @Nullable
   ScanResult getScanResult();
+
+  /**
+   * Get whether the advertisement is a legacy advertisement rather than a Bluetooth 5 extended
+   * advertisement.
+   *
+   * @return true if the advertisement is a legacy advertisement.
+   */
+  default boolean isLegacy() {
+    return true;
+  }
+
+  /**
+   * Get the PHY the advertisement was received on, or on which the primary advertisement of an
+   * extended advertisement was received.
+   *
+   * @return the PHY, such as {@link #PHY_LE_1M} or {@link #PHY_LE_CODED}.
+   */
+  default int getPrimaryPhy() {
+    return PHY_LE_1M;
+  }
+
+  /**
+   * Get the PHY the auxiliary packets of an extended advertisement were received on.
+   *
+   * @return the PHY, or {@link #PHY_UNUSED} for a legacy advertisement.
+   */
+  default int getSecondaryPhy() {
+    return PHY_UNUSED;
+  }
+
+  /**
+   * Get the advertising set ID of an extended advertisement.
+   *
+   * @return the advertising SID, or {@link #SID_NOT_PRESENT}.
+   */
+  default int getAdvertisingSid() {
+    return SID_NOT_PRESENT;
+  }
+
+  /**
+   * Get the interval of the periodic advertising that an extended advertisement announces.
+   *
+   * @return the interval in units of 1.25ms, or {@link #PERIODIC_INTERVAL_NOT_PRESENT}.
+   */
+  default int getPeriodicAdvertisingInterval() {
+    return PERIODIC_INTERVAL_NOT_PRESENT;
+  }
+
+  /**
+   * Get the transmit power reported in the header of an extended advertisement.
+   *
+   * @return the transmit power in dBm, or {@link #TX_POWER_NOT_PRESENT}.
+   */
+  default int getTxPower() {
+    return TX_POWER_NOT_PRESENT;
+  }
 }
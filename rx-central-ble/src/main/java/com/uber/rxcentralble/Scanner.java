@@ -17,6 +17,9 @@ package com.uber.rxcentralble;
 
 import androidx.annotation.IntRange;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.annotations.SchedulerSupport;
@@ -29,6 +32,11 @@ public interface Scanner {
    */
   int DEFAULT_SCAN_MODE = 2; // SCAN_MODE_LOW_LATENCY
 
+  /**
+   * Scan for extended advertisements on every primary PHY the adapter supports.
+   */
+  int PHY_LE_ALL_SUPPORTED = 255; // ScanSettings.PHY_LE_ALL_SUPPORTED, API 26
+
   /**
    * Scan for peripherals.
    *
@@ -59,6 +67,98 @@ public interface Scanner {
   @SchedulerSupport(SchedulerSupport.NONE)
   Observable<ScanData> scan(@IntRange(from = -1, to = 2) int scanMode);
 
+  /**
+   * Scan for peripherals that match a ScanMatcher.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>{@code scan} does not operate by default on a particular {@link Scheduler}.
+   * </dl>
+   *
+   * @param scanMatcher the matcher applied to discovered peripherals.
+   * @return Observable stream of matching peripheral ScanData or else an error.
+   * {@link ConnectionError} will occur in cases where you can retry scanning
+   */
+  @SchedulerSupport(SchedulerSupport.NONE)
+  default Observable<ScanData> scan(ScanMatcher scanMatcher) {
+    return scan(scanMatcher, DEFAULT_SCAN_MODE);
+  }
+
+  /**
+   * Scan for peripherals that match a ScanMatcher with a target latency.
+   *
+   * <p>If the matcher is a {@link HardwareScanMatcher}, implementations may push its filters down
+   * to the Bluetooth controller for the lifetime of the subscription.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>{@code scan} does not operate by default on a particular {@link Scheduler}.
+   * </dl>
+   *
+   * @param scanMatcher the matcher applied to discovered peripherals.
+   * @param scanMode latency setting for scanning operation.  Note that implementation may not
+   *                    respect the desired latency, specifically on pre-Lollipop devices.
+   * @return Observable stream of matching peripheral ScanData or else an error.
+   * {@link ConnectionError} will occur in cases where you can retry scanning
+   */
+  @SchedulerSupport(SchedulerSupport.NONE)
+  default Observable<ScanData> scan(ScanMatcher scanMatcher, @IntRange(from = -1, to = 2) int scanMode) {
+    return scan(scanMode).compose(scanMatcher.match());
+  }
+
+  /**
+   * Scan for peripherals that match a ScanMatcher, including Bluetooth 5 extended advertisements
+   * on a primary PHY.
+   *
+   * <p>Extended advertisements carry up to 1650 bytes of advertising data, and may be received on
+   * the long range coded PHY. Implementations that cannot scan for extended advertisements, and
+   * the default implementation, scan for legacy advertisements only; check
+   * {@link ScanData#isLegacy()} to tell them apart.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>{@code scanExtended} does not operate by default on a particular {@link Scheduler}.
+   * </dl>
+   *
+   * @param scanMatcher the matcher applied to discovered peripherals.
+   * @param scanMode latency setting for scanning operation.
+   * @param phy the primary PHY to scan on, such as {@link ScanData#PHY_LE_1M},
+   *            {@link ScanData#PHY_LE_CODED} or {@link #PHY_LE_ALL_SUPPORTED}.
+   * @return Observable stream of matching peripheral ScanData or else an error.
+   * {@link ConnectionError} will occur in cases where you can retry scanning
+   */
+  @SchedulerSupport(SchedulerSupport.NONE)
+  default Observable<ScanData> scanExtended(ScanMatcher scanMatcher,
+                                            @IntRange(from = -1, to = 2) int scanMode,
+                                            int phy) {
+    return scan(scanMatcher, scanMode);
+  }
+
+  /**
+   * Scan for peripherals in batches, allowing the Bluetooth controller to buffer advertisements
+   * between deliveries where supported.
+   *
+   * <p>Each batch holds at most one ScanData per device address, keeping the strongest RSSI. The
+   * default implementation buffers {@link #scan(int)} in software.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>The default {@code scanBatches} operates on the {@code computation} {@link Scheduler}.
+   * </dl>
+   *
+   * @param scanMode latency setting for scanning operation.
+   * @param reportDelayMs the delay between batches; must be greater than 0.
+   * @return Observable stream of non-empty batches of discovered peripheral ScanData or else an
+   * error. {@link ConnectionError} will occur in cases where you can retry scanning
+   */
+  @SchedulerSupport(SchedulerSupport.COMPUTATION)
+  default Observable<List<ScanData>> scanBatches(@IntRange(from = -1, to = 2) int scanMode, long reportDelayMs) {
+    return scan(scanMode)
+        .buffer(reportDelayMs, TimeUnit.MILLISECONDS)
+        .filter(batch -> !batch.isEmpty())
+        .map(Utils::deduplicateByAddress);
+  }
+
   /** Factory pattern to produce Scanner instances. */
   interface Factory {
 
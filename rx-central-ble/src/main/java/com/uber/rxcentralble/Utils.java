@@ -15,6 +15,13 @@
  */
 package com.uber.rxcentralble;
 
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /** Useful utilities. */
@@ -22,6 +29,12 @@ public final class Utils {
 
   private static final char[] HEX_ARRAY = "0123456789abcdef".toCharArray();
 
+  private static final int AD_SERVICE_DATA_16BIT = 0x16;
+  private static final int AD_SERVICE_DATA_32BIT = 0x20;
+  private static final int AD_SERVICE_DATA_128BIT = 0x21;
+  private static final long BASE_UUID_MSB = 0x0000000000001000L;
+  private static final long BASE_UUID_LSB = 0x800000805f9b34fbL;
+
   private Utils() { }
 
   /**
@@ -57,4 +70,152 @@ public final class Utils {
 
     return new UUID(msb | (v << 32), lsb);
   }
+
+  /**
+   * Pack a Bluetooth device address of the form {@code 01:23:45:67:89:AB} into the low 48 bits of
+   * a long, for use as a primitive key.
+   *
+   * @param address the device address.
+   * @return the packed address.
+   * @throws IllegalArgumentException if the address is malformed.
+   */
+  public static long addressToLong(String address) {
+    if (address.length() != 17) {
+      throw new IllegalArgumentException("Invalid address: " + address);
+    }
+
+    long packed = 0;
+    for (int i = 0; i < 17; i += 3) {
+      int high = Character.digit(address.charAt(i), 16);
+      int low = Character.digit(address.charAt(i + 1), 16);
+      if (high < 0 || low < 0 || (i < 15 && address.charAt(i + 2) != ':')) {
+        throw new IllegalArgumentException("Invalid address: " + address);
+      }
+
+      packed = (packed << 8) | (high << 4) | low;
+    }
+
+    return packed;
+  }
+
+  /**
+   * Check if a region of a byte array starts with a prefix, comparing only the bits set in a mask.
+   *
+   * @param data the byte array.
+   * @param offset start of the region.
+   * @param length length of the region.
+   * @param prefix the prefix.
+   * @param mask mask of the bits of the prefix to compare, of the same length as the prefix, or null
+   *             to compare all bits.
+   * @return true if the region starts with the prefix.
+   */
+  public static boolean startsWith(byte[] data, int offset, int length, byte[] prefix, @Nullable byte[] mask) {
+    if (length < prefix.length) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      int bits = mask != null ? mask[i] : 0xFF;
+      if (((data[offset + i] ^ prefix[i]) & bits) != 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Locate the last service data for a service UUID in a raw advertisement.
+   *
+   * @param rawAdData the raw advertisement.
+   * @param serviceUuid the service UUID.
+   * @return read only view of the service data following the UUID, or null if absent.
+   */
+  @Nullable
+  static ByteBuffer findServiceData(byte[] rawAdData, UUID serviceUuid) {
+    ByteBuffer serviceData = null;
+    int position = 0;
+    while (position < rawAdData.length) {
+      int length = rawAdData[position] & 0xFF;
+      if (length == 0) {
+        position++;
+        continue;
+      }
+
+      if (position + length >= rawAdData.length) {
+        break;
+      }
+
+      int uuidLength;
+      switch (rawAdData[position + 1] & 0xFF) {
+        case AD_SERVICE_DATA_16BIT:
+          uuidLength = 2;
+          break;
+        case AD_SERVICE_DATA_32BIT:
+          uuidLength = 4;
+          break;
+        case AD_SERVICE_DATA_128BIT:
+          uuidLength = 16;
+          break;
+        default:
+          uuidLength = 0;
+          break;
+      }
+
+      int dataOffset = position + 2;
+      if (uuidLength > 0 && length - 1 >= uuidLength && uuidEquals(rawAdData, dataOffset, uuidLength, serviceUuid)) {
+        serviceData = ByteBuffer.wrap(rawAdData, dataOffset + uuidLength, length - 1 - uuidLength)
+            .slice()
+            .asReadOnlyBuffer();
+      }
+
+      position += length + 1;
+    }
+
+    return serviceData;
+  }
+
+  private static boolean uuidEquals(byte[] data, int offset, int uuidLength, UUID uuid) {
+    long msb = 0;
+    long lsb = 0;
+    if (uuidLength == 16) {
+      for (int i = 7; i >= 0; i--) {
+        lsb = lsb << 8 | (data[offset + i] & 0xFF);
+        msb = msb << 8 | (data[offset + 8 + i] & 0xFF);
+      }
+    } else {
+      for (int i = uuidLength - 1; i >= 0; i--) {
+        msb = msb << 8 | (data[offset + i] & 0xFF);
+      }
+
+      msb = BASE_UUID_MSB | msb << 32;
+      lsb = BASE_UUID_LSB;
+    }
+
+    return msb == uuid.getMostSignificantBits() && lsb == uuid.getLeastSignificantBits();
+  }
+
+  /**
+   * Reduce a batch of ScanData to one entry per device address, keeping the strongest RSSI; among
+   * equally strong entries, the latest is kept.
+   *
+   * @param batch ScanData in the order received.
+   * @return ScanData with unique device addresses, in order of first appearance.
+   */
+  public static List<ScanData> deduplicateByAddress(List<ScanData> batch) {
+    if (batch.size() < 2) {
+      return batch;
+    }
+
+    Map<String, ScanData> strongest = new LinkedHashMap<>();
+    for (ScanData scanData : batch) {
+      String address = scanData.getBluetoothDevice().getAddress();
+      ScanData prior = strongest.get(address);
+      if (prior == null || scanData.getRssi() >= prior.getRssi()) {
+        strongest.put(address, scanData);
+      }
+    }
+
+    return new ArrayList<>(strongest.values());
+  }
 }
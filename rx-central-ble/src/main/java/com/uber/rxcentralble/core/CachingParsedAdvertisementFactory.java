@@ -0,0 +1,242 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ParsedAdvertisement.Factory that reuses the ParsedAdvertisement already produced for a payload a
+ * device has advertised before.
+ *
+ * <p>Devices typically repeat byte-identical advertisements several times a second, so parsing
+ * each one again is wasted work. The cache holds the most recent payloads of the most recently
+ * seen devices; a lookup compares a hash of the payload before comparing the bytes, and the least
+ * recently seen device is evicted when the cache is full. ParsedAdvertisements produced by the
+ * delegate must be immutable, as the same instance is returned for every repeat of a payload.
+ */
+public class CachingParsedAdvertisementFactory implements ParsedAdvertisement.Factory {
+
+  public static final int DEFAULT_MAX_DEVICES = 128;
+  public static final int DEFAULT_PAYLOADS_PER_DEVICE = 4;
+
+  private final ParsedAdvertisement.Factory delegate;
+  private final int payloadsPerDevice;
+  private final Map<String, DevicePayloads> cache;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public CachingParsedAdvertisementFactory() {
+    this(new CoreParsedAdvertisement.Factory(), DEFAULT_MAX_DEVICES, DEFAULT_PAYLOADS_PER_DEVICE);
+  }
+
+  /**
+   * Construct a caching factory.
+   *
+   * @param delegate factory producing the ParsedAdvertisements to cache.
+   * @param maxDevices maximum number of devices to cache payloads for.
+   * @param payloadsPerDevice maximum number of distinct payloads to cache per device.
+   */
+  public CachingParsedAdvertisementFactory(ParsedAdvertisement.Factory delegate,
+                                           int maxDevices,
+                                           int payloadsPerDevice) {
+    if (maxDevices <= 0 || payloadsPerDevice <= 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + maxDevices + ", " + payloadsPerDevice);
+    }
+
+    this.delegate = delegate;
+    this.payloadsPerDevice = payloadsPerDevice;
+    this.cache = new LinkedHashMap<String, DevicePayloads>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, DevicePayloads> eldest) {
+        if (size() > maxDevices) {
+          evictions += eldest.getValue().size;
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public ParsedAdvertisement produce(byte[] rawAdData) {
+    return produce(null, rawAdData);
+  }
+
+  @Override
+  public synchronized ParsedAdvertisement produce(@Nullable String address, byte[] rawAdData) {
+    int hash = Arrays.hashCode(rawAdData);
+
+    DevicePayloads payloads = cache.get(address);
+    if (payloads == null) {
+      payloads = new DevicePayloads(payloadsPerDevice);
+      cache.put(address, payloads);
+    }
+
+    ParsedAdvertisement parsedAdvertisement = payloads.get(hash, rawAdData);
+    if (parsedAdvertisement != null) {
+      hits++;
+      return parsedAdvertisement;
+    }
+
+    misses++;
+    parsedAdvertisement = delegate.produce(address, rawAdData);
+    if (parsedAdvertisement != null && payloads.put(hash, parsedAdvertisement)) {
+      evictions++;
+    }
+
+    return parsedAdvertisement;
+  }
+
+  /**
+   * Get the metrics of the cache.
+   *
+   * @return the current metrics.
+   */
+  public synchronized Metrics metrics() {
+    return new Metrics(hits, misses, evictions, cache.size());
+  }
+
+  /** Clear the cache, keeping the metrics. */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  /** Most recently seen payloads of a device, most recent first. */
+  private static final class DevicePayloads {
+
+    private final int[] hashes;
+    private final ParsedAdvertisement[] parsedAdvertisements;
+    private int size;
+
+    DevicePayloads(int capacity) {
+      hashes = new int[capacity];
+      parsedAdvertisements = new ParsedAdvertisement[capacity];
+    }
+
+    @Nullable
+    ParsedAdvertisement get(int hash, byte[] rawAdData) {
+      for (int i = 0; i < size; i++) {
+        if (hashes[i] == hash && Arrays.equals(parsedAdvertisements[i].getRawAdvertisement(), rawAdData)) {
+          ParsedAdvertisement parsedAdvertisement = parsedAdvertisements[i];
+          moveToFront(i, hash, parsedAdvertisement);
+          return parsedAdvertisement;
+        }
+      }
+
+      return null;
+    }
+
+    /** Returns true if the least recently seen payload was evicted to make room. */
+    boolean put(int hash, ParsedAdvertisement parsedAdvertisement) {
+      boolean evicted = size == hashes.length;
+      if (!evicted) {
+        size++;
+      }
+
+      moveToFront(size - 1, hash, parsedAdvertisement);
+      return evicted;
+    }
+
+    private void moveToFront(int index, int hash, ParsedAdvertisement parsedAdvertisement) {
+      System.arraycopy(hashes, 0, hashes, 1, index);
+      System.arraycopy(parsedAdvertisements, 0, parsedAdvertisements, 1, index);
+      hashes[0] = hash;
+      parsedAdvertisements[0] = parsedAdvertisement;
+    }
+  }
+
+  /** Effectiveness of a {@link CachingParsedAdvertisementFactory}. */
+  public static final class Metrics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int devices;
+
+    Metrics(long hits, long misses, long evictions, int devices) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.devices = devices;
+    }
+
+    /**
+     * Get the number of advertisements served from the cache.
+     *
+     * @return the hit count.
+     */
+    public long getHits() {
+      return hits;
+    }
+
+    /**
+     * Get the number of advertisements parsed by the delegate factory.
+     *
+     * @return the miss count.
+     */
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * Get the number of payloads evicted from the cache.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /**
+     * Get the number of devices currently cached.
+     *
+     * @return the device count.
+     */
+    public int getDevices() {
+      return devices;
+    }
+
+    /**
+     * Get the fraction of advertisements served from the cache.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public double getHitRate() {
+      long total = hits + misses;
+      return total > 0 ? (double) hits / total : 0;
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{"
+          + "hits=" + hits
+          + ", misses=" + misses
+          + ", evictions=" + evictions
+          + ", devices=" + devices
+          + ", hitRate=" + getHitRate()
+          + '}';
+    }
+  }
+}
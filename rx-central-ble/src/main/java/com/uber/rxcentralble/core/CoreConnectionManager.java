@@ -142,8 +142,7 @@ public class CoreConnectionManager implements ConnectionManager {
     return bluetoothEnabled ->
             bluetoothEnabled
                     .doOnNext(enabled -> stateRelay.accept(State.SCANNING))
-                    .switchMap(enabled -> scanner.scan())
-                    .compose(scanMatcher.match())
+                    .switchMap(enabled -> scanner.scan(scanMatcher))
                     .firstOrError()
                     .timeout(
                             scanTimeoutMs,
@@ -4,16 +4,24 @@ import androidx.annotation.Nullable;
 
 import com.uber.rxcentralble.ParsedAdvertisement;
 import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.IntSet;
 
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.UUID;
 
+/**
+ * ParsedAdvertisement that records only where each AD structure lies in the raw advertisement,
+ * decoding fields when they are first accessed.
+ *
+ * <p>Construction allocates a single int array. The name and data arrays are decoded once and
+ * then cached. The first service query scans the raw advertisement and allocates nothing, which
+ * suits advertisements that are queried once and rejected. Advertised services are indexed on a
+ * repeated query, so that further queries, as made by matchers against a cached advertisement,
+ * are hash lookups that allocate nothing. Service data is indexed alongside services by its UUID,
+ * and is read in place.
+ */
 public class CoreParsedAdvertisement implements ParsedAdvertisement {
 
   /**
@@ -27,55 +35,156 @@ public class CoreParsedAdvertisement implements ParsedAdvertisement {
   private static final int AD_COMPLETE_128BIT_SVC_LIST = 0x07;
   private static final int AD_SHORTENED_LOCAL_NAME = 0x08;
   private static final int AD_COMPLETE_LOCAL_NAME = 0x09;
+  private static final int AD_SERVICE_DATA_16BIT = 0x16;
+  private static final int AD_SERVICE_DATA_32BIT = 0x20;
+  private static final int AD_SERVICE_DATA_128BIT = 0x21;
   private static final int AD_MANUFACTURER_DATA = 0xFF;
 
-  private final List<UUID> servicesList = new ArrayList<>();
-  private final Map<Integer, byte[]> eirDataMap = new HashMap<>();
-  private final Map<Integer, byte[]> mfgDataMap = new HashMap<>();
+  /**
+   * Bits of the Bluetooth Base UUID, which 16 and 32bit service UUIDs are shortened from.
+   */
+  private static final long BASE_UUID_MSB = 0x0000000000001000L;
+  private static final long BASE_UUID_LSB = 0x800000805f9b34fbL;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /** Number of service queries after which services are indexed rather than scanned. */
+  private static final int INDEX_AFTER_QUERIES = 2;
 
   private final byte[] rawAdData;
 
+  /** Offsets of the length byte of each AD structure in the raw advertisement. */
+  private final int[] structures;
+
+  @Nullable
+  private volatile String name;
+  private volatile boolean nameDecoded;
+
+  @Nullable
+  private volatile ServiceIndex serviceIndex;
+  // Racy updates at most delay or advance indexing by a query.
+  private int serviceQueries;
+
   @Nullable
-  String name;
+  private byte[][] eirData;
+  @Nullable
+  private byte[][] mfgData;
 
   public CoreParsedAdvertisement(byte[] rawAdData) {
     this.rawAdData = rawAdData;
-
-    ByteBuffer byteBuffer = ByteBuffer.wrap(rawAdData).order(ByteOrder.LITTLE_ENDIAN);
-    try {
-      while (byteBuffer.hasRemaining()) {
-        int length = byteBuffer.get() & 0xFF;
-        if (length <= byteBuffer.remaining()) {
-          int dataType = byteBuffer.get() & 0xFF;
-          parseAdData(dataType, length - 1, byteBuffer);
-        }
-      }
-    } catch (Exception e) {
-      // Ignore exceptions; further data will not be parsed.
-    }
+    this.structures = new int[frame(rawAdData, null)];
+    frame(rawAdData, structures);
   }
 
   @Override
   @Nullable
   public String getName() {
+    if (!nameDecoded) {
+      int index = lastIndexOf(AD_COMPLETE_LOCAL_NAME, AD_SHORTENED_LOCAL_NAME);
+      if (index >= 0) {
+        name = new String(rawAdData, dataOffset(index), dataLength(index), UTF_8);
+      }
+
+      nameDecoded = true;
+    }
+
     return name;
   }
 
   @Override
   public boolean hasService(UUID svc) {
-    return servicesList.contains(svc);
+    long msb = svc.getMostSignificantBits();
+    long lsb = svc.getLeastSignificantBits();
+    ServiceIndex index = serviceIndex();
+    if (index == null) {
+      return scanServices(msb, lsb);
+    } else if (lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB) {
+      return index.shortUuids.contains((int) (msb >>> 32));
+    }
+
+    return index.hasLongUuid(msb, lsb);
+  }
+
+  @Override
+  public boolean hasService16(int uuid16) {
+    if ((uuid16 & ~0xFFFF) != 0) {
+      return false;
+    }
+
+    ServiceIndex index = serviceIndex();
+    return index != null
+        ? index.shortUuids.contains(uuid16)
+        : scanServices(BASE_UUID_MSB | (long) uuid16 << 32, BASE_UUID_LSB);
+  }
+
+  @Override
+  @Nullable
+  public ByteBuffer getServiceData(UUID serviceUuid) {
+    int index = serviceDataIndexOf(serviceUuid);
+    if (index < 0) {
+      return null;
+    }
+
+    int uuidLength = serviceDataUuidLength(type(index));
+    return ByteBuffer.wrap(rawAdData, dataOffset(index) + uuidLength, dataLength(index) - uuidLength)
+        .slice()
+        .asReadOnlyBuffer();
+  }
+
+  @Override
+  public boolean hasServiceData(UUID serviceUuid, byte[] prefix, @Nullable byte[] mask) {
+    int index = serviceDataIndexOf(serviceUuid);
+    if (index < 0) {
+      return false;
+    }
+
+    int uuidLength = serviceDataUuidLength(type(index));
+    return Utils.startsWith(rawAdData, dataOffset(index) + uuidLength, dataLength(index) - uuidLength, prefix, mask);
+  }
+
+  @Override
+  public int getTxPowerLevel() {
+    int index = lastIndexOf(AD_TX_POWER_LEVEL, AD_TX_POWER_LEVEL);
+    return index >= 0 && dataLength(index) == 1 ? rawAdData[dataOffset(index)] : TX_POWER_LEVEL_NOT_PRESENT;
   }
 
   @Override
   @Nullable
-  public byte[] getManufacturerData(int manufacturerId) {
-    return mfgDataMap.get(manufacturerId);
+  public synchronized byte[] getManufacturerData(int manufacturerId) {
+    for (int i = structures.length - 1; i >= 0; i--) {
+      if (type(i) == AD_MANUFACTURER_DATA && readUnsignedShort(dataOffset(i)) == manufacturerId) {
+        if (mfgData == null) {
+          mfgData = new byte[structures.length][];
+        }
+
+        if (mfgData[i] == null) {
+          mfgData[i] = Arrays.copyOfRange(rawAdData, dataOffset(i) + 2, dataOffset(i) + dataLength(i));
+        }
+
+        return mfgData[i];
+      }
+    }
+
+    return null;
   }
 
   @Override
   @Nullable
-  public byte[] getEIRData(int eirDataType) {
-    return eirDataMap.get(eirDataType);
+  public synchronized byte[] getEIRData(int eirDataType) {
+    int index = lastIndexOf(eirDataType, eirDataType);
+    if (index < 0) {
+      return null;
+    }
+
+    if (eirData == null) {
+      eirData = new byte[structures.length][];
+    }
+
+    if (eirData[index] == null) {
+      eirData[index] = Arrays.copyOfRange(rawAdData, dataOffset(index), dataOffset(index) + dataLength(index));
+    }
+
+    return eirData[index];
   }
 
   @Override
@@ -83,63 +192,298 @@ public class CoreParsedAdvertisement implements ParsedAdvertisement {
     return rawAdData;
   }
 
-  private void parseAdData(int dataType, int length, ByteBuffer byteBuffer) {
-    if (length <= 0) {
-      return;
+  // Returns the service index, or null if services are still scanned.
+  @Nullable
+  private ServiceIndex serviceIndex() {
+    ServiceIndex index = serviceIndex;
+    if (index == null && ++serviceQueries >= INDEX_AFTER_QUERIES) {
+      index = new ServiceIndex();
+      serviceIndex = index;
+    }
+
+    return index;
+  }
+
+  private boolean scanServices(long msb, long lsb) {
+    boolean shortened = lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB;
+    long shortUuid = msb >>> 32;
+
+    for (int i = 0; i < structures.length; i++) {
+      int offset = dataOffset(i);
+      int end = offset + dataLength(i);
+      switch (type(i)) {
+        case AD_INCOMPLETE_16BIT_SVC_LIST:
+        case AD_COMPLETE_16BIT_SVC_LIST:
+          if (shortened && shortUuid <= 0xFFFF) {
+            for (int position = offset; position < end; position += 2) {
+              if (readUnsignedShort(position) == shortUuid) {
+                return true;
+              }
+            }
+          }
+          break;
+        case AD_INCOMPLETE_32BIT_SVC_LIST:
+        case AD_COMPLETE_32BIT_SVC_LIST:
+          if (shortened) {
+            for (int position = offset; position < end; position += 4) {
+              if ((readInt(position) & 0xFFFFFFFFL) == shortUuid) {
+                return true;
+              }
+            }
+          }
+          break;
+        case AD_INCOMPLETE_128BIT_SVC_LIST:
+        case AD_COMPLETE_128BIT_SVC_LIST:
+          for (int position = offset; position < end; position += 16) {
+            if (readLong(position) == lsb && readLong(position + 8) == msb) {
+              return true;
+            }
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    return false;
+  }
+
+  // Returns the structure of the last service data for the UUID, or -1 if there is none.
+  private int serviceDataIndexOf(UUID uuid) {
+    long msb = uuid.getMostSignificantBits();
+    long lsb = uuid.getLeastSignificantBits();
+    ServiceIndex index = serviceIndex();
+    if (index != null) {
+      return index.serviceDataIndexOf(msb, lsb);
+    }
+
+    for (int i = structures.length - 1; i >= 0; i--) {
+      if (serviceDataUuidLength(type(i)) > 0
+          && serviceDataMsb(i) == msb
+          && serviceDataLsb(i) == lsb) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private long serviceDataMsb(int index) {
+    int offset = dataOffset(index);
+    switch (type(index)) {
+      case AD_SERVICE_DATA_16BIT:
+        return BASE_UUID_MSB | (long) readUnsignedShort(offset) << 32;
+      case AD_SERVICE_DATA_32BIT:
+        return BASE_UUID_MSB | (readInt(offset) & 0xFFFFFFFFL) << 32;
+      default:
+        return readLong(offset + 8);
+    }
+  }
+
+  private long serviceDataLsb(int index) {
+    return type(index) == AD_SERVICE_DATA_128BIT ? readLong(dataOffset(index)) : BASE_UUID_LSB;
+  }
+
+  private int type(int index) {
+    return rawAdData[structures[index] + 1] & 0xFF;
+  }
+
+  private int dataOffset(int index) {
+    return structures[index] + 2;
+  }
+
+  private int dataLength(int index) {
+    return (rawAdData[structures[index]] & 0xFF) - 1;
+  }
+
+  private int lastIndexOf(int dataType, int otherDataType) {
+    for (int i = structures.length - 1; i >= 0; i--) {
+      int type = type(i);
+      if (type == dataType || type == otherDataType) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private int readUnsignedShort(int position) {
+    return (rawAdData[position] & 0xFF) | (rawAdData[position + 1] & 0xFF) << 8;
+  }
+
+  private int readInt(int position) {
+    return readUnsignedShort(position) | readUnsignedShort(position + 2) << 16;
+  }
+
+  private long readLong(int position) {
+    return (readInt(position) & 0xFFFFFFFFL) | (long) readInt(position + 4) << 32;
+  }
+
+  /**
+   * Locate the AD structures of a raw advertisement. Empty structures are skipped, and a truncated
+   * or malformed structure ends parsing.
+   *
+   * @param rawAdData the raw advertisement.
+   * @param structures array to store the offset of each structure in, or null to only count them.
+   * @return the number of structures.
+   */
+  private static int frame(byte[] rawAdData, @Nullable int[] structures) {
+    int count = 0;
+    int position = 0;
+    while (position < rawAdData.length) {
+      int length = rawAdData[position] & 0xFF;
+      if (length == 0) {
+        position++;
+        continue;
+      }
+
+      if (position + length >= rawAdData.length) {
+        break;
+      }
+
+      if (length > 1) {
+        if (!isWellFormed(rawAdData[position + 1] & 0xFF, length - 1)) {
+          break;
+        }
+
+        if (structures != null) {
+          structures[count] = position;
+        }
+
+        count++;
+      }
+
+      position += length + 1;
     }
 
-    int position = byteBuffer.position();
-    byte[] eirData = new byte[length];
-    byteBuffer.get(eirData);
-    eirDataMap.put(dataType, eirData);
-    byteBuffer.position(position);
+    return count;
+  }
 
-    int bytesRead = 0;
+  private static boolean isWellFormed(int dataType, int length) {
     switch (dataType) {
       case AD_INCOMPLETE_16BIT_SVC_LIST:
       case AD_COMPLETE_16BIT_SVC_LIST:
-        while (bytesRead < length) {
-          int uuid = byteBuffer.getShort();
-          servicesList.add(Utils.uuidFromInteger(uuid));
-          bytesRead += 2;
-        }
-        break;
+        return length % 2 == 0;
       case AD_INCOMPLETE_32BIT_SVC_LIST:
       case AD_COMPLETE_32BIT_SVC_LIST:
-        while (bytesRead < length) {
-          int uuid = byteBuffer.getInt();
-          servicesList.add(Utils.uuidFromInteger(uuid));
-          bytesRead += 4;
-        }
-        break;
+        return length % 4 == 0;
       case AD_INCOMPLETE_128BIT_SVC_LIST:
       case AD_COMPLETE_128BIT_SVC_LIST:
-        while (bytesRead < length) {
-          long lsb = byteBuffer.getLong();
-          long msb = byteBuffer.getLong();
-          servicesList.add(new UUID(msb, lsb));
-          bytesRead += 16;
-        }
-        break;
-      case AD_SHORTENED_LOCAL_NAME:
-      case AD_COMPLETE_LOCAL_NAME:
-        try {
-          byte[] nameBytes = new byte[length];
-          byteBuffer.get(nameBytes);
-          name = new String(nameBytes, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-          // Ignore the exception; data will remain empty.
-        }
-        break;
+        return length % 16 == 0;
+      case AD_SERVICE_DATA_16BIT:
+      case AD_SERVICE_DATA_32BIT:
+      case AD_SERVICE_DATA_128BIT:
+        return length >= serviceDataUuidLength(dataType);
       case AD_MANUFACTURER_DATA:
-        int mfgId = byteBuffer.getShort() & 0xFFFF;
-        byte[] data = new byte[length - 2];
-        byteBuffer.get(data);
-        mfgDataMap.put(mfgId, data);
-        break;
+        return length >= 2;
       default:
-        byteBuffer.position(byteBuffer.position() + length);
-        break;
+        return true;
+    }
+  }
+
+  private static int serviceDataUuidLength(int dataType) {
+    switch (dataType) {
+      case AD_SERVICE_DATA_16BIT:
+        return 2;
+      case AD_SERVICE_DATA_32BIT:
+        return 4;
+      case AD_SERVICE_DATA_128BIT:
+        return 16;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Services advertised, with 16 and 32bit UUIDs of the Bluetooth Base UUID kept as their short
+   * values in a hash set, and other UUIDs as pairs of longs. The UUIDs of service data are kept
+   * as pairs of longs, with the index of the structure holding the data.
+   */
+  private final class ServiceIndex {
+
+    private final IntSet shortUuids = new IntSet(4);
+    private final long[] longUuids;
+    private int longUuidsLength;
+    private final long[] serviceDataUuids;
+    private final int[] serviceDataStructures;
+
+    ServiceIndex() {
+      int longUuidBytes = 0;
+      int serviceDataCount = 0;
+      for (int i = 0; i < structures.length; i++) {
+        if (type(i) == AD_INCOMPLETE_128BIT_SVC_LIST || type(i) == AD_COMPLETE_128BIT_SVC_LIST) {
+          longUuidBytes += dataLength(i);
+        } else if (serviceDataUuidLength(type(i)) > 0) {
+          serviceDataCount++;
+        }
+      }
+
+      longUuids = new long[longUuidBytes / 8];
+      serviceDataUuids = new long[serviceDataCount * 2];
+      serviceDataStructures = new int[serviceDataCount];
+      serviceDataCount = 0;
+      for (int i = 0; i < structures.length; i++) {
+        int offset = dataOffset(i);
+        int end = offset + dataLength(i);
+        switch (type(i)) {
+          case AD_INCOMPLETE_16BIT_SVC_LIST:
+          case AD_COMPLETE_16BIT_SVC_LIST:
+            for (int position = offset; position < end; position += 2) {
+              shortUuids.add(readUnsignedShort(position));
+            }
+            break;
+          case AD_INCOMPLETE_32BIT_SVC_LIST:
+          case AD_COMPLETE_32BIT_SVC_LIST:
+            for (int position = offset; position < end; position += 4) {
+              shortUuids.add(readInt(position));
+            }
+            break;
+          case AD_INCOMPLETE_128BIT_SVC_LIST:
+          case AD_COMPLETE_128BIT_SVC_LIST:
+            for (int position = offset; position < end; position += 16) {
+              long lsb = readLong(position);
+              long msb = readLong(position + 8);
+              if (lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB) {
+                shortUuids.add((int) (msb >>> 32));
+              } else {
+                longUuids[longUuidsLength++] = msb;
+                longUuids[longUuidsLength++] = lsb;
+              }
+            }
+            break;
+          case AD_SERVICE_DATA_16BIT:
+          case AD_SERVICE_DATA_32BIT:
+          case AD_SERVICE_DATA_128BIT:
+            serviceDataUuids[2 * serviceDataCount] = serviceDataMsb(i);
+            serviceDataUuids[2 * serviceDataCount + 1] = serviceDataLsb(i);
+            serviceDataStructures[serviceDataCount++] = i;
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
+    // Returns the structure of the last service data for the UUID, or -1 if there is none.
+    int serviceDataIndexOf(long msb, long lsb) {
+      for (int i = serviceDataStructures.length - 1; i >= 0; i--) {
+        if (serviceDataUuids[2 * i] == msb && serviceDataUuids[2 * i + 1] == lsb) {
+          return serviceDataStructures[i];
+        }
+      }
+
+      return -1;
+    }
+
+    // Few 128bit UUIDs fit in an advertisement, so a scan beats hashing them.
+    boolean hasLongUuid(long msb, long lsb) {
+      for (int i = 0; i < longUuidsLength; i += 2) {
+        if (longUuids[i] == msb && longUuids[i + 1] == lsb) {
+          return true;
+        }
+      }
+
+      return false;
     }
   }
 
@@ -123,12 +123,17 @@ public class CorePeripheral implements Peripheral {
 
   @Override
   public Completable write(UUID svc, UUID chr, byte[] data) {
+    return write(svc, chr, data, WriteType.DEFAULT);
+  }
+
+  @Override
+  public Completable write(UUID svc, UUID chr, byte[] data, WriteType writeType) {
     final SingleSubject<UUID> scopedSubject = SingleSubject.create();
 
     return scopedSubject
         .filter(writeChr -> writeChr.equals(chr))
         .ignoreElement()
-        .doOnSubscribe(disposable -> processWrite(scopedSubject, svc, chr, data))
+        .doOnSubscribe(disposable -> processWrite(scopedSubject, svc, chr, data, writeType))
         .doFinally(() -> clearWriteSubject(scopedSubject));
   }
 
@@ -271,7 +276,8 @@ public class CorePeripheral implements Peripheral {
     }
   }
 
-  private void processWrite(SingleSubject<UUID> scopedSubject, UUID svc, UUID chr, byte[] data) {
+  private void processWrite(
+      SingleSubject<UUID> scopedSubject, UUID svc, UUID chr, byte[] data, WriteType writeType) {
     synchronized (syncRoot) {
       PeripheralError error = subscribeChecks();
       if (error != null) {
@@ -288,8 +294,13 @@ public class CorePeripheral implements Peripheral {
       writeSubject = scopedSubject;
       currentOperation = writeSubject;
 
-      if ((characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE)
-          == BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) {
+      int properties = characteristic.getProperties();
+      boolean noResponse = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE)
+          == BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE;
+      boolean withResponse = (properties & BluetoothGattCharacteristic.PROPERTY_WRITE)
+          == BluetoothGattCharacteristic.PROPERTY_WRITE;
+
+      if (noResponse && !(writeType == WriteType.WITH_RESPONSE && withResponse)) {
         characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
       } else {
         characteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
@@ -15,18 +15,46 @@
  */
 package com.uber.rxcentralble.core;
 
+import android.content.Context;
 import android.os.Build;
+import androidx.annotation.Nullable;
 
 import com.uber.rxcentralble.Scanner;
 import com.uber.rxcentralble.core.scanners.JellyBeanScanner;
+import com.uber.rxcentralble.core.scanners.PendingIntentScanner;
 import com.uber.rxcentralble.core.scanners.ThrottledLollipopScanner;
 
-/** Core implementation of Scanner.Factory. */
+/**
+ * Core implementation of Scanner.Factory.
+ *
+ * <p>If constructed with a Context, produces a {@link PendingIntentScanner} on Android 8+, which
+ * keeps scanning while the application is in the background. Each produced scanner has its own
+ * PendingIntent request code, so that scanners do not stop or receive each other's scans.
+ */
 public class CoreScannerFactory implements Scanner.Factory {
 
+  @Nullable
+  private final Context context;
+
+  public CoreScannerFactory() {
+    this(null);
+  }
+
+  /**
+   * Construct a factory.
+   *
+   * @param context context used to scan with a PendingIntent on Android 8+, or null to always scan
+   *                with a callback.
+   */
+  public CoreScannerFactory(@Nullable Context context) {
+    this.context = context != null ? context.getApplicationContext() : null;
+  }
+
   @Override
   public Scanner produce() {
-    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+    if (context != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      return new PendingIntentScanner(context);
+    } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
       return new JellyBeanScanner();
     } else {
       return new ThrottledLollipopScanner();
@@ -0,0 +1,120 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash set of primitive int values, using linear probing. No objects are allocated
+ * per value; the table doubles when half full.
+ *
+ * <p>This implementation is not thread safe.
+ */
+public final class IntSet {
+
+  private static final int MIN_CAPACITY = 4;
+
+  private int[] values;
+  private boolean[] used;
+  private int size;
+
+  public IntSet(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+
+    allocate(capacity);
+  }
+
+  /**
+   * Check if a value is in the set.
+   *
+   * @param value the value.
+   * @return true if present.
+   */
+  public boolean contains(int value) {
+    int mask = values.length - 1;
+    for (int i = hash(value) & mask; used[i]; i = (i + 1) & mask) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Add a value to the set.
+   *
+   * @param value the value.
+   * @return true if the value was not already present.
+   */
+  public boolean add(int value) {
+    int mask = values.length - 1;
+    int i = hash(value) & mask;
+    for (; used[i]; i = (i + 1) & mask) {
+      if (values[i] == value) {
+        return false;
+      }
+    }
+
+    used[i] = true;
+    values[i] = value;
+    if (++size * 2 > values.length) {
+      rehash(values.length * 2);
+    }
+
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    allocate(capacity);
+    size = 0;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldUsed[i]) {
+        add(oldValues[i]);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    values = new int[capacity];
+    used = new boolean[capacity];
+  }
+
+  private static int hash(int value) {
+    // MurmurHash3 32bit finalizer.
+    value ^= value >>> 16;
+    value *= 0x85ebca6b;
+    value ^= value >>> 13;
+    value *= 0xc2b2ae35;
+    value ^= value >>> 16;
+    return value;
+  }
+}
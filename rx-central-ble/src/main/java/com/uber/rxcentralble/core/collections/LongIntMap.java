@@ -0,0 +1,168 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash map from primitive long keys to primitive int values, using linear probing.
+ * No objects are allocated per entry; the table doubles when half full.
+ *
+ * <p>This implementation is not thread safe.
+ */
+public final class LongIntMap {
+
+  /** Value returned for absent keys. */
+  public static final int MISSING = -1;
+
+  private static final int MIN_CAPACITY = 8;
+
+  private long[] keys;
+  private int[] values;
+  private boolean[] used;
+  private int size;
+
+  public LongIntMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+
+    allocate(capacity);
+  }
+
+  /**
+   * Get the value for a key.
+   *
+   * @param key the key.
+   * @return the value, or {@link #MISSING} if absent.
+   */
+  public int get(long key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+    }
+
+    return MISSING;
+  }
+
+  /**
+   * Associate a value with a key, replacing any prior value.
+   *
+   * @param key the key.
+   * @param value the value.
+   */
+  public void put(long key, int value) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    for (; used[i]; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+    }
+
+    used[i] = true;
+    keys[i] = key;
+    values[i] = value;
+    if (++size * 2 > keys.length) {
+      rehash(keys.length * 2);
+    }
+  }
+
+  /**
+   * Remove a key.
+   *
+   * @param key the key.
+   * @return the removed value, or {@link #MISSING} if absent.
+   */
+  public int remove(long key) {
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        int value = values[i];
+        shiftBack(i);
+        size--;
+        return value;
+      }
+    }
+
+    return MISSING;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  // Close the gap left by a removal so that probe sequences stay unbroken.
+  private void shiftBack(int gap) {
+    int mask = keys.length - 1;
+    int i = gap;
+    while (true) {
+      i = (i + 1) & mask;
+      if (!used[i]) {
+        break;
+      }
+
+      int home = hash(keys[i]) & mask;
+      // Move the entry into the gap unless its home slot lies cyclically in (gap, i].
+      if ((i > gap && (home <= gap || home > i)) || (i < gap && (home <= gap && home > i))) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+
+    used[gap] = false;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    allocate(capacity);
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+  }
+
+  private static int hash(long key) {
+    // MurmurHash3 finalizer.
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+/**
+ * Bounded table that assigns each of up to a fixed number of primitive long keys, such as packed
+ * device addresses, a slot in {@code [0, capacity)}. State per key can then be held in parallel
+ * primitive arrays indexed by slot, without allocating per key.
+ *
+ * <p>Slots are looked up through a {@link LongIntMap}, and freed slots are reused first. When the
+ * table is full, {@link #add(long)} refuses new keys, while {@link #addEvicting(long)} evicts keys in
+ * round-robin order of their slots; if keys are never removed, that is the key added longest ago.
+ *
+ * <p>This implementation is not thread safe.
+ */
+public final class SlotTable {
+
+  /** Slot returned for absent keys, or when no slot is free. */
+  public static final int MISSING = LongIntMap.MISSING;
+
+  private final LongIntMap index;
+  private final long[] keys;
+  private final int[] freeSlots;
+
+  private int freeCount;
+  private int nextEviction;
+
+  public SlotTable(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+
+    index = new LongIntMap(capacity);
+    keys = new long[capacity];
+    freeSlots = new int[capacity];
+    clear();
+  }
+
+  /**
+   * Get the slot of a key.
+   *
+   * @param key the key.
+   * @return the slot, or {@link #MISSING} if absent.
+   */
+  public int get(long key) {
+    return index.get(key);
+  }
+
+  /**
+   * Assign a free slot to a key that is absent.
+   *
+   * @param key the key.
+   * @return the slot, or {@link #MISSING} if the table is full.
+   */
+  public int add(long key) {
+    if (freeCount == 0) {
+      return MISSING;
+    }
+
+    int slot = freeSlots[--freeCount];
+    assign(key, slot);
+    return slot;
+  }
+
+  /**
+   * Assign a slot to a key that is absent, evicting the key of the next slot in round-robin order
+   * if the table is full.
+   *
+   * @param key the key.
+   * @return the slot, whose prior state belongs to the evicted key, if any.
+   */
+  public int addEvicting(long key) {
+    if (freeCount > 0) {
+      return add(key);
+    }
+
+    int slot = nextEviction;
+    nextEviction = (nextEviction + 1) % keys.length;
+    index.remove(keys[slot]);
+    assign(key, slot);
+    return slot;
+  }
+
+  /**
+   * Remove a key and free its slot.
+   *
+   * @param key the key.
+   * @return the freed slot, or {@link #MISSING} if absent.
+   */
+  public int remove(long key) {
+    int slot = index.remove(key);
+    if (slot != MISSING) {
+      freeSlots[freeCount++] = slot;
+    }
+
+    return slot;
+  }
+
+  /**
+   * Get the key a slot is assigned to.
+   *
+   * @param slot an assigned slot.
+   * @return the key.
+   */
+  public long keyAt(int slot) {
+    return keys[slot];
+  }
+
+  public int size() {
+    return keys.length - freeCount;
+  }
+
+  public int capacity() {
+    return keys.length;
+  }
+
+  public void clear() {
+    index.clear();
+    // Free slots are taken in ascending order.
+    for (int i = 0; i < keys.length; i++) {
+      freeSlots[i] = keys.length - 1 - i;
+    }
+
+    freeCount = keys.length;
+    nextEviction = 0;
+  }
+
+  private void assign(long key, int slot) {
+    index.put(key, slot);
+    keys[slot] = key;
+  }
+}
@@ -0,0 +1,401 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.matchers;
+
+import androidx.annotation.Nullable;
+
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.core.collections.LongIntMap;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import io.reactivex.Observable;
+
+/**
+ * Engine matching a single stream of ScanData against many criteria at once, giving each its own
+ * stream of matches.
+ *
+ * <p>Service UUID and manufacturer ID criteria are compiled into hash indexes, and name prefixes
+ * into a trie over their UTF-8 bytes. Each advertisement is routed by walking its raw AD
+ * structures once and looking each field up in the indexes, so the cost grows with the size of
+ * the advertisement rather than with the number of criteria. Criteria are evaluated against the
+ * advertisement payload only, as hardware filters are.
+ *
+ * <pre>{@code
+ * CompositeScanMatcher matcher = new CompositeScanMatcher(scanner.scan());
+ * Observable<ScanData> heartRateMonitors = matcher.matchService(heartRateServiceUuid);
+ * Observable<ScanData> beacons = matcher.matchManufacturer(beaconManufacturerId);
+ * }</pre>
+ *
+ * <p>The scan stream is subscribed to while any match stream is subscribed to.
+ */
+public class CompositeScanMatcher {
+
+  private static final int AD_INCOMPLETE_16BIT_SVC_LIST = 0x02;
+  private static final int AD_COMPLETE_16BIT_SVC_LIST = 0x03;
+  private static final int AD_INCOMPLETE_32BIT_SVC_LIST = 0x04;
+  private static final int AD_COMPLETE_32BIT_SVC_LIST = 0x05;
+  private static final int AD_INCOMPLETE_128BIT_SVC_LIST = 0x06;
+  private static final int AD_COMPLETE_128BIT_SVC_LIST = 0x07;
+  private static final int AD_SHORTENED_LOCAL_NAME = 0x08;
+  private static final int AD_COMPLETE_LOCAL_NAME = 0x09;
+  private static final int AD_MANUFACTURER_DATA = 0xFF;
+
+  private static final long BASE_UUID_MSB = 0x0000000000001000L;
+  private static final long BASE_UUID_LSB = 0x800000805f9b34fbL;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Observable<ScanData> routing;
+  private final List<Route> routes = new ArrayList<>();
+
+  private volatile Index index = new Index(new ArrayList<>());
+  private long routeCount;
+
+  public CompositeScanMatcher(Observable<ScanData> scanData) {
+    this.routing = scanData
+        .doOnNext(this::route)
+        .ignoreElements()
+        .<ScanData>toObservable()
+        .share();
+  }
+
+  /**
+   * Match advertisements listing a service UUID.
+   *
+   * @param serviceUuid the service UUID.
+   * @return Observable stream of matching ScanData.
+   */
+  public Observable<ScanData> matchService(UUID serviceUuid) {
+    return match(new Route(Route.SERVICE, serviceUuid.getMostSignificantBits(),
+        serviceUuid.getLeastSignificantBits(), null, null));
+  }
+
+  /**
+   * Match advertisements carrying manufacturer specific data for a manufacturer ID.
+   *
+   * @param manufacturerId the manufacturer ID.
+   * @return Observable stream of matching ScanData.
+   */
+  public Observable<ScanData> matchManufacturer(int manufacturerId) {
+    return match(new Route(Route.MANUFACTURER, manufacturerId & 0xFFFF, 0, null, null));
+  }
+
+  /**
+   * Match advertisements with a shortened or complete local name starting with a prefix.
+   *
+   * @param namePrefix the name prefix.
+   * @return Observable stream of matching ScanData.
+   */
+  public Observable<ScanData> matchNamePrefix(String namePrefix) {
+    return match(new Route(Route.NAME_PREFIX, 0, 0, namePrefix.getBytes(UTF_8), null));
+  }
+
+  /**
+   * Match advertisements with any other ScanMatcher. A {@link PredicateScanMatcher} is evaluated
+   * for each advertisement in turn; other matchers are composed over the full stream.
+   *
+   * @param scanMatcher the ScanMatcher.
+   * @return Observable stream of matching ScanData.
+   */
+  public Observable<ScanData> match(ScanMatcher scanMatcher) {
+    if (scanMatcher instanceof PredicateScanMatcher) {
+      return match(new Route(Route.PREDICATE, 0, 0, null, (PredicateScanMatcher) scanMatcher));
+    }
+
+    return match(new Route(Route.PREDICATE, 0, 0, null, scanData -> true)).compose(scanMatcher.match());
+  }
+
+  private Observable<ScanData> match(Route route) {
+    return Observable.merge(route.relay, routing)
+        .doOnSubscribe(disposable -> register(route))
+        .doFinally(() -> unregister(route))
+        .share();
+  }
+
+  private synchronized void register(Route route) {
+    routes.add(route);
+    index = new Index(routes);
+  }
+
+  private synchronized void unregister(Route route) {
+    routes.remove(route);
+    index = new Index(routes);
+  }
+
+  // Serialized by the scan stream; routes are stamped to emit at most once per advertisement.
+  private void route(ScanData scanData) {
+    Index index = this.index;
+    long stamp = ++routeCount;
+
+    ParsedAdvertisement parsedAdvertisement = scanData.getParsedAdvertisement();
+    if (parsedAdvertisement != null) {
+      byte[] raw = parsedAdvertisement.getRawAdvertisement();
+      int position = 0;
+      while (position < raw.length) {
+        int length = raw[position] & 0xFF;
+        if (length == 0) {
+          position++;
+          continue;
+        }
+
+        if (position + length >= raw.length) {
+          break;
+        }
+
+        routeStructure(index, raw, raw[position + 1] & 0xFF, position + 2, length - 1, scanData, stamp);
+        position += length + 1;
+      }
+    }
+
+    for (Route route : index.predicateRoutes) {
+      if (route.predicate.matches(scanData)) {
+        route.emit(scanData, stamp);
+      }
+    }
+  }
+
+  private static void routeStructure(Index index, byte[] raw, int dataType, int offset, int length,
+                                     ScanData scanData, long stamp) {
+    int end = offset + length;
+    switch (dataType) {
+      case AD_INCOMPLETE_16BIT_SVC_LIST:
+      case AD_COMPLETE_16BIT_SVC_LIST:
+        for (int position = offset; position + 2 <= end; position += 2) {
+          emit(index.shortServiceRoutes, index.shortServices.get(readUnsignedShort(raw, position)),
+              scanData, stamp);
+        }
+        break;
+      case AD_INCOMPLETE_32BIT_SVC_LIST:
+      case AD_COMPLETE_32BIT_SVC_LIST:
+        for (int position = offset; position + 4 <= end; position += 4) {
+          emit(index.shortServiceRoutes, index.shortServices.get(readInt(raw, position) & 0xFFFFFFFFL),
+              scanData, stamp);
+        }
+        break;
+      case AD_INCOMPLETE_128BIT_SVC_LIST:
+      case AD_COMPLETE_128BIT_SVC_LIST:
+        for (int position = offset; position + 16 <= end; position += 16) {
+          long lsb = readLong(raw, position);
+          long msb = readLong(raw, position + 8);
+          if (isShortUuid(msb, lsb)) {
+            emit(index.shortServiceRoutes, index.shortServices.get(msb >>> 32), scanData, stamp);
+          } else {
+            for (int bucket = index.longServices.get(msb ^ lsb);
+                 bucket != LongIntMap.MISSING;
+                 bucket = index.longServiceNext[bucket]) {
+              if (index.longServiceMsb[bucket] == msb && index.longServiceLsb[bucket] == lsb) {
+                emit(index.longServiceRoutes, bucket, scanData, stamp);
+              }
+            }
+          }
+        }
+        break;
+      case AD_MANUFACTURER_DATA:
+        if (length >= 2) {
+          emit(index.manufacturerRoutes, index.manufacturers.get(readUnsignedShort(raw, offset)), scanData, stamp);
+        }
+        break;
+      case AD_SHORTENED_LOCAL_NAME:
+      case AD_COMPLETE_LOCAL_NAME:
+        int node = 0;
+        emit(index.nameRoutes, node, scanData, stamp);
+        for (int position = offset; position < end && node != LongIntMap.MISSING; position++) {
+          node = index.nameEdges.get(edge(node, raw[position]));
+          emit(index.nameRoutes, node, scanData, stamp);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static void emit(List<Route[]> routes, int bucket, ScanData scanData, long stamp) {
+    if (bucket != LongIntMap.MISSING) {
+      for (Route route : routes.get(bucket)) {
+        route.emit(scanData, stamp);
+      }
+    }
+  }
+
+  private static boolean isShortUuid(long msb, long lsb) {
+    return lsb == BASE_UUID_LSB && (msb & 0xFFFFFFFFL) == BASE_UUID_MSB;
+  }
+
+  private static long edge(int node, byte value) {
+    return (long) node << 8 | (value & 0xFF);
+  }
+
+  private static int readUnsignedShort(byte[] raw, int position) {
+    return (raw[position] & 0xFF) | (raw[position + 1] & 0xFF) << 8;
+  }
+
+  private static int readInt(byte[] raw, int position) {
+    return readUnsignedShort(raw, position) | readUnsignedShort(raw, position + 2) << 16;
+  }
+
+  private static long readLong(byte[] raw, int position) {
+    return (readInt(raw, position) & 0xFFFFFFFFL) | (long) readInt(raw, position + 4) << 32;
+  }
+
+  /** A criterion and the stream of advertisements matching it. */
+  private static final class Route {
+
+    static final int SERVICE = 0;
+    static final int MANUFACTURER = 1;
+    static final int NAME_PREFIX = 2;
+    static final int PREDICATE = 3;
+
+    final int type;
+    final long msb;
+    final long lsb;
+    @Nullable final byte[] namePrefix;
+    @Nullable final PredicateScanMatcher predicate;
+    final PublishRelay<ScanData> relay = PublishRelay.create();
+
+    private long stamp;
+
+    Route(int type, long msb, long lsb, @Nullable byte[] namePrefix, @Nullable PredicateScanMatcher predicate) {
+      this.type = type;
+      this.msb = msb;
+      this.lsb = lsb;
+      this.namePrefix = namePrefix;
+      this.predicate = predicate;
+    }
+
+    void emit(ScanData scanData, long stamp) {
+      if (this.stamp != stamp) {
+        this.stamp = stamp;
+        relay.accept(scanData);
+      }
+    }
+  }
+
+  /** Immutable indexes of the routes registered, rebuilt whenever a route is added or removed. */
+  private static final class Index {
+
+    final LongIntMap shortServices;
+    final List<Route[]> shortServiceRoutes = new ArrayList<>();
+
+    final LongIntMap longServices;
+    final List<Route[]> longServiceRoutes = new ArrayList<>();
+    long[] longServiceMsb = new long[0];
+    long[] longServiceLsb = new long[0];
+    int[] longServiceNext = new int[0];
+
+    final LongIntMap manufacturers;
+    final List<Route[]> manufacturerRoutes = new ArrayList<>();
+
+    final LongIntMap nameEdges;
+    final List<Route[]> nameRoutes = new ArrayList<>();
+
+    final Route[] predicateRoutes;
+
+    Index(List<Route> routes) {
+      shortServices = new LongIntMap(routes.size());
+      longServices = new LongIntMap(routes.size());
+      manufacturers = new LongIntMap(routes.size());
+      nameEdges = new LongIntMap(routes.size());
+      nameRoutes.add(new Route[0]);
+
+      List<Route> predicates = new ArrayList<>();
+      for (Route route : routes) {
+        switch (route.type) {
+          case Route.SERVICE:
+            if (isShortUuid(route.msb, route.lsb)) {
+              add(shortServices, shortServiceRoutes, route.msb >>> 32, route);
+            } else {
+              addLongService(route);
+            }
+            break;
+          case Route.MANUFACTURER:
+            add(manufacturers, manufacturerRoutes, route.msb, route);
+            break;
+          case Route.NAME_PREFIX:
+            addNamePrefix(route);
+            break;
+          default:
+            predicates.add(route);
+            break;
+        }
+      }
+
+      predicateRoutes = predicates.toArray(new Route[0]);
+    }
+
+    private void addLongService(Route route) {
+      long key = route.msb ^ route.lsb;
+      int head = longServices.get(key);
+      for (int bucket = head; bucket != LongIntMap.MISSING; bucket = longServiceNext[bucket]) {
+        if (longServiceMsb[bucket] == route.msb && longServiceLsb[bucket] == route.lsb) {
+          longServiceRoutes.set(bucket, append(longServiceRoutes.get(bucket), route));
+          return;
+        }
+      }
+
+      int bucket = longServiceRoutes.size();
+      longServiceRoutes.add(new Route[] {route});
+      longServiceMsb = Arrays.copyOf(longServiceMsb, bucket + 1);
+      longServiceLsb = Arrays.copyOf(longServiceLsb, bucket + 1);
+      longServiceNext = Arrays.copyOf(longServiceNext, bucket + 1);
+      longServiceMsb[bucket] = route.msb;
+      longServiceLsb[bucket] = route.lsb;
+      longServiceNext[bucket] = head;
+      longServices.put(key, bucket);
+    }
+
+    private void addNamePrefix(Route route) {
+      int node = 0;
+      for (byte value : route.namePrefix) {
+        long edge = edge(node, value);
+        int child = nameEdges.get(edge);
+        if (child == LongIntMap.MISSING) {
+          child = nameRoutes.size();
+          nameRoutes.add(new Route[0]);
+          nameEdges.put(edge, child);
+        }
+
+        node = child;
+      }
+
+      nameRoutes.set(node, append(nameRoutes.get(node), route));
+    }
+
+    private static void add(LongIntMap keys, List<Route[]> buckets, long key, Route route) {
+      int bucket = keys.get(key);
+      if (bucket == LongIntMap.MISSING) {
+        keys.put(key, buckets.size());
+        buckets.add(new Route[] {route});
+      } else {
+        buckets.set(bucket, append(buckets.get(bucket), route));
+      }
+    }
+
+    private static Route[] append(Route[] routes, Route route) {
+      Route[] appended = Arrays.copyOf(routes, routes.length + 1);
+      appended[routes.length] = route;
+      return appended;
+    }
+  }
+}
@@ -2,15 +2,24 @@ package com.uber.rxcentralble.core.matchers;
 
 import com.uber.rxcentralble.ScanData;
 import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.core.tracking.ProximityWindow;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
 import io.reactivex.ObservableTransformer;
 
 /**
  * ScanMatcher that matches the closest (gauged by RSSI) peripheral advertising a service UUID.
+ *
+ * <p>Matching advertisements feed a {@link ProximityWindow} spanning the match delay, which
+ * smooths the RSSI of each peripheral and evicts those no longer seen. Once per match delay the
+ * peripheral with the strongest smoothed RSSI is emitted, so a burst of advertisements costs no
+ * scheduled work and a single strong sample does not decide the match.
+ *
+ * <p>Raw RSSI is only comparable between devices that transmit at the same power; to compare
+ * devices by estimated distance, use a {@link com.uber.rxcentralble.core.tracking.ProximityEstimator}.
  */
 public class RssiScanMatcher implements ScanMatcher {
 
@@ -18,57 +27,45 @@ public class RssiScanMatcher implements ScanMatcher {
 
   private final ServiceScanMatcher serviceScanMatcher;
   private final int matchDelayMs;
-  private final Map<String, ScanData> matches = new HashMap<>();
-  private final Object syncRoot = new Object();
+  private final float smoothingFactor;
 
   public RssiScanMatcher(ServiceScanMatcher serviceScanMatcher) {
     this(serviceScanMatcher, DEFAULT_MATCH_DELAY_MS);
   }
 
   public RssiScanMatcher(ServiceScanMatcher serviceScanMatcher, int matchDelayMs) {
+    this(serviceScanMatcher, matchDelayMs, ProximityWindow.DEFAULT_SMOOTHING_FACTOR);
+  }
+
+  public RssiScanMatcher(ServiceScanMatcher serviceScanMatcher, int matchDelayMs, float smoothingFactor) {
     this.serviceScanMatcher = serviceScanMatcher;
     this.matchDelayMs = matchDelayMs;
+    this.smoothingFactor = smoothingFactor;
   }
 
   /**
-   * Take a stream of scan data, match by service uuid, wait 1500ms, then check to see if this is
-   * the closest (gauged by RSSI) discovered peripheral with that service uuid.
+   * Take a stream of scan data, match by service uuid, then every match delay emit the closest
+   * (gauged by smoothed RSSI) peripheral seen within the last match delay. The stream of matches
+   * terminates with the stream of scan data.
    *
    * @return transformed stream of matches.
    */
   @Override
   public ObservableTransformer<ScanData, ScanData> match() {
-    return scanDataStream ->
-            scanDataStream
-                    .doOnSubscribe(disposable -> matches.clear())
-                    .compose(serviceScanMatcher.match())
-                    .doOnNext(scanData -> {
-                      synchronized (syncRoot) {
-                        matches.put(scanData.getBluetoothDevice().getAddress(), scanData);
-                      }
-                    })
-                    .delay(matchDelayMs, TimeUnit.MILLISECONDS)
-                    .filter(match -> {
-                      synchronized (syncRoot) {
-                        for (ScanData other : matches.values()) {
-                          // Skip our self.
-                          if (other.getBluetoothDevice().getAddress().contentEquals(
-                                  match.getBluetoothDevice().getAddress())) {
-                            continue;
-                          }
-
-                          // If the other match is closer then do not match.
-                          // RSSI is measured in dB; negative values, closer to zero indicates
-                          // stronger signal.
-                          if (other.getRssi() > match.getRssi()) {
-                            return false;
-                          }
-                        }
+    return scanDataStream -> Observable.defer(() -> {
+      ProximityWindow proximityWindow = new ProximityWindow(matchDelayMs, smoothingFactor);
 
-                        // This is our match.
-                        return true;
-                      }
-                    });
+      return scanDataStream
+          .compose(serviceScanMatcher.match())
+          .doOnNext(proximityWindow::add)
+          .ignoreElements()
+          .<ScanData>toObservable()
+          .publish(matches -> Observable.merge(
+              matches,
+              Observable.interval(matchDelayMs, TimeUnit.MILLISECONDS)
+                  .takeUntil(matches)
+                  .flatMapMaybe(tick -> Maybe.fromCallable(proximityWindow::nearest))));
+    });
   }
 
   @Override
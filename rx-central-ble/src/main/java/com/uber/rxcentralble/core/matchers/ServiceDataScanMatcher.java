@@ -0,0 +1,126 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.matchers;
+
+import android.annotation.TargetApi;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.os.Build;
+import android.os.ParcelUuid;
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.HardwareScanMatcher;
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * ScanMatcher that matches discovered peripherals advertising service data for a service UUID
+ * that starts with a prefix, optionally comparing only the bits set in a mask.
+ *
+ * <p>The service UUID, prefix and mask are pushed down as a hardware filter. Matching allocates
+ * nothing; the service data is compared in place in the parsed advertisement, or else in the
+ * platform ScanRecord.
+ */
+public class ServiceDataScanMatcher implements HardwareScanMatcher, PredicateScanMatcher {
+
+  private final UUID serviceUuid;
+  private final ParcelUuid parcelUuid;
+  private final byte[] prefix;
+  @Nullable
+  private final byte[] mask;
+
+  public ServiceDataScanMatcher(UUID serviceUuid) {
+    this(serviceUuid, new byte[0], null);
+  }
+
+  public ServiceDataScanMatcher(UUID serviceUuid, byte[] prefix) {
+    this(serviceUuid, prefix, null);
+  }
+
+  /**
+   * Construct a service data matcher.
+   *
+   * @param serviceUuid UUID of the service data.
+   * @param prefix prefix the service data must start with.
+   * @param mask mask of the bits of the prefix to compare, of the same length as the prefix, or null
+   *             to compare all bits.
+   */
+  public ServiceDataScanMatcher(UUID serviceUuid, byte[] prefix, @Nullable byte[] mask) {
+    if (mask != null && mask.length != prefix.length) {
+      throw new IllegalArgumentException("Mask length " + mask.length + " differs from prefix length " + prefix.length);
+    }
+
+    this.serviceUuid = serviceUuid;
+    this.parcelUuid = new ParcelUuid(serviceUuid);
+    this.prefix = prefix.clone();
+    this.mask = mask != null ? mask.clone() : null;
+  }
+
+  @Override
+  public boolean matches(ScanData scanData) {
+    ParsedAdvertisement parsedAdvertisement = scanData.getParsedAdvertisement();
+    if (parsedAdvertisement != null) {
+      return parsedAdvertisement.hasServiceData(serviceUuid, prefix, mask);
+    }
+
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+        && scanData.getScanResult() != null
+        && matchesScanRecord(scanData.getScanResult().getScanRecord());
+  }
+
+  @TargetApi(21)
+  @Override
+  public List<ScanFilter> hardwareFilters() {
+    ScanFilter.Builder builder = new ScanFilter.Builder();
+    if (mask != null) {
+      builder.setServiceData(parcelUuid, prefix, mask);
+    } else {
+      builder.setServiceData(parcelUuid, prefix);
+    }
+
+    return Collections.singletonList(builder.build());
+  }
+
+  @TargetApi(21)
+  private boolean matchesScanRecord(@Nullable ScanRecord scanRecord) {
+    byte[] serviceData = scanRecord != null ? scanRecord.getServiceData(parcelUuid) : null;
+    return serviceData != null && Utils.startsWith(serviceData, 0, serviceData.length, prefix, mask);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o instanceof ServiceDataScanMatcher) {
+      ServiceDataScanMatcher other = (ServiceDataScanMatcher) o;
+      return other.serviceUuid.equals(serviceUuid)
+          && Arrays.equals(other.prefix, prefix)
+          && Arrays.equals(other.mask, mask);
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * serviceUuid.hashCode() + Arrays.hashCode(prefix)) + Arrays.hashCode(mask);
+  }
+}
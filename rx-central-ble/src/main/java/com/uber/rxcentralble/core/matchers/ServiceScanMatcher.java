@@ -1,72 +1,104 @@
 package com.uber.rxcentralble.core.matchers;
 
 import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
 import android.os.Build;
 import android.os.ParcelUuid;
+import androidx.annotation.Nullable;
 
+import com.uber.rxcentralble.HardwareScanMatcher;
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.PredicateScanMatcher;
 import com.uber.rxcentralble.ScanData;
-import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Utils;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
-import io.reactivex.ObservableTransformer;
-
 /**
  * ScanMatcher that matches the first discovered peripheral advertising a service UUID.
+ *
+ * <p>No hardware filter is pushed down. The controller only matches UUIDs present in the
+ * advertisement itself, whereas this matcher also accepts a previously bonded device whose cached
+ * UUIDs contain the service, so that such a device can be connected to even if it does not
+ * advertise the service. Use a {@link ServiceDataScanMatcher} to filter in hardware.
+ *
+ * <p>Matching allocates nothing. Sources are checked cheapest first: the parsed advertisement,
+ * then the platform ScanRecord, and last the UUIDs cached for the device, which crosses into the
+ * Bluetooth service.
  */
-public class ServiceScanMatcher implements ScanMatcher {
+public class ServiceScanMatcher implements HardwareScanMatcher, PredicateScanMatcher {
 
   private final UUID serviceUuid;
+  private final int serviceUuid16;
 
   public ServiceScanMatcher(UUID serviceUuid) {
     this.serviceUuid = serviceUuid;
+    this.serviceUuid16 = toUuid16(serviceUuid);
   }
 
   @Override
-  public ObservableTransformer<ScanData, ScanData> match() {
-    return scanData -> scanData.filter(this::matchByUUID);
-  }
-
-  /* This helper function is to match BLE device by service UUID. */
-  private boolean matchByUUID(ScanData scanData) {
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-      List<ParcelUuid> uuids = getParcelUuid(scanData);
-
-      if (uuids.size() > 0) {
-        ParcelUuid serviceParcelUuid = new ParcelUuid(serviceUuid);
-        for (ParcelUuid uuid : uuids) {
-          if (uuid.equals(serviceParcelUuid)) {
-            return true;
-          }
-        }
-      }
+  public boolean matches(ScanData scanData) {
+    ParsedAdvertisement parsedAdvertisement = scanData.getParsedAdvertisement();
+    if (parsedAdvertisement != null
+        && (serviceUuid16 >= 0
+            ? parsedAdvertisement.hasService16(serviceUuid16)
+            : parsedAdvertisement.hasService(serviceUuid))) {
+      return true;
     }
 
-    if (scanData.getParsedAdvertisement() != null
-        && scanData.getParsedAdvertisement().hasService(serviceUuid)) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+        && scanData.getScanResult() != null
+        && matchesScanRecord(scanData.getScanResult().getScanRecord())) {
       return true;
     }
 
-    return false;
+    BluetoothDevice bluetoothDevice = scanData.getBluetoothDevice();
+    return bluetoothDevice != null && matchesDevice(bluetoothDevice.getUuids());
+  }
+
+  @TargetApi(21)
+  @Override
+  public List<ScanFilter> hardwareFilters() {
+    // A service UUID filter would drop bonded devices that only have the service cached.
+    return Collections.emptyList();
   }
 
   @TargetApi(21)
-  private List<ParcelUuid> getParcelUuid(ScanData scanData) {
-    List<ParcelUuid> uuids = new ArrayList<>();
-    if (scanData.getScanResult() != null
-            && scanData.getScanResult().getScanRecord() != null
-            && scanData.getScanResult().getScanRecord().getServiceUuids() != null) {
-      uuids.addAll(scanData.getScanResult().getScanRecord().getServiceUuids());
+  private boolean matchesScanRecord(@Nullable ScanRecord scanRecord) {
+    List<ParcelUuid> uuids = scanRecord != null ? scanRecord.getServiceUuids() : null;
+    if (uuids != null) {
+      for (int i = 0; i < uuids.size(); i++) {
+        if (serviceUuid.equals(uuids.get(i).getUuid())) {
+          return true;
+        }
+      }
     }
 
-    if (scanData.getBluetoothDevice() != null && scanData.getBluetoothDevice().getUuids() != null) {
-      uuids.addAll(Arrays.asList(scanData.getBluetoothDevice().getUuids()));
+    return false;
+  }
+
+  private boolean matchesDevice(@Nullable ParcelUuid[] uuids) {
+    if (uuids != null) {
+      for (ParcelUuid uuid : uuids) {
+        if (serviceUuid.equals(uuid.getUuid())) {
+          return true;
+        }
+      }
     }
 
-    return uuids;
+    return false;
+  }
+
+  /** Returns the 16bit value of a UUID of the Bluetooth Base UUID, or -1 if it has none. */
+  private static int toUuid16(UUID uuid) {
+    long msb = uuid.getMostSignificantBits();
+    return Utils.uuidFromInteger((int) (msb >>> 32)).equals(uuid) && (msb >>> 48) == 0
+        ? (int) (msb >>> 32)
+        : -1;
   }
 
   @Override
@@ -16,7 +16,6 @@
 package com.uber.rxcentralble.core.operations;
 
 import androidx.annotation.Nullable;
-import androidx.core.util.Pair;
 
 import com.jakewharton.rxrelay2.BehaviorRelay;
 import com.jakewharton.rxrelay2.Relay;
@@ -24,11 +23,11 @@ import com.uber.rxcentralble.Peripheral;
 import com.uber.rxcentralble.PeripheralOperation;
 import com.uber.rxcentralble.Optional;
 
-import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
-import io.reactivex.Observable;
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.reactivex.SingleTransformer;
 
@@ -42,17 +41,48 @@ import io.reactivex.SingleTransformer;
  * to the Peripheral in a serial manner and the result Single completes after all chunks have been
  * written to the peripheral.
  *
+ * <p>By default every chunk is a newly allocated byte array. If {@code reuseChunkBuffers} is set,
+ * chunks are instead copied into a pair of buffers that are reused for the duration of the
+ * operation; this avoids an allocation per chunk for large writes, but requires that the Peripheral
+ * does not retain the byte array passed to {@link Peripheral#write} once the returned Completable
+ * terminates. {@link com.uber.rxcentralble.core.CorePeripheral} satisfies this requirement.
+ *
+ * <p>By default a retried write starts over from the first chunk. If a {@link TransferCheckpoint}
+ * is supplied, each written chunk is committed to it and a retried write resumes from the
+ * checkpoint, after an optional {@link ResumeHandshake} with the peripheral; see {@link
+ * ResumableWrite}.
+ *
  * @param <T> the type of result.
  */
 public abstract class AbstractWrite<T> implements PeripheralOperation<T> {
 
-  private final BehaviorRelay<Integer> chunkIndexRelay = BehaviorRelay.createDefault(0);
-
   private final Relay<Optional<Peripheral>> peripheralRelay = BehaviorRelay.createDefault(Optional.empty());
   private final Single<T> writeSingle;
+  private final boolean reuseChunkBuffers;
+
+  @Nullable private final TransferCheckpoint checkpoint;
+  @Nullable private final ResumeHandshake resumeHandshake;
 
   public AbstractWrite(UUID svc, UUID chr, byte[] data, int timeoutMs) {
-    writeSingle =
+    this(svc, chr, data, timeoutMs, false);
+  }
+
+  public AbstractWrite(UUID svc, UUID chr, byte[] data, int timeoutMs, boolean reuseChunkBuffers) {
+    this(svc, chr, data, timeoutMs, reuseChunkBuffers, null, null);
+  }
+
+  public AbstractWrite(
+      UUID svc,
+      UUID chr,
+      byte[] data,
+      int timeoutMs,
+      boolean reuseChunkBuffers,
+      @Nullable TransferCheckpoint checkpoint,
+      @Nullable ResumeHandshake resumeHandshake) {
+    this.reuseChunkBuffers = reuseChunkBuffers;
+    this.checkpoint = checkpoint;
+    this.resumeHandshake = resumeHandshake;
+    this.writeSingle =
         write(svc, chr, data)
             .compose(postWrite())
             .toObservable()
@@ -78,51 +108,52 @@ public abstract class AbstractWrite<T> implements PeripheralOperation<T> {
   }
 
   protected Single<Peripheral> write(UUID svc, UUID chr, byte[] data) {
-    final ByteBuffer byteBuffer = ByteBuffer.wrap(data);
+    final ChunkIterator chunks = new ChunkIterator(data, reuseChunkBuffers);
 
     return peripheralRelay
         .filter(Optional::isPresent)
         .map(Optional::get)
         .firstOrError()
         .doOnSuccess(g -> peripheralRelay.accept(Optional.empty()))
-        .flatMapObservable(peripheral -> {
-          int chunkCount = (int) Math.ceil((double) byteBuffer.remaining()
-                  / (double) peripheral.getMaxWriteLength());
-          return Observable.range(0, chunkCount).map(index -> new Pair<>(peripheral, index));
-        })
-        .zipWith(chunkIndexRelay, (peripheralIndex, chunkIndexRelay) -> peripheralIndex)
-        .flatMapSingle(peripheralIndex ->
-                peripheralIndex.first
-                  .write(svc, chr, chunk(byteBuffer, peripheralIndex.first.getMaxWriteLength()))
-                  .doOnComplete(() -> chunkIndexRelay.accept(peripheralIndex.second))
-                  .andThen(Single.just(peripheralIndex.first)))
-        .lastOrError()
-        .doOnSubscribe(d -> {
-          byteBuffer.rewind();
-          chunkIndexRelay.accept(0);
-        });
+        .flatMap(peripheral -> resumeOffset(peripheral, data)
+            .flatMap(offset -> {
+              chunks.reset(peripheral.getMaxWriteLength(), offset);
+              if (!chunks.hasNext()) {
+                // Nothing left to write if resuming a completed payload.
+                return data.length > 0
+                    ? Single.just(peripheral)
+                    : Single.<Peripheral>error(new NoSuchElementException());
+              }
+
+              // Write chunks serially; each write is subscribed to only after the prior completes.
+              return Completable.defer(() -> writeChunk(peripheral, svc, chr, chunks))
+                  .repeatUntil(() -> !chunks.hasNext())
+                  .andThen(Single.just(peripheral));
+            }));
   }
 
   protected abstract SingleTransformer<Peripheral, T> postWrite();
 
-  /**
-   * Take a byte array and segment it.
-   *
-   * @param byteBuffer  data to chunk.
-   * @return Observable that emits each chunk, then completes.
-   */
-  @Nullable
-  private byte[] chunk(ByteBuffer byteBuffer, int maxWriteLength) {
-    if (maxWriteLength < byteBuffer.remaining()) {
-      byte[] chunk = new byte[maxWriteLength];
-      byteBuffer.get(chunk, 0, chunk.length);
-      return chunk;
-    } else if (byteBuffer.hasRemaining()) {
-      byte[] chunk = new byte[byteBuffer.remaining()];
-      byteBuffer.get(chunk, 0, byteBuffer.remaining());
-      return chunk;
+  private Single<Integer> resumeOffset(Peripheral peripheral, byte[] data) {
+    if (checkpoint == null) {
+      return Single.just(0);
+    } else if (resumeHandshake == null) {
+      return Single.fromCallable(() -> checkpoint.resume(data, checkpoint.getOffset()));
+    }
+
+    return resumeHandshake
+        .committedOffset(peripheral, checkpoint)
+        .map(committedOffset -> checkpoint.resume(data, committedOffset));
+  }
+
+  private Completable writeChunk(Peripheral peripheral, UUID svc, UUID chr, ChunkIterator chunks) {
+    byte[] chunk = chunks.next();
+    if (checkpoint == null) {
+      return peripheral.write(svc, chr, chunk);
     }
 
-    return null;
+    return peripheral
+        .write(svc, chr, chunk)
+        .doOnComplete(() -> checkpoint.commit(chunk));
   }
 }
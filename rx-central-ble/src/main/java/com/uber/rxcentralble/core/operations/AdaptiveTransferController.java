@@ -0,0 +1,374 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.Peripheral.WriteType;
+
+import io.reactivex.Observable;
+
+/**
+ * Chooses the chunk length and write type for an {@link AdaptiveWrite} from observed link behavior.
+ *
+ * <p>Chunk length starts at the peripheral's max write length. A failed chunk lowers the ceiling
+ * to just below the failed length and falls back to the largest length known to succeed, or the
+ * minimum chunk length if none is known; after a run of successes the chunk length grows halfway
+ * towards the ceiling. This converges in a handful of chunks on the largest length the peripheral
+ * accepts, e.g. when its receive buffer is smaller than the negotiated MTU allows, without failing
+ * two chunks in a row. After a long run of successes at the ceiling, it is raised again in case
+ * the failures were transient.
+ *
+ * <p>When adapting the write type, each type is probed for a few chunks and the type with the
+ * better throughput, discounted by its error rate, is kept; the other type is re-probed
+ * periodically. A peripheral only honors the preferred write type if the characteristic supports
+ * it, so characteristics that support a single type simply converge on that type.
+ *
+ * <p>A controller is owned by the caller and may be shared across writes to the same peripheral so
+ * that what has been learned carries over.
+ */
+public final class AdaptiveTransferController {
+
+  /** Default lower bound on chunk length; the max write length for the default MTU. */
+  public static final int DEFAULT_MIN_CHUNK_LENGTH = Peripheral.DEFAULT_MTU - Peripheral.MTU_OVERHEAD;
+
+  static final int PROBE_CHUNKS = 8;
+  static final int REPROBE_INTERVAL_CHUNKS = 256;
+  static final int GROW_AFTER_CHUNKS = 8;
+  static final int RELAX_AFTER_CHUNKS = 64;
+  static final int MAX_CONSECUTIVE_ERRORS = 3;
+
+  private static final double EMA_WEIGHT = 0.125;
+
+  private final PublishRelay<Metrics> parameterRelay = PublishRelay.create();
+  private final LinkStats withResponseStats = new LinkStats();
+  private final LinkStats withoutResponseStats = new LinkStats();
+  private final int minChunkLength;
+  private final boolean adaptWriteType;
+
+  private WriteType writeType;
+  private int maxWriteLength;
+  private int chunkLength;
+  private int ceiling;
+  private int floor;
+  private int successStreak;
+  private int consecutiveErrors;
+  private int probeRemaining;
+  private int chunksSinceProbe;
+
+  public AdaptiveTransferController() {
+    this(DEFAULT_MIN_CHUNK_LENGTH, true);
+  }
+
+  /**
+   * Construct a controller.
+   *
+   * @param minChunkLength lower bound on chunk length.
+   * @param adaptWriteType true to choose between writes with and without response, false to always
+   *     use {@link WriteType#DEFAULT}.
+   */
+  public AdaptiveTransferController(int minChunkLength, boolean adaptWriteType) {
+    if (minChunkLength <= 0) {
+      throw new IllegalArgumentException("Invalid min chunk length: " + minChunkLength);
+    }
+
+    this.minChunkLength = minChunkLength;
+    this.adaptWriteType = adaptWriteType;
+
+    if (adaptWriteType) {
+      writeType = WriteType.WITHOUT_RESPONSE;
+      probeRemaining = PROBE_CHUNKS;
+    } else {
+      writeType = WriteType.DEFAULT;
+    }
+  }
+
+  /**
+   * Get a snapshot of the chosen parameters and the observed link behavior.
+   *
+   * @return the current metrics.
+   */
+  public synchronized Metrics metrics() {
+    LinkStats stats = stats(writeType);
+    return new Metrics(
+        chunkLength,
+        maxWriteLength,
+        writeType,
+        stats.latencyNanos / 1_000_000d,
+        stats.bytesPerSecond,
+        stats.errorRate);
+  }
+
+  /**
+   * Observe changes to the chosen chunk length or write type.
+   *
+   * @return Observable stream of metrics, emitted whenever a parameter changes.
+   */
+  public Observable<Metrics> parameterChanges() {
+    return parameterRelay;
+  }
+
+  /**
+   * Begin a transfer to a peripheral with the given max write length; learned chunk length state is
+   * discarded if the max write length differs from the prior transfer.
+   *
+   * @param maxWriteLength the peripheral's max write length.
+   */
+  synchronized void begin(int maxWriteLength) {
+    if (maxWriteLength <= 0) {
+      throw new IllegalArgumentException("Invalid max write length: " + maxWriteLength);
+    }
+
+    consecutiveErrors = 0;
+    if (maxWriteLength != this.maxWriteLength) {
+      this.maxWriteLength = maxWriteLength;
+      chunkLength = maxWriteLength;
+      ceiling = maxWriteLength;
+      floor = 0;
+      successStreak = 0;
+      parametersChanged();
+    }
+  }
+
+  synchronized int chunkLength() {
+    return chunkLength;
+  }
+
+  synchronized WriteType writeType() {
+    return writeType;
+  }
+
+  /**
+   * Record a chunk written successfully.
+   *
+   * @param length length of the chunk.
+   * @param latencyNanos time taken to write the chunk.
+   */
+  synchronized void onSuccess(int length, long latencyNanos) {
+    stats(writeType).success(length, latencyNanos);
+    consecutiveErrors = 0;
+    successStreak++;
+    floor = Math.max(floor, length);
+
+    boolean changed = false;
+    if (chunkLength < ceiling) {
+      if (successStreak >= GROW_AFTER_CHUNKS) {
+        chunkLength = (chunkLength + ceiling + 1) / 2;
+        successStreak = 0;
+        changed = true;
+      }
+    } else if (ceiling < maxWriteLength && successStreak >= RELAX_AFTER_CHUNKS) {
+      ceiling = Math.min(maxWriteLength, ceiling + Math.max(1, maxWriteLength / 8));
+      chunkLength = ceiling;
+      successStreak = 0;
+      changed = true;
+    }
+
+    if (advanceWriteType() || changed) {
+      parametersChanged();
+    }
+  }
+
+  /**
+   * Record a chunk that failed to write.
+   *
+   * @param length length of the chunk.
+   * @return true if the chunk should be retried with the new parameters, false if the transfer
+   *     should fail.
+   */
+  synchronized boolean onError(int length) {
+    stats(writeType).error();
+    consecutiveErrors++;
+    successStreak = 0;
+
+    int lowerBound = Math.min(minChunkLength, maxWriteLength);
+    ceiling = Math.max(lowerBound, Math.min(ceiling, length - 1));
+    floor = Math.min(floor, ceiling);
+    chunkLength = Math.max(lowerBound, floor);
+
+    advanceWriteType();
+    parametersChanged();
+
+    return consecutiveErrors < MAX_CONSECUTIVE_ERRORS;
+  }
+
+  private boolean advanceWriteType() {
+    if (!adaptWriteType) {
+      return false;
+    }
+
+    WriteType other = writeType == WriteType.WITH_RESPONSE
+        ? WriteType.WITHOUT_RESPONSE
+        : WriteType.WITH_RESPONSE;
+
+    if (probeRemaining > 0) {
+      if (--probeRemaining > 0) {
+        return false;
+      }
+
+      if (stats(other).samples == 0) {
+        writeType = other;
+        probeRemaining = PROBE_CHUNKS;
+        return true;
+      }
+
+      WriteType previous = writeType;
+      writeType = withResponseStats.score() > withoutResponseStats.score()
+          ? WriteType.WITH_RESPONSE
+          : WriteType.WITHOUT_RESPONSE;
+      chunksSinceProbe = 0;
+      return writeType != previous;
+    }
+
+    if (++chunksSinceProbe >= REPROBE_INTERVAL_CHUNKS) {
+      writeType = other;
+      probeRemaining = PROBE_CHUNKS;
+      return true;
+    }
+
+    return false;
+  }
+
+  private LinkStats stats(WriteType writeType) {
+    return writeType == WriteType.WITH_RESPONSE ? withResponseStats : withoutResponseStats;
+  }
+
+  private void parametersChanged() {
+    parameterRelay.accept(metrics());
+  }
+
+  /** Exponential moving averages of the behavior observed for one write type. */
+  private static final class LinkStats {
+
+    private double latencyNanos;
+    private double bytesPerSecond;
+    private double errorRate;
+    private int samples;
+
+    void success(int length, long latencyNanos) {
+      double rate = length * 1_000_000_000d / Math.max(1, latencyNanos);
+      this.latencyNanos = average(this.latencyNanos, latencyNanos);
+      bytesPerSecond = average(bytesPerSecond, rate);
+      errorRate = average(errorRate, 0);
+      samples++;
+    }
+
+    void error() {
+      errorRate = average(errorRate, 1);
+      samples++;
+    }
+
+    double score() {
+      return bytesPerSecond * (1 - errorRate);
+    }
+
+    private double average(double current, double sample) {
+      return samples == 0 ? sample : current + EMA_WEIGHT * (sample - current);
+    }
+  }
+
+  /** Parameters chosen by an {@link AdaptiveTransferController} and the link behavior observed. */
+  public static final class Metrics {
+
+    private final int chunkLength;
+    private final int maxWriteLength;
+    private final WriteType writeType;
+    private final double latencyMs;
+    private final double bytesPerSecond;
+    private final double errorRate;
+
+    Metrics(
+        int chunkLength,
+        int maxWriteLength,
+        WriteType writeType,
+        double latencyMs,
+        double bytesPerSecond,
+        double errorRate) {
+      this.chunkLength = chunkLength;
+      this.maxWriteLength = maxWriteLength;
+      this.writeType = writeType;
+      this.latencyMs = latencyMs;
+      this.bytesPerSecond = bytesPerSecond;
+      this.errorRate = errorRate;
+    }
+
+    /**
+     * Get the chosen chunk length.
+     *
+     * @return the chunk length in bytes.
+     */
+    public int getChunkLength() {
+      return chunkLength;
+    }
+
+    /**
+     * Get the max write length of the peripheral.
+     *
+     * @return the max write length in bytes.
+     */
+    public int getMaxWriteLength() {
+      return maxWriteLength;
+    }
+
+    /**
+     * Get the chosen write type.
+     *
+     * @return the write type.
+     */
+    public WriteType getWriteType() {
+      return writeType;
+    }
+
+    /**
+     * Get the average latency of a chunk written with the chosen write type.
+     *
+     * @return the latency in milliseconds.
+     */
+    public double getLatencyMs() {
+      return latencyMs;
+    }
+
+    /**
+     * Get the average throughput of chunks written with the chosen write type.
+     *
+     * @return the throughput in bytes per second.
+     */
+    public double getBytesPerSecond() {
+      return bytesPerSecond;
+    }
+
+    /**
+     * Get the average rate of failed chunks with the chosen write type.
+     *
+     * @return the error rate, between 0 and 1.
+     */
+    public double getErrorRate() {
+      return errorRate;
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{"
+          + "chunkLength=" + chunkLength
+          + ", maxWriteLength=" + maxWriteLength
+          + ", writeType=" + writeType
+          + ", latencyMs=" + latencyMs
+          + ", bytesPerSecond=" + bytesPerSecond
+          + ", errorRate=" + errorRate
+          + '}';
+    }
+  }
+}
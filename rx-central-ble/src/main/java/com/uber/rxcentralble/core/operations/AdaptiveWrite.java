@@ -0,0 +1,120 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.jakewharton.rxrelay2.Relay;
+import com.uber.rxcentralble.Irrelevant;
+import com.uber.rxcentralble.Optional;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.PeripheralError;
+import com.uber.rxcentralble.PeripheralOperation;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+import static com.uber.rxcentralble.PeripheralError.Code.CHARACTERISTIC_SET_VALUE_FAILED;
+import static com.uber.rxcentralble.PeripheralError.Code.WRITE_CHARACTERISTIC_FAILED;
+
+/**
+ * Write with chunk length and write type chosen by an {@link AdaptiveTransferController}.
+ *
+ * <p>Chunks are written in a serial manner; the latency of each chunk is reported to the controller,
+ * which may change the length and write type of the next chunk. A chunk that fails to write is
+ * retried at the controller's new chunk length, until the controller gives up after consecutive
+ * failures. Only write failures are retried; any other error fails the operation.
+ */
+public class AdaptiveWrite implements PeripheralOperation<Irrelevant> {
+
+  private final Relay<Optional<Peripheral>> peripheralRelay = BehaviorRelay.createDefault(Optional.empty());
+  private final Single<Irrelevant> resultSingle;
+  private final UUID svc;
+  private final UUID chr;
+  private final AdaptiveTransferController controller;
+
+  public AdaptiveWrite(
+      UUID svc, UUID chr, byte[] data, AdaptiveTransferController controller, int timeoutMs) {
+    this.svc = svc;
+    this.chr = chr;
+    this.controller = controller;
+
+    resultSingle =
+        peripheralRelay
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .firstOrError()
+            .doOnSuccess(g -> peripheralRelay.accept(Optional.empty()))
+            .flatMap(peripheral -> {
+              controller.begin(peripheral.getMaxWriteLength());
+              ChunkIterator chunks = new ChunkIterator(data, false);
+
+              return Completable.defer(() -> writeChunk(peripheral, chunks))
+                  .repeatUntil(() -> !chunks.hasNext())
+                  .andThen(Single.just(Irrelevant.INSTANCE));
+            })
+            .toObservable()
+            .share()
+            .firstOrError()
+            .timeout(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Single<Irrelevant> result() {
+    return resultSingle;
+  }
+
+  @Override
+  public void execute(Peripheral peripheral) {
+    peripheralRelay.accept(Optional.of(peripheral));
+  }
+
+  @Override
+  public Single<Irrelevant> executeWithResult(Peripheral peripheral) {
+    return resultSingle
+            .doOnSubscribe(disposable -> execute(peripheral));
+  }
+
+  private Completable writeChunk(Peripheral peripheral, ChunkIterator chunks) {
+    int offset = chunks.offset();
+    chunks.reset(controller.chunkLength(), offset);
+    byte[] chunk = chunks.next();
+    long startNanos = System.nanoTime();
+
+    return peripheral
+        .write(svc, chr, chunk, controller.writeType())
+        .doOnComplete(() -> controller.onSuccess(chunk.length, System.nanoTime() - startNanos))
+        .onErrorResumeNext(error -> {
+          if (isWriteFailure(error) && controller.onError(chunk.length)) {
+            chunks.reset(controller.chunkLength(), offset);
+            return Completable.complete();
+          }
+
+          return Completable.error(error);
+        });
+  }
+
+  private static boolean isWriteFailure(Throwable error) {
+    if (error instanceof PeripheralError) {
+      PeripheralError.Code code = ((PeripheralError) error).getCode();
+      return code == WRITE_CHARACTERISTIC_FAILED || code == CHARACTERISTIC_SET_VALUE_FAILED;
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+
+/**
+ * A simple {@link BulkTransferProtocol} using a control characteristic and a data characteristic.
+ *
+ * <p>Integers are unsigned 32 bit little endian. Commands are written to the control characteristic
+ * with response:
+ *
+ * <ul>
+ *   <li>{@code START} ({@code 0x01}): payload length, segment length.
+ *   <li>{@code SEEK} ({@code 0x02}): offset of the next packet; sent before a segment that does not
+ *       follow the previous one.
+ *   <li>{@code FINISH} ({@code 0x03}): CRC32 of the payload.
+ * </ul>
+ *
+ * <p>Packets are written to the data characteristic without response. Receipts are notified on the
+ * control characteristic as the end offset of the segment followed by the CRC32 of the segment.
+ */
+public class BasicBulkTransferProtocol implements BulkTransferProtocol {
+
+  public static final byte OP_START = 0x01;
+  public static final byte OP_SEEK = 0x02;
+  public static final byte OP_FINISH = 0x03;
+
+  private static final int RECEIPT_LENGTH = 8;
+
+  private final UUID svc;
+  private final UUID controlChr;
+  private final UUID dataChr;
+
+  private int nextOffset;
+
+  public BasicBulkTransferProtocol(UUID svc, UUID controlChr, UUID dataChr) {
+    this.svc = svc;
+    this.controlChr = controlChr;
+    this.dataChr = dataChr;
+  }
+
+  @Override
+  public Observable<Receipt> receipts(Peripheral peripheral) {
+    return peripheral
+        .notification(controlChr)
+        .filter(bytes -> bytes.length == RECEIPT_LENGTH)
+        .map(bytes -> {
+          ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+          return new Receipt(buffer.getInt() & 0xFFFFFFFFL, buffer.getInt() & 0xFFFFFFFFL);
+        });
+  }
+
+  @Override
+  public Completable start(Peripheral peripheral, byte[] data, int segmentLength) {
+    return peripheral
+        .registerNotification(svc, controlChr)
+        .andThen(Completable.defer(() -> {
+          nextOffset = 0;
+          return peripheral.write(svc, controlChr, command(OP_START, data.length, segmentLength));
+        }));
+  }
+
+  @Override
+  public Completable beginSegment(Peripheral peripheral, Segment segment) {
+    return Completable.defer(() -> {
+      boolean seek = segment.getOffset() != nextOffset;
+      nextOffset = segment.getEnd();
+
+      return seek
+          ? peripheral.write(svc, controlChr, command(OP_SEEK, segment.getOffset()))
+          : Completable.complete();
+    });
+  }
+
+  @Override
+  public Completable writePacket(Peripheral peripheral, byte[] packet) {
+    return peripheral.write(svc, dataChr, packet, Peripheral.WriteType.WITHOUT_RESPONSE);
+  }
+
+  @Override
+  public Completable finish(Peripheral peripheral, byte[] data) {
+    return Completable.defer(() -> {
+      CRC32 crc32 = new CRC32();
+      crc32.update(data, 0, data.length);
+
+      return peripheral.write(svc, controlChr, command(OP_FINISH, (int) crc32.getValue()));
+    });
+  }
+
+  private static byte[] command(byte opCode, int... arguments) {
+    ByteBuffer buffer = ByteBuffer.allocate(1 + 4 * arguments.length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(opCode);
+    for (int argument : arguments) {
+      buffer.putInt(argument);
+    }
+
+    return buffer.array();
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import androidx.annotation.Nullable;
+
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.jakewharton.rxrelay2.Relay;
+import com.uber.rxcentralble.Optional;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.PeripheralOperation;
+import com.uber.rxcentralble.RxCentralLogger;
+import com.uber.rxcentralble.core.operations.BulkTransferProtocol.Receipt;
+import com.uber.rxcentralble.core.operations.BulkTransferProtocol.Segment;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+/**
+ * Bulk transfer of a payload, e.g. a firmware image, with windowed acknowledgements and per segment
+ * integrity checks.
+ *
+ * <p>The payload is split into segments of {@code packetsPerReceipt} packets of the peripheral's
+ * max write length. Packets are written through a {@link BulkTransferProtocol} without waiting for
+ * a response, and the peripheral sends a receipt with the CRC32 of each segment. Up to {@code
+ * windowPackets} packets may be sent ahead of the receipts, so the link stays busy while receipts
+ * are in flight. A segment whose receipt CRC32 does not match is queued for retransmission ahead of
+ * any new segments; the transfer fails with a {@link BulkTransferError} once a segment has failed
+ * more than {@code maxRetransmissions} times.
+ *
+ * <p>Progress is published as segments are acknowledged; the result Single emits the final
+ * progress after the protocol has finished the transfer.
+ */
+public class BulkTransfer implements PeripheralOperation<TransferProgress> {
+
+  /** Default number of times a segment is retransmitted before the transfer fails. */
+  public static final int DEFAULT_MAX_RETRANSMISSIONS = 3;
+
+  private final Relay<Optional<Peripheral>> peripheralRelay = BehaviorRelay.createDefault(Optional.empty());
+  private final PublishRelay<TransferProgress> progressRelay = PublishRelay.create();
+  private final Single<TransferProgress> resultSingle;
+  private final BulkTransferProtocol protocol;
+  private final byte[] data;
+  private final int packetsPerReceipt;
+  private final int windowPackets;
+  private final int maxRetransmissions;
+
+  public BulkTransfer(
+      BulkTransferProtocol protocol,
+      byte[] data,
+      int packetsPerReceipt,
+      int windowPackets,
+      int timeoutMs) {
+    this(protocol, data, packetsPerReceipt, windowPackets, DEFAULT_MAX_RETRANSMISSIONS, timeoutMs);
+  }
+
+  public BulkTransfer(
+      BulkTransferProtocol protocol,
+      byte[] data,
+      int packetsPerReceipt,
+      int windowPackets,
+      int maxRetransmissions,
+      int timeoutMs) {
+    if (packetsPerReceipt <= 0 || windowPackets < packetsPerReceipt) {
+      throw new IllegalArgumentException(
+          "Invalid window: " + windowPackets + " packets, receipt every " + packetsPerReceipt);
+    }
+
+    this.protocol = protocol;
+    this.data = data;
+    this.packetsPerReceipt = packetsPerReceipt;
+    this.windowPackets = windowPackets;
+    this.maxRetransmissions = maxRetransmissions;
+
+    resultSingle =
+        peripheralRelay
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .firstOrError()
+            .doOnSuccess(g -> peripheralRelay.accept(Optional.empty()))
+            .flatMap(this::transfer)
+            .toObservable()
+            .share()
+            .firstOrError()
+            .timeout(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Single<TransferProgress> result() {
+    return resultSingle;
+  }
+
+  @Override
+  public void execute(Peripheral peripheral) {
+    peripheralRelay.accept(Optional.of(peripheral));
+  }
+
+  @Override
+  public Single<TransferProgress> executeWithResult(Peripheral peripheral) {
+    return resultSingle
+            .doOnSubscribe(disposable -> execute(peripheral));
+  }
+
+  /**
+   * Observe progress of the transfer.
+   *
+   * @return Observable stream of progress, emitted after each segment is acknowledged.
+   */
+  public Observable<TransferProgress> progress() {
+    return progressRelay;
+  }
+
+  private Single<TransferProgress> transfer(Peripheral peripheral) {
+    int maxWriteLength = peripheral.getMaxWriteLength();
+    Session session = new Session(peripheral, maxWriteLength);
+
+    // Receipts are only observed for the duration of the transfer.
+    Completable receipts = protocol.receipts(peripheral)
+        .doOnNext(session::onReceipt)
+        .ignoreElements()
+        .andThen(Completable.never());
+    Completable segments = protocol.start(peripheral, data, maxWriteLength * packetsPerReceipt)
+        .andThen(Completable.defer(session::sendNext).repeatUntil(session::isComplete));
+
+    return Completable.ambArray(receipts, segments)
+        .andThen(protocol.finish(peripheral, data))
+        .andThen(Single.fromCallable(session.tracker::progress));
+  }
+
+  /** State of a single execution of the transfer. */
+  private final class Session {
+
+    private final Relay<Integer> versionRelay = BehaviorRelay.createDefault(0);
+    private final ArrayDeque<Segment> retransmissions = new ArrayDeque<>();
+    private final ProgressTracker tracker = new ProgressTracker(data.length, false);
+    private final Peripheral peripheral;
+    private final int maxWriteLength;
+    private final Segment[] segments;
+    private final boolean[] inFlight;
+    private final boolean[] acknowledged;
+    private final int[] failures;
+
+    @Nullable private Throwable error;
+    private int nextSegment;
+    private int packetsInFlight;
+    private int acknowledgedCount;
+    private int version;
+
+    Session(Peripheral peripheral, int maxWriteLength) {
+      this.peripheral = peripheral;
+      this.maxWriteLength = maxWriteLength;
+
+      int segmentLength = maxWriteLength * packetsPerReceipt;
+      int count = (data.length + segmentLength - 1) / segmentLength;
+      CRC32 crc32 = new CRC32();
+      segments = new Segment[count];
+      for (int i = 0; i < count; i++) {
+        int offset = i * segmentLength;
+        int length = Math.min(segmentLength, data.length - offset);
+        crc32.reset();
+        crc32.update(data, offset, length);
+        segments[i] = new Segment(i, offset, length, crc32.getValue());
+      }
+
+      inFlight = new boolean[count];
+      acknowledged = new boolean[count];
+      failures = new int[count];
+    }
+
+    synchronized boolean isComplete() {
+      return acknowledgedCount == segments.length;
+    }
+
+    Completable sendNext() {
+      Segment segment;
+      synchronized (this) {
+        if (error != null) {
+          return Completable.error(error);
+        }
+
+        segment = retransmissions.poll();
+        if (segment == null
+            && nextSegment < segments.length
+            && packetsInFlight + packets(segments[nextSegment]) <= windowPackets) {
+          segment = segments[nextSegment++];
+        }
+
+        if (segment == null) {
+          if (isComplete()) {
+            return Completable.complete();
+          }
+
+          // Wait for a receipt to open the window.
+          final int awaitedVersion = version;
+          return versionRelay
+              .filter(v -> v != awaitedVersion)
+              .firstElement()
+              .ignoreElement();
+        }
+
+        inFlight[segment.getIndex()] = true;
+        packetsInFlight += packets(segment);
+      }
+
+      return protocol.beginSegment(peripheral, segment).andThen(writePackets(segment));
+    }
+
+    void onReceipt(Receipt receipt) {
+      int newVersion;
+      TransferProgress progress = null;
+      synchronized (this) {
+        Segment segment = segment(receipt.getOffset());
+        if (segment == null || !inFlight[segment.getIndex()]) {
+          if (RxCentralLogger.isDebug()) {
+            RxCentralLogger.debug("Ignoring receipt - Offset: " + receipt.getOffset());
+          }
+
+          return;
+        }
+
+        int index = segment.getIndex();
+        inFlight[index] = false;
+        packetsInFlight -= packets(segment);
+
+        if (segment.getCrc32() == receipt.getCrc32()) {
+          acknowledged[index] = true;
+          acknowledgedCount++;
+          progress = tracker.update(data, segment.getOffset(), segment.getLength());
+        } else if (++failures[index] > maxRetransmissions) {
+          error = new BulkTransferError(BulkTransferError.Code.INTEGRITY_CHECK_FAILED, index);
+        } else {
+          if (RxCentralLogger.isDebug()) {
+            RxCentralLogger.debug("Retransmitting segment - Index: " + index);
+          }
+
+          retransmissions.add(segment);
+        }
+
+        newVersion = ++version;
+      }
+
+      if (progress != null) {
+        progressRelay.accept(progress);
+      }
+
+      versionRelay.accept(newVersion);
+    }
+
+    private Completable writePackets(Segment segment) {
+      ChunkIterator packets = new ChunkIterator(data, false);
+      packets.reset(maxWriteLength, segment.getOffset());
+
+      return Completable.defer(() -> protocol.writePacket(peripheral, packets.next()))
+          .repeatUntil(() -> packets.offset() >= segment.getEnd());
+    }
+
+    @Nullable
+    private Segment segment(long endOffset) {
+      if (endOffset <= 0 || endOffset > data.length) {
+        return null;
+      }
+
+      Segment segment = segments[(int) ((endOffset - 1) / (maxWriteLength * packetsPerReceipt))];
+      return segment.getEnd() == endOffset && !acknowledged[segment.getIndex()] ? segment : null;
+    }
+
+    private int packets(Segment segment) {
+      return (segment.getLength() + maxWriteLength - 1) / maxWriteLength;
+    }
+  }
+}
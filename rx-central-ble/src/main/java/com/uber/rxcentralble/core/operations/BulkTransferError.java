@@ -0,0 +1,58 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+/**
+ * A BulkTransferError is thrown when a {@link BulkTransfer} cannot deliver the payload intact.
+ */
+public class BulkTransferError extends Exception {
+
+  /** Code for the error; enumerates specific error conditions. */
+  public enum Code {
+    INTEGRITY_CHECK_FAILED,
+  }
+
+  private final Code code;
+  private final int segmentIndex;
+
+  public BulkTransferError(Code code, int segmentIndex) {
+    this.code = code;
+    this.segmentIndex = segmentIndex;
+  }
+
+  @Override
+  public String getMessage() {
+    return code.toString() + " - Segment: " + segmentIndex;
+  }
+
+  /**
+   * Get the error code.
+   *
+   * @return the error code.
+   */
+  public Code getCode() {
+    return code;
+  }
+
+  /**
+   * Get the index of the segment that failed.
+   *
+   * @return the segment index.
+   */
+  public int getSegmentIndex() {
+    return segmentIndex;
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+
+/**
+ * Maps a vendor bulk transfer protocol, e.g. a firmware update protocol, onto a {@link
+ * BulkTransfer}.
+ *
+ * <p>The engine splits the payload into segments of a fixed number of packets and sends packets
+ * without waiting for a response; the peripheral acknowledges each segment with a {@link Receipt}
+ * carrying the CRC32 of the segment as received. The protocol defines how the transfer is started
+ * and finished, how packets are written, how a segment is positioned for retransmission, and how
+ * receipts are decoded.
+ *
+ * <p>A protocol instance may keep state for the transfer it is used by; {@link #start(Peripheral,
+ * byte[], int)} is called at the beginning of each execution.
+ */
+public interface BulkTransferProtocol {
+
+  /**
+   * Observe receipts from the peripheral. Subscribed to before the transfer is started and
+   * disposed of once it has finished.
+   *
+   * @param peripheral the Peripheral the transfer is executing against.
+   * @return Observable of receipts decoded from peripheral notifications.
+   */
+  Observable<Receipt> receipts(Peripheral peripheral);
+
+  /**
+   * Start the transfer, e.g. register for receipt notifications and announce the payload.
+   *
+   * @param peripheral the Peripheral the transfer is executing against.
+   * @param data the payload.
+   * @param segmentLength the length of each segment; the peripheral should send a receipt after
+   *     each segment, and after the final, possibly shorter, segment.
+   * @return Completable of the operation success, or else an error.
+   */
+  Completable start(Peripheral peripheral, byte[] data, int segmentLength);
+
+  /**
+   * Prepare to send a segment. Segments are sent in order, except that a segment which failed its
+   * integrity check is sent again; a protocol with selective retransmission should reposition the
+   * peripheral to the segment offset if it is not the one following the previous segment.
+   *
+   * @param peripheral the Peripheral the transfer is executing against.
+   * @param segment the segment about to be sent.
+   * @return Completable of the operation success, or else an error.
+   */
+  Completable beginSegment(Peripheral peripheral, Segment segment);
+
+  /**
+   * Write a packet of segment data, typically without response.
+   *
+   * @param peripheral the Peripheral the transfer is executing against.
+   * @param packet the packet, no longer than the peripheral's max write length.
+   * @return Completable of the operation success, or else an error.
+   */
+  Completable writePacket(Peripheral peripheral, byte[] packet);
+
+  /**
+   * Finish the transfer after all segments have been acknowledged, e.g. validate and activate.
+   *
+   * @param peripheral the Peripheral the transfer is executing against.
+   * @param data the payload.
+   * @return Completable of the operation success, or else an error.
+   */
+  Completable finish(Peripheral peripheral, byte[] data);
+
+  /** A range of the payload acknowledged by a single receipt. */
+  final class Segment {
+
+    private final int index;
+    private final int offset;
+    private final int length;
+    private final long crc32;
+
+    Segment(int index, int offset, int length, long crc32) {
+      this.index = index;
+      this.offset = offset;
+      this.length = length;
+      this.crc32 = crc32;
+    }
+
+    /**
+     * Get the index of the segment within the payload.
+     *
+     * @return the index.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Get the offset of the first byte of the segment.
+     *
+     * @return the offset.
+     */
+    public int getOffset() {
+      return offset;
+    }
+
+    /**
+     * Get the length of the segment.
+     *
+     * @return the length in bytes.
+     */
+    public int getLength() {
+      return length;
+    }
+
+    /**
+     * Get the offset following the last byte of the segment.
+     *
+     * @return the end offset.
+     */
+    public int getEnd() {
+      return offset + length;
+    }
+
+    /**
+     * Get the CRC32 of the segment bytes.
+     *
+     * @return the CRC32 value.
+     */
+    public long getCrc32() {
+      return crc32;
+    }
+  }
+
+  /** Acknowledgement of a segment by the peripheral. */
+  final class Receipt {
+
+    private final long offset;
+    private final long crc32;
+
+    /**
+     * Construct a receipt.
+     *
+     * @param offset the end offset of the acknowledged segment.
+     * @param crc32 the CRC32 of the segment bytes as received by the peripheral.
+     */
+    public Receipt(long offset, long crc32) {
+      this.offset = offset;
+      this.crc32 = crc32;
+    }
+
+    /**
+     * Get the end offset of the acknowledged segment.
+     *
+     * @return the offset.
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * Get the CRC32 of the segment bytes as received by the peripheral.
+     *
+     * @return the CRC32 value.
+     */
+    public long getCrc32() {
+      return crc32;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import androidx.annotation.Nullable;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a byte array in chunks no larger than a given max write length.
+ *
+ * <p>If constructed to reuse buffers, full-length chunks are copied into a single buffer of max
+ * write length and the final, shorter chunk into a second buffer sized to fit; after the first
+ * pass no further arrays are allocated. A chunk returned by {@link #next()} is only valid until the
+ * following call to {@link #next()} or {@link #reset(int, int)}.
+ */
+final class ChunkIterator {
+
+  private final byte[] data;
+  private final boolean reuseBuffers;
+
+  @Nullable private byte[] chunkBuffer;
+  @Nullable private byte[] tailBuffer;
+
+  private int maxWriteLength;
+  private int offset;
+
+  ChunkIterator(byte[] data, boolean reuseBuffers) {
+    this.data = data;
+    this.reuseBuffers = reuseBuffers;
+  }
+
+  /**
+   * Rewind to the start of the data.
+   *
+   * @param maxWriteLength maximum length of each chunk.
+   */
+  void reset(int maxWriteLength) {
+    reset(maxWriteLength, 0);
+  }
+
+  /**
+   * Reposition to the given offset of the data.
+   *
+   * @param maxWriteLength maximum length of each chunk.
+   * @param offset offset of the first byte of the next chunk.
+   */
+  void reset(int maxWriteLength, int offset) {
+    if (maxWriteLength <= 0) {
+      throw new IllegalArgumentException("Invalid max write length: " + maxWriteLength);
+    }
+
+    if (offset < 0 || offset > data.length) {
+      throw new IndexOutOfBoundsException("Invalid offset: " + offset);
+    }
+
+    this.maxWriteLength = maxWriteLength;
+    this.offset = offset;
+  }
+
+  /**
+   * Get the offset of the first byte of the next chunk.
+   *
+   * @return the offset.
+   */
+  int offset() {
+    return offset;
+  }
+
+  boolean hasNext() {
+    return offset < data.length;
+  }
+
+  /**
+   * Get the next chunk.
+   *
+   * @return the next chunk of data.
+   */
+  byte[] next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    int length = Math.min(maxWriteLength, data.length - offset);
+    byte[] chunk = reuseBuffers ? buffer(length) : new byte[length];
+    System.arraycopy(data, offset, chunk, 0, length);
+    offset += length;
+
+    return chunk;
+  }
+
+  private byte[] buffer(int length) {
+    if (length == maxWriteLength) {
+      if (chunkBuffer == null || chunkBuffer.length != length) {
+        chunkBuffer = new byte[length];
+      }
+
+      return chunkBuffer;
+    }
+
+    if (tailBuffer == null || tailBuffer.length != length) {
+      tailBuffer = new byte[length];
+    }
+
+    return tailBuffer;
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import androidx.annotation.Nullable;
+
+import java.util.zip.CRC32;
+
+/** Tracks bytes sent, elapsed time and an optional running CRC32 for a single transfer. */
+final class ProgressTracker {
+
+  private final long totalBytes;
+  private final long startNanos;
+
+  @Nullable private final CRC32 crc32;
+
+  private long bytesSent;
+
+  ProgressTracker(long totalBytes, boolean computeCrc32) {
+    this.totalBytes = totalBytes;
+    this.startNanos = System.nanoTime();
+    this.crc32 = computeCrc32 ? new CRC32() : null;
+  }
+
+  /**
+   * Record a chunk as sent.
+   *
+   * @param chunk the chunk written to the peripheral.
+   * @return progress including the chunk.
+   */
+  TransferProgress update(byte[] chunk) {
+    return update(chunk, 0, chunk.length);
+  }
+
+  /**
+   * Record a range of a payload as sent.
+   *
+   * @param data the payload.
+   * @param offset offset of the first byte sent.
+   * @param length number of bytes sent.
+   * @return progress including the range.
+   */
+  TransferProgress update(byte[] data, int offset, int length) {
+    bytesSent += length;
+    if (crc32 != null) {
+      crc32.update(data, offset, length);
+    }
+
+    return progress();
+  }
+
+  TransferProgress progress() {
+    return new TransferProgress(
+        bytesSent,
+        totalBytes,
+        System.nanoTime() - startNanos,
+        crc32 != null ? crc32.getValue() : TransferProgress.UNKNOWN);
+  }
+}
@@ -0,0 +1,53 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.Irrelevant;
+import com.uber.rxcentralble.Peripheral;
+
+import java.util.UUID;
+
+import io.reactivex.Single;
+import io.reactivex.SingleTransformer;
+
+/**
+ * Write that resumes from a {@link TransferCheckpoint} rather than the start of the payload when
+ * retried, including after a reconnection provides a new Peripheral to the PeripheralManager.
+ * Completes after the underlying write chunks have all been completed.
+ */
+public class ResumableWrite extends AbstractWrite<Irrelevant> {
+
+  public ResumableWrite(UUID svc, UUID chr, byte[] data, TransferCheckpoint checkpoint, int timeoutMs) {
+    this(svc, chr, data, checkpoint, null, timeoutMs);
+  }
+
+  public ResumableWrite(
+      UUID svc,
+      UUID chr,
+      byte[] data,
+      TransferCheckpoint checkpoint,
+      @Nullable ResumeHandshake resumeHandshake,
+      int timeoutMs) {
+    super(svc, chr, data, timeoutMs, false, checkpoint, resumeHandshake);
+  }
+
+  @Override
+  protected SingleTransformer<Peripheral, Irrelevant> postWrite() {
+    return single -> single.flatMap(peripheral -> Single.just(Irrelevant.INSTANCE));
+  }
+}
@@ -0,0 +1,41 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral;
+
+import io.reactivex.Single;
+
+/**
+ * Hook to query a peripheral for how much of a payload it has committed, prior to resuming a
+ * {@link ResumableWrite}. Use this if a peripheral may have persisted more or less than the
+ * checkpoint records, e.g. if the link dropped after a chunk was sent but before it was
+ * acknowledged.
+ */
+public interface ResumeHandshake {
+
+  /**
+   * Query the peripheral for its last committed offset. Runs each time the write is executed,
+   * before any chunks are written.
+   *
+   * @param peripheral the Peripheral the write is executing against.
+   * @param checkpoint the local checkpoint; its offset and CRC32 may be sent to the peripheral for
+   *     verification.
+   * @return Single of the offset the peripheral has committed, or else an error. Return 0 to
+   *     restart the payload.
+   */
+  Single<Long> committedOffset(Peripheral peripheral, TransferCheckpoint checkpoint);
+}
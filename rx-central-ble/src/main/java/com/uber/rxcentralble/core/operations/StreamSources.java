@@ -0,0 +1,219 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Flowable;
+
+/** Factories for {@link StreamingWrite.Source} implementations. */
+public final class StreamSources {
+
+  private StreamSources() { }
+
+  /**
+   * Stream from an InputStream. The stream is opened on each subscription and closed on
+   * termination.
+   *
+   * @param opener opens a new InputStream positioned at the start of the data.
+   * @param length total length of the data, or {@link TransferProgress#UNKNOWN}.
+   * @return the Source.
+   */
+  public static StreamingWrite.Source inputStream(Callable<InputStream> opener, long length) {
+    return new StreamingWrite.Source() {
+      @Override
+      public long length() {
+        return length;
+      }
+
+      @Override
+      public Flowable<byte[]> chunks(int maxWriteLength) {
+        return Flowable.generate(opener, (inputStream, emitter) -> {
+          byte[] chunk = new byte[maxWriteLength];
+          int read = 0;
+          while (read < maxWriteLength) {
+            int count = inputStream.read(chunk, read, maxWriteLength - read);
+            if (count < 0) {
+              break;
+            }
+
+            read += count;
+          }
+
+          if (read == 0) {
+            emitter.onComplete();
+          } else {
+            emitter.onNext(read == maxWriteLength ? chunk : Arrays.copyOf(chunk, read));
+          }
+        }, InputStream::close);
+      }
+    };
+  }
+
+  /**
+   * Stream from a file, using positional reads on a FileChannel.
+   *
+   * @param file the file to stream.
+   * @return the Source.
+   */
+  public static StreamingWrite.Source file(File file) {
+    return new StreamingWrite.Source() {
+      @Override
+      public long length() {
+        return file.length();
+      }
+
+      @Override
+      public Flowable<byte[]> chunks(int maxWriteLength) {
+        return Flowable.generate(() -> new FileInputStream(file).getChannel(), (channel, emitter) -> {
+          long remaining = channel.size() - channel.position();
+          if (remaining <= 0) {
+            emitter.onComplete();
+            return;
+          }
+
+          ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(maxWriteLength, remaining));
+          while (chunk.hasRemaining()) {
+            if (channel.read(chunk) < 0) {
+              throw new IOException("Unexpected end of file: " + file);
+            }
+          }
+
+          emitter.onNext(chunk.array());
+        }, FileChannel::close);
+      }
+    };
+  }
+
+  /**
+   * Stream from a memory-mapped file. Pages are loaded by the OS on demand rather than read onto
+   * the heap.
+   *
+   * @param file the file to stream.
+   * @return the Source.
+   */
+  public static StreamingWrite.Source mappedFile(File file) {
+    return new StreamingWrite.Source() {
+      @Override
+      public long length() {
+        return file.length();
+      }
+
+      @Override
+      public Flowable<byte[]> chunks(int maxWriteLength) {
+        return Flowable.generate(() -> map(file), (buffer, emitter) -> {
+          if (buffer.hasRemaining()) {
+            byte[] chunk = new byte[Math.min(maxWriteLength, buffer.remaining())];
+            buffer.get(chunk);
+            emitter.onNext(chunk);
+          } else {
+            emitter.onComplete();
+          }
+        });
+      }
+    };
+  }
+
+  /**
+   * Stream from a Flowable of ByteBuffers of any size, which are re-chunked to the max write length.
+   * Buffers are requested one at a time; an emitted buffer must not be modified until the next
+   * buffer is requested.
+   *
+   * @param buffers the data.
+   * @param length total length of the data, or {@link TransferProgress#UNKNOWN}.
+   * @return the Source.
+   */
+  public static StreamingWrite.Source flowable(Flowable<ByteBuffer> buffers, long length) {
+    return new StreamingWrite.Source() {
+      @Override
+      public long length() {
+        return length;
+      }
+
+      @Override
+      public Flowable<byte[]> chunks(int maxWriteLength) {
+        return Flowable.defer(() -> {
+          Rechunker rechunker = new Rechunker(maxWriteLength);
+          return buffers
+              .flatMapIterable(rechunker::chunks, 1)
+              .concatWith(Flowable.defer(rechunker::remainder));
+        });
+      }
+    };
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      FileChannel channel = inputStream.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** Slices arbitrarily sized buffers into chunks, carrying partial chunks across buffers. */
+  private static final class Rechunker {
+
+    private final byte[] pending;
+    private int pendingLength;
+
+    Rechunker(int maxWriteLength) {
+      this.pending = new byte[maxWriteLength];
+    }
+
+    Iterable<byte[]> chunks(ByteBuffer buffer) {
+      return () -> new Iterator<byte[]>() {
+        @Override
+        public boolean hasNext() {
+          if (pendingLength + buffer.remaining() >= pending.length) {
+            return true;
+          }
+
+          // Not enough for a full chunk; carry the rest of this buffer over to the next.
+          int length = buffer.remaining();
+          buffer.get(pending, pendingLength, length);
+          pendingLength += length;
+          return false;
+        }
+
+        @Override
+        public byte[] next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+
+          int length = pending.length - pendingLength;
+          buffer.get(pending, pendingLength, length);
+          pendingLength = 0;
+          return pending.clone();
+        }
+      };
+    }
+
+    Flowable<byte[]> remainder() {
+      return pendingLength > 0
+          ? Flowable.just(Arrays.copyOf(pending, pendingLength))
+          : Flowable.empty();
+    }
+  }
+}
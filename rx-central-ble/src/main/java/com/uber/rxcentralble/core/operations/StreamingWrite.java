@@ -0,0 +1,121 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.jakewharton.rxrelay2.Relay;
+import com.uber.rxcentralble.Optional;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.PeripheralOperation;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+/**
+ * Write a stream of data to a characteristic without materializing the whole payload in memory.
+ *
+ * <p>Chunks of size determined by the Peripheral maxWriteLength() are pulled lazily from a {@link
+ * Source} and written to the Peripheral in a serial manner. One chunk is prefetched while the
+ * prior chunk is written, so at most two chunks are held at once and peak memory is proportional
+ * to the MTU rather than the payload.
+ * See {@link StreamSources} for sources backed by an InputStream, a file, or a Flowable.
+ *
+ * <p>Progress is published after each chunk is written; the result Single emits the final
+ * progress after all chunks have been written to the peripheral.
+ */
+public class StreamingWrite implements PeripheralOperation<TransferProgress> {
+
+  private final Relay<Optional<Peripheral>> peripheralRelay = BehaviorRelay.createDefault(Optional.empty());
+  private final PublishRelay<TransferProgress> progressRelay = PublishRelay.create();
+  private final Single<TransferProgress> resultSingle;
+
+  public StreamingWrite(UUID svc, UUID chr, Source source, int timeoutMs) {
+    this(svc, chr, source, false, timeoutMs);
+  }
+
+  public StreamingWrite(UUID svc, UUID chr, Source source, boolean computeCrc32, int timeoutMs) {
+    resultSingle =
+        peripheralRelay
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .firstOrError()
+            .doOnSuccess(g -> peripheralRelay.accept(Optional.empty()))
+            .flatMap(peripheral -> {
+              ProgressTracker tracker = new ProgressTracker(source.length(), computeCrc32);
+
+              return source
+                  .chunks(peripheral.getMaxWriteLength())
+                  .concatMapCompletable(chunk -> peripheral
+                      .write(svc, chr, chunk)
+                      .doOnComplete(() -> progressRelay.accept(tracker.update(chunk))), 1)
+                  .andThen(Single.fromCallable(tracker::progress));
+            })
+            .toObservable()
+            .share()
+            .firstOrError()
+            .timeout(timeoutMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Single<TransferProgress> result() {
+    return resultSingle;
+  }
+
+  @Override
+  public void execute(Peripheral peripheral) {
+    peripheralRelay.accept(Optional.of(peripheral));
+  }
+
+  @Override
+  public Single<TransferProgress> executeWithResult(Peripheral peripheral) {
+    return resultSingle
+            .doOnSubscribe(disposable -> execute(peripheral));
+  }
+
+  /**
+   * Observe progress of the transfer.
+   *
+   * @return Observable stream of progress, emitted after each chunk is written.
+   */
+  public Observable<TransferProgress> progress() {
+    return progressRelay;
+  }
+
+  /** A source of data for a streaming write. */
+  public interface Source {
+
+    /**
+     * Get the total length of the data.
+     *
+     * @return the length in bytes, or {@link TransferProgress#UNKNOWN} if not known.
+     */
+    long length();
+
+    /**
+     * Produce the data as chunks. Each subscription must start from the beginning of the data and
+     * must respect backpressure, reading no further ahead than requested.
+     *
+     * @param maxWriteLength maximum length of each chunk.
+     * @return Flowable of chunks no larger than maxWriteLength.
+     */
+    Flowable<byte[]> chunks(int maxWriteLength);
+  }
+}
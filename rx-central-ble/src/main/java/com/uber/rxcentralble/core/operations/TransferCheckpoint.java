@@ -0,0 +1,85 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import java.util.zip.CRC32;
+
+/**
+ * Records how much of a payload has been written to a peripheral, along with a running CRC32 of
+ * the bytes written, so that a {@link ResumableWrite} may resume from where it left off.
+ *
+ * <p>A checkpoint is owned by the caller and outlives any single subscription or operation; hold on
+ * to it across retries and reconnections, and {@link #reset()} it to start the payload over.
+ */
+public final class TransferCheckpoint {
+
+  private final CRC32 crc32 = new CRC32();
+
+  private long offset;
+
+  /**
+   * Get the offset of the next byte to be written; all bytes before it have been written.
+   *
+   * @return the offset.
+   */
+  public synchronized long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the CRC32 of all bytes before {@link #getOffset()}.
+   *
+   * @return the CRC32 value.
+   */
+  public synchronized long getCrc32() {
+    return crc32.getValue();
+  }
+
+  /** Reset the checkpoint to the start of the payload. */
+  public synchronized void reset() {
+    offset = 0;
+    crc32.reset();
+  }
+
+  /**
+   * Record a chunk as written.
+   *
+   * @param chunk the chunk written to the peripheral.
+   */
+  synchronized void commit(byte[] chunk) {
+    crc32.update(chunk, 0, chunk.length);
+    offset += chunk.length;
+  }
+
+  /**
+   * Move the checkpoint to the offset a transfer will resume from, recomputing the CRC32 if it
+   * differs from the current offset.
+   *
+   * @param data the payload.
+   * @param resumeOffset desired offset; clamped to the bounds of the payload.
+   * @return the offset to resume from.
+   */
+  synchronized int resume(byte[] data, long resumeOffset) {
+    int clampedOffset = (int) Math.max(0, Math.min(resumeOffset, data.length));
+    if (clampedOffset != offset) {
+      crc32.reset();
+      crc32.update(data, 0, clampedOffset);
+      offset = clampedOffset;
+    }
+
+    return clampedOffset;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+/**
+ * Snapshot of the progress of a streaming transfer to a peripheral.
+ */
+public final class TransferProgress {
+
+  /** Value returned for unknown quantities, e.g. the total length of an unbounded stream. */
+  public static final long UNKNOWN = -1;
+
+  private final long bytesSent;
+  private final long totalBytes;
+  private final long elapsedNanos;
+  private final long crc32;
+
+  TransferProgress(long bytesSent, long totalBytes, long elapsedNanos, long crc32) {
+    this.bytesSent = bytesSent;
+    this.totalBytes = totalBytes;
+    this.elapsedNanos = elapsedNanos;
+    this.crc32 = crc32;
+  }
+
+  /**
+   * Get the number of bytes written to the peripheral so far.
+   *
+   * @return bytes sent.
+   */
+  public long getBytesSent() {
+    return bytesSent;
+  }
+
+  /**
+   * Get the total number of bytes to be written.
+   *
+   * @return total bytes, or {@link #UNKNOWN} if the source length is not known.
+   */
+  public long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Get the time elapsed since the transfer began.
+   *
+   * @return elapsed time in milliseconds.
+   */
+  public long getElapsedMs() {
+    return elapsedNanos / 1000000;
+  }
+
+  /**
+   * Get the average transfer rate since the transfer began.
+   *
+   * @return rate in bytes per second.
+   */
+  public long getBytesPerSecond() {
+    return elapsedNanos > 0 ? bytesSent * 1000000000L / elapsedNanos : 0;
+  }
+
+  /**
+   * Get the estimated time remaining, based on the average transfer rate.
+   *
+   * @return estimated time remaining in milliseconds, or {@link #UNKNOWN} if the total length or
+   *     the rate is not known.
+   */
+  public long getEtaMs() {
+    long bytesPerSecond = getBytesPerSecond();
+    if (totalBytes == UNKNOWN || bytesPerSecond == 0) {
+      return UNKNOWN;
+    }
+
+    return Math.max(0, totalBytes - bytesSent) * 1000 / bytesPerSecond;
+  }
+
+  /**
+   * Get the CRC32 of all bytes sent so far.
+   *
+   * @return the CRC32 value, or {@link #UNKNOWN} if CRC computation was not requested.
+   */
+  public long getCrc32() {
+    return crc32;
+  }
+
+  @Override
+  public String toString() {
+    return "TransferProgress{bytesSent=" + bytesSent
+        + ", totalBytes=" + totalBytes
+        + ", elapsedMs=" + getElapsedMs()
+        + ", bytesPerSecond=" + getBytesPerSecond()
+        + ", etaMs=" + getEtaMs()
+        + "}";
+  }
+}
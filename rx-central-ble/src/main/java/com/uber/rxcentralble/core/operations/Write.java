@@ -30,6 +30,10 @@ public class Write extends AbstractWrite<Irrelevant> {
     super(svc, chr, data, timeoutMs);
   }
 
+  public Write(UUID svc, UUID chr, byte[] data, int timeoutMs, boolean reuseChunkBuffers) {
+    super(svc, chr, data, timeoutMs, reuseChunkBuffers);
+  }
+
   @Override
   protected SingleTransformer<Peripheral, Irrelevant> postWrite() {
     return single -> single.flatMap(peripheral -> Single.just(Irrelevant.INSTANCE));
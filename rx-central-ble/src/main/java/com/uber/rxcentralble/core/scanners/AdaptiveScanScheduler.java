@@ -0,0 +1,291 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import androidx.annotation.IntRange;
+import androidx.annotation.Nullable;
+
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Scanner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_BALANCED;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_LATENCY;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_POWER;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_OPPORTUNISTIC;
+
+/**
+ * Adapts the scan mode of a {@link Scanner} to how fast new matching devices appear, to limit
+ * radio time during long scans.
+ *
+ * <p>Scanning starts at low latency. At every evaluation interval, the mode steps up if a device
+ * not seen before matched during the interval, and steps down towards opportunistic once no new
+ * device has matched for several intervals in a row. The mode never drops below the slowest mode
+ * that meets the tightest latency budget of the active callers; a caller without a budget accepts
+ * opportunistic scanning.
+ *
+ * <p>All callers share one scan of the underlying Scanner, which is restarted on every mode
+ * change. Adaptation changes the mode at most once per evaluation interval, but a caller joining
+ * or leaving changes it at once if that moves the floor, so a caller needing low latency is never
+ * kept waiting for the next evaluation. Restarts are therefore only bounded by the start limiting
+ * of the underlying Scanner, such as a {@link ScanStartLimiter}.
+ */
+public class AdaptiveScanScheduler {
+
+  public static final long NO_LATENCY_BUDGET = Long.MAX_VALUE;
+  public static final long DEFAULT_EVALUATION_INTERVAL_MS = 10 * 1000;
+  public static final int DEFAULT_STALLED_EVALUATIONS = 3;
+
+  /**
+   * Worst case time between scan windows of the platform scan modes; a latency budget at least
+   * this long can be met by the mode.
+   */
+  static final long LOW_POWER_LATENCY_MS = 5120;
+  static final long BALANCED_LATENCY_MS = 4096;
+
+  private static final int MAX_TRACKED_DEVICES = 1024;
+
+  private final int stalledEvaluations;
+  private final Observable<ScanData> sharedScanData;
+  private final BehaviorRelay<Integer> scanModeRelay = BehaviorRelay.createDefault(SCAN_MODE_LOW_LATENCY);
+  private final Map<Object, Integer> scanModeFloors = new HashMap<>();
+  private final Map<String, Boolean> seenDevices = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_TRACKED_DEVICES;
+    }
+  };
+
+  private final long[] timeInModeMs = new long[4];
+  private int scanMode = SCAN_MODE_LOW_LATENCY;
+  private int adaptiveScanMode = SCAN_MODE_LOW_LATENCY;
+  private long scanModeSinceMs;
+  private int modeChanges;
+  private int newDevices;
+  private int stalled;
+
+  public AdaptiveScanScheduler(Scanner scanner) {
+    this(scanner, DEFAULT_EVALUATION_INTERVAL_MS, DEFAULT_STALLED_EVALUATIONS);
+  }
+
+  /**
+   * Construct an adaptive scan scheduler.
+   *
+   * @param scanner the Scanner to schedule.
+   * @param evaluationIntervalMs interval between evaluations of the scan mode.
+   * @param stalledEvaluations consecutive evaluations without new devices before stepping down.
+   */
+  public AdaptiveScanScheduler(Scanner scanner, long evaluationIntervalMs, int stalledEvaluations) {
+    this.stalledEvaluations = stalledEvaluations;
+    this.sharedScanData = Observable.merge(
+            scanModeRelay
+                    .distinctUntilChanged()
+                    .switchMap(scanner::scan),
+            Observable.interval(evaluationIntervalMs, TimeUnit.MILLISECONDS)
+                    .doOnNext(tick -> evaluate())
+                    .ignoreElements()
+                    .<ScanData>toObservable())
+            .share();
+  }
+
+  /**
+   * Scan for peripherals that match a ScanMatcher.
+   *
+   * @param scanMatcher the matcher applied to discovered peripherals.
+   * @param latencyBudgetMs the longest acceptable delay before an advertising peripheral is
+   *                        discovered, or {@link #NO_LATENCY_BUDGET}.
+   * @return Observable stream of matching peripheral ScanData or else an error.
+   */
+  public Observable<ScanData> scan(ScanMatcher scanMatcher, long latencyBudgetMs) {
+    final Object requestKey = new Object();
+    final int scanModeFloor = scanModeFloor(latencyBudgetMs);
+
+    return sharedScanData
+            .compose(scanMatcher.match())
+            .doOnNext(this::onMatch)
+            .doOnSubscribe(d -> addScanModeFloor(requestKey, scanModeFloor))
+            .doFinally(() -> removeScanModeFloor(requestKey));
+  }
+
+  /**
+   * Get the metrics of the scheduler.
+   *
+   * @return the current metrics.
+   */
+  public synchronized Metrics metrics() {
+    long[] timeInMode = Arrays.copyOf(timeInModeMs, timeInModeMs.length);
+    if (!scanModeFloors.isEmpty()) {
+      timeInMode[scanMode + 1] += now() - scanModeSinceMs;
+    }
+
+    return new Metrics(scanModeFloors.isEmpty() ? null : scanMode, timeInMode, modeChanges);
+  }
+
+  static int scanModeFloor(long latencyBudgetMs) {
+    if (latencyBudgetMs == NO_LATENCY_BUDGET) {
+      return SCAN_MODE_OPPORTUNISTIC;
+    } else if (latencyBudgetMs >= LOW_POWER_LATENCY_MS) {
+      return SCAN_MODE_LOW_POWER;
+    } else if (latencyBudgetMs >= BALANCED_LATENCY_MS) {
+      return SCAN_MODE_BALANCED;
+    } else {
+      return SCAN_MODE_LOW_LATENCY;
+    }
+  }
+
+  private synchronized void onMatch(ScanData scanData) {
+    if (seenDevices.put(scanData.getBluetoothDevice().getAddress(), Boolean.TRUE) == null) {
+      newDevices++;
+    }
+  }
+
+  private void evaluate() {
+    int nextScanMode;
+    synchronized (this) {
+      if (newDevices > 0) {
+        adaptiveScanMode = Math.min(SCAN_MODE_LOW_LATENCY, adaptiveScanMode + 1);
+        stalled = 0;
+      } else if (++stalled >= stalledEvaluations) {
+        adaptiveScanMode = Math.max(SCAN_MODE_OPPORTUNISTIC, adaptiveScanMode - 1);
+        stalled = 0;
+      }
+
+      newDevices = 0;
+      nextScanMode = updateScanMode();
+    }
+
+    scanModeRelay.accept(nextScanMode);
+  }
+
+  private void addScanModeFloor(Object key, int scanModeFloor) {
+    int nextScanMode;
+    synchronized (this) {
+      if (scanModeFloors.isEmpty()) {
+        // A new scan session starts fast and adapts from there.
+        adaptiveScanMode = SCAN_MODE_LOW_LATENCY;
+        scanModeSinceMs = now();
+      }
+
+      scanModeFloors.put(key, scanModeFloor);
+      nextScanMode = updateScanMode();
+    }
+
+    scanModeRelay.accept(nextScanMode);
+  }
+
+  private void removeScanModeFloor(Object key) {
+    int nextScanMode;
+    synchronized (this) {
+      if (scanModeFloors.size() == 1 && scanModeFloors.containsKey(key)) {
+        timeInModeMs[scanMode + 1] += now() - scanModeSinceMs;
+        scanModeFloors.clear();
+        seenDevices.clear();
+        newDevices = 0;
+        stalled = 0;
+        return;
+      }
+
+      scanModeFloors.remove(key);
+      nextScanMode = updateScanMode();
+    }
+
+    scanModeRelay.accept(nextScanMode);
+  }
+
+  // Must hold the lock.
+  private int updateScanMode() {
+    int nextScanMode = adaptiveScanMode;
+    for (int scanModeFloor : scanModeFloors.values()) {
+      nextScanMode = Math.max(nextScanMode, scanModeFloor);
+    }
+
+    if (nextScanMode != scanMode) {
+      long now = now();
+      timeInModeMs[scanMode + 1] += now - scanModeSinceMs;
+      scanModeSinceMs = now;
+      scanMode = nextScanMode;
+      modeChanges++;
+    }
+
+    return nextScanMode;
+  }
+
+  private static long now() {
+    return Schedulers.computation().now(TimeUnit.MILLISECONDS);
+  }
+
+  /** Scan modes chosen by an {@link AdaptiveScanScheduler}. */
+  public static final class Metrics {
+
+    private final Integer scanMode;
+    private final long[] timeInModeMs;
+    private final int modeChanges;
+
+    Metrics(Integer scanMode, long[] timeInModeMs, int modeChanges) {
+      this.scanMode = scanMode;
+      this.timeInModeMs = timeInModeMs;
+      this.modeChanges = modeChanges;
+    }
+
+    /**
+     * Get the current scan mode.
+     *
+     * @return the scan mode, or null if not scanning.
+     */
+    @Nullable
+    public Integer getScanMode() {
+      return scanMode;
+    }
+
+    /**
+     * Get the total time spent scanning in a scan mode.
+     *
+     * @param scanMode the scan mode, from opportunistic to low latency.
+     * @return the time in milliseconds.
+     */
+    public long getTimeInModeMs(@IntRange(from = -1, to = 2) int scanMode) {
+      return timeInModeMs[scanMode + 1];
+    }
+
+    /**
+     * Get the number of times the scan mode changed.
+     *
+     * @return the number of changes.
+     */
+    public int getModeChanges() {
+      return modeChanges;
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{"
+          + "scanMode=" + scanMode
+          + ", timeInModeMs=" + Arrays.toString(timeInModeMs)
+          + ", modeChanges=" + modeChanges
+          + '}';
+    }
+  }
+}
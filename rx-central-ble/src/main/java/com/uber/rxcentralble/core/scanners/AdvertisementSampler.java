@@ -0,0 +1,143 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Per device sampling of raw advertisements, applied by a Scanner between the platform callback
+ * and the parser so that a dropped advertisement costs a hash lookup rather than a parse and a
+ * pass through the Rx chain.
+ *
+ * <p>An advertisement is kept if it is the first from its device, if its payload differs from the
+ * last kept payload of the device, if its RSSI differs from the last kept RSSI by at least the
+ * RSSI change, or if the sampling interval has passed since the last kept advertisement. Each
+ * criterion can be disabled; with all disabled but the interval, a device yields at most one
+ * advertisement per interval.
+ *
+ * <p>Once the capacity is reached, the longest tracked device is forgotten, and its next
+ * advertisement is kept.
+ */
+public class AdvertisementSampler {
+
+  /** RSSI change that disables keeping advertisements on RSSI changes. */
+  public static final int NO_RSSI_CHANGE = 0;
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private final long intervalMs;
+  private final int rssiChangeDb;
+  private final boolean payloadChange;
+
+  private final SlotTable slots;
+  private final long[] keptMs;
+  private final int[] keptRssi;
+  private final int[] keptPayloadHash;
+
+  private long kept;
+  private long dropped;
+
+  /**
+   * Construct a sampler.
+   *
+   * @param intervalMs interval after which an advertisement of a device is kept regardless.
+   * @param rssiChangeDb change in RSSI that keeps an advertisement, or {@link #NO_RSSI_CHANGE}.
+   * @param payloadChange whether a change in payload keeps an advertisement.
+   */
+  public AdvertisementSampler(long intervalMs, int rssiChangeDb, boolean payloadChange) {
+    this(intervalMs, rssiChangeDb, payloadChange, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Construct a sampler.
+   *
+   * @param intervalMs interval after which an advertisement of a device is kept regardless.
+   * @param rssiChangeDb change in RSSI that keeps an advertisement, or {@link #NO_RSSI_CHANGE}.
+   * @param payloadChange whether a change in payload keeps an advertisement.
+   * @param capacity maximum number of devices to keep state for.
+   */
+  public AdvertisementSampler(long intervalMs, int rssiChangeDb, boolean payloadChange, int capacity) {
+    if (intervalMs < 0 || rssiChangeDb < 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Invalid interval, RSSI change or capacity: "
+          + intervalMs + ", " + rssiChangeDb + ", " + capacity);
+    }
+
+    this.intervalMs = intervalMs;
+    this.rssiChangeDb = rssiChangeDb;
+    this.payloadChange = payloadChange;
+
+    slots = new SlotTable(capacity);
+    keptMs = new long[capacity];
+    keptRssi = new int[capacity];
+    keptPayloadHash = new int[capacity];
+  }
+
+  /**
+   * Decide whether to keep an advertisement.
+   *
+   * @param address the address of the advertising device.
+   * @param rssi the RSSI of the advertisement.
+   * @param payload the raw advertisement, or null if absent.
+   * @return true if the advertisement should be parsed and delivered.
+   */
+  public synchronized boolean sample(String address, int rssi, @Nullable byte[] payload) {
+    long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+    long packedAddress = Utils.addressToLong(address);
+    int payloadHash = payloadChange ? Arrays.hashCode(payload) : 0;
+
+    int slot = slots.get(packedAddress);
+    if (slot == SlotTable.MISSING) {
+      slot = slots.addEvicting(packedAddress);
+    } else if (now - keptMs[slot] < intervalMs
+        && (rssiChangeDb == NO_RSSI_CHANGE || Math.abs(rssi - keptRssi[slot]) < rssiChangeDb)
+        && payloadHash == keptPayloadHash[slot]) {
+      dropped++;
+      return false;
+    }
+
+    keptMs[slot] = now;
+    keptRssi[slot] = rssi;
+    keptPayloadHash[slot] = payloadHash;
+    kept++;
+    return true;
+  }
+
+  /**
+   * Get the number of advertisements kept.
+   *
+   * @return the number of kept advertisements.
+   */
+  public synchronized long getKept() {
+    return kept;
+  }
+
+  /**
+   * Get the number of advertisements dropped.
+   *
+   * @return the number of dropped advertisements.
+   */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+}
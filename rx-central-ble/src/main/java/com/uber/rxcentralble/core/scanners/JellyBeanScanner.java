@@ -17,14 +17,16 @@ package com.uber.rxcentralble.core.scanners;
 
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothAdapter;
+import androidx.annotation.Nullable;
 
 import com.jakewharton.rxrelay2.PublishRelay;
 import com.uber.rxcentralble.ParsedAdvertisement;
 import com.uber.rxcentralble.RxCentralLogger;
 import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
 import com.uber.rxcentralble.ConnectionError;
 import com.uber.rxcentralble.Scanner;
-import com.uber.rxcentralble.core.CoreParsedAdvertisement;
+import com.uber.rxcentralble.core.CachingParsedAdvertisementFactory;
 
 import io.reactivex.Observable;
 import io.reactivex.subjects.CompletableSubject;
@@ -33,37 +35,72 @@ import static com.uber.rxcentralble.ConnectionError.Code.SCAN_FAILED;
 
 /**
  * Core Scanner implementation for API < 21 (i.e. JellyBean).  This implementation is thread safe.
+ *
+ * <p>Advertisements are evaluated against the {@link com.uber.rxcentralble.PredicateScanMatcher}s
+ * of active subscribers on a reusable view before any ScanData is allocated for them, and dropped
+ * if none can match.
  */
 @TargetApi(18)
 public class JellyBeanScanner implements Scanner {
 
-  private final ParsedAdvertisement.Factory parsedAdDataFactory;
   private final BluetoothAdapter.LeScanCallback leScanCallback;
   private final PublishRelay<ScanData> scanDataRelay = PublishRelay.create();
   private final Observable<ScanData> sharedScanData;
+  private final ScanStartLimiter scanStartLimiter;
+  private final ScanMetrics scanMetrics = new ScanMetrics();
+  private final ScanPrefilter scanPrefilter = new ScanPrefilter();
+  private final ScanView scanView;
+  @Nullable
+  private final AdvertisementSampler advertisementSampler;
 
   private final Object syncRoot = new Object();
 
   private CompletableSubject errorSubject;
 
   public JellyBeanScanner() {
-    this(new CoreParsedAdvertisement.Factory());
+    this(new CachingParsedAdvertisementFactory());
   }
 
   public JellyBeanScanner(ParsedAdvertisement.Factory parsedAdDataFactory) {
-    this.parsedAdDataFactory = parsedAdDataFactory;
+    this(parsedAdDataFactory, ScanStartLimiter.getInstance());
+  }
+
+  /**
+   * Construct a scanner.
+   *
+   * @param parsedAdDataFactory factory of parsed advertisements.
+   * @param scanStartLimiter limiter that every scan start is acquired from.
+   */
+  public JellyBeanScanner(ParsedAdvertisement.Factory parsedAdDataFactory, ScanStartLimiter scanStartLimiter) {
+    this(parsedAdDataFactory, scanStartLimiter, null);
+  }
+
+  /**
+   * Construct a scanner.
+   *
+   * @param parsedAdDataFactory factory of parsed advertisements.
+   * @param scanStartLimiter limiter that every scan start is acquired from.
+   * @param advertisementSampler sampler applied to advertisements before they are parsed, or null
+   *                             to deliver every advertisement.
+   */
+  public JellyBeanScanner(ParsedAdvertisement.Factory parsedAdDataFactory,
+                          ScanStartLimiter scanStartLimiter,
+                          @Nullable AdvertisementSampler advertisementSampler) {
+    this.scanView = new ScanView(parsedAdDataFactory, scanMetrics);
+    this.scanStartLimiter = scanStartLimiter;
+    this.advertisementSampler = advertisementSampler;
     this.leScanCallback = getScanCallback();
 
     this.errorSubject = CompletableSubject.create();
-    this.sharedScanData = scanDataRelay
-            .doOnSubscribe(disposable -> startScan())
+    this.sharedScanData = scanMetrics.recordStart(scanStartLimiter.acquire(this))
+            .andThen(scanDataRelay.doOnSubscribe(disposable -> startScan()))
             .doFinally(this::stopScan)
             .share();
   }
 
   @Override
   public Observable<ScanData> scan() {
-    return Observable.merge(sharedScanData, getErrorSubject().toObservable());
+    return prefilteredScan(null);
   }
 
   /**
@@ -77,6 +114,36 @@ public class JellyBeanScanner implements Scanner {
     return scan();
   }
 
+  /**
+   * Scan latency is ignored on JellyBean as it is only supported on Android 5+.
+   *
+   * @param scanMatcher the matcher applied to discovered peripherals.
+   * @param scanLatency latency setting for scanning operation.
+   * @return stream of matching scan data from discovered peripherals.
+   */
+  @Override
+  public Observable<ScanData> scan(ScanMatcher scanMatcher, int scanLatency) {
+    return prefilteredScan(scanMatcher).compose(scanMatcher.match());
+  }
+
+  /**
+   * Get the metrics of this scanner. Wrap matchers with {@link ScanMetrics#instrument(String,
+   * ScanMatcher)} to count their matches as well.
+   *
+   * @return the metrics.
+   */
+  public ScanMetrics getMetrics() {
+    return scanMetrics;
+  }
+
+  private Observable<ScanData> prefilteredScan(@Nullable ScanMatcher scanMatcher) {
+    final Object requestKey = new Object();
+
+    return Observable.merge(sharedScanData, getErrorSubject().toObservable())
+            .doOnSubscribe(d -> scanPrefilter.add(requestKey, scanMatcher))
+            .doFinally(() -> scanPrefilter.remove(requestKey));
+  }
+
   private void startScan() {
     BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
     if (adapter != null && adapter.isEnabled()) {
@@ -101,6 +168,8 @@ public class JellyBeanScanner implements Scanner {
   }
 
   private void stopScan() {
+    scanMetrics.recordStop();
+
     BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
     if (adapter != null && adapter.isEnabled()) {
       adapter.stopLeScan(leScanCallback);
@@ -131,7 +200,26 @@ public class JellyBeanScanner implements Scanner {
                 + " | RSSI: " + rssi);
       }
 
-      ScanData scanData = new JellyBeanScanData(bluetoothDevice, rssi, parsedAdDataFactory.produce(eirData));
+      scanMetrics.recordCallback();
+
+      // Sampling runs on the raw payload before matching, which may parse; only survivors are materialized.
+      if (advertisementSampler != null
+          && !advertisementSampler.sample(bluetoothDevice.getAddress(), rssi, eirData)) {
+        scanMetrics.recordSampledOut();
+        return;
+      }
+
+      ScanData scanData;
+      synchronized (scanView) {
+        scanView.reset(bluetoothDevice, rssi, eirData);
+        if (!scanPrefilter.accepts(scanView)) {
+          scanMetrics.recordFilteredOut();
+          return;
+        }
+
+        scanData = scanView.materialize();
+      }
+
       scanDataRelay.accept(scanData);
     };
   }
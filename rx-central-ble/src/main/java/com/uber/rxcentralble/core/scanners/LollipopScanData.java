@@ -18,6 +18,7 @@ package com.uber.rxcentralble.core.scanners;
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.ScanResult;
+import android.os.Build;
 import androidx.annotation.Nullable;
 
 import com.uber.rxcentralble.ParsedAdvertisement;
@@ -58,4 +59,41 @@ public class LollipopScanData implements ScanData {
   public ScanResult getScanResult() {
     return scanResult;
   }
+
+  @Override
+  public boolean isLegacy() {
+    return !isExtendedSupported() || scanResult.isLegacy();
+  }
+
+  @Override
+  public int getPrimaryPhy() {
+    return isExtendedSupported() ? scanResult.getPrimaryPhy() : ScanData.super.getPrimaryPhy();
+  }
+
+  @Override
+  public int getSecondaryPhy() {
+    return isExtendedSupported() ? scanResult.getSecondaryPhy() : ScanData.super.getSecondaryPhy();
+  }
+
+  @Override
+  public int getAdvertisingSid() {
+    return isExtendedSupported() ? scanResult.getAdvertisingSid() : ScanData.super.getAdvertisingSid();
+  }
+
+  @Override
+  public int getPeriodicAdvertisingInterval() {
+    return isExtendedSupported()
+        ? scanResult.getPeriodicAdvertisingInterval()
+        : ScanData.super.getPeriodicAdvertisingInterval();
+  }
+
+  @Override
+  public int getTxPower() {
+    return isExtendedSupported() ? scanResult.getTxPower() : ScanData.super.getTxPower();
+  }
+
+  // Android reports the properties of extended advertisements from Oreo.
+  static boolean isExtendedSupported() {
+    return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+  }
 }
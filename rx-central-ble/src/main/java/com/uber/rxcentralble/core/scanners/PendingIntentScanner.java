@@ -0,0 +1,458 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import androidx.annotation.Nullable;
+
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.ConnectionError;
+import com.uber.rxcentralble.HardwareScanMatcher;
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.RxCentralLogger;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Scanner;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CachingParsedAdvertisementFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.CompletableSubject;
+
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_OPPORTUNISTIC;
+import static com.uber.rxcentralble.ConnectionError.Code.SCAN_FAILED;
+
+/**
+ * Scanner implementation for API >= 26 (i.e. Oreo) that delivers scan results to a
+ * {@link PendingIntent} rather than a callback.  This implementation is thread safe.
+ *
+ * <p>The Bluetooth stack keeps a PendingIntent scan running while the application is in the
+ * background, and starts the process again to deliver results if it has been killed. Results are
+ * broadcast to {@link Receiver}, which is declared in the library manifest, decoded into
+ * {@link LollipopScanData} and parsed by the same {@link ParsedAdvertisement.Factory} pipeline as
+ * the other Scanners. To receive results after the process is restarted, subscribe again from
+ * {@code Application.onCreate()}, which runs before the broadcast is delivered.
+ *
+ * <p>Disposing of the last subscription stops the scan. A scan left running by a previous process
+ * is stopped and restarted with the current settings on the next subscription.
+ *
+ * <p>Hardware filters of {@link HardwareScanMatcher}s are merged across subscribers as in
+ * {@link ThrottledLollipopScanner}, and should be used: Android does not deliver unfiltered scan
+ * results while the screen is off. If every subscriber scans in batches and the controller
+ * supports offloaded batching, results are delivered in batches of the strongest result per
+ * device, which wakes the process once per batch instead of once per advertisement.
+ *
+ * <p>Live results are evaluated against the {@link com.uber.rxcentralble.PredicateScanMatcher}s of
+ * active subscribers on a reusable view before any ScanData is allocated for them, and dropped if
+ * none can match.
+ *
+ * <p>Every scan start is acquired from a {@link ScanStartLimiter}.
+ */
+@TargetApi(26)
+public class PendingIntentScanner implements Scanner {
+
+  /** Action of the broadcasts that deliver scan results to {@link Receiver}. */
+  public static final String ACTION_SCAN_RESULTS = "com.uber.rxcentralble.action.SCAN_RESULTS";
+
+  static final String EXTRA_REQUEST_CODE = "com.uber.rxcentralble.extra.REQUEST_CODE";
+
+  private static final PublishRelay<Intent> RESULT_INTENTS = PublishRelay.create();
+  private static final AtomicInteger NEXT_REQUEST_CODE = new AtomicInteger();
+
+  private final int requestCode;
+  private final PendingIntent pendingIntent;
+  private final ScanStartLimiter scanStartLimiter;
+  private final ScanMetrics scanMetrics = new ScanMetrics();
+  private final ScanPrefilter scanPrefilter = new ScanPrefilter();
+  private final ScanView scanView;
+  private final Map<Object, ScanRequest> scanRequestMap = new HashMap<>();
+  private final BehaviorRelay<ScanRequest> scanRequestRelay = BehaviorRelay.createDefault(ScanRequest.IDLE);
+  private final PublishRelay<List<ScanData>> scanBatchRelay = PublishRelay.create();
+  private final Observable<ScanData> sharedScanData;
+
+  private final Object syncRoot = new Object();
+
+  private CompletableSubject errorSubject;
+  private volatile boolean batching;
+
+  /**
+   * Construct a scanner with the next request code of the process, counting up from 0 in order of
+   * construction. A scanner constructed with an explicit request code should use a negative code
+   * to avoid these.
+   *
+   * @param context context used to create the PendingIntent.
+   */
+  public PendingIntentScanner(Context context) {
+    this(context,
+        new CachingParsedAdvertisementFactory(),
+        NEXT_REQUEST_CODE.getAndIncrement(),
+        ScanStartLimiter.getInstance());
+  }
+
+  /**
+   * Construct a scanner.
+   *
+   * @param context context used to create the PendingIntent.
+   * @param parsedAdDataFactory factory of parsed advertisements.
+   * @param requestCode request code of the PendingIntent. Scanners of the same application must
+   *                    use distinct request codes, and a Scanner constructed with the same request
+   *                    code in a later process takes over the scan of an earlier one.
+   * @param scanStartLimiter limiter that every scan start is acquired from.
+   */
+  public PendingIntentScanner(Context context,
+                              ParsedAdvertisement.Factory parsedAdDataFactory,
+                              int requestCode,
+                              ScanStartLimiter scanStartLimiter) {
+    this.requestCode = requestCode;
+    this.scanStartLimiter = scanStartLimiter;
+    this.scanView = new ScanView(parsedAdDataFactory, scanMetrics);
+
+    Intent intent = new Intent(ACTION_SCAN_RESULTS)
+            .setClass(context, Receiver.class)
+            .putExtra(EXTRA_REQUEST_CODE, requestCode);
+    int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+      // The Bluetooth stack fills in the results, so the PendingIntent must be mutable.
+      flags |= PendingIntent.FLAG_MUTABLE;
+    }
+    this.pendingIntent = PendingIntent.getBroadcast(context, requestCode, intent, flags);
+
+    this.errorSubject = CompletableSubject.create();
+    this.sharedScanData = scanRequestRelay
+            .distinctUntilChanged()
+            .switchMap(next -> scanMetrics.recordStart(scanStartLimiter.acquire(this)).andThen(RESULT_INTENTS
+                    .filter(this::isOwnIntent)
+                    .concatMapIterable(this::handleResultIntent)
+                    .doOnSubscribe(d -> startScan(next))
+                    .doFinally(this::stopScan)))
+            .doFinally(this::cleanup)
+            .share();
+  }
+
+  @Override
+  public Observable<ScanData> scan() {
+    return scan(DEFAULT_SCAN_MODE);
+  }
+
+  @Override
+  public Observable<ScanData> scan(int scanMode) {
+    return scan(new ScanRequest(scanMode, Collections.emptySet(), 0), null);
+  }
+
+  @Override
+  public Observable<ScanData> scan(ScanMatcher scanMatcher, int scanMode) {
+    Set<ScanFilter> scanFilters = scanMatcher instanceof HardwareScanMatcher
+            ? new HashSet<>(((HardwareScanMatcher) scanMatcher).hardwareFilters())
+            : Collections.emptySet();
+
+    return scan(new ScanRequest(scanMode, scanFilters, 0), scanMatcher).compose(scanMatcher.match());
+  }
+
+  @Override
+  public Observable<List<ScanData>> scanBatches(int scanMode, long reportDelayMs) {
+    if (reportDelayMs <= 0) {
+      throw new IllegalArgumentException("Invalid report delay: " + reportDelayMs);
+    }
+
+    return Observable.merge(
+            // Batches offloaded to the controller.
+            scanBatchRelay,
+            // Batches buffered in software, if any subscriber requires live results.
+            scan(new ScanRequest(scanMode, Collections.emptySet(), reportDelayMs), null)
+                    .buffer(reportDelayMs, TimeUnit.MILLISECONDS)
+                    .filter(batch -> !batch.isEmpty())
+                    .map(Utils::deduplicateByAddress));
+  }
+
+  /**
+   * Get the metrics of this scanner. Wrap matchers with {@link ScanMetrics#instrument(String,
+   * ScanMatcher)} to count their matches as well.
+   *
+   * @return the metrics.
+   */
+  public ScanMetrics getMetrics() {
+    return scanMetrics;
+  }
+
+  private Observable<ScanData> scan(ScanRequest scanRequest, @Nullable ScanMatcher scanMatcher) {
+    final Object requestKey = new Object();
+
+    return Observable.merge(sharedScanData, getErrorSubject().toObservable())
+            .doOnSubscribe(d -> {
+              scanPrefilter.add(requestKey, scanMatcher);
+              addScanRequest(requestKey, scanRequest);
+            })
+            .doFinally(() -> {
+              scanPrefilter.remove(requestKey);
+              removeScanRequest(requestKey);
+            });
+  }
+
+  private boolean isOwnIntent(Intent intent) {
+    return intent.getIntExtra(EXTRA_REQUEST_CODE, -1) == requestCode;
+  }
+
+  private List<ScanData> handleResultIntent(Intent intent) {
+    int errorCode = intent.getIntExtra(BluetoothLeScanner.EXTRA_ERROR_CODE, 0);
+    if (errorCode != 0) {
+      if (RxCentralLogger.isError()) {
+        RxCentralLogger.error("onScanFailed - Error Code: " + errorCode);
+      }
+
+      getErrorSubject().onError(new ConnectionError(SCAN_FAILED));
+      return Collections.emptyList();
+    }
+
+    List<ScanResult> results = intent.getParcelableArrayListExtra(BluetoothLeScanner.EXTRA_LIST_SCAN_RESULT);
+    if (results == null || results.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    if (RxCentralLogger.isDebug()) {
+      for (ScanResult scanResult : results) {
+        RxCentralLogger.debug("onReceive - BD_ADDR: " + scanResult.getDevice().getAddress()
+                + " | RSSI: " + scanResult.getRssi());
+      }
+    }
+
+    if (batching) {
+      scanMetrics.recordBatchCallback(results.size());
+
+      // Keep the strongest result per device, so that each device is only parsed once per batch.
+      Collection<ScanResult> strongest = ThrottledLollipopScanner.strongestPerDevice(results);
+      List<ScanData> batch = new ArrayList<>(strongest.size());
+      synchronized (scanView) {
+        for (ScanResult scanResult : strongest) {
+          scanView.reset(scanResult);
+          batch.add(scanView.materialize());
+        }
+      }
+
+      scanBatchRelay.accept(batch);
+      return Collections.emptyList();
+    }
+
+    // Matching runs against the reusable view; only survivors are materialized.
+    List<ScanData> scanData = new ArrayList<>(results.size());
+    synchronized (scanView) {
+      for (ScanResult scanResult : results) {
+        scanMetrics.recordCallback();
+        scanView.reset(scanResult);
+        if (scanPrefilter.accepts(scanView)) {
+          scanData.add(scanView.materialize());
+        } else {
+          scanMetrics.recordFilteredOut();
+        }
+      }
+    }
+
+    return scanData;
+  }
+
+  private void startScan(ScanRequest scanRequest) {
+    BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+    if (adapter != null && adapter.isEnabled()) {
+      List<ScanFilter> filters = new ArrayList<>(scanRequest.scanFilters);
+      if (filters.isEmpty()) {
+        // Add a dummy filter to avoid Android 8.1+ enforcement of filters during background isScanning.
+        filters.add(new ScanFilter.Builder().build());
+      }
+
+      ScanSettings.Builder settingsBuilder = new ScanSettings.Builder();
+      settingsBuilder.setScanMode(scanRequest.scanMode);
+      batching = scanRequest.reportDelayMs > 0 && adapter.isOffloadedScanBatchingSupported();
+      if (batching) {
+        settingsBuilder.setReportDelay(scanRequest.reportDelayMs);
+      }
+
+      BluetoothLeScanner bleScanner = adapter.getBluetoothLeScanner();
+      if (bleScanner != null) {
+        // Stop a scan left running with this PendingIntent, e.g. by a process that has since been killed.
+        bleScanner.stopScan(pendingIntent);
+
+        int status = bleScanner.startScan(filters, settingsBuilder.build(), pendingIntent);
+        if (status != 0) {
+          if (RxCentralLogger.isError()) {
+            RxCentralLogger.error("startScan - Error Code: " + status);
+          }
+
+          getErrorSubject().onError(new ConnectionError(SCAN_FAILED));
+        }
+      } else {
+        if (RxCentralLogger.isError()) {
+          RxCentralLogger.error("startScan - BluetoothLeScanner is null!");
+        }
+
+        getErrorSubject().onError(new ConnectionError(SCAN_FAILED));
+      }
+    } else {
+      if (RxCentralLogger.isError()) {
+        if (adapter == null) {
+          RxCentralLogger.error("startScan - Default Bluetooth Adapter is null!");
+        } else {
+          RxCentralLogger.error("startScan - Bluetooth Adapter is disabled.");
+        }
+      }
+
+      getErrorSubject().onError(new ConnectionError(SCAN_FAILED));
+    }
+  }
+
+  private void stopScan() {
+    scanMetrics.recordStop();
+
+    BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+    if (adapter != null && adapter.isEnabled()) {
+      BluetoothLeScanner bleScanner = adapter.getBluetoothLeScanner();
+      if (bleScanner != null) {
+        bleScanner.stopScan(pendingIntent);
+      } else if (RxCentralLogger.isError()) {
+        RxCentralLogger.error("stopScan - BluetoothLeScanner is null!");
+      }
+    } else if (RxCentralLogger.isError()) {
+      if (adapter == null) {
+        RxCentralLogger.error("stopScan - Default Bluetooth Adapter is null!");
+      } else {
+        RxCentralLogger.error("stopScan - Bluetooth Adapter is disabled.");
+      }
+    }
+  }
+
+  private CompletableSubject getErrorSubject() {
+    synchronized (syncRoot) {
+      if (errorSubject.hasThrowable()) {
+        errorSubject = CompletableSubject.create();
+      }
+
+      return errorSubject;
+    }
+  }
+
+  private void cleanup() {
+    synchronized (syncRoot) {
+      scanRequestMap.clear();
+      scanRequestRelay.accept(ScanRequest.IDLE);
+    }
+  }
+
+  private void addScanRequest(Object key, ScanRequest scanRequest) {
+    synchronized (syncRoot) {
+      scanRequestMap.put(key, scanRequest);
+      scanRequestRelay.accept(mergeScanRequests());
+    }
+  }
+
+  private void removeScanRequest(Object key) {
+    synchronized (syncRoot) {
+      if (scanRequestMap.remove(key) != null) {
+        scanRequestRelay.accept(mergeScanRequests());
+      }
+    }
+  }
+
+  // The fastest scan mode wins, an unfiltered subscriber requires every advertisement, and a live
+  // subscriber requires results without a report delay.
+  private ScanRequest mergeScanRequests() {
+    int scanMode = SCAN_MODE_OPPORTUNISTIC;
+    Set<ScanFilter> scanFilters = new HashSet<>();
+    boolean unfiltered = false;
+    long reportDelayMs = Long.MAX_VALUE;
+    for (ScanRequest scanRequest : scanRequestMap.values()) {
+      scanMode = Math.max(scanMode, scanRequest.scanMode);
+      unfiltered |= scanRequest.scanFilters.isEmpty();
+      if (!unfiltered) {
+        scanFilters.addAll(scanRequest.scanFilters);
+      }
+
+      reportDelayMs = Math.min(reportDelayMs, scanRequest.reportDelayMs);
+    }
+
+    return new ScanRequest(
+            scanMode,
+            unfiltered ? Collections.emptySet() : scanFilters,
+            reportDelayMs == Long.MAX_VALUE ? 0 : reportDelayMs);
+  }
+
+  /**
+   * Receives the scan results of every PendingIntentScanner of the application.  Declared in the
+   * library manifest; applications do not need to register it.
+   */
+  public static final class Receiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+      if (ACTION_SCAN_RESULTS.equals(intent.getAction())) {
+        RESULT_INTENTS.accept(intent);
+      }
+    }
+  }
+
+  /** Scan mode, hardware filters and report delay requested by a subscriber, or merged across subscribers. */
+  private static final class ScanRequest {
+
+    static final ScanRequest IDLE = new ScanRequest(SCAN_MODE_OPPORTUNISTIC, Collections.emptySet(), 0);
+
+    private final int scanMode;
+    private final Set<ScanFilter> scanFilters;
+    private final long reportDelayMs;
+
+    ScanRequest(int scanMode, Set<ScanFilter> scanFilters, long reportDelayMs) {
+      this.scanMode = scanMode;
+      this.scanFilters = scanFilters;
+      this.reportDelayMs = reportDelayMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof ScanRequest) {
+        ScanRequest other = (ScanRequest) o;
+        return other.scanMode == scanMode
+                && other.reportDelayMs == reportDelayMs
+                && other.scanFilters.equals(scanFilters);
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 31 * scanMode + scanFilters.hashCode();
+      return 31 * result + (int) (reportDelayMs ^ (reportDelayMs >>> 32));
+    }
+  }
+}
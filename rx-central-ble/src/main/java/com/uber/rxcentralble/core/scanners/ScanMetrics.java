@@ -0,0 +1,668 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import android.annotation.TargetApi;
+import android.bluetooth.le.ScanFilter;
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.HardwareScanMatcher;
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Counters of the work done by a Scanner and the ScanMatchers applied to its results, for tuning
+ * scan modes and matcher cost.
+ *
+ * <p>Scanners record platform callbacks, advertisements dropped by an {@link AdvertisementSampler}
+ * or because no subscriber could match them, parse times, advertisements per device, and scan
+ * starts and stops with the delay imposed by the {@link ScanStartLimiter}. Matchers are counted
+ * once wrapped by {@link #instrument(String, ScanMatcher)}.
+ *
+ * <p>Counters are atomic, and parse times are kept in a histogram of power of two buckets, so
+ * recording an advertisement does not allocate. Advertisements are counted for a bounded number of
+ * devices; once the capacity is reached, the longest tracked device is forgotten.
+ */
+public class ScanMetrics {
+
+  public static final int DEFAULT_DEVICE_CAPACITY = 256;
+
+  /** Number of parse time buckets; bucket {@code i} counts parses of less than 2^(i+1) nanoseconds. */
+  public static final int PARSE_HISTOGRAM_BUCKETS = 32;
+
+  private final long createdMs;
+
+  private final AtomicLong callbacks = new AtomicLong();
+  private final AtomicLong batchCallbacks = new AtomicLong();
+  private final AtomicLong batchResults = new AtomicLong();
+  private final AtomicLong sampledOut = new AtomicLong();
+  private final AtomicLong filteredOut = new AtomicLong();
+  private final AtomicLong parsed = new AtomicLong();
+  private final AtomicLong parseNanos = new AtomicLong();
+  private final AtomicLongArray parseHistogram = new AtomicLongArray(PARSE_HISTOGRAM_BUCKETS);
+  private final AtomicLong scanStarts = new AtomicLong();
+  private final AtomicLong scanStops = new AtomicLong();
+  private final AtomicLong throttledStarts = new AtomicLong();
+  private final AtomicLong throttleDelayMs = new AtomicLong();
+
+  private final Object deviceLock = new Object();
+  private final SlotTable deviceSlots;
+  private final String[] deviceNames;
+  private final long[] deviceCounts;
+
+  private final Map<String, MatcherCounters> matcherCounters = new LinkedHashMap<>();
+
+  public ScanMetrics() {
+    this(DEFAULT_DEVICE_CAPACITY);
+  }
+
+  /**
+   * Construct metrics.
+   *
+   * @param deviceCapacity maximum number of devices to count advertisements for.
+   */
+  public ScanMetrics(int deviceCapacity) {
+    if (deviceCapacity <= 0) {
+      throw new IllegalArgumentException("Invalid device capacity: " + deviceCapacity);
+    }
+
+    this.createdMs = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+
+    deviceSlots = new SlotTable(deviceCapacity);
+    deviceNames = new String[deviceCapacity];
+    deviceCounts = new long[deviceCapacity];
+  }
+
+  /** Record a platform callback delivering a single advertisement. */
+  public void recordCallback() {
+    callbacks.incrementAndGet();
+  }
+
+  /**
+   * Record a platform callback delivering a batch of advertisements.
+   *
+   * @param results the number of advertisements in the batch.
+   */
+  public void recordBatchCallback(int results) {
+    batchCallbacks.incrementAndGet();
+    batchResults.addAndGet(results);
+  }
+
+  /** Record an advertisement dropped by a sampler before it was parsed. */
+  public void recordSampledOut() {
+    sampledOut.incrementAndGet();
+  }
+
+  /** Record an advertisement that no subscriber could match, dropped before a ScanData was materialized. */
+  public void recordFilteredOut() {
+    filteredOut.incrementAndGet();
+  }
+
+  /**
+   * Record the parse of an advertisement.
+   *
+   * @param nanos the time taken to parse, in nanoseconds.
+   */
+  public void recordParse(long nanos) {
+    parsed.incrementAndGet();
+    parseNanos.addAndGet(nanos);
+    parseHistogram.incrementAndGet(bucketOf(nanos));
+  }
+
+  /**
+   * Record an advertisement delivered for a device.
+   *
+   * @param address the address of the device, or null if unknown.
+   */
+  public void recordDevice(@Nullable String address) {
+    if (address == null || address.length() != 17) {
+      return;
+    }
+
+    long packedAddress = Utils.addressToLong(address);
+    synchronized (deviceLock) {
+      int slot = deviceSlots.get(packedAddress);
+      if (slot == SlotTable.MISSING) {
+        slot = deviceSlots.addEvicting(packedAddress);
+        deviceNames[slot] = address;
+        deviceCounts[slot] = 0;
+      }
+
+      deviceCounts[slot]++;
+    }
+  }
+
+  /**
+   * Record a scan start, with the delay imposed before it was granted.
+   *
+   * @param delayMs the delay in milliseconds, or 0 if the start was not throttled.
+   */
+  public void recordStart(long delayMs) {
+    scanStarts.incrementAndGet();
+    if (delayMs > 0) {
+      throttledStarts.incrementAndGet();
+      throttleDelayMs.addAndGet(delayMs);
+    }
+  }
+
+  /** Record a scan stop. */
+  public void recordStop() {
+    scanStops.incrementAndGet();
+  }
+
+  /**
+   * Record a scan start once a start acquisition completes, with the time it took.
+   *
+   * @param acquisition the acquisition of the scan start, such as {@link ScanStartLimiter#acquire(Object)}.
+   * @return a Completable that completes when the acquisition completes.
+   */
+  public Completable recordStart(Completable acquisition) {
+    return Completable.defer(() -> {
+      long requestedMs = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+      return acquisition.doOnComplete(() ->
+          recordStart(Schedulers.computation().now(TimeUnit.MILLISECONDS) - requestedMs));
+    });
+  }
+
+  /**
+   * Wrap a ScanMatcher to count the advertisements it evaluates and matches under a name. Matchers
+   * wrapped under the same name share counters.
+   *
+   * <p>The wrapper keeps the hardware filters of a {@link HardwareScanMatcher}, and the predicate of
+   * a {@link PredicateScanMatcher}.
+   *
+   * @param name the name to count under.
+   * @param scanMatcher the matcher.
+   * @return a ScanMatcher matching the same advertisements.
+   */
+  public ScanMatcher instrument(String name, ScanMatcher scanMatcher) {
+    MatcherCounters counters;
+    synchronized (matcherCounters) {
+      counters = matcherCounters.get(name);
+      if (counters == null) {
+        counters = new MatcherCounters();
+        matcherCounters.put(name, counters);
+      }
+    }
+
+    if (scanMatcher instanceof PredicateScanMatcher) {
+      return new InstrumentedPredicateScanMatcher((PredicateScanMatcher) scanMatcher, counters);
+    }
+
+    return new InstrumentedScanMatcher(scanMatcher, counters);
+  }
+
+  /**
+   * Get the counters since these metrics were created.
+   *
+   * @return a snapshot of the counters.
+   */
+  public Snapshot snapshot() {
+    long[] histogram = new long[PARSE_HISTOGRAM_BUCKETS];
+    for (int i = 0; i < PARSE_HISTOGRAM_BUCKETS; i++) {
+      histogram[i] = parseHistogram.get(i);
+    }
+
+    Map<String, Long> devices = new LinkedHashMap<>();
+    synchronized (deviceLock) {
+      for (int slot = 0; slot < deviceSlots.size(); slot++) {
+        devices.put(deviceNames[slot], deviceCounts[slot]);
+      }
+    }
+
+    Map<String, Long> evaluations = new LinkedHashMap<>();
+    Map<String, Long> matches = new LinkedHashMap<>();
+    synchronized (matcherCounters) {
+      for (Map.Entry<String, MatcherCounters> entry : matcherCounters.entrySet()) {
+        evaluations.put(entry.getKey(), entry.getValue().evaluations.get());
+        matches.put(entry.getKey(), entry.getValue().matches.get());
+      }
+    }
+
+    return new Snapshot(
+        Schedulers.computation().now(TimeUnit.MILLISECONDS) - createdMs,
+        callbacks.get(),
+        batchCallbacks.get(),
+        batchResults.get(),
+        sampledOut.get(),
+        filteredOut.get(),
+        parsed.get(),
+        parseNanos.get(),
+        histogram,
+        scanStarts.get(),
+        scanStops.get(),
+        throttledStarts.get(),
+        throttleDelayMs.get(),
+        devices,
+        evaluations,
+        matches);
+  }
+
+  /**
+   * Periodically get the counters accumulated over each interval.
+   *
+   * <dl>
+   *   <dt><b>Scheduler:</b>
+   *   <dd>{@code snapshots} operates on the {@code computation} {@link io.reactivex.Scheduler}.
+   * </dl>
+   *
+   * @param intervalMs the interval between snapshots.
+   * @return Observable stream of snapshots, each counting from the previous one, or from the
+   *         subscription for the first.
+   */
+  public Observable<Snapshot> snapshots(long intervalMs) {
+    if (intervalMs <= 0) {
+      throw new IllegalArgumentException("Invalid interval: " + intervalMs);
+    }
+
+    return Observable.defer(() -> {
+      Snapshot[] previous = {snapshot()};
+      return Observable.interval(intervalMs, intervalMs, TimeUnit.MILLISECONDS)
+          .map(tick -> {
+            Snapshot next = snapshot();
+            Snapshot delta = next.since(previous[0]);
+            previous[0] = next;
+            return delta;
+          });
+    });
+  }
+
+  /**
+   * Get the exclusive upper bound of a parse time bucket.
+   *
+   * @param bucket the bucket index.
+   * @return the upper bound in nanoseconds.
+   */
+  public static long bucketUpperBoundNanos(int bucket) {
+    return 1L << (bucket + 1);
+  }
+
+  private static int bucketOf(long nanos) {
+    int bucket = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+    return Math.min(bucket, PARSE_HISTOGRAM_BUCKETS - 1);
+  }
+
+  /** Counters of a ScanMatcher. */
+  private static final class MatcherCounters {
+
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+  }
+
+  /** ScanMatcher counting evaluations and matches of another. */
+  private static class InstrumentedScanMatcher implements HardwareScanMatcher {
+
+    private final ScanMatcher scanMatcher;
+    final MatcherCounters counters;
+
+    InstrumentedScanMatcher(ScanMatcher scanMatcher, MatcherCounters counters) {
+      this.scanMatcher = scanMatcher;
+      this.counters = counters;
+    }
+
+    @Override
+    public ObservableTransformer<ScanData, ScanData> match() {
+      return scanData -> scanData
+          .doOnNext(next -> counters.evaluations.incrementAndGet())
+          .compose(scanMatcher.match())
+          .doOnNext(next -> counters.matches.incrementAndGet());
+    }
+
+    @TargetApi(21)
+    @Override
+    public List<ScanFilter> hardwareFilters() {
+      return scanMatcher instanceof HardwareScanMatcher
+          ? ((HardwareScanMatcher) scanMatcher).hardwareFilters()
+          : Collections.emptyList();
+    }
+  }
+
+  /** PredicateScanMatcher counting evaluations and matches of another. */
+  static final class InstrumentedPredicateScanMatcher extends InstrumentedScanMatcher
+      implements PredicateScanMatcher {
+
+    private final PredicateScanMatcher predicateScanMatcher;
+
+    InstrumentedPredicateScanMatcher(PredicateScanMatcher scanMatcher, MatcherCounters counters) {
+      super(scanMatcher, counters);
+      this.predicateScanMatcher = scanMatcher;
+    }
+
+    PredicateScanMatcher getPredicateScanMatcher() {
+      return predicateScanMatcher;
+    }
+
+    @Override
+    public boolean matches(ScanData scanData) {
+      counters.evaluations.incrementAndGet();
+      if (predicateScanMatcher.matches(scanData)) {
+        counters.matches.incrementAndGet();
+        return true;
+      }
+
+      return false;
+    }
+
+    @Override
+    public ObservableTransformer<ScanData, ScanData> match() {
+      return scanData -> scanData.filter(this::matches);
+    }
+  }
+
+  /** Counters over an interval. */
+  public static final class Snapshot {
+
+    private final long intervalMs;
+    private final long callbacks;
+    private final long batchCallbacks;
+    private final long batchResults;
+    private final long sampledOut;
+    private final long filteredOut;
+    private final long parsed;
+    private final long parseNanos;
+    private final long[] parseHistogram;
+    private final long scanStarts;
+    private final long scanStops;
+    private final long throttledStarts;
+    private final long throttleDelayMs;
+    private final Map<String, Long> deviceAdvertisements;
+    private final Map<String, Long> matcherEvaluations;
+    private final Map<String, Long> matches;
+
+    Snapshot(long intervalMs,
+             long callbacks,
+             long batchCallbacks,
+             long batchResults,
+             long sampledOut,
+             long filteredOut,
+             long parsed,
+             long parseNanos,
+             long[] parseHistogram,
+             long scanStarts,
+             long scanStops,
+             long throttledStarts,
+             long throttleDelayMs,
+             Map<String, Long> deviceAdvertisements,
+             Map<String, Long> matcherEvaluations,
+             Map<String, Long> matches) {
+      this.intervalMs = intervalMs;
+      this.callbacks = callbacks;
+      this.batchCallbacks = batchCallbacks;
+      this.batchResults = batchResults;
+      this.sampledOut = sampledOut;
+      this.filteredOut = filteredOut;
+      this.parsed = parsed;
+      this.parseNanos = parseNanos;
+      this.parseHistogram = parseHistogram;
+      this.scanStarts = scanStarts;
+      this.scanStops = scanStops;
+      this.throttledStarts = throttledStarts;
+      this.throttleDelayMs = throttleDelayMs;
+      this.deviceAdvertisements = Collections.unmodifiableMap(deviceAdvertisements);
+      this.matcherEvaluations = Collections.unmodifiableMap(matcherEvaluations);
+      this.matches = Collections.unmodifiableMap(matches);
+    }
+
+    /**
+     * Get the duration counted over.
+     *
+     * @return the duration in milliseconds.
+     */
+    public long getIntervalMs() {
+      return intervalMs;
+    }
+
+    /**
+     * Get the number of platform callbacks delivering a single advertisement.
+     *
+     * @return the number of callbacks.
+     */
+    public long getCallbacks() {
+      return callbacks;
+    }
+
+    /**
+     * Get the number of platform callbacks delivering a batch of advertisements.
+     *
+     * @return the number of batch callbacks.
+     */
+    public long getBatchCallbacks() {
+      return batchCallbacks;
+    }
+
+    /**
+     * Get the number of advertisements delivered in batches, before reduction per device.
+     *
+     * @return the number of batched advertisements.
+     */
+    public long getBatchResults() {
+      return batchResults;
+    }
+
+    /**
+     * Get the number of advertisements dropped by a sampler before they were parsed.
+     *
+     * @return the number of dropped advertisements.
+     */
+    public long getSampledOut() {
+      return sampledOut;
+    }
+
+    /**
+     * Get the number of advertisements that no subscriber could match, dropped before a ScanData
+     * was materialized.
+     *
+     * @return the number of dropped advertisements.
+     */
+    public long getFilteredOut() {
+      return filteredOut;
+    }
+
+    /**
+     * Get the number of advertisements parsed.
+     *
+     * @return the number of parsed advertisements.
+     */
+    public long getParsed() {
+      return parsed;
+    }
+
+    /**
+     * Get the total time spent parsing advertisements.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long getParseNanos() {
+      return parseNanos;
+    }
+
+    /**
+     * Get the histogram of parse times; see {@link #bucketUpperBoundNanos(int)}.
+     *
+     * @return a copy of the number of parses per bucket.
+     */
+    public long[] getParseHistogram() {
+      return parseHistogram.clone();
+    }
+
+    /**
+     * Get an upper bound of a parse time percentile.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the upper bound of the bucket holding the percentile in nanoseconds, or 0 if nothing
+     *         was parsed.
+     */
+    public long getParseNanosPercentile(double percentile) {
+      long rank = (long) Math.ceil(parsed * percentile / 100);
+      long count = 0;
+      for (int bucket = 0; bucket < parseHistogram.length; bucket++) {
+        count += parseHistogram[bucket];
+        if (count > 0 && count >= rank) {
+          return bucketUpperBoundNanos(bucket);
+        }
+      }
+
+      return 0;
+    }
+
+    /**
+     * Get the number of scan starts, including restarts when settings change.
+     *
+     * @return the number of starts.
+     */
+    public long getScanStarts() {
+      return scanStarts;
+    }
+
+    /**
+     * Get the number of scan stops.
+     *
+     * @return the number of stops.
+     */
+    public long getScanStops() {
+      return scanStops;
+    }
+
+    /**
+     * Get the number of scan starts delayed by throttling.
+     *
+     * @return the number of delayed starts.
+     */
+    public long getThrottledStarts() {
+      return throttledStarts;
+    }
+
+    /**
+     * Get the total delay imposed on scan starts by throttling.
+     *
+     * @return the delay in milliseconds.
+     */
+    public long getThrottleDelayMs() {
+      return throttleDelayMs;
+    }
+
+    /**
+     * Get the number of advertisements delivered per device address.
+     *
+     * @return the number of advertisements by address.
+     */
+    public Map<String, Long> getDeviceAdvertisements() {
+      return deviceAdvertisements;
+    }
+
+    /**
+     * Get the number of advertisements evaluated per instrumented matcher.
+     *
+     * @return the number of evaluations by matcher name.
+     */
+    public Map<String, Long> getMatcherEvaluations() {
+      return matcherEvaluations;
+    }
+
+    /**
+     * Get the number of advertisements matched per instrumented matcher.
+     *
+     * @return the number of matches by matcher name.
+     */
+    public Map<String, Long> getMatches() {
+      return matches;
+    }
+
+    /**
+     * Convert a count over this snapshot's interval into a rate.
+     *
+     * @param count a count of this snapshot.
+     * @return the count per second, or 0 if the interval is empty.
+     */
+    public double perSecond(long count) {
+      return intervalMs > 0 ? count * 1000.0 / intervalMs : 0;
+    }
+
+    // Counters accumulated since an earlier snapshot of the same metrics.
+    Snapshot since(Snapshot earlier) {
+      long[] histogram = new long[parseHistogram.length];
+      for (int i = 0; i < histogram.length; i++) {
+        histogram[i] = parseHistogram[i] - earlier.parseHistogram[i];
+      }
+
+      return new Snapshot(
+          intervalMs - earlier.intervalMs,
+          callbacks - earlier.callbacks,
+          batchCallbacks - earlier.batchCallbacks,
+          batchResults - earlier.batchResults,
+          sampledOut - earlier.sampledOut,
+          filteredOut - earlier.filteredOut,
+          parsed - earlier.parsed,
+          parseNanos - earlier.parseNanos,
+          histogram,
+          scanStarts - earlier.scanStarts,
+          scanStops - earlier.scanStops,
+          throttledStarts - earlier.throttledStarts,
+          throttleDelayMs - earlier.throttleDelayMs,
+          since(deviceAdvertisements, earlier.deviceAdvertisements),
+          since(matcherEvaluations, earlier.matcherEvaluations),
+          since(matches, earlier.matches));
+    }
+
+    // Devices forgotten and tracked again restart from zero, so a smaller count is taken as is.
+    private static Map<String, Long> since(Map<String, Long> counts, Map<String, Long> earlierCounts) {
+      Map<String, Long> delta = new LinkedHashMap<>();
+      for (Map.Entry<String, Long> entry : counts.entrySet()) {
+        Long earlier = earlierCounts.get(entry.getKey());
+        long count = entry.getValue();
+        delta.put(entry.getKey(), earlier != null && earlier <= count ? count - earlier : count);
+      }
+
+      return delta;
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot{"
+          + "intervalMs=" + intervalMs
+          + ", callbacks=" + callbacks
+          + ", batchCallbacks=" + batchCallbacks
+          + ", batchResults=" + batchResults
+          + ", sampledOut=" + sampledOut
+          + ", filteredOut=" + filteredOut
+          + ", parsed=" + parsed
+          + ", parseNanos=" + parseNanos
+          + ", scanStarts=" + scanStarts
+          + ", scanStops=" + scanStops
+          + ", throttledStarts=" + throttledStarts
+          + ", throttleDelayMs=" + throttleDelayMs
+          + ", devices=" + deviceAdvertisements.size()
+          + ", matches=" + matches
+          + '}';
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Union of the matchers of a Scanner's active subscribers, evaluated against a {@link ScanView} so
+ * that advertisements no subscriber can match are dropped before a ScanData is materialized.
+ *
+ * <p>Only {@link PredicateScanMatcher}s can be evaluated per advertisement; while any subscriber
+ * scans without a matcher or with another kind of matcher, every advertisement is accepted. The
+ * matchers of subscribers are still applied to the materialized ScanData, so a prefilter can only
+ * narrow what is delivered down to what subscribers would have matched anyway.
+ */
+final class ScanPrefilter {
+
+  private final Map<Object, PredicateScanMatcher> predicates = new HashMap<>();
+
+  // Null while any subscriber accepts every advertisement.
+  @Nullable
+  private volatile PredicateScanMatcher[] active;
+
+  /**
+   * Add the matcher of a subscriber.
+   *
+   * @param key the key of the subscriber.
+   * @param scanMatcher the matcher of the subscriber, or null if it scans without one.
+   */
+  synchronized void add(Object key, @Nullable ScanMatcher scanMatcher) {
+    if (scanMatcher instanceof ScanMetrics.InstrumentedPredicateScanMatcher) {
+      // Evaluate the underlying predicate, so that instrumented matchers only count their subscriber's evaluations.
+      scanMatcher = ((ScanMetrics.InstrumentedPredicateScanMatcher) scanMatcher).getPredicateScanMatcher();
+    }
+
+    predicates.put(key, scanMatcher instanceof PredicateScanMatcher ? (PredicateScanMatcher) scanMatcher : null);
+    update();
+  }
+
+  /**
+   * Remove the matcher of a subscriber.
+   *
+   * @param key the key of the subscriber.
+   */
+  synchronized void remove(Object key) {
+    predicates.remove(key);
+    update();
+  }
+
+  /**
+   * Check if any subscriber may match an advertisement.
+   *
+   * @param scanData the advertisement, typically a {@link ScanView}.
+   * @return true if the advertisement should be materialized.
+   */
+  boolean accepts(ScanData scanData) {
+    PredicateScanMatcher[] active = this.active;
+    if (active == null) {
+      return true;
+    }
+
+    for (PredicateScanMatcher predicate : active) {
+      if (predicate.matches(scanData)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void update() {
+    active = predicates.isEmpty() || predicates.containsValue(null)
+        ? null
+        : predicates.values().toArray(new PredicateScanMatcher[0]);
+  }
+}
@@ -0,0 +1,319 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Token bucket that limits how often scans are started across the process, as Android 7+ silently
+ * stops delivering results to an app that starts more than five scans in thirty seconds.
+ *
+ * <p>Each start takes a token, which is returned once the start is older than the refill interval,
+ * so that no more than capacity starts fall within any refill interval: the bucket is a sliding
+ * window over the latest starts. Start requests that find the bucket empty are queued and granted
+ * in order as tokens are returned. A request made while an earlier request of the same requester
+ * is still queued is merged into it, keeping its place in the queue, so a scanner whose settings
+ * change while it waits starts once with its latest settings rather than once per change. A
+ * queued request whose subscribers have all gone is dropped without taking a token.
+ *
+ * <p>Limits only hold if every scanner of the process shares one limiter, such as
+ * {@link #getInstance()}; requests may be made from any thread.
+ */
+public final class ScanStartLimiter {
+
+  /** Default number of starts that may be made in a burst. */
+  public static final int DEFAULT_CAPACITY = 4;
+  /** Default interval after which the token taken by a start is returned. */
+  public static final long DEFAULT_REFILL_INTERVAL_MS = 30 * 1000;
+
+  private static final ScanStartLimiter INSTANCE = new ScanStartLimiter();
+
+  private final int capacity;
+  private final long refillIntervalMs;
+  private final Map<Object, StartRequest> queue = new LinkedHashMap<>();
+  // Start times of the tokens taken, oldest first, in a ring.
+  private final long[] takenMs;
+
+  private int takenHead;
+  private int taken;
+  @Nullable
+  private Disposable refillTimer;
+
+  private long starts;
+  private long throttledStarts;
+  private long mergedRequests;
+  private long totalThrottleDelayMs;
+  private long maxThrottleDelayMs;
+
+  public ScanStartLimiter() {
+    this(DEFAULT_CAPACITY, DEFAULT_REFILL_INTERVAL_MS);
+  }
+
+  /**
+   * Construct a scan start limiter.
+   *
+   * @param capacity the number of starts that may be made in a burst.
+   * @param refillIntervalMs the interval after which the token taken by a start is returned.
+   */
+  public ScanStartLimiter(int capacity, long refillIntervalMs) {
+    if (capacity < 1 || refillIntervalMs <= 0) {
+      throw new IllegalArgumentException("Invalid capacity or refill interval: "
+          + capacity + ", " + refillIntervalMs);
+    }
+
+    this.capacity = capacity;
+    this.refillIntervalMs = refillIntervalMs;
+    this.takenMs = new long[capacity];
+  }
+
+  /**
+   * Get the limiter shared by the Scanners of the process.
+   *
+   * @return the shared limiter.
+   */
+  public static ScanStartLimiter getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Acquire permission to start a scan.
+   *
+   * @param requester the object starting the scan, which requests are merged by.
+   * @return Completable that completes once the scan may be started.
+   */
+  public Completable acquire(Object requester) {
+    return Completable.create(emitter -> {
+      boolean granted = false;
+      synchronized (this) {
+        long now = now();
+        refill(now);
+
+        StartRequest request = queue.get(requester);
+        if (request != null) {
+          mergedRequests++;
+        } else if (queue.isEmpty() && taken < capacity) {
+          take(now);
+          granted = true;
+        } else {
+          request = new StartRequest(now);
+          queue.put(requester, request);
+          scheduleRefill(now);
+        }
+
+        if (request != null) {
+          request.emitters.add(emitter);
+          final StartRequest cancelled = request;
+          emitter.setCancellable(() -> cancel(cancelled, emitter));
+        }
+      }
+
+      if (granted) {
+        emitter.onComplete();
+      }
+    });
+  }
+
+  /**
+   * Get the metrics of the limiter.
+   *
+   * @return the current metrics.
+   */
+  public synchronized Metrics metrics() {
+    return new Metrics(starts, throttledStarts, mergedRequests, queue.size(),
+        totalThrottleDelayMs, maxThrottleDelayMs);
+  }
+
+  private synchronized void cancel(StartRequest request, CompletableEmitter emitter) {
+    // The request keeps its place in the queue, for the requester to come back to.
+    request.emitters.remove(emitter);
+  }
+
+  private void grant() {
+    List<CompletableEmitter> granted = new ArrayList<>();
+    synchronized (this) {
+      refillTimer = null;
+      long now = now();
+      refill(now);
+
+      Iterator<StartRequest> iterator = queue.values().iterator();
+      while (taken < capacity && iterator.hasNext()) {
+        StartRequest request = iterator.next();
+        iterator.remove();
+        if (request.emitters.isEmpty()) {
+          continue;
+        }
+
+        take(now);
+        long delay = now - request.sinceMs;
+        throttledStarts++;
+        totalThrottleDelayMs += delay;
+        maxThrottleDelayMs = Math.max(maxThrottleDelayMs, delay);
+        granted.addAll(request.emitters);
+      }
+
+      if (!queue.isEmpty()) {
+        scheduleRefill(now);
+      }
+    }
+
+    for (CompletableEmitter emitter : granted) {
+      emitter.onComplete();
+    }
+  }
+
+  // Must hold the lock.
+  private void refill(long now) {
+    // A start exactly one interval ago still counts against the limit.
+    while (taken > 0 && now - takenMs[takenHead] > refillIntervalMs) {
+      takenHead = (takenHead + 1) % capacity;
+      taken--;
+    }
+  }
+
+  // Must hold the lock.
+  private void take(long now) {
+    takenMs[(takenHead + taken) % capacity] = now;
+    taken++;
+    starts++;
+  }
+
+  // Must hold the lock.
+  private void scheduleRefill(long now) {
+    if (refillTimer == null) {
+      long nextRefillMs = taken > 0 ? takenMs[takenHead] + refillIntervalMs + 1 : now;
+      refillTimer = Schedulers.computation()
+          .scheduleDirect(this::grant, Math.max(0, nextRefillMs - now), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static long now() {
+    return Schedulers.computation().now(TimeUnit.MILLISECONDS);
+  }
+
+  /** Subscribers waiting on the queued start of a requester. */
+  private static final class StartRequest {
+
+    private final long sinceMs;
+    private final List<CompletableEmitter> emitters = new ArrayList<>(1);
+
+    StartRequest(long sinceMs) {
+      this.sinceMs = sinceMs;
+    }
+  }
+
+  /** Scan starts granted by a {@link ScanStartLimiter}. */
+  public static final class Metrics {
+
+    private final long starts;
+    private final long throttledStarts;
+    private final long mergedRequests;
+    private final int queuedRequests;
+    private final long totalThrottleDelayMs;
+    private final long maxThrottleDelayMs;
+
+    Metrics(long starts,
+            long throttledStarts,
+            long mergedRequests,
+            int queuedRequests,
+            long totalThrottleDelayMs,
+            long maxThrottleDelayMs) {
+      this.starts = starts;
+      this.throttledStarts = throttledStarts;
+      this.mergedRequests = mergedRequests;
+      this.queuedRequests = queuedRequests;
+      this.totalThrottleDelayMs = totalThrottleDelayMs;
+      this.maxThrottleDelayMs = maxThrottleDelayMs;
+    }
+
+    /**
+     * Get the number of scan starts granted.
+     *
+     * @return the number of starts.
+     */
+    public long getStarts() {
+      return starts;
+    }
+
+    /**
+     * Get the number of scan starts that were delayed by the limiter.
+     *
+     * @return the number of delayed starts.
+     */
+    public long getThrottledStarts() {
+      return throttledStarts;
+    }
+
+    /**
+     * Get the number of requests merged into a queued request of the same requester.
+     *
+     * @return the number of merged requests.
+     */
+    public long getMergedRequests() {
+      return mergedRequests;
+    }
+
+    /**
+     * Get the number of requests waiting for a token.
+     *
+     * @return the number of queued requests.
+     */
+    public int getQueuedRequests() {
+      return queuedRequests;
+    }
+
+    /**
+     * Get the total delay imposed on delayed scan starts.
+     *
+     * @return the delay in milliseconds.
+     */
+    public long getTotalThrottleDelayMs() {
+      return totalThrottleDelayMs;
+    }
+
+    /**
+     * Get the longest delay imposed on a scan start.
+     *
+     * @return the delay in milliseconds.
+     */
+    public long getMaxThrottleDelayMs() {
+      return maxThrottleDelayMs;
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{"
+          + "starts=" + starts
+          + ", throttledStarts=" + throttledStarts
+          + ", mergedRequests=" + mergedRequests
+          + ", queuedRequests=" + queuedRequests
+          + ", totalThrottleDelayMs=" + totalThrottleDelayMs
+          + ", maxThrottleDelayMs=" + maxThrottleDelayMs
+          + '}';
+    }
+  }
+}
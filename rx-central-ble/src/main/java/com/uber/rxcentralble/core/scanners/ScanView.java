@@ -0,0 +1,183 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import android.annotation.TargetApi;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+
+/**
+ * Reusable, mutable ScanData over the raw result of a platform callback, against which matchers
+ * and samplers are evaluated before an immutable ScanData is materialized.
+ *
+ * <p>The advertisement is only parsed if an evaluation asks for it, and the parse is reused when
+ * the view is materialized. A rejected advertisement therefore allocates nothing beyond what its
+ * parse allocates, and nothing at all if it is not parsed. Matchers must not retain the view.
+ * Access must be serialized by the owning Scanner.
+ */
+final class ScanView implements ScanData {
+
+  private final ParsedAdvertisement.Factory parsedAdDataFactory;
+  private final ScanMetrics scanMetrics;
+
+  @Nullable
+  private ScanResult scanResult;
+  @Nullable
+  private BluetoothDevice bluetoothDevice;
+  private int rssi;
+  @Nullable
+  private byte[] rawAdData;
+
+  private boolean parsed;
+  @Nullable
+  private ParsedAdvertisement parsedAdvertisement;
+
+  ScanView(ParsedAdvertisement.Factory parsedAdDataFactory, ScanMetrics scanMetrics) {
+    this.parsedAdDataFactory = parsedAdDataFactory;
+    this.scanMetrics = scanMetrics;
+  }
+
+  /**
+   * Point the view at a result of a Lollipop or later callback.
+   *
+   * @param scanResult the scan result.
+   */
+  @TargetApi(21)
+  void reset(ScanResult scanResult) {
+    ScanRecord scanRecord = scanResult.getScanRecord();
+    reset(scanResult, scanResult.getDevice(), scanResult.getRssi(), scanRecord != null ? scanRecord.getBytes() : null);
+  }
+
+  /**
+   * Point the view at a result of a JellyBean callback.
+   *
+   * @param bluetoothDevice the advertising device.
+   * @param rssi the RSSI of the advertisement.
+   * @param rawAdData the raw advertisement.
+   */
+  void reset(BluetoothDevice bluetoothDevice, int rssi, @Nullable byte[] rawAdData) {
+    reset(null, bluetoothDevice, rssi, rawAdData);
+  }
+
+  private void reset(@Nullable ScanResult scanResult,
+                     BluetoothDevice bluetoothDevice,
+                     int rssi,
+                     @Nullable byte[] rawAdData) {
+    this.scanResult = scanResult;
+    this.bluetoothDevice = bluetoothDevice;
+    this.rssi = rssi;
+    this.rawAdData = rawAdData;
+    this.parsed = false;
+    this.parsedAdvertisement = null;
+  }
+
+  /**
+   * Get the raw advertisement of the current result.
+   *
+   * @return the raw advertisement, or null if absent.
+   */
+  @Nullable
+  byte[] getRawAdData() {
+    return rawAdData;
+  }
+
+  /**
+   * Materialize an immutable ScanData for the current result, parsing it if not parsed yet.
+   *
+   * @return the ScanData.
+   */
+  @TargetApi(21)
+  ScanData materialize() {
+    ParsedAdvertisement parsedAdvertisement = getParsedAdvertisement();
+    scanMetrics.recordDevice(bluetoothDevice.getAddress());
+
+    return scanResult != null
+        ? new LollipopScanData(scanResult, parsedAdvertisement)
+        : new JellyBeanScanData(bluetoothDevice, rssi, parsedAdvertisement);
+  }
+
+  @Override
+  public int getRssi() {
+    return rssi;
+  }
+
+  @Override
+  public BluetoothDevice getBluetoothDevice() {
+    return bluetoothDevice;
+  }
+
+  @Nullable
+  @Override
+  public ParsedAdvertisement getParsedAdvertisement() {
+    if (!parsed) {
+      parsed = true;
+      if (rawAdData != null) {
+        long parseStart = System.nanoTime();
+        parsedAdvertisement = parsedAdDataFactory.produce(bluetoothDevice.getAddress(), rawAdData);
+        scanMetrics.recordParse(System.nanoTime() - parseStart);
+      }
+    }
+
+    return parsedAdvertisement;
+  }
+
+  @Nullable
+  @Override
+  public ScanResult getScanResult() {
+    return scanResult;
+  }
+
+  @Override
+  public boolean isLegacy() {
+    return !isExtended() || scanResult.isLegacy();
+  }
+
+  @Override
+  public int getPrimaryPhy() {
+    return isExtended() ? scanResult.getPrimaryPhy() : ScanData.super.getPrimaryPhy();
+  }
+
+  @Override
+  public int getSecondaryPhy() {
+    return isExtended() ? scanResult.getSecondaryPhy() : ScanData.super.getSecondaryPhy();
+  }
+
+  @Override
+  public int getAdvertisingSid() {
+    return isExtended() ? scanResult.getAdvertisingSid() : ScanData.super.getAdvertisingSid();
+  }
+
+  @Override
+  public int getPeriodicAdvertisingInterval() {
+    return isExtended()
+        ? scanResult.getPeriodicAdvertisingInterval()
+        : ScanData.super.getPeriodicAdvertisingInterval();
+  }
+
+  @Override
+  public int getTxPower() {
+    return isExtended() ? scanResult.getTxPower() : ScanData.super.getTxPower();
+  }
+
+  private boolean isExtended() {
+    return scanResult != null && LollipopScanData.isExtendedSupported();
+  }
+}
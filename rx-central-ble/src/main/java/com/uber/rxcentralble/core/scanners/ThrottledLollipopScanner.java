@@ -22,32 +22,65 @@ import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
+import android.os.Build;
+import androidx.annotation.Nullable;
 
 import com.jakewharton.rxrelay2.BehaviorRelay;
 import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.HardwareScanMatcher;
 import com.uber.rxcentralble.ParsedAdvertisement;
 import com.uber.rxcentralble.RxCentralLogger;
 import com.uber.rxcentralble.ScanData;
 import com.uber.rxcentralble.ConnectionError;
+import com.uber.rxcentralble.ScanMatcher;
 import com.uber.rxcentralble.Scanner;
-import com.uber.rxcentralble.core.CoreParsedAdvertisement;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CachingParsedAdvertisementFactory;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.subjects.CompletableSubject;
 
 import static android.bluetooth.le.ScanSettings.SCAN_MODE_OPPORTUNISTIC;
 import static com.uber.rxcentralble.ConnectionError.Code.SCAN_FAILED;
+import static com.uber.rxcentralble.ScanData.PHY_LE_1M;
+import static com.uber.rxcentralble.ScanData.PHY_LE_CODED;
 
 /**
  * Core Scanner implementation for API >= 21 (i.e. Lollipop).  This implementation is thread safe.
+ *
+ * <p>Hardware filters of {@link HardwareScanMatcher}s passed to {@link #scan(ScanMatcher, int)}
+ * are merged across all active subscribers and installed on the Bluetooth controller; the scan is
+ * only restarted when the merged set of filters changes. If any subscriber scans without filters,
+ * the controller reports all advertisements.
+ *
+ * <p>If every active subscriber scans in batches via {@link #scanBatches(int, long)} and the
+ * controller supports offloaded batching, the report delay is set to the shortest requested delay
+ * and each batch is reduced to the strongest result per device before advertisements are parsed.
+ * Otherwise, batches are buffered in software from live results.
+ *
+ * <p>If any subscriber scans via {@link #scanExtended(ScanMatcher, int, int)} and the controller
+ * supports extended advertising, the scan reports extended advertisements as well as legacy ones,
+ * on the primary PHYs requested by subscribers.
+ *
+ * <p>Live advertisements are evaluated against the {@link com.uber.rxcentralble.PredicateScanMatcher}s
+ * of active subscribers on a reusable view before any ScanData is allocated for them, and dropped
+ * if none can match. They can then be sampled per device by an {@link AdvertisementSampler}
+ * before they are materialized.
+ *
+ * <p>Every scan start, including restarts when settings change, is acquired from a
+ * {@link ScanStartLimiter}, by default the one shared by all Scanners of the process.
  */
 @TargetApi(21)
 public class ThrottledLollipopScanner implements Scanner {
@@ -56,14 +89,21 @@ public class ThrottledLollipopScanner implements Scanner {
   public static final long PAUSE_INTERVAL_MS = 10 * 1000; // 10 seconds
   public static final long SCAN_WINDOW_MS = 30 * 1000; // 30 seconds
 
-  private final ParsedAdvertisement.Factory parsedAdDataFactory;
   private final ScanCallback scanCallback;
   private final Map<Long, Integer> scanModeMap = new HashMap<>();
   private final long maxScanDurationMs;
   private final long pauseIntervalMs;
-  private final Queue<Long> scanTimestamps = new ArrayDeque<>(5);
+  private final ScanStartLimiter scanStartLimiter;
+  private final ScanMetrics scanMetrics = new ScanMetrics();
+  private final ScanPrefilter scanPrefilter = new ScanPrefilter();
+  private final ScanView scanView;
+  @Nullable
+  private final AdvertisementSampler advertisementSampler;
   private final BehaviorRelay<Integer> scanModeRelay = BehaviorRelay.createDefault(SCAN_MODE_OPPORTUNISTIC);
+  private final Map<Object, ScanRequest> scanRequestMap = new HashMap<>();
+  private final BehaviorRelay<ScanRequest> scanRequestRelay = BehaviorRelay.createDefault(ScanRequest.UNFILTERED);
   private final PublishRelay<ScanData> scanDataRelay = PublishRelay.create();
+  private final PublishRelay<List<ScanData>> scanBatchRelay = PublishRelay.create();
   private final Observable<ScanData> sharedScanData;
 
   private final Object syncRoot = new Object();
@@ -71,28 +111,63 @@ public class ThrottledLollipopScanner implements Scanner {
   private CompletableSubject errorSubject;
 
   public ThrottledLollipopScanner() {
-    this(new CoreParsedAdvertisement.Factory(), ANDROID_7_MAX_SCAN_DURATION_MS, PAUSE_INTERVAL_MS);
+    this(new CachingParsedAdvertisementFactory(), ANDROID_7_MAX_SCAN_DURATION_MS, PAUSE_INTERVAL_MS);
   }
 
   public ThrottledLollipopScanner(ParsedAdvertisement.Factory parsedAdDataFactory,
                                   long maxScanDurationMs,
                                   long pauseIntervalMs) {
-    this.parsedAdDataFactory = parsedAdDataFactory;
+    this(parsedAdDataFactory, maxScanDurationMs, pauseIntervalMs, ScanStartLimiter.getInstance());
+  }
+
+  /**
+   * Construct a scanner.
+   *
+   * @param parsedAdDataFactory factory of parsed advertisements.
+   * @param maxScanDurationMs duration after which a scan is paused and restarted.
+   * @param pauseIntervalMs duration of the pause between scans.
+   * @param scanStartLimiter limiter that every scan start is acquired from.
+   */
+  public ThrottledLollipopScanner(ParsedAdvertisement.Factory parsedAdDataFactory,
+                                  long maxScanDurationMs,
+                                  long pauseIntervalMs,
+                                  ScanStartLimiter scanStartLimiter) {
+    this(parsedAdDataFactory, maxScanDurationMs, pauseIntervalMs, scanStartLimiter, null);
+  }
+
+  /**
+   * Construct a scanner.
+   *
+   * @param parsedAdDataFactory factory of parsed advertisements.
+   * @param maxScanDurationMs duration after which a scan is paused and restarted.
+   * @param pauseIntervalMs duration of the pause between scans.
+   * @param scanStartLimiter limiter that every scan start is acquired from.
+   * @param advertisementSampler sampler applied to live advertisements before they are parsed, or
+   *                             null to deliver every advertisement.
+   */
+  public ThrottledLollipopScanner(ParsedAdvertisement.Factory parsedAdDataFactory,
+                                  long maxScanDurationMs,
+                                  long pauseIntervalMs,
+                                  ScanStartLimiter scanStartLimiter,
+                                  @Nullable AdvertisementSampler advertisementSampler) {
+    this.scanView = new ScanView(parsedAdDataFactory, scanMetrics);
     this.scanCallback = getScanCallback();
     this.maxScanDurationMs = maxScanDurationMs;
     this.pauseIntervalMs = pauseIntervalMs;
+    this.scanStartLimiter = scanStartLimiter;
+    this.advertisementSampler = advertisementSampler;
 
     this.errorSubject = CompletableSubject.create();
-    this.sharedScanData = scanModeRelay
-            .switchMap(nextScanMode -> Observable.fromCallable(this::calculateDelay)
-                    .switchMap(delay -> Observable.timer(delay, TimeUnit.MILLISECONDS))
-                    .map(proceed -> nextScanMode))
+    this.sharedScanData = Observable.combineLatest(
+                    scanModeRelay,
+                    scanRequestRelay.distinctUntilChanged(),
+                    ScanParameters::new)
             .distinctUntilChanged()
-            .switchMap(nextScanMode -> Observable.concat(
+            .switchMap(next -> acquireStart().andThen(Observable.concat(
                     // Start a (potentially delayed) throttled scan.
-                    throttledScan(scanDataRelay, nextScanMode),
+                    throttledScan(scanDataRelay, next),
                     // Repeat pause followed by throttle scan.
-                    intervalScan(scanDataRelay, nextScanMode)))
+                    intervalScan(scanDataRelay, next))))
             .doFinally(this::cleanup)
             .share();
   }
@@ -104,44 +179,121 @@ public class ThrottledLollipopScanner implements Scanner {
 
   @Override
   public Observable<ScanData> scan(final int scanMode) {
+    return scan(scanMode, ScanRequest.UNFILTERED, null);
+  }
+
+  @Override
+  public Observable<ScanData> scan(ScanMatcher scanMatcher, int scanMode) {
+    return scan(scanMode, new ScanRequest(hardwareFilters(scanMatcher), 0), scanMatcher)
+            .compose(scanMatcher.match());
+  }
+
+  @Override
+  public Observable<ScanData> scanExtended(ScanMatcher scanMatcher, int scanMode, int phy) {
+    return scan(scanMode, new ScanRequest(hardwareFilters(scanMatcher), 0, false, phy), scanMatcher)
+            .compose(scanMatcher.match());
+  }
+
+  @Override
+  public Observable<List<ScanData>> scanBatches(int scanMode, long reportDelayMs) {
+    if (reportDelayMs <= 0) {
+      throw new IllegalArgumentException("Invalid report delay: " + reportDelayMs);
+    }
+
+    return Observable.merge(
+            // Batches offloaded to the controller.
+            scanBatchRelay,
+            // Batches buffered in software, if any subscriber requires live results.
+            scan(scanMode, new ScanRequest(Collections.emptySet(), reportDelayMs), null)
+                    .buffer(reportDelayMs, TimeUnit.MILLISECONDS)
+                    .filter(batch -> !batch.isEmpty())
+                    .map(Utils::deduplicateByAddress));
+  }
+
+  /**
+   * Get the metrics of this scanner. Wrap matchers with {@link ScanMetrics#instrument(String,
+   * ScanMatcher)} to count their matches as well.
+   *
+   * @return the metrics.
+   */
+  public ScanMetrics getMetrics() {
+    return scanMetrics;
+  }
+
+  private static Set<ScanFilter> hardwareFilters(ScanMatcher scanMatcher) {
+    return scanMatcher instanceof HardwareScanMatcher
+            ? new HashSet<>(((HardwareScanMatcher) scanMatcher).hardwareFilters())
+            : Collections.emptySet();
+  }
+
+  private Observable<ScanData> scan(final int scanMode,
+                                    final ScanRequest scanRequest,
+                                    @Nullable final ScanMatcher scanMatcher) {
     final long timestamp = System.currentTimeMillis();
+    final Object requestKey = new Object();
 
     return Observable.merge(sharedScanData, getErrorSubject().toObservable())
-            .doOnSubscribe(d -> checkForFasterScanMode(timestamp, scanMode))
-            .doFinally(() -> checkForSlowerScanMode(timestamp));
+            .doOnSubscribe(d -> {
+              scanPrefilter.add(requestKey, scanMatcher);
+              addScanRequest(requestKey, scanRequest);
+              checkForFasterScanMode(timestamp, scanMode);
+            })
+            .doFinally(() -> {
+              scanPrefilter.remove(requestKey);
+              removeScanRequest(requestKey);
+              checkForSlowerScanMode(timestamp);
+            });
   }
 
   // On Android 7, scans that go longer than 30 minutes are converted to opportunistic scans.
   // Work around this by ensuring a scan operation has a max duration of 29 minutes.
-  private Observable<ScanData> throttledScan(Observable<ScanData> scanData, final int scanMode) {
+  private Observable<ScanData> throttledScan(Observable<ScanData> scanData, final ScanParameters parameters) {
     return scanData
               .takeUntil(Observable.timer(maxScanDurationMs, TimeUnit.MILLISECONDS))
-              .doOnSubscribe(d -> startScan(scanMode))
-              .doFinally(() -> {
-                scanTimestamps.add(System.currentTimeMillis());
-                stopScan();
-              });
+              .doOnSubscribe(d -> startScan(parameters))
+              .doFinally(this::stopScan);
   }
 
-  private Observable<ScanData> intervalScan(Observable<ScanData> scanData, final int scanMode) {
+  private Observable<ScanData> intervalScan(Observable<ScanData> scanData, final ScanParameters parameters) {
     final long totalInterval = maxScanDurationMs + pauseIntervalMs;
     return Observable.interval(0, totalInterval, TimeUnit.MILLISECONDS)
             // paused
             .switchMap(t1 -> Observable.timer(pauseIntervalMs, TimeUnit.MILLISECONDS))
             // scanning
-            .switchMap(t2 -> throttledScan(scanData, scanMode));
+            .switchMap(t2 -> acquireStart().andThen(throttledScan(scanData, parameters)));
   }
 
-  private void startScan(int scanMode) {
+  private Completable acquireStart() {
+    return scanMetrics.recordStart(scanStartLimiter.acquire(this));
+  }
+
+  private void startScan(ScanParameters parameters) {
     BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
     if (adapter != null && adapter.isEnabled()) {
-      // Add a dummy filter to avoid Android 8.1+ enforcement of filters during background isScanning.
-      List<ScanFilter> filters = new ArrayList<>();
-      ScanFilter.Builder scanFilterBuilder = new ScanFilter.Builder();
-      filters.add(scanFilterBuilder.build());
+      List<ScanFilter> filters = new ArrayList<>(parameters.scanRequest.scanFilters);
+      if (filters.isEmpty()) {
+        // Add a dummy filter to avoid Android 8.1+ enforcement of filters during background isScanning.
+        ScanFilter.Builder scanFilterBuilder = new ScanFilter.Builder();
+        filters.add(scanFilterBuilder.build());
+      }
 
       ScanSettings.Builder settingsBuilder = new ScanSettings.Builder();
-      settingsBuilder.setScanMode(scanMode);
+      settingsBuilder.setScanMode(parameters.scanMode);
+      if (parameters.scanRequest.reportDelayMs > 0 && adapter.isOffloadedScanBatchingSupported()) {
+        settingsBuilder.setReportDelay(parameters.scanRequest.reportDelayMs);
+      }
+
+      if (!parameters.scanRequest.legacy
+              && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+              && adapter.isLeExtendedAdvertisingSupported()) {
+        int phy = parameters.scanRequest.phy;
+        if (phy == PHY_LE_CODED && !adapter.isLeCodedPhySupported()) {
+          phy = PHY_LE_1M;
+        }
+
+        settingsBuilder.setLegacy(false);
+        settingsBuilder.setPhy(phy);
+      }
 
       BluetoothLeScanner bleScanner = adapter.getBluetoothLeScanner();
       if (bleScanner != null) {
@@ -167,6 +319,8 @@ public class ThrottledLollipopScanner implements Scanner {
   }
 
   private void stopScan() {
+    scanMetrics.recordStop();
+
     BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
     if (adapter != null && adapter.isEnabled()) {
       BluetoothLeScanner bleScanner = adapter.getBluetoothLeScanner();
@@ -184,24 +338,6 @@ public class ThrottledLollipopScanner implements Scanner {
     }
   }
 
-  private long calculateDelay() {
-    long currentTime = System.currentTimeMillis();
-
-    // Remove all timestamps from the queue that are outside the 30 second scan window.
-    while ((scanTimestamps.peek() != null)
-            && (currentTime - scanTimestamps.peek() > SCAN_WINDOW_MS)) {
-      scanTimestamps.remove();
-    }
-
-    // If we have 4 timestamps inside the 30 second scan window, return a delay such that
-    // the the next scan would occur outisde that 30 second window.
-    if (scanTimestamps.size() == 4) {
-      return SCAN_WINDOW_MS - (currentTime -  scanTimestamps.peek());
-    } else {
-      return 0;
-    }
-  }
-
   private CompletableSubject getErrorSubject() {
     synchronized (syncRoot) {
       if (errorSubject.hasThrowable()) {
@@ -215,6 +351,54 @@ public class ThrottledLollipopScanner implements Scanner {
   private void cleanup() {
     scanModeRelay.accept(SCAN_MODE_OPPORTUNISTIC);
     scanModeMap.clear();
+
+    synchronized (syncRoot) {
+      scanRequestMap.clear();
+      scanRequestRelay.accept(ScanRequest.UNFILTERED);
+    }
+  }
+
+  private void addScanRequest(Object key, ScanRequest scanRequest) {
+    synchronized (syncRoot) {
+      scanRequestMap.put(key, scanRequest);
+      scanRequestRelay.accept(mergeScanRequests());
+    }
+  }
+
+  private void removeScanRequest(Object key) {
+    synchronized (syncRoot) {
+      if (scanRequestMap.remove(key) != null) {
+        scanRequestRelay.accept(mergeScanRequests());
+      }
+    }
+  }
+
+  // An empty set means no filtering; a single unfiltered subscriber requires every advertisement.
+  // Likewise, a single live subscriber requires results without a report delay, and a single
+  // extended subscriber requires extended advertisements. Legacy advertisements are on the 1M PHY,
+  // and subscribers on different PHYs require all of them.
+  private ScanRequest mergeScanRequests() {
+    Set<ScanFilter> scanFilters = new HashSet<>();
+    boolean unfiltered = false;
+    long reportDelayMs = Long.MAX_VALUE;
+    boolean legacy = true;
+    int phy = -1;
+    for (ScanRequest scanRequest : scanRequestMap.values()) {
+      unfiltered |= scanRequest.scanFilters.isEmpty();
+      if (!unfiltered) {
+        scanFilters.addAll(scanRequest.scanFilters);
+      }
+
+      reportDelayMs = Math.min(reportDelayMs, scanRequest.reportDelayMs);
+      legacy &= scanRequest.legacy;
+      phy = phy == -1 || phy == scanRequest.phy ? scanRequest.phy : PHY_LE_ALL_SUPPORTED;
+    }
+
+    return new ScanRequest(
+            unfiltered ? Collections.emptySet() : scanFilters,
+            reportDelayMs == Long.MAX_VALUE ? 0 : reportDelayMs,
+            legacy,
+            phy == -1 ? PHY_LE_1M : phy);
   }
 
   private void checkForFasterScanMode(long timestamp, int scanMode) {
@@ -250,6 +434,7 @@ public class ThrottledLollipopScanner implements Scanner {
                   + " | RSSI: " + scanResult.getRssi());
         }
 
+        scanMetrics.recordCallback();
         handleScanData(scanResult);
       }
 
@@ -264,25 +449,138 @@ public class ThrottledLollipopScanner implements Scanner {
 
       @Override
       public void onBatchScanResults(List<ScanResult> results) {
-        for (ScanResult scanResult : results) {
-          if (RxCentralLogger.isDebug()) {
+        scanMetrics.recordBatchCallback(results.size());
+        if (RxCentralLogger.isDebug()) {
+          for (ScanResult scanResult : results) {
             RxCentralLogger.debug("onBatchScanResults - BD_ADDR: "
                     + scanResult.getDevice().getAddress() + " | RSSI: " + scanResult.getRssi());
           }
+        }
 
-          handleScanData(scanResult);
+        // Keep the strongest result per device, so that each device is only parsed once per batch.
+        Collection<ScanResult> strongest = strongestPerDevice(results);
+        List<ScanData> batch = new ArrayList<>(strongest.size());
+        synchronized (scanView) {
+          for (ScanResult scanResult : strongest) {
+            scanView.reset(scanResult);
+            batch.add(scanView.materialize());
+          }
         }
+
+        scanBatchRelay.accept(batch);
       }
 
+      // Sampling runs on the raw payload before matching, which may parse; only survivors are materialized.
       private void handleScanData(ScanResult scanResult) {
-        ParsedAdvertisement parsedAdvertisement = null;
-        if (scanResult.getScanRecord() != null) {
-          parsedAdvertisement = parsedAdDataFactory.produce(scanResult.getScanRecord().getBytes());
+        ScanData scanData;
+        synchronized (scanView) {
+          scanView.reset(scanResult);
+          if (advertisementSampler != null && !advertisementSampler.sample(
+                  scanResult.getDevice().getAddress(), scanResult.getRssi(), scanView.getRawAdData())) {
+            scanMetrics.recordSampledOut();
+            return;
+          }
+
+          if (!scanPrefilter.accepts(scanView)) {
+            scanMetrics.recordFilteredOut();
+            return;
+          }
+
+          scanData = scanView.materialize();
         }
 
-        ScanData scanData = new LollipopScanData(scanResult, parsedAdvertisement);
         scanDataRelay.accept(scanData);
       }
     };
   }
+
+  /**
+   * Reduce scan results to the strongest result per device, in order of first appearance.
+   *
+   * @param results scan results, possibly holding several results per device.
+   * @return the strongest result of each device.
+   */
+  static Collection<ScanResult> strongestPerDevice(List<ScanResult> results) {
+    Map<String, ScanResult> strongest = new LinkedHashMap<>();
+    for (ScanResult scanResult : results) {
+      String address = scanResult.getDevice().getAddress();
+      ScanResult prior = strongest.get(address);
+      if (prior == null || scanResult.getRssi() >= prior.getRssi()) {
+        strongest.put(address, scanResult);
+      }
+    }
+
+    return strongest.values();
+  }
+
+  /** Settings of a single scan; a change restarts the scan. */
+  private static final class ScanParameters {
+
+    private final int scanMode;
+    private final ScanRequest scanRequest;
+
+    ScanParameters(int scanMode, ScanRequest scanRequest) {
+      this.scanMode = scanMode;
+      this.scanRequest = scanRequest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof ScanParameters) {
+        ScanParameters other = (ScanParameters) o;
+        return other.scanMode == scanMode && other.scanRequest.equals(scanRequest);
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * scanMode + scanRequest.hashCode();
+    }
+  }
+
+  /**
+   * Hardware filters, report delay and advertisement types requested by a subscriber, or merged
+   * across subscribers.
+   */
+  private static final class ScanRequest {
+
+    static final ScanRequest UNFILTERED = new ScanRequest(Collections.emptySet(), 0);
+
+    private final Set<ScanFilter> scanFilters;
+    private final long reportDelayMs;
+    private final boolean legacy;
+    private final int phy;
+
+    ScanRequest(Set<ScanFilter> scanFilters, long reportDelayMs) {
+      this(scanFilters, reportDelayMs, true, PHY_LE_1M);
+    }
+
+    ScanRequest(Set<ScanFilter> scanFilters, long reportDelayMs, boolean legacy, int phy) {
+      this.scanFilters = scanFilters;
+      this.reportDelayMs = reportDelayMs;
+      this.legacy = legacy;
+      this.phy = phy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof ScanRequest) {
+        ScanRequest other = (ScanRequest) o;
+        return other.reportDelayMs == reportDelayMs
+                && other.legacy == legacy
+                && other.phy == phy
+                && other.scanFilters.equals(scanFilters);
+      }
+
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = 31 * scanFilters.hashCode() + (int) (reportDelayMs ^ (reportDelayMs >>> 32));
+      return 31 * (31 * result + (legacy ? 1 : 0)) + phy;
+    }
+  }
 }
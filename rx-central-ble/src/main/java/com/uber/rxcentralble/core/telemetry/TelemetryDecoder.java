@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.telemetry;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Decodes a reading from the manufacturer data or service data a device advertises.
+ *
+ * @param <T> the type of reading.
+ */
+public interface TelemetryDecoder<T> {
+
+  /**
+   * Decode a reading.
+   *
+   * @param payload manufacturer data following the company identifier, or service data following
+   *                the service UUID. The array must not be modified.
+   * @return the reading, or null if the payload holds no reading.
+   */
+  @Nullable
+  T decode(byte[] payload);
+
+  /**
+   * Get a key that changes whenever the payload carries a new reading; a payload is only decoded
+   * when its key differs from that of the last payload of the device. The default hashes the
+   * whole payload, and decoders of payloads with a sequence number should return the sequence
+   * number instead.
+   *
+   * @param payload the payload.
+   * @return the change key.
+   */
+  default int changeKey(byte[] payload) {
+    return Arrays.hashCode(payload);
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.telemetry;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Decodes readings that devices broadcast in their advertisements, so that sensors can be read
+ * without connecting to them.
+ *
+ * <p>Decoders are registered per manufacturer ID or service data UUID, and each registration
+ * returns its own stream of readings. A device's payload is only decoded when its change key
+ * differs from that of the last payload of the device, so a reading is emitted once however often
+ * it is advertised; repeats of a cached {@link ParsedAdvertisement} are recognized without even
+ * reading the payload. Change keys are kept for a bounded number of devices per registration, the
+ * longest tracked device being forgotten first.
+ *
+ * <pre>{@code
+ * TelemetryPipeline pipeline = new TelemetryPipeline(scanner.scan());
+ * pipeline.manufacturerData(MANUFACTURER_ID, payload -> decodeTemperature(payload))
+ *     .observeOn(AndroidSchedulers.mainThread())
+ *     .subscribe(reading -> display(reading.getAddress(), reading.getValue()));
+ * }</pre>
+ *
+ * <p>Readings are buffered up to a bound for slow subscribers, beyond which the oldest readings are
+ * dropped. All registrations share one subscription to the ScanData stream.
+ */
+public class TelemetryPipeline {
+
+  public static final int DEFAULT_MAX_DEVICES = 256;
+  public static final int DEFAULT_BUFFER_SIZE = 128;
+
+  private final Observable<ScanData> sharedScanData;
+  private final int maxDevices;
+  private final int bufferSize;
+  private final AtomicLong droppedReadings = new AtomicLong();
+
+  public TelemetryPipeline(Observable<ScanData> scanData) {
+    this(scanData, DEFAULT_MAX_DEVICES, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Construct a telemetry pipeline.
+   *
+   * @param scanData stream of ScanData to decode readings from.
+   * @param maxDevices maximum number of devices to keep change keys for, per registration.
+   * @param bufferSize maximum number of readings buffered per subscriber.
+   */
+  public TelemetryPipeline(Observable<ScanData> scanData, int maxDevices, int bufferSize) {
+    if (maxDevices <= 0 || bufferSize <= 0) {
+      throw new IllegalArgumentException("Invalid device or buffer limit: " + maxDevices + ", " + bufferSize);
+    }
+
+    this.sharedScanData = scanData.share();
+    this.maxDevices = maxDevices;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Decode readings from manufacturer data.
+   *
+   * @param manufacturerId the company identifier of the manufacturer data.
+   * @param decoder decoder of the manufacturer data following the company identifier.
+   * @param <T> the type of reading.
+   * @return stream of readings.
+   */
+  public <T> Flowable<TelemetryReading<T>> manufacturerData(int manufacturerId, TelemetryDecoder<T> decoder) {
+    return readings(advertisement -> advertisement.getManufacturerData(manufacturerId), decoder);
+  }
+
+  /**
+   * Decode readings from service data.
+   *
+   * @param serviceUuid the UUID of the service data.
+   * @param decoder decoder of the service data following the service UUID.
+   * @param <T> the type of reading.
+   * @return stream of readings.
+   */
+  public <T> Flowable<TelemetryReading<T>> serviceData(UUID serviceUuid, TelemetryDecoder<T> decoder) {
+    return readings(advertisement -> {
+      ByteBuffer serviceData = advertisement.getServiceData(serviceUuid);
+      if (serviceData == null) {
+        return null;
+      }
+
+      byte[] payload = new byte[serviceData.remaining()];
+      serviceData.get(payload);
+      return payload;
+    }, decoder);
+  }
+
+  /**
+   * Get the number of readings dropped because a subscriber fell behind.
+   *
+   * @return the number of dropped readings.
+   */
+  public long getDroppedReadings() {
+    return droppedReadings.get();
+  }
+
+  private <T> Flowable<TelemetryReading<T>> readings(PayloadSource source, TelemetryDecoder<T> decoder) {
+    return Flowable.defer(() -> {
+      ChangeTracker<T> tracker = new ChangeTracker<>(source, decoder);
+      return sharedScanData
+          .concatMapIterable(tracker::process)
+          .toFlowable(BackpressureStrategy.MISSING)
+          .onBackpressureBuffer(
+              bufferSize,
+              droppedReadings::incrementAndGet,
+              BackpressureOverflowStrategy.DROP_OLDEST);
+    });
+  }
+
+  /** Locates the payload of a registration in an advertisement. */
+  private interface PayloadSource {
+
+    @Nullable
+    byte[] payload(ParsedAdvertisement advertisement);
+  }
+
+  /**
+   * Change keys of the devices seen by one subscription. Devices are forgotten in the order they
+   * were first tracked.
+   */
+  private final class ChangeTracker<T> {
+
+    private final PayloadSource source;
+    private final TelemetryDecoder<T> decoder;
+    private final SlotTable slots = new SlotTable(maxDevices);
+    private final int[] changeKeys = new int[maxDevices];
+    private final ParsedAdvertisement[] advertisements = new ParsedAdvertisement[maxDevices];
+
+    ChangeTracker(PayloadSource source, TelemetryDecoder<T> decoder) {
+      this.source = source;
+      this.decoder = decoder;
+    }
+
+    List<TelemetryReading<T>> process(ScanData scanData) {
+      ParsedAdvertisement advertisement = scanData.getParsedAdvertisement();
+      if (advertisement == null) {
+        return Collections.emptyList();
+      }
+
+      String address = scanData.getBluetoothDevice().getAddress();
+      long packedAddress = Utils.addressToLong(address);
+      int slot = slots.get(packedAddress);
+      if (slot != SlotTable.MISSING && advertisements[slot] == advertisement) {
+        return Collections.emptyList();
+      }
+
+      byte[] payload = source.payload(advertisement);
+      if (payload == null) {
+        return Collections.emptyList();
+      }
+
+      int changeKey = decoder.changeKey(payload);
+      if (slot == SlotTable.MISSING) {
+        slot = slots.addEvicting(packedAddress);
+      } else if (changeKeys[slot] == changeKey) {
+        advertisements[slot] = advertisement;
+        return Collections.emptyList();
+      }
+
+      advertisements[slot] = advertisement;
+      changeKeys[slot] = changeKey;
+
+      T value = decoder.decode(payload);
+      if (value == null) {
+        return Collections.emptyList();
+      }
+
+      return Collections.singletonList(new TelemetryReading<>(
+          address, scanData.getRssi(), Schedulers.computation().now(TimeUnit.MILLISECONDS), value));
+    }
+  }
+}
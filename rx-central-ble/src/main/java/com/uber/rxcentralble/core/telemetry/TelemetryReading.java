@@ -0,0 +1,82 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.telemetry;
+
+/**
+ * Immutable reading decoded from the advertisement of a device.
+ *
+ * @param <T> the type of reading.
+ */
+public final class TelemetryReading<T> {
+
+  private final String address;
+  private final int rssi;
+  private final long timestampMs;
+  private final T value;
+
+  TelemetryReading(String address, int rssi, long timestampMs, T value) {
+    this.address = address;
+    this.rssi = rssi;
+    this.timestampMs = timestampMs;
+    this.value = value;
+  }
+
+  /**
+   * Get the address of the device.
+   *
+   * @return the address.
+   */
+  public String getAddress() {
+    return address;
+  }
+
+  /**
+   * Get the RSSI of the advertisement the reading was decoded from.
+   *
+   * @return the RSSI.
+   */
+  public int getRssi() {
+    return rssi;
+  }
+
+  /**
+   * Get the time the advertisement was received, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getTimestampMs() {
+    return timestampMs;
+  }
+
+  /**
+   * Get the decoded reading.
+   *
+   * @return the reading.
+   */
+  public T getValue() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "TelemetryReading{"
+        + "address=" + address
+        + ", rssi=" + rssi
+        + ", timestampMs=" + timestampMs
+        + ", value=" + value
+        + '}';
+  }
+}
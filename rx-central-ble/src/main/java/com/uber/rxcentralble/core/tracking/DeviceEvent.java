@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+/** A change to the set of devices held in a {@link DeviceTable}. */
+public final class DeviceEvent {
+
+  /** Type of change. */
+  public enum Type {
+    /** The device was seen for the first time, or for the first time since it was lost. */
+    NEW,
+    /** The device's advertisement payload changed, or its RSSI moved past the change threshold. */
+    UPDATED,
+    /** The device has not been seen within the TTL, or was evicted to make room. */
+    LOST
+  }
+
+  private final Type type;
+  private final DeviceRecord record;
+
+  DeviceEvent(Type type, DeviceRecord record) {
+    this.type = type;
+    this.record = record;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get the device record at the time of the event.
+   *
+   * @return the DeviceRecord.
+   */
+  public DeviceRecord getRecord() {
+    return record;
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+
+/** Immutable snapshot of a device held in a {@link DeviceTable}. */
+public final class DeviceRecord {
+
+  private final ScanData scanData;
+  private final long firstSeenMs;
+  private final long lastSeenMs;
+  private final int advertisementCount;
+  private final int rssiMin;
+  private final int rssiMax;
+  private final float rssiAverage;
+
+  DeviceRecord(
+      ScanData scanData,
+      long firstSeenMs,
+      long lastSeenMs,
+      int advertisementCount,
+      int rssiMin,
+      int rssiMax,
+      float rssiAverage) {
+    this.scanData = scanData;
+    this.firstSeenMs = firstSeenMs;
+    this.lastSeenMs = lastSeenMs;
+    this.advertisementCount = advertisementCount;
+    this.rssiMin = rssiMin;
+    this.rssiMax = rssiMax;
+    this.rssiAverage = rssiAverage;
+  }
+
+  /**
+   * Get the latest ScanData received from the device.
+   *
+   * @return the latest ScanData.
+   */
+  public ScanData getScanData() {
+    return scanData;
+  }
+
+  /**
+   * Get the latest parsed advertisement received from the device.
+   *
+   * @return the ParsedAdvertisement.
+   */
+  @Nullable
+  public ParsedAdvertisement getParsedAdvertisement() {
+    return scanData.getParsedAdvertisement();
+  }
+
+  /**
+   * Get the device address.
+   *
+   * @return the address.
+   */
+  public String getAddress() {
+    return scanData.getBluetoothDevice().getAddress();
+  }
+
+  /**
+   * Get the time the device was first seen, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getFirstSeenMs() {
+    return firstSeenMs;
+  }
+
+  /**
+   * Get the time the device was last seen, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getLastSeenMs() {
+    return lastSeenMs;
+  }
+
+  /**
+   * Get the number of advertisements received from the device.
+   *
+   * @return the advertisement count.
+   */
+  public int getAdvertisementCount() {
+    return advertisementCount;
+  }
+
+  /**
+   * Get the latest RSSI.
+   *
+   * @return the RSSI.
+   */
+  public int getRssi() {
+    return scanData.getRssi();
+  }
+
+  /**
+   * Get the weakest RSSI received from the device.
+   *
+   * @return the RSSI.
+   */
+  public int getRssiMin() {
+    return rssiMin;
+  }
+
+  /**
+   * Get the strongest RSSI received from the device.
+   *
+   * @return the RSSI.
+   */
+  public int getRssiMax() {
+    return rssiMax;
+  }
+
+  /**
+   * Get the exponential moving average of the RSSI received from the device.
+   *
+   * @return the average RSSI.
+   */
+  public float getRssiAverage() {
+    return rssiAverage;
+  }
+}
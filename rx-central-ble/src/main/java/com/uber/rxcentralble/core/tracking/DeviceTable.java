@@ -0,0 +1,274 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.schedulers.Schedulers;
+
+import static com.uber.rxcentralble.core.tracking.TrackingUtils.payloadChanged;
+
+/**
+ * Bounded table of devices discovered by a {@link com.uber.rxcentralble.Scanner}, keyed by device
+ * address, which turns the stream of advertisements into a stream of {@link DeviceEvent}s.
+ *
+ * <p>An advertisement from a known device that changes nothing allocates nothing and emits
+ * nothing. Devices are kept in least recently seen order; when the table is full the least
+ * recently seen device is evicted, and a single periodic sweep expires devices not seen within the
+ * TTL.
+ *
+ * <pre>{@code
+ * scanner.scan().compose(deviceTable.track())
+ * }</pre>
+ *
+ * <p>A table tracks one subscription at a time and is cleared when that subscription ends.
+ */
+public class DeviceTable {
+
+  public static final int DEFAULT_CAPACITY = 256;
+  public static final long DEFAULT_TTL_MS = 10000;
+  public static final int DEFAULT_RSSI_CHANGE_DB = 10;
+
+  private static final float RSSI_AVERAGE_WEIGHT = 0.25f;
+  private static final int NONE = -1;
+  private static final Object SWEEP = new Object();
+
+  private final long ttlMs;
+  private final int rssiChangeDb;
+
+  private final SlotTable slots;
+  private final long[] firstSeenMs;
+  private final long[] lastSeenMs;
+  private final int[] counts;
+  private final int[] rssiMin;
+  private final int[] rssiMax;
+  private final float[] rssiAverage;
+  private final int[] reportedRssi;
+  private final ScanData[] scanData;
+  private final int[] newer;
+  private final int[] older;
+
+  private int newest = NONE;
+  private int oldest = NONE;
+
+  public DeviceTable() {
+    this(DEFAULT_CAPACITY, DEFAULT_TTL_MS, DEFAULT_RSSI_CHANGE_DB);
+  }
+
+  /**
+   * Construct a device table.
+   *
+   * @param capacity maximum number of devices held.
+   * @param ttlMs time after which a device that has not been seen is lost.
+   * @param rssiChangeDb change in RSSI since the last event for a device that triggers an update.
+   */
+  public DeviceTable(int capacity, long ttlMs, int rssiChangeDb) {
+    if (capacity <= 0 || ttlMs <= 0) {
+      throw new IllegalArgumentException("Invalid capacity or TTL: " + capacity + ", " + ttlMs);
+    }
+
+    this.ttlMs = ttlMs;
+    this.rssiChangeDb = rssiChangeDb;
+
+    slots = new SlotTable(capacity);
+    firstSeenMs = new long[capacity];
+    lastSeenMs = new long[capacity];
+    counts = new int[capacity];
+    rssiMin = new int[capacity];
+    rssiMax = new int[capacity];
+    rssiAverage = new float[capacity];
+    reportedRssi = new int[capacity];
+    scanData = new ScanData[capacity];
+    newer = new int[capacity];
+    older = new int[capacity];
+    clear();
+  }
+
+  /**
+   * Track devices from a stream of ScanData.
+   *
+   * @return transformer of ScanData into device events.
+   */
+  public ObservableTransformer<ScanData, DeviceEvent> track() {
+    long sweepIntervalMs = Math.max(1, ttlMs / 4);
+
+    return scanDataStream -> Observable
+        .merge(
+            scanDataStream,
+            Observable.interval(sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS).map(tick -> SWEEP))
+        .concatMapIterable(this::process)
+        .doFinally(this::clear);
+  }
+
+  /**
+   * Get the devices currently held.
+   *
+   * @return records of the devices, most recently seen first.
+   */
+  public synchronized List<DeviceRecord> snapshot() {
+    List<DeviceRecord> records = new ArrayList<>(slots.size());
+    for (int slot = newest; slot != NONE; slot = older[slot]) {
+      records.add(record(slot));
+    }
+
+    return records;
+  }
+
+  /**
+   * Get a device currently held.
+   *
+   * @param address the device address.
+   * @return the record of the device, or null if not held.
+   */
+  @Nullable
+  public synchronized DeviceRecord get(String address) {
+    int slot = slots.get(Utils.addressToLong(address));
+    return slot != SlotTable.MISSING ? record(slot) : null;
+  }
+
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  private synchronized List<DeviceEvent> process(Object item) {
+    long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+    return item == SWEEP ? sweep(now) : update((ScanData) item, now);
+  }
+
+  private List<DeviceEvent> update(ScanData data, long now) {
+    long address = Utils.addressToLong(data.getBluetoothDevice().getAddress());
+    int rssi = data.getRssi();
+    int slot = slots.get(address);
+
+    if (slot == SlotTable.MISSING) {
+      List<DeviceEvent> events = new ArrayList<>(2);
+      if (slots.size() == slots.capacity()) {
+        events.add(new DeviceEvent(DeviceEvent.Type.LOST, record(oldest)));
+        remove(oldest);
+      }
+
+      slot = slots.add(address);
+      firstSeenMs[slot] = now;
+      lastSeenMs[slot] = now;
+      counts[slot] = 1;
+      rssiMin[slot] = rssi;
+      rssiMax[slot] = rssi;
+      rssiAverage[slot] = rssi;
+      reportedRssi[slot] = rssi;
+      scanData[slot] = data;
+      linkNewest(slot);
+
+      events.add(new DeviceEvent(DeviceEvent.Type.NEW, record(slot)));
+      return events;
+    }
+
+    ScanData prior = scanData[slot];
+    lastSeenMs[slot] = now;
+    counts[slot]++;
+    rssiMin[slot] = Math.min(rssiMin[slot], rssi);
+    rssiMax[slot] = Math.max(rssiMax[slot], rssi);
+    rssiAverage[slot] += RSSI_AVERAGE_WEIGHT * (rssi - rssiAverage[slot]);
+    scanData[slot] = data;
+    unlink(slot);
+    linkNewest(slot);
+
+    if (payloadChanged(prior, data) || Math.abs(rssi - reportedRssi[slot]) >= rssiChangeDb) {
+      reportedRssi[slot] = rssi;
+      return Collections.singletonList(new DeviceEvent(DeviceEvent.Type.UPDATED, record(slot)));
+    }
+
+    return Collections.emptyList();
+  }
+
+  private List<DeviceEvent> sweep(long now) {
+    List<DeviceEvent> events = Collections.emptyList();
+
+    // Least recently seen devices are oldest, so expiry stops at the first device within the TTL.
+    while (oldest != NONE && now - lastSeenMs[oldest] >= ttlMs) {
+      if (events.isEmpty()) {
+        events = new ArrayList<>();
+      }
+
+      events.add(new DeviceEvent(DeviceEvent.Type.LOST, record(oldest)));
+      remove(oldest);
+    }
+
+    return events;
+  }
+
+  private synchronized void clear() {
+    slots.clear();
+    Arrays.fill(scanData, null);
+    newest = NONE;
+    oldest = NONE;
+  }
+
+  private void remove(int slot) {
+    slots.remove(slots.keyAt(slot));
+    scanData[slot] = null;
+    unlink(slot);
+  }
+
+  private void linkNewest(int slot) {
+    newer[slot] = NONE;
+    older[slot] = newest;
+    if (newest != NONE) {
+      newer[newest] = slot;
+    }
+
+    newest = slot;
+    if (oldest == NONE) {
+      oldest = slot;
+    }
+  }
+
+  private void unlink(int slot) {
+    if (newer[slot] != NONE) {
+      older[newer[slot]] = older[slot];
+    } else {
+      newest = older[slot];
+    }
+
+    if (older[slot] != NONE) {
+      newer[older[slot]] = newer[slot];
+    } else {
+      oldest = newer[slot];
+    }
+  }
+
+  private DeviceRecord record(int slot) {
+    return new DeviceRecord(
+        scanData[slot],
+        firstSeenMs[slot],
+        lastSeenMs[slot],
+        counts[slot],
+        rssiMin[slot],
+        rssiMax[slot],
+        rssiAverage[slot]);
+  }
+}
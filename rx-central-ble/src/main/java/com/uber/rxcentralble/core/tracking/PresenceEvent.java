@@ -0,0 +1,51 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+/** A change to the presence of a device tracked by a {@link PresenceTracker}. */
+public final class PresenceEvent {
+
+  /** Type of change. */
+  public enum Type {
+    /** The device's smoothed RSSI rose to the enter threshold. */
+    ENTER,
+    /** A present device's advertisement payload changed, or its RSSI moved past the update step. */
+    UPDATE,
+    /** A present device's smoothed RSSI fell below the exit threshold, or it was absent too long. */
+    EXIT
+  }
+
+  private final Type type;
+  private final PresenceRecord record;
+
+  PresenceEvent(Type type, PresenceRecord record) {
+    this.type = type;
+    this.record = record;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get the device record at the time of the event.
+   *
+   * @return the PresenceRecord.
+   */
+  public PresenceRecord getRecord() {
+    return record;
+  }
+}
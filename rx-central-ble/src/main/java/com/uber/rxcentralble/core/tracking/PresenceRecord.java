@@ -0,0 +1,79 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ScanData;
+
+/** Immutable snapshot of a device tracked by a {@link PresenceTracker}. */
+public final class PresenceRecord {
+
+  private final ScanData scanData;
+  private final float rssi;
+  private final long enteredMs;
+  private final long lastSeenMs;
+
+  PresenceRecord(ScanData scanData, float rssi, long enteredMs, long lastSeenMs) {
+    this.scanData = scanData;
+    this.rssi = rssi;
+    this.enteredMs = enteredMs;
+    this.lastSeenMs = lastSeenMs;
+  }
+
+  /**
+   * Get the latest ScanData received from the device.
+   *
+   * @return the latest ScanData.
+   */
+  public ScanData getScanData() {
+    return scanData;
+  }
+
+  /**
+   * Get the device address.
+   *
+   * @return the address.
+   */
+  public String getAddress() {
+    return scanData.getBluetoothDevice().getAddress();
+  }
+
+  /**
+   * Get the smoothed RSSI that presence is decided on.
+   *
+   * @return the smoothed RSSI.
+   */
+  public float getRssi() {
+    return rssi;
+  }
+
+  /**
+   * Get the time the device entered, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getEnteredMs() {
+    return enteredMs;
+  }
+
+  /**
+   * Get the time the device was last seen, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getLastSeenMs() {
+    return lastSeenMs;
+  }
+}
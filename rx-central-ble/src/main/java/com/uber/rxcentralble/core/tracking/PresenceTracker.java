@@ -0,0 +1,300 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Scanner;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+import static com.uber.rxcentralble.core.tracking.TrackingUtils.payloadChanged;
+
+/**
+ * Tracks which devices are present, from the advertisements a {@link Scanner} discovers, as a
+ * stream of {@link PresenceEvent}s.
+ *
+ * <p>A device enters when its smoothed RSSI reaches the enter threshold, and exits when its
+ * smoothed RSSI falls below the lower exit threshold or it has not been seen for the absence
+ * timeout. The gap between the thresholds keeps a device at the edge of range from flapping.
+ *
+ * <p>Absence timeouts of all devices share a single timing wheel advanced by one timer: a device
+ * sits in the wheel bucket of its deadline, and a sighting only records the time seen, so the
+ * device is moved to a later bucket when its bucket comes round rather than on every
+ * advertisement. Once the capacity is reached, devices not yet tracked are ignored until others
+ * time out.
+ *
+ * <p>All subscribers share one scan, and tracking is reset when the last subscriber disposes.
+ */
+public class PresenceTracker {
+
+  public static final int DEFAULT_ENTER_RSSI = -80;
+  public static final int DEFAULT_EXIT_RSSI = -90;
+  public static final long DEFAULT_ABSENCE_TIMEOUT_MS = 10000;
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  /** Change in smoothed RSSI since the last event for a present device that triggers an update. */
+  static final int UPDATE_RSSI_DB = 5;
+
+  /** Number of timing wheel ticks per absence timeout, bounding how late an exit is reported. */
+  private static final int TICKS_PER_TIMEOUT = 16;
+  private static final float RSSI_SMOOTHING_FACTOR = 0.25f;
+  private static final int NONE = -1;
+  private static final Object TICK = new Object();
+
+  private final int enterRssi;
+  private final int exitRssi;
+  private final long absenceTimeoutMs;
+  private final int capacity;
+  private final long tickMs;
+  private final Observable<PresenceEvent> sharedEvents;
+
+  private final SlotTable slots;
+  private final ScanData[] scanData;
+  private final float[] rssi;
+  private final float[] reportedRssi;
+  private final boolean[] present;
+  private final long[] enteredMs;
+  private final long[] lastSeenMs;
+  private final int[] wheel;
+  private final int[] next;
+
+  private long processedTick;
+  @Nullable
+  private List<PresenceRecord> snapshot = Collections.emptyList();
+
+  public PresenceTracker(Scanner scanner) {
+    this(scanner, null, DEFAULT_ENTER_RSSI, DEFAULT_EXIT_RSSI, DEFAULT_ABSENCE_TIMEOUT_MS, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Construct a presence tracker.
+   *
+   * @param scanner the Scanner to discover devices with.
+   * @param scanMatcher matcher of the devices to track, or null to track all devices.
+   * @param enterRssi smoothed RSSI at or above which a device enters.
+   * @param exitRssi smoothed RSSI below which a present device exits; at most the enter RSSI.
+   * @param absenceTimeoutMs time after which a device that has not been seen exits.
+   * @param capacity maximum number of devices tracked.
+   */
+  public PresenceTracker(Scanner scanner,
+                         @Nullable ScanMatcher scanMatcher,
+                         int enterRssi,
+                         int exitRssi,
+                         long absenceTimeoutMs,
+                         int capacity) {
+    if (exitRssi > enterRssi || absenceTimeoutMs <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Invalid thresholds, timeout or capacity: "
+          + enterRssi + ", " + exitRssi + ", " + absenceTimeoutMs + ", " + capacity);
+    }
+
+    this.enterRssi = enterRssi;
+    this.exitRssi = exitRssi;
+    this.absenceTimeoutMs = absenceTimeoutMs;
+    this.capacity = capacity;
+    this.tickMs = Math.max(1, absenceTimeoutMs / TICKS_PER_TIMEOUT);
+
+    slots = new SlotTable(capacity);
+    scanData = new ScanData[capacity];
+    rssi = new float[capacity];
+    reportedRssi = new float[capacity];
+    present = new boolean[capacity];
+    enteredMs = new long[capacity];
+    lastSeenMs = new long[capacity];
+    next = new int[capacity];
+    // Deadlines lie at most one timeout ahead of the last processed tick, plus rounding and a tick
+    // of lag in processing.
+    wheel = new int[(int) ((absenceTimeoutMs + tickMs - 1) / tickMs) + 3];
+    clear();
+
+    Observable<ScanData> scanData = scanMatcher != null ? scanner.scan(scanMatcher) : scanner.scan();
+    this.sharedEvents = Observable
+        .merge(scanData, Observable.interval(tickMs, tickMs, TimeUnit.MILLISECONDS).map(tick -> TICK))
+        .doOnSubscribe(d -> start())
+        .concatMapIterable(this::process)
+        .doFinally(this::clear)
+        .share();
+  }
+
+  /**
+   * Track the presence of devices.
+   *
+   * @return stream of presence events.
+   */
+  public Observable<PresenceEvent> events() {
+    return sharedEvents;
+  }
+
+  /**
+   * Get the devices currently present. The snapshot is rebuilt only after presence events, so
+   * repeated calls between events return the same list.
+   *
+   * @return unmodifiable list of records as of the last event of each device.
+   */
+  public synchronized List<PresenceRecord> snapshot() {
+    if (snapshot == null) {
+      List<PresenceRecord> records = new ArrayList<>();
+      for (int slot = 0; slot < capacity; slot++) {
+        if (present[slot]) {
+          records.add(record(slot));
+        }
+      }
+
+      snapshot = Collections.unmodifiableList(records);
+    }
+
+    return snapshot;
+  }
+
+  /**
+   * Get the number of devices tracked, whether present or not.
+   *
+   * @return the number of devices.
+   */
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  private synchronized void start() {
+    processedTick = now() / tickMs;
+  }
+
+  private synchronized List<PresenceEvent> process(Object item) {
+    long now = now();
+    return item == TICK ? advance(now) : sighting((ScanData) item, now);
+  }
+
+  private List<PresenceEvent> sighting(ScanData data, long now) {
+    long address = Utils.addressToLong(data.getBluetoothDevice().getAddress());
+    int slot = slots.get(address);
+    boolean payloadChanged = false;
+
+    if (slot == SlotTable.MISSING) {
+      slot = slots.add(address);
+      if (slot == SlotTable.MISSING) {
+        return Collections.emptyList();
+      }
+
+      rssi[slot] = data.getRssi();
+      present[slot] = false;
+      lastSeenMs[slot] = now;
+      schedule(slot, now + absenceTimeoutMs);
+    } else {
+      payloadChanged = payloadChanged(scanData[slot], data);
+      rssi[slot] += RSSI_SMOOTHING_FACTOR * (data.getRssi() - rssi[slot]);
+      lastSeenMs[slot] = now;
+    }
+
+    scanData[slot] = data;
+
+    PresenceEvent.Type type = null;
+    if (!present[slot] && rssi[slot] >= enterRssi) {
+      present[slot] = true;
+      enteredMs[slot] = now;
+      type = PresenceEvent.Type.ENTER;
+    } else if (present[slot] && rssi[slot] < exitRssi) {
+      present[slot] = false;
+      type = PresenceEvent.Type.EXIT;
+    } else if (present[slot] && (payloadChanged || Math.abs(rssi[slot] - reportedRssi[slot]) >= UPDATE_RSSI_DB)) {
+      type = PresenceEvent.Type.UPDATE;
+    }
+
+    if (type == null) {
+      return Collections.emptyList();
+    }
+
+    reportedRssi[slot] = rssi[slot];
+    snapshot = null;
+    return Collections.singletonList(new PresenceEvent(type, record(slot)));
+  }
+
+  private List<PresenceEvent> advance(long now) {
+    List<PresenceEvent> events = Collections.emptyList();
+    long tick = now / tickMs;
+    // After a long stall, each bucket need only be processed once.
+    processedTick = Math.max(processedTick, tick - wheel.length);
+    while (processedTick < tick) {
+      processedTick++;
+      int position = (int) (processedTick % wheel.length);
+      int slot = wheel[position];
+      wheel[position] = NONE;
+
+      while (slot != NONE) {
+        int nextSlot = next[slot];
+        long deadline = lastSeenMs[slot] + absenceTimeoutMs;
+        if (deadline > now) {
+          // Seen since it was scheduled.
+          schedule(slot, deadline);
+        } else {
+          if (present[slot]) {
+            if (events.isEmpty()) {
+              events = new ArrayList<>();
+            }
+
+            events.add(new PresenceEvent(PresenceEvent.Type.EXIT, record(slot)));
+            snapshot = null;
+          }
+
+          remove(slot);
+        }
+
+        slot = nextSlot;
+      }
+    }
+
+    return events;
+  }
+
+  // Places a device in the bucket of the first tick at or after its deadline.
+  private void schedule(int slot, long deadlineMs) {
+    int position = (int) (((deadlineMs + tickMs - 1) / tickMs) % wheel.length);
+    next[slot] = wheel[position];
+    wheel[position] = slot;
+  }
+
+  private void remove(int slot) {
+    slots.remove(slots.keyAt(slot));
+    scanData[slot] = null;
+    present[slot] = false;
+  }
+
+  private synchronized void clear() {
+    slots.clear();
+    Arrays.fill(scanData, null);
+    Arrays.fill(present, false);
+    Arrays.fill(wheel, NONE);
+    snapshot = Collections.emptyList();
+  }
+
+  private PresenceRecord record(int slot) {
+    return new PresenceRecord(scanData[slot], rssi[slot], enteredMs[slot], lastSeenMs[slot]);
+  }
+
+  private static long now() {
+    return Schedulers.computation().now(TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ScanData;
+
+/** Immutable distance estimate of a device tracked by a {@link ProximityEstimator}. */
+public final class ProximityEstimate {
+
+  private final ScanData scanData;
+  private final float distanceM;
+  private final float confidence;
+  private final float rssi;
+  private final int measuredPower;
+  private final long lastSeenMs;
+
+  ProximityEstimate(ScanData scanData, float distanceM, float confidence, float rssi, int measuredPower,
+                    long lastSeenMs) {
+    this.scanData = scanData;
+    this.distanceM = distanceM;
+    this.confidence = confidence;
+    this.rssi = rssi;
+    this.measuredPower = measuredPower;
+    this.lastSeenMs = lastSeenMs;
+  }
+
+  /**
+   * Get the latest ScanData received from the device.
+   *
+   * @return the latest ScanData.
+   */
+  public ScanData getScanData() {
+    return scanData;
+  }
+
+  /**
+   * Get the device address.
+   *
+   * @return the address.
+   */
+  public String getAddress() {
+    return scanData.getBluetoothDevice().getAddress();
+  }
+
+  /**
+   * Get the estimated distance to the device.
+   *
+   * @return the distance in meters.
+   */
+  public float getDistanceM() {
+    return distanceM;
+  }
+
+  /**
+   * Get the confidence in the estimate, which grows with the number of consistent samples and the
+   * quality of the calibration, and decays while the device is not seen.
+   *
+   * @return the confidence, from 0 to 1.
+   */
+  public float getConfidence() {
+    return confidence;
+  }
+
+  /**
+   * Get the smoothed RSSI that the distance is estimated from.
+   *
+   * @return the smoothed RSSI.
+   */
+  public float getRssi() {
+    return rssi;
+  }
+
+  /**
+   * Get the RSSI expected at 1 meter from the device.
+   *
+   * @return the measured power in dBm.
+   */
+  public int getMeasuredPower() {
+    return measuredPower;
+  }
+
+  /**
+   * Get the time the device was last seen, per the computation Scheduler clock.
+   *
+   * @return the time in milliseconds.
+   */
+  public long getLastSeenMs() {
+    return lastSeenMs;
+  }
+
+  @Override
+  public String toString() {
+    return "ProximityEstimate{"
+        + "address=" + getAddress()
+        + ", distanceM=" + distanceM
+        + ", confidence=" + confidence
+        + ", rssi=" + rssi
+        + ", measuredPower=" + measuredPower
+        + ", lastSeenMs=" + lastSeenMs
+        + '}';
+  }
+}
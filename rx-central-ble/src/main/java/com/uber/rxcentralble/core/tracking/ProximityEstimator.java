@@ -0,0 +1,439 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.collections.SlotTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.ObservableTransformer;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Estimates the distance to each device recently seen from the RSSI of its advertisements, and
+ * answers which devices are nearest.
+ *
+ * <p>Distances follow the log-distance path loss model, {@code d = 10 ^ ((P - rssi) / (10 * n))},
+ * where {@code P} is the RSSI expected at 1 meter and {@code n} the path loss exponent. {@code P}
+ * is taken from a per device calibration if one is set, else derived from the TX power level the
+ * device advertises, else assumed. The RSSI of each device is smoothed by a one dimensional Kalman
+ * filter, whose variance grows while a device is not seen; the confidence of an estimate falls with
+ * that variance and with the quality of {@code P}.
+ *
+ * <p>Estimates are updated incrementally with each advertisement, and kept in an index of distance
+ * buckets, so that {@link #nearest(int)} only visits the nearest buckets. Devices not seen within
+ * the window are evicted lazily; once the capacity is reached, devices not yet tracked are ignored
+ * until others are evicted.
+ */
+public class ProximityEstimator {
+
+  public static final long DEFAULT_WINDOW_MS = 10000;
+  public static final float DEFAULT_PATH_LOSS_EXPONENT = 2f;
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** RSSI at 1 meter assumed for devices that neither are calibrated nor advertise a TX power level. */
+  public static final int DEFAULT_MEASURED_POWER = -59;
+
+  /** Loss between the advertised TX power level and the RSSI at 1 meter. */
+  public static final int TX_POWER_LOSS_AT_1M_DB = 41;
+
+  /** Variance of a single RSSI sample, in dB squared. */
+  static final float MEASUREMENT_VARIANCE = 16f;
+
+  /** Growth of the RSSI variance per second, in dB squared, as devices and people move. */
+  static final float PROCESS_VARIANCE_PER_S = 1f;
+
+  static final float BUCKET_WIDTH_M = 0.5f;
+  static final int BUCKETS = 64;
+
+  /** Standard deviation of the smoothed RSSI, in dB, at which confidence halves. */
+  private static final float CONFIDENCE_SCALE_DB = 4f;
+  private static final int NONE = -1;
+
+  private static final int ASSUMED = 0;
+  private static final int ADVERTISED = 1;
+  private static final int CALIBRATED = 2;
+  private static final float[] SOURCE_WEIGHTS = {0.5f, 0.8f, 1f};
+
+  private final long windowMs;
+  private final float pathLossExponent;
+  private final Map<String, Calibration> calibrations = new HashMap<>();
+
+  private final SlotTable slots;
+  private final ScanData[] scanData;
+  private final float[] rssi;
+  private final float[] variance;
+  private final long[] lastSeenMs;
+  private final int[] measuredPower;
+  private final float[] exponent;
+  private final int[] source;
+  private final float[] distanceM;
+  private final int[] bucket;
+  private final int[] next;
+  private final int[] previous;
+  private final int[] buckets = new int[BUCKETS];
+  private final int[] candidates;
+
+  public ProximityEstimator() {
+    this(DEFAULT_WINDOW_MS, DEFAULT_PATH_LOSS_EXPONENT, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Construct a proximity estimator.
+   *
+   * @param windowMs time after which a device that has not been seen is evicted.
+   * @param pathLossExponent path loss exponent of devices without a calibration; 2 in free space,
+   *                         higher indoors.
+   * @param capacity maximum number of devices tracked.
+   */
+  public ProximityEstimator(long windowMs, float pathLossExponent, int capacity) {
+    if (windowMs <= 0 || pathLossExponent <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Invalid window, path loss exponent or capacity: "
+          + windowMs + ", " + pathLossExponent + ", " + capacity);
+    }
+
+    this.windowMs = windowMs;
+    this.pathLossExponent = pathLossExponent;
+
+    slots = new SlotTable(capacity);
+    scanData = new ScanData[capacity];
+    rssi = new float[capacity];
+    variance = new float[capacity];
+    lastSeenMs = new long[capacity];
+    measuredPower = new int[capacity];
+    exponent = new float[capacity];
+    source = new int[capacity];
+    distanceM = new float[capacity];
+    bucket = new int[capacity];
+    next = new int[capacity];
+    previous = new int[capacity];
+    candidates = new int[capacity];
+    clear();
+  }
+
+  /**
+   * Update the estimate of a device with an advertisement.
+   *
+   * @param scanData the advertisement.
+   */
+  public synchronized void add(ScanData scanData) {
+    update(scanData, Schedulers.computation().now(TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Update estimates with each advertisement of a stream, and emit the updated estimate.
+   *
+   * @return transformer of advertisements into estimates.
+   */
+  public ObservableTransformer<ScanData, ProximityEstimate> estimates() {
+    return scanDataStream -> scanDataStream.concatMapIterable(advertisement -> {
+      synchronized (this) {
+        long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+        int slot = update(advertisement, now);
+        return slot != NONE
+            ? Collections.singletonList(estimate(slot, now))
+            : Collections.<ProximityEstimate>emptyList();
+      }
+    });
+  }
+
+  /**
+   * Get the current estimate of a device.
+   *
+   * @param address the device address.
+   * @return the estimate, or null if the device has not been seen within the window.
+   */
+  @Nullable
+  public synchronized ProximityEstimate get(String address) {
+    long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+    int slot = slots.get(Utils.addressToLong(address));
+    if (slot == SlotTable.MISSING) {
+      return null;
+    } else if (lastSeenMs[slot] < now - windowMs) {
+      remove(slot);
+      return null;
+    }
+
+    return estimate(slot, now);
+  }
+
+  /**
+   * Get the nearest devices seen within the window, evicting devices not seen within it.
+   *
+   * @param count the maximum number of devices.
+   * @return the estimates of up to count devices, nearest first.
+   */
+  public synchronized List<ProximityEstimate> nearest(int count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Invalid count: " + count);
+    }
+
+    long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+    long windowStart = now - windowMs;
+
+    // Every device of a bucket is nearer than those of the buckets after it, so collecting whole
+    // buckets until there are enough candidates finds the nearest devices.
+    int found = 0;
+    for (int b = 0; b < BUCKETS && found < count; b++) {
+      int slot = buckets[b];
+      while (slot != NONE) {
+        int following = next[slot];
+        if (lastSeenMs[slot] < windowStart) {
+          remove(slot);
+        } else {
+          candidates[found++] = slot;
+        }
+
+        slot = following;
+      }
+    }
+
+    // Insertion sort; candidates are few and mostly from the nearest buckets.
+    for (int i = 1; i < found; i++) {
+      int slot = candidates[i];
+      int j = i - 1;
+      while (j >= 0 && distanceM[candidates[j]] > distanceM[slot]) {
+        candidates[j + 1] = candidates[j];
+        j--;
+      }
+
+      candidates[j + 1] = slot;
+    }
+
+    int size = Math.min(count, found);
+    List<ProximityEstimate> nearest = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      nearest.add(estimate(candidates[i], now));
+    }
+
+    return nearest;
+  }
+
+  /**
+   * Calibrate a device, taking precedence over its advertised TX power level. The calibration is
+   * kept while the device is not tracked.
+   *
+   * @param address the device address.
+   * @param measuredPower the RSSI at 1 meter from the device, in dBm.
+   * @param pathLossExponent the path loss exponent around the device.
+   */
+  public synchronized void calibrate(String address, int measuredPower, float pathLossExponent) {
+    if (pathLossExponent <= 0) {
+      throw new IllegalArgumentException("Invalid path loss exponent: " + pathLossExponent);
+    }
+
+    Calibration calibration = new Calibration(measuredPower, pathLossExponent);
+    calibrations.put(address, calibration);
+
+    int slot = slots.get(Utils.addressToLong(address));
+    if (slot != SlotTable.MISSING) {
+      applyCalibration(slot, calibration);
+      estimateDistance(slot);
+    }
+  }
+
+  /**
+   * Calibrate a device from its current smoothed RSSI, while it is at a known distance.
+   *
+   * @param address the device address.
+   * @param distanceM the current distance to the device in meters.
+   * @return true if the device is tracked and was calibrated.
+   */
+  public synchronized boolean calibrateAtDistance(String address, float distanceM) {
+    if (distanceM <= 0) {
+      throw new IllegalArgumentException("Invalid distance: " + distanceM);
+    }
+
+    int slot = slots.get(Utils.addressToLong(address));
+    if (slot == SlotTable.MISSING) {
+      return false;
+    }
+
+    float slotExponent = source[slot] == CALIBRATED ? exponent[slot] : pathLossExponent;
+    int calibratedPower = Math.round(rssi[slot] + 10 * slotExponent * (float) Math.log10(distanceM));
+    calibrate(address, calibratedPower, slotExponent);
+    return true;
+  }
+
+  public synchronized int size() {
+    return slots.size();
+  }
+
+  public synchronized void clear() {
+    slots.clear();
+    Arrays.fill(scanData, null);
+    Arrays.fill(buckets, NONE);
+  }
+
+  private int update(ScanData scanData, long now) {
+    String address = scanData.getBluetoothDevice().getAddress();
+    long packedAddress = Utils.addressToLong(address);
+    int sample = scanData.getRssi();
+
+    int slot = slots.get(packedAddress);
+    if (slot == SlotTable.MISSING) {
+      slot = track(packedAddress, now);
+      if (slot == SlotTable.MISSING) {
+        return NONE;
+      }
+
+      rssi[slot] = sample;
+      variance[slot] = MEASUREMENT_VARIANCE;
+      Calibration calibration = calibrations.get(address);
+      if (calibration != null) {
+        applyCalibration(slot, calibration);
+      } else {
+        source[slot] = ASSUMED;
+      }
+    } else {
+      // Kalman filter of a random walk: predict the variance since the last sample, then update.
+      variance[slot] += PROCESS_VARIANCE_PER_S * (now - lastSeenMs[slot]) / 1000f;
+      float gain = variance[slot] / (variance[slot] + MEASUREMENT_VARIANCE);
+      rssi[slot] += gain * (sample - rssi[slot]);
+      variance[slot] *= 1 - gain;
+    }
+
+    this.scanData[slot] = scanData;
+    lastSeenMs[slot] = now;
+
+    if (source[slot] != CALIBRATED) {
+      ParsedAdvertisement parsedAdvertisement = scanData.getParsedAdvertisement();
+      int txPowerLevel = parsedAdvertisement != null
+          ? parsedAdvertisement.getTxPowerLevel()
+          : ParsedAdvertisement.TX_POWER_LEVEL_NOT_PRESENT;
+      if (txPowerLevel != ParsedAdvertisement.TX_POWER_LEVEL_NOT_PRESENT) {
+        source[slot] = ADVERTISED;
+        measuredPower[slot] = txPowerLevel - TX_POWER_LOSS_AT_1M_DB;
+      } else {
+        source[slot] = ASSUMED;
+        measuredPower[slot] = DEFAULT_MEASURED_POWER;
+      }
+
+      exponent[slot] = pathLossExponent;
+    }
+
+    estimateDistance(slot);
+    return slot;
+  }
+
+  private int track(long packedAddress, long now) {
+    if (slots.size() == slots.capacity()) {
+      evictExpired(now);
+    }
+
+    int slot = slots.add(packedAddress);
+    if (slot != SlotTable.MISSING) {
+      bucket[slot] = NONE;
+    }
+
+    return slot;
+  }
+
+  private void evictExpired(long now) {
+    long windowStart = now - windowMs;
+    for (int b = 0; b < BUCKETS; b++) {
+      int slot = buckets[b];
+      while (slot != NONE) {
+        int following = next[slot];
+        if (lastSeenMs[slot] < windowStart) {
+          remove(slot);
+        }
+
+        slot = following;
+      }
+    }
+  }
+
+  private void applyCalibration(int slot, Calibration calibration) {
+    source[slot] = CALIBRATED;
+    measuredPower[slot] = calibration.measuredPower;
+    exponent[slot] = calibration.pathLossExponent;
+  }
+
+  private void estimateDistance(int slot) {
+    distanceM[slot] = (float) Math.pow(10, (measuredPower[slot] - rssi[slot]) / (10 * exponent[slot]));
+
+    int target = Math.min(BUCKETS - 1, (int) (distanceM[slot] / BUCKET_WIDTH_M));
+    if (target != bucket[slot]) {
+      unlink(slot);
+      bucket[slot] = target;
+      previous[slot] = NONE;
+      next[slot] = buckets[target];
+      if (buckets[target] != NONE) {
+        previous[buckets[target]] = slot;
+      }
+
+      buckets[target] = slot;
+    }
+  }
+
+  private ProximityEstimate estimate(int slot, long now) {
+    // The variance keeps growing while the device is not seen.
+    float predictedVariance = variance[slot] + PROCESS_VARIANCE_PER_S * (now - lastSeenMs[slot]) / 1000f;
+    float confidence = SOURCE_WEIGHTS[source[slot]]
+        / (1 + (float) Math.sqrt(predictedVariance) / CONFIDENCE_SCALE_DB);
+
+    return new ProximityEstimate(
+        scanData[slot], distanceM[slot], confidence, rssi[slot], measuredPower[slot], lastSeenMs[slot]);
+  }
+
+  private void remove(int slot) {
+    unlink(slot);
+    slots.remove(slots.keyAt(slot));
+    scanData[slot] = null;
+  }
+
+  private void unlink(int slot) {
+    if (bucket[slot] == NONE) {
+      return;
+    }
+
+    if (previous[slot] != NONE) {
+      next[previous[slot]] = next[slot];
+    } else {
+      buckets[bucket[slot]] = next[slot];
+    }
+
+    if (next[slot] != NONE) {
+      previous[next[slot]] = previous[slot];
+    }
+
+    bucket[slot] = NONE;
+  }
+
+  /** Calibration of a device. */
+  private static final class Calibration {
+
+    private final int measuredPower;
+    private final float pathLossExponent;
+
+    Calibration(int measuredPower, float pathLossExponent) {
+      this.measuredPower = measuredPower;
+      this.pathLossExponent = pathLossExponent;
+    }
+  }
+}
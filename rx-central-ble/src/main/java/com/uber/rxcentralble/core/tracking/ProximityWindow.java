@@ -0,0 +1,138 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.ScanData;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Sliding time window of the devices recently seen, with the RSSI of each smoothed by an
+ * exponential moving average so that the nearest device is judged from a trend rather than a
+ * single noisy sample.
+ *
+ * <p>Devices not seen within the window are evicted when the window is queried.
+ */
+public class ProximityWindow {
+
+  public static final float DEFAULT_SMOOTHING_FACTOR = 0.25f;
+
+  private final long windowMs;
+  private final float smoothingFactor;
+  private final Map<String, Sample> samples = new HashMap<>();
+
+  public ProximityWindow(long windowMs) {
+    this(windowMs, DEFAULT_SMOOTHING_FACTOR);
+  }
+
+  /**
+   * Construct a proximity window.
+   *
+   * @param windowMs time after which a device that has not been seen is evicted.
+   * @param smoothingFactor weight of each new RSSI sample, between 0 and 1; lower is smoother.
+   */
+  public ProximityWindow(long windowMs, float smoothingFactor) {
+    if (windowMs <= 0 || smoothingFactor <= 0 || smoothingFactor > 1) {
+      throw new IllegalArgumentException("Invalid window or smoothing factor: " + windowMs + ", " + smoothingFactor);
+    }
+
+    this.windowMs = windowMs;
+    this.smoothingFactor = smoothingFactor;
+  }
+
+  /**
+   * Add an advertisement to the window.
+   *
+   * @param scanData the advertisement.
+   */
+  public synchronized void add(ScanData scanData) {
+    long now = Schedulers.computation().now(TimeUnit.MILLISECONDS);
+    String address = scanData.getBluetoothDevice().getAddress();
+
+    Sample sample = samples.get(address);
+    if (sample == null) {
+      samples.put(address, new Sample(scanData, now));
+    } else {
+      sample.scanData = scanData;
+      sample.lastSeenMs = now;
+      sample.rssi += smoothingFactor * (scanData.getRssi() - sample.rssi);
+    }
+  }
+
+  /**
+   * Evict devices not seen within the window, then get the nearest remaining device.
+   *
+   * @return the latest ScanData of the device with the strongest smoothed RSSI, or null if none.
+   */
+  @Nullable
+  public synchronized ScanData nearest() {
+    long windowStart = Schedulers.computation().now(TimeUnit.MILLISECONDS) - windowMs;
+
+    Sample nearest = null;
+    Iterator<Sample> iterator = samples.values().iterator();
+    while (iterator.hasNext()) {
+      Sample sample = iterator.next();
+      if (sample.lastSeenMs < windowStart) {
+        iterator.remove();
+      } else if (nearest == null || sample.rssi > nearest.rssi) {
+        // RSSI is measured in dB; negative values, closer to zero indicates stronger signal.
+        nearest = sample;
+      }
+    }
+
+    return nearest != null ? nearest.scanData : null;
+  }
+
+  /**
+   * Get the smoothed RSSI of a device in the window.
+   *
+   * @param address the device address.
+   * @return the smoothed RSSI, or null if the device is not in the window.
+   */
+  @Nullable
+  public synchronized Float getSmoothedRssi(String address) {
+    Sample sample = samples.get(address);
+    return sample != null ? sample.rssi : null;
+  }
+
+  public synchronized int size() {
+    return samples.size();
+  }
+
+  public synchronized void clear() {
+    samples.clear();
+  }
+
+  private static final class Sample {
+
+    ScanData scanData;
+    long lastSeenMs;
+    float rssi;
+
+    Sample(ScanData scanData, long lastSeenMs) {
+      this.scanData = scanData;
+      this.lastSeenMs = lastSeenMs;
+      this.rssi = scanData.getRssi();
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+
+import java.util.Arrays;
+
+/** Comparisons of the advertisements of a device shared by the trackers. */
+final class TrackingUtils {
+
+  private TrackingUtils() { }
+
+  /**
+   * Determine whether the advertised payload of a device changed.
+   *
+   * @param prior the prior ScanData of the device.
+   * @param data the latest ScanData of the device.
+   * @return true if the raw advertisements differ, or only one of them was parsed.
+   */
+  static boolean payloadChanged(ScanData prior, ScanData data) {
+    ParsedAdvertisement priorAdvertisement = prior.getParsedAdvertisement();
+    ParsedAdvertisement advertisement = data.getParsedAdvertisement();
+    if (priorAdvertisement == null || advertisement == null) {
+      return priorAdvertisement != advertisement;
+    }
+
+    // A cached advertisement is the same instance for the same payload.
+    return priorAdvertisement != advertisement
+        && !Arrays.equals(priorAdvertisement.getRawAdvertisement(), advertisement.getRawAdvertisement());
+  }
+}
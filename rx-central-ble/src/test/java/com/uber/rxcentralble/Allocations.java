@@ -0,0 +1,60 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Measures bytes allocated by the current thread, for benchmarks that assert allocation bounds.
+ * Tests using it are skipped on JVMs without per-thread allocation accounting.
+ */
+public final class Allocations {
+
+  private Allocations() { }
+
+  /**
+   * Run a task and measure the bytes it allocated on the current thread.
+   *
+   * @param task the task.
+   * @return bytes allocated while running the task.
+   */
+  public static long allocatedBytes(Runnable task) {
+    // Accessed reflectively; java.lang.management is absent from the Android compile classpath.
+    Object threadMxBean;
+    Method allocatedBytesMethod;
+    try {
+      threadMxBean = Class.forName("java.lang.management.ManagementFactory")
+          .getMethod("getThreadMXBean")
+          .invoke(null);
+      allocatedBytesMethod = Class.forName("com.sun.management.ThreadMXBean")
+          .getMethod("getThreadAllocatedBytes", long.class);
+    } catch (ReflectiveOperationException e) {
+      assumeNoException(e);
+      return 0;
+    }
+
+    long threadId = Thread.currentThread().getId();
+    try {
+      long start = (long) allocatedBytesMethod.invoke(threadMxBean, threadId);
+      task.run();
+      return (long) allocatedBytesMethod.invoke(threadMxBean, threadId) - start;
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
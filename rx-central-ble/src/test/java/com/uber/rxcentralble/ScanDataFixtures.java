@@ -0,0 +1,116 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanResult;
+import androidx.annotation.Nullable;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** ScanData instances for tests of the components that consume advertisements. */
+public final class ScanDataFixtures {
+
+  private ScanDataFixtures() { }
+
+  /**
+   * Mock ScanData of a device, without an advertisement.
+   *
+   * @param address the address of the device.
+   * @param rssi the RSSI of the advertisement.
+   * @return the ScanData.
+   */
+  public static ScanData scanData(String address, int rssi) {
+    return scanData(address, rssi, null);
+  }
+
+  /**
+   * Mock ScanData of a device.
+   *
+   * @param address the address of the device.
+   * @param rssi the RSSI of the advertisement.
+   * @param parsedAdvertisement the advertisement, or null if none.
+   * @return the ScanData.
+   */
+  public static ScanData scanData(String address, int rssi, @Nullable ParsedAdvertisement parsedAdvertisement) {
+    BluetoothDevice bluetoothDevice = mock(BluetoothDevice.class);
+    when(bluetoothDevice.getAddress()).thenReturn(address);
+
+    ScanData scanData = mock(ScanData.class);
+    when(scanData.getBluetoothDevice()).thenReturn(bluetoothDevice);
+    when(scanData.getRssi()).thenReturn(rssi);
+    when(scanData.getParsedAdvertisement()).thenReturn(parsedAdvertisement);
+    return scanData;
+  }
+
+  /**
+   * Mock ParsedAdvertisement whose raw bytes are the given payload, for components that compare
+   * advertisements by content.
+   *
+   * @param payload the raw advertisement.
+   * @return the ParsedAdvertisement.
+   */
+  public static ParsedAdvertisement rawAdvertisement(byte[] payload) {
+    ParsedAdvertisement parsedAdvertisement = mock(ParsedAdvertisement.class);
+    when(parsedAdvertisement.getRawAdvertisement()).thenReturn(payload);
+    return parsedAdvertisement;
+  }
+
+  /**
+   * ScanData of a recorded advertisement, without a platform ScanResult or BluetoothDevice. Unlike
+   * a mock, it is cheap enough to evaluate matchers against in benchmarks.
+   *
+   * @param parsedAdvertisement the advertisement, or null if none.
+   * @return the ScanData.
+   */
+  public static ScanData recordedScanData(@Nullable ParsedAdvertisement parsedAdvertisement) {
+    return new RecordedScanData(parsedAdvertisement);
+  }
+
+  private static final class RecordedScanData implements ScanData {
+
+    private static final int RSSI = -60;
+
+    @Nullable private final ParsedAdvertisement parsedAdvertisement;
+
+    RecordedScanData(@Nullable ParsedAdvertisement parsedAdvertisement) {
+      this.parsedAdvertisement = parsedAdvertisement;
+    }
+
+    @Override
+    public int getRssi() {
+      return RSSI;
+    }
+
+    @Override
+    public BluetoothDevice getBluetoothDevice() {
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public ParsedAdvertisement getParsedAdvertisement() {
+      return parsedAdvertisement;
+    }
+
+    @Override
+    @Nullable
+    public ScanResult getScanResult() {
+      return null;
+    }
+  }
+}
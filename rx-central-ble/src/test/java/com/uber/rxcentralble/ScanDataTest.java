@@ -0,0 +1,39 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanDataTest {
+
+  @Test
+  public void constantsMatchPlatform() {
+    assertEquals(BluetoothDevice.PHY_LE_1M, ScanData.PHY_LE_1M);
+    assertEquals(BluetoothDevice.PHY_LE_2M, ScanData.PHY_LE_2M);
+    assertEquals(BluetoothDevice.PHY_LE_CODED, ScanData.PHY_LE_CODED);
+    assertEquals(ScanResult.PHY_UNUSED, ScanData.PHY_UNUSED);
+    assertEquals(ScanResult.SID_NOT_PRESENT, ScanData.SID_NOT_PRESENT);
+    assertEquals(ScanResult.PERIODIC_INTERVAL_NOT_PRESENT, ScanData.PERIODIC_INTERVAL_NOT_PRESENT);
+    assertEquals(ScanResult.TX_POWER_NOT_PRESENT, ScanData.TX_POWER_NOT_PRESENT);
+    assertEquals(ScanSettings.PHY_LE_ALL_SUPPORTED, Scanner.PHY_LE_ALL_SUPPORTED);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CachingParsedAdvertisementFactoryTest {
+
+  private static final String ADDRESS = "00:00:00:00:00:01";
+  private static final String OTHER_ADDRESS = "00:00:00:00:00:02";
+
+  private ParsedAdvertisement.Factory delegate;
+  private CachingParsedAdvertisementFactory factory;
+
+  @Before
+  public void setup() {
+    delegate = spy(new CoreParsedAdvertisement.Factory());
+    factory = new CachingParsedAdvertisementFactory(delegate, 2, 2);
+  }
+
+  @Test
+  public void produce_repeatedPayload() {
+    ParsedAdvertisement first = factory.produce(ADDRESS, payload(1));
+    ParsedAdvertisement second = factory.produce(ADDRESS, payload(1));
+
+    assertSame(first, second);
+    verify(delegate, times(1)).produce(any(), any());
+
+    CachingParsedAdvertisementFactory.Metrics metrics = factory.metrics();
+    assertEquals(1, metrics.getHits());
+    assertEquals(1, metrics.getMisses());
+    assertEquals(0.5, metrics.getHitRate(), 0);
+  }
+
+  @Test
+  public void produce_changedPayload() {
+    ParsedAdvertisement first = factory.produce(ADDRESS, payload(1));
+    ParsedAdvertisement second = factory.produce(ADDRESS, payload(2));
+
+    assertNotSame(first, second);
+    assertSame(first, factory.produce(ADDRESS, payload(1)));
+    assertSame(second, factory.produce(ADDRESS, payload(2)));
+    assertEquals(2, factory.metrics().getMisses());
+  }
+
+  @Test
+  public void produce_keyedByDevice() {
+    ParsedAdvertisement first = factory.produce(ADDRESS, payload(1));
+    ParsedAdvertisement other = factory.produce(OTHER_ADDRESS, payload(1));
+
+    assertNotSame(first, other);
+    assertEquals(2, factory.metrics().getDevices());
+  }
+
+  @Test
+  public void produce_evictsLeastRecentPayload() {
+    ParsedAdvertisement first = factory.produce(ADDRESS, payload(1));
+    factory.produce(ADDRESS, payload(2));
+    factory.produce(ADDRESS, payload(3));
+
+    assertNotSame(first, factory.produce(ADDRESS, payload(1)));
+    assertEquals(2, factory.metrics().getEvictions());
+  }
+
+  @Test
+  public void produce_evictsLeastRecentDevice() {
+    ParsedAdvertisement first = factory.produce(ADDRESS, payload(1));
+    factory.produce(OTHER_ADDRESS, payload(1));
+    factory.produce("00:00:00:00:00:03", payload(1));
+
+    assertEquals(2, factory.metrics().getDevices());
+    assertEquals(1, factory.metrics().getEvictions());
+    assertNotSame(first, factory.produce(ADDRESS, payload(1)));
+  }
+
+  private static byte[] payload(int value) {
+    return new byte[] {0x03, (byte) 0xFF, 0x00, (byte) value};
+  }
+}
@@ -81,6 +81,8 @@ public class CoreConnectionManagerTest {
     RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
 
     when(scanner.scan()).thenReturn(scanDataPublishSubject.hide());
+    when(scanner.scan(any(ScanMatcher.class))).thenAnswer(invocation ->
+        scanDataPublishSubject.hide().compose(((ScanMatcher) invocation.getArgument(0)).match()));
     when(bluetoothDetector.enabled()).thenReturn(bluetoothEnabledRelay.hide());
     when(peripheralFactory.produce(any(), any())).thenReturn(peripheral);
     when(peripheral.connect()).thenReturn(connectableStatePublishSubject.hide());
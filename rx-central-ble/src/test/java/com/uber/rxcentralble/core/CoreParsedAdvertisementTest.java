@@ -16,17 +16,28 @@
 package com.uber.rxcentralble.core;
 
 import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.Utils;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.MockitoAnnotations;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.UUID;
 
+import static com.uber.rxcentralble.Allocations.allocatedBytes;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CoreParsedAdvertisementTest {
 
@@ -147,6 +158,8 @@ public class CoreParsedAdvertisementTest {
   private static final int MFG_ID = 0x0415;
   private static final UUID SVC_UUID = UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97");
 
+  private static final int PARSE_ITERATIONS = 100000;
+
   private ParsedAdvertisement parsedAdvertisement;
 
   @Before
@@ -170,4 +183,189 @@ public class CoreParsedAdvertisementTest {
     // Also asserts no exception was thrown.
     assertNull(parsedAdvertisement.getName());
   }
+
+  @Test
+  public void test_lazyAccessors() {
+    parsedAdvertisement = new CoreParsedAdvertisement(RAW_DATA);
+
+    assertTrue(parsedAdvertisement.hasService(Utils.uuidFromInteger(0x180A)));
+    assertFalse(parsedAdvertisement.hasService(Utils.uuidFromInteger(0x180B)));
+    assertFalse(parsedAdvertisement.hasService(UUID.randomUUID()));
+    assertArrayEquals(new byte[] {0x06}, parsedAdvertisement.getEIRData(0x01));
+    assertNull(parsedAdvertisement.getEIRData(0x16));
+    assertNull(parsedAdvertisement.getManufacturerData(MFG_ID + 1));
+    assertSame(parsedAdvertisement.getEIRData(0x01), parsedAdvertisement.getEIRData(0x01));
+    assertSame(parsedAdvertisement.getManufacturerData(MFG_ID), parsedAdvertisement.getManufacturerData(MFG_ID));
+  }
+
+  @Test
+  public void test_hasService16() {
+    parsedAdvertisement = new CoreParsedAdvertisement(RAW_DATA);
+
+    assertTrue(parsedAdvertisement.hasService16(0x180A));
+    assertFalse(parsedAdvertisement.hasService16(0x180B));
+    assertFalse(parsedAdvertisement.hasService16(0x1180A));
+  }
+
+  @Test
+  public void test_baseUuidIn128BitList() {
+    UUID uuid = Utils.uuidFromInteger(0x180F);
+    ByteBuffer byteBuffer = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+    byteBuffer.put((byte) 0x11).put((byte) 0x07);
+    byteBuffer.putLong(uuid.getLeastSignificantBits()).putLong(uuid.getMostSignificantBits());
+    parsedAdvertisement = new CoreParsedAdvertisement(byteBuffer.array());
+
+    assertTrue(parsedAdvertisement.hasService16(0x180F));
+    assertTrue(parsedAdvertisement.hasService(uuid));
+  }
+
+  @Test
+  public void test_unsignedShortUuids() {
+    parsedAdvertisement = new CoreParsedAdvertisement(new byte[] {
+        0x03, 0x03, (byte) 0x9F, (byte) 0xFE,
+        0x05, 0x05, 0x01, 0x00, 0x00, (byte) 0x80
+    });
+
+    assertTrue(parsedAdvertisement.hasService(Utils.uuidFromInteger(0xFE9F)));
+    assertTrue(parsedAdvertisement.hasService(
+        new UUID(0x8000000100001000L, 0x800000805f9b34fbL)));
+  }
+
+  @Test
+  public void test_serviceData() {
+    UUID longUuid = UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97");
+    ByteBuffer byteBuffer = ByteBuffer.allocate(5 + 7 + 19 + 5).order(ByteOrder.LITTLE_ENDIAN);
+    byteBuffer.put((byte) 0x04).put((byte) 0x16).putShort((short) 0xFEAA).put((byte) 0x10);
+    byteBuffer.put((byte) 0x06).put((byte) 0x20).putInt(0x0001181A).put((byte) 0x20);
+    byteBuffer.put((byte) 0x12).put((byte) 0x21);
+    byteBuffer.putLong(longUuid.getLeastSignificantBits()).putLong(longUuid.getMostSignificantBits());
+    byteBuffer.put((byte) 0x30);
+    // A second entry does not overwrite the first.
+    byteBuffer.put((byte) 0x04).put((byte) 0x16).putShort((short) 0x180F).put((byte) 0x40);
+    parsedAdvertisement = new CoreParsedAdvertisement(byteBuffer.array());
+
+    ByteBuffer serviceData = parsedAdvertisement.getServiceData(Utils.uuidFromInteger(0xFEAA));
+    assertEquals(1, serviceData.remaining());
+    assertEquals(0x10, serviceData.get(0));
+    assertTrue(serviceData.isReadOnly());
+    assertEquals(0x20, parsedAdvertisement.getServiceData(Utils.uuidFromInteger(0x0001181A)).get(0));
+    assertEquals(0x30, parsedAdvertisement.getServiceData(longUuid).get(0));
+    assertEquals(0x40, parsedAdvertisement.getServiceData(Utils.uuidFromInteger(0x180F)).get(0));
+    assertNull(parsedAdvertisement.getServiceData(Utils.uuidFromInteger(0x180A)));
+
+    assertTrue(parsedAdvertisement.hasServiceData(longUuid, new byte[0], null));
+    assertTrue(parsedAdvertisement.hasServiceData(longUuid, new byte[] {0x30}, null));
+    assertTrue(parsedAdvertisement.hasServiceData(longUuid, new byte[] {0x3F}, new byte[] {(byte) 0xF0}));
+    assertFalse(parsedAdvertisement.hasServiceData(longUuid, new byte[] {0x3F}, null));
+    assertFalse(parsedAdvertisement.hasServiceData(longUuid, new byte[] {0x30, 0x00}, null));
+    assertFalse(parsedAdvertisement.hasService(longUuid));
+  }
+
+  @Test
+  public void test_txPowerLevel() {
+    parsedAdvertisement = new CoreParsedAdvertisement(new byte[] {0x02, 0x01, 0x06, 0x02, 0x0A, (byte) 0xF4});
+    assertEquals(-12, parsedAdvertisement.getTxPowerLevel());
+
+    parsedAdvertisement = new CoreParsedAdvertisement(new byte[] {0x02, 0x01, 0x06});
+    assertEquals(ParsedAdvertisement.TX_POWER_LEVEL_NOT_PRESENT, parsedAdvertisement.getTxPowerLevel());
+
+    ParsedAdvertisement defaultAdvertisement = mock(ParsedAdvertisement.class, CALLS_REAL_METHODS);
+    when(defaultAdvertisement.getEIRData(ParsedAdvertisement.AD_TX_POWER_LEVEL)).thenReturn(new byte[] {0x04});
+    assertEquals(4, defaultAdvertisement.getTxPowerLevel());
+  }
+
+  @Test
+  public void test_serviceDataDefault() {
+    UUID uuid = Utils.uuidFromInteger(0xFEAA);
+    ParsedAdvertisement defaultAdvertisement = mock(ParsedAdvertisement.class, CALLS_REAL_METHODS);
+    when(defaultAdvertisement.getRawAdvertisement())
+        .thenReturn(new byte[] {0x05, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, 0x11});
+
+    assertEquals(2, defaultAdvertisement.getServiceData(uuid).remaining());
+    assertEquals(0x11, defaultAdvertisement.getServiceData(uuid).get(1));
+    assertTrue(defaultAdvertisement.hasServiceData(uuid, new byte[] {0x10, 0x11}, null));
+    assertFalse(defaultAdvertisement.hasServiceData(uuid, new byte[] {0x11}, null));
+  }
+
+  @Test
+  public void test_extendedAdvertisement() {
+    // Extended advertising data is longer than a legacy advertisement, though each structure still
+    // fits in 255 bytes.
+    ByteBuffer byteBuffer = ByteBuffer.allocate(2 * 256 + 4 + 2 + DEVICE_NAME.length())
+        .order(ByteOrder.LITTLE_ENDIAN);
+    byteBuffer.put((byte) 0xFF).put((byte) 0xFF).putShort((short) MFG_ID);
+    for (int i = 0; i < 252; i++) {
+      byteBuffer.put((byte) i);
+    }
+
+    byteBuffer.put((byte) 0xFF).put((byte) 0xFF).putShort((short) (MFG_ID + 1));
+    for (int i = 0; i < 252; i++) {
+      byteBuffer.put((byte) -i);
+    }
+
+    byteBuffer.put((byte) 0x03).put((byte) 0x03).putShort((short) 0x180A);
+    byteBuffer.put((byte) (DEVICE_NAME.length() + 1)).put((byte) 0x09).put(DEVICE_NAME.getBytes());
+    parsedAdvertisement = new CoreParsedAdvertisement(byteBuffer.array());
+
+    assertEquals(DEVICE_NAME, parsedAdvertisement.getName());
+    assertTrue(parsedAdvertisement.hasService16(0x180A));
+    assertEquals(252, parsedAdvertisement.getManufacturerData(MFG_ID).length);
+    assertEquals((byte) -251, parsedAdvertisement.getManufacturerData(MFG_ID + 1)[251]);
+  }
+
+  @Test
+  public void test_servicesBeforeAndAfterIndexing() {
+    UUID serviceDataUuid = Utils.uuidFromInteger(0xFEAA);
+    ByteBuffer byteBuffer = ByteBuffer.allocate(RAW_DATA.length + 6).order(ByteOrder.LITTLE_ENDIAN);
+    byteBuffer.put(RAW_DATA).put((byte) 0x05).put((byte) 0x16).putShort((short) 0xFEAA).putShort((short) 0x1234);
+    parsedAdvertisement = new CoreParsedAdvertisement(byteBuffer.array());
+
+    // The first queries scan the advertisement, later queries use the index.
+    for (int i = 0; i < 3; i++) {
+      assertTrue(parsedAdvertisement.hasService(SVC_UUID));
+      assertTrue(parsedAdvertisement.hasService16(0x180A));
+      assertFalse(parsedAdvertisement.hasService16(0x180B));
+      assertFalse(parsedAdvertisement.hasService(UUID.randomUUID()));
+      assertTrue(parsedAdvertisement.hasServiceData(serviceDataUuid, new byte[] {0x34, 0x12}, null));
+      assertFalse(parsedAdvertisement.hasServiceData(Utils.uuidFromInteger(0xFEAB), new byte[0], null));
+    }
+  }
+
+  /**
+   * Measures bytes allocated per advertisement parsed and queried once for a service, as for an
+   * advertisement that a matcher rejects, against a baseline measured in the same run that also
+   * materializes every structure as an eager parser would, and per service query against an
+   * advertisement already parsed, as matchers make against cached advertisements.
+   */
+  @Test
+  public void benchmark_allocationsPerAdvertisement() {
+    ParsedAdvertisement cached = new CoreParsedAdvertisement(RAW_DATA);
+    Runnable parse = () -> assertTrue(new CoreParsedAdvertisement(RAW_DATA).hasService(SVC_UUID));
+    Runnable eager = () -> {
+      ParsedAdvertisement advertisement = new CoreParsedAdvertisement(RAW_DATA);
+      assertNotNull(advertisement.getName());
+      assertNotNull(advertisement.getManufacturerData(MFG_ID));
+      assertNotNull(advertisement.getEIRData(0x03));
+      assertNotNull(advertisement.getEIRData(0x07));
+    };
+    Runnable query = () -> assertTrue(cached.hasService(SVC_UUID) && cached.hasService16(0x180A));
+
+    // Warm up.
+    allocatedBytes(() -> repeat(parse));
+    allocatedBytes(() -> repeat(eager));
+    allocatedBytes(() -> repeat(query));
+
+    long parseBytes = allocatedBytes(() -> repeat(parse));
+    long eagerBytes = allocatedBytes(() -> repeat(eager));
+    long queryBytes = allocatedBytes(() -> repeat(query));
+
+    assertTrue(parseBytes * 4 < eagerBytes);
+    assertTrue(queryBytes * 100 < parseBytes);
+  }
+
+  private static void repeat(Runnable runnable) {
+    for (int i = 0; i < PARSE_ITERATIONS; i++) {
+      runnable.run();
+    }
+  }
 }
@@ -42,7 +42,10 @@ import java.util.UUID;
 import io.reactivex.observers.TestObserver;
 
 import static android.bluetooth.BluetoothGattCharacteristic.PROPERTY_NOTIFY;
+import static android.bluetooth.BluetoothGattCharacteristic.PROPERTY_WRITE;
 import static android.bluetooth.BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE;
+import static android.bluetooth.BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+import static android.bluetooth.BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
 import static com.uber.rxcentralble.ConnectionError.Code.CONNECT_FAILED;
 import static com.uber.rxcentralble.ConnectionError.Code.DISCONNECTION;
 import static com.uber.rxcentralble.PeripheralError.Code.CHARACTERISTIC_SET_VALUE_FAILED;
@@ -403,6 +406,44 @@ public class CorePeripheralTest {
     writeTestObserver.assertComplete();
   }
 
+  @Test
+  public void write_writeType_default() {
+    connect();
+
+    prepareWrite(true, true);
+    when(bluetoothGattCharacteristic.getProperties()).thenReturn(PROPERTY_WRITE | PROPERTY_WRITE_NO_RESPONSE);
+
+    byte[] writeBytes = new byte[] {0x00};
+    corePeripheral.write(svcUuid, chrUuid, writeBytes).test();
+
+    verify(bluetoothGattCharacteristic).setWriteType(WRITE_TYPE_NO_RESPONSE);
+  }
+
+  @Test
+  public void write_writeType_withResponse() {
+    connect();
+
+    prepareWrite(true, true);
+    when(bluetoothGattCharacteristic.getProperties()).thenReturn(PROPERTY_WRITE | PROPERTY_WRITE_NO_RESPONSE);
+
+    byte[] writeBytes = new byte[] {0x00};
+    corePeripheral.write(svcUuid, chrUuid, writeBytes, Peripheral.WriteType.WITH_RESPONSE).test();
+
+    verify(bluetoothGattCharacteristic).setWriteType(WRITE_TYPE_DEFAULT);
+  }
+
+  @Test
+  public void write_writeType_withResponseUnsupported() {
+    connect();
+
+    prepareWrite(true, true);
+
+    byte[] writeBytes = new byte[] {0x00};
+    corePeripheral.write(svcUuid, chrUuid, writeBytes, Peripheral.WriteType.WITH_RESPONSE).test();
+
+    verify(bluetoothGattCharacteristic).setWriteType(WRITE_TYPE_NO_RESPONSE);
+  }
+
   @Test
   public void write_operationInProgress() {
     connect();
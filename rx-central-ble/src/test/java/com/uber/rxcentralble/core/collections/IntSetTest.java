@@ -0,0 +1,63 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntSetTest {
+
+  @Test
+  public void addContains() {
+    IntSet set = new IntSet(2);
+
+    assertTrue(set.add(0));
+    assertTrue(set.add(0x180A));
+    assertFalse(set.add(0x180A));
+    assertTrue(set.contains(0));
+    assertTrue(set.contains(0x180A));
+    assertFalse(set.contains(0x180B));
+    assertEquals(2, set.size());
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertFalse(set.contains(0x180A));
+  }
+
+  @Test
+  public void matchesHashSet() {
+    IntSet set = new IntSet(1);
+    Set<Integer> expected = new HashSet<>();
+    Random random = new Random(7);
+
+    for (int i = 0; i < 1000; i++) {
+      int value = random.nextInt();
+      assertEquals(expected.add(value), set.add(value));
+    }
+
+    assertEquals(expected.size(), set.size());
+    for (int value : expected) {
+      assertTrue(set.contains(value));
+    }
+  }
+}
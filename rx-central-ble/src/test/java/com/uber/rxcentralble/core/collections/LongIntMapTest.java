@@ -0,0 +1,76 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIntMapTest {
+
+  @Test
+  public void putGetRemove() {
+    LongIntMap map = new LongIntMap(4);
+
+    map.put(0x0123456789ABL, 1);
+    map.put(0L, 2);
+    assertEquals(1, map.get(0x0123456789ABL));
+    assertEquals(2, map.get(0L));
+    assertEquals(LongIntMap.MISSING, map.get(42L));
+    assertEquals(2, map.size());
+
+    map.put(0L, 3);
+    assertEquals(3, map.get(0L));
+    assertEquals(2, map.size());
+
+    assertEquals(3, map.remove(0L));
+    assertEquals(LongIntMap.MISSING, map.remove(0L));
+    assertEquals(LongIntMap.MISSING, map.get(0L));
+    assertEquals(1, map.size());
+
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(LongIntMap.MISSING, map.get(0x0123456789ABL));
+  }
+
+  @Test
+  public void matchesHashMap() {
+    LongIntMap map = new LongIntMap(8);
+    Map<Long, Integer> expected = new HashMap<>();
+    Random random = new Random(7);
+
+    for (int i = 0; i < 20000; i++) {
+      long key = random.nextInt(512);
+      if (random.nextBoolean()) {
+        map.put(key, i);
+        expected.put(key, i);
+      } else {
+        Integer value = expected.remove(key);
+        assertEquals(value == null ? LongIntMap.MISSING : value, map.remove(key));
+      }
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (long key = 0; key < 512; key++) {
+      Integer value = expected.get(key);
+      assertEquals(value == null ? LongIntMap.MISSING : value, map.get(key));
+    }
+  }
+}
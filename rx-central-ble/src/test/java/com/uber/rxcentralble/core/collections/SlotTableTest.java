@@ -0,0 +1,75 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlotTableTest {
+
+  @Test
+  public void addGetRemove() {
+    SlotTable table = new SlotTable(2);
+
+    assertEquals(0, table.add(10L));
+    assertEquals(1, table.add(11L));
+    assertEquals(SlotTable.MISSING, table.add(12L));
+    assertEquals(1, table.get(11L));
+    assertEquals(11L, table.keyAt(1));
+    assertEquals(SlotTable.MISSING, table.get(12L));
+    assertEquals(2, table.size());
+
+    assertEquals(0, table.remove(10L));
+    assertEquals(SlotTable.MISSING, table.remove(10L));
+    assertEquals(1, table.size());
+
+    // The freed slot is reused.
+    assertEquals(0, table.add(12L));
+    assertEquals(0, table.get(12L));
+
+    table.clear();
+    assertEquals(0, table.size());
+    assertEquals(SlotTable.MISSING, table.get(11L));
+    assertEquals(0, table.add(11L));
+  }
+
+  @Test
+  public void addEvicting() {
+    SlotTable table = new SlotTable(3);
+    for (long key = 0; key < 3; key++) {
+      assertEquals(key, table.addEvicting(key));
+    }
+
+    // Keys are evicted in the order they were added.
+    assertEquals(0, table.addEvicting(3L));
+    assertEquals(SlotTable.MISSING, table.get(0L));
+    assertEquals(1, table.addEvicting(4L));
+    assertEquals(SlotTable.MISSING, table.get(1L));
+    assertEquals(2, table.get(2L));
+    assertEquals(3, table.size());
+
+    // A freed slot is used before evicting.
+    table.remove(2L);
+    assertEquals(2, table.addEvicting(5L));
+    assertEquals(0, table.get(3L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidCapacity() {
+    new SlotTable(0);
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.matchers;
+
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CoreParsedAdvertisement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import io.reactivex.observers.TestObserver;
+
+import static com.uber.rxcentralble.ScanDataFixtures.recordedScanData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CompositeScanMatcherTest {
+
+  private static final int MANY_MATCHERS = 50;
+  private static final int ROUTE_ITERATIONS = 100;
+
+  private static final UUID VENDOR_UUID = UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97");
+
+  /** Heart rate monitor: 16bit services 0x180D and 0x180F, complete name "HRM-123". */
+  private static final byte[] HEART_RATE_MONITOR = bytes(
+      0x02, 0x01, 0x06, 0x05, 0x03, 0x0D, 0x18, 0x0F, 0x18, 0x08, 0x09, 0x48, 0x52, 0x4D, 0x2D, 0x31, 0x32,
+      0x33);
+
+  /** Vendor peripheral: 128bit service, complete name "Uber". */
+  private static final byte[] VENDOR = bytes(
+      0x02, 0x01, 0x06, 0x11, 0x07, 0x97, 0x4A, 0xA1, 0x75, 0x15, 0xC7, 0x65, 0x81, 0x36, 0x4F, 0x42, 0x79,
+      0x00, 0x10, 0x97, 0xC7, 0x05, 0x09, 0x55, 0x62, 0x65, 0x72);
+
+  /** iBeacon: manufacturer data for 0x004C. */
+  private static final byte[] BEACON = bytes(
+      0x02, 0x01, 0x06, 0x1A, 0xFF, 0x4C, 0x00, 0x02, 0x15, 0xE2, 0xC5, 0x6D, 0xB5, 0xDF, 0xFB, 0x48, 0xD2,
+      0xB0, 0x60, 0xD0, 0xF5, 0xA7, 0x10, 0x96, 0xE0, 0x00, 0x01, 0x00, 0x02, 0xC5);
+
+  private final PublishRelay<ScanData> scanDataRelay = PublishRelay.create();
+  private final List<Boolean> subscriptions = new ArrayList<>();
+
+  private CompositeScanMatcher compositeScanMatcher;
+
+  @Before
+  public void setup() {
+    compositeScanMatcher = new CompositeScanMatcher(scanDataRelay
+        .doOnSubscribe(disposable -> subscriptions.add(true))
+        .doOnDispose(() -> subscriptions.add(false)));
+  }
+
+  @Test
+  public void matchService() {
+    TestObserver<ScanData> heartRate = compositeScanMatcher.matchService(Utils.uuidFromInteger(0x180D)).test();
+    TestObserver<ScanData> battery = compositeScanMatcher.matchService(Utils.uuidFromInteger(0x180F)).test();
+    TestObserver<ScanData> vendor = compositeScanMatcher.matchService(VENDOR_UUID).test();
+
+    ScanData heartRateMonitor = scanData(HEART_RATE_MONITOR);
+    ScanData vendorPeripheral = scanData(VENDOR);
+    scanDataRelay.accept(heartRateMonitor);
+    scanDataRelay.accept(vendorPeripheral);
+    scanDataRelay.accept(scanData(BEACON));
+
+    heartRate.assertValue(heartRateMonitor);
+    battery.assertValue(heartRateMonitor);
+    vendor.assertValue(vendorPeripheral);
+  }
+
+  @Test
+  public void matchManufacturer() {
+    TestObserver<ScanData> apple = compositeScanMatcher.matchManufacturer(0x004C).test();
+    TestObserver<ScanData> other = compositeScanMatcher.matchManufacturer(0x0059).test();
+
+    ScanData beacon = scanData(BEACON);
+    scanDataRelay.accept(beacon);
+    scanDataRelay.accept(scanData(HEART_RATE_MONITOR));
+
+    apple.assertValue(beacon);
+    other.assertEmpty();
+  }
+
+  @Test
+  public void matchNamePrefix() {
+    TestObserver<ScanData> hrm = compositeScanMatcher.matchNamePrefix("HRM").test();
+    TestObserver<ScanData> hrmExact = compositeScanMatcher.matchNamePrefix("HRM-123").test();
+    TestObserver<ScanData> tooLong = compositeScanMatcher.matchNamePrefix("HRM-1234").test();
+    TestObserver<ScanData> any = compositeScanMatcher.matchNamePrefix("").test();
+
+    ScanData heartRateMonitor = scanData(HEART_RATE_MONITOR);
+    ScanData vendorPeripheral = scanData(VENDOR);
+    scanDataRelay.accept(heartRateMonitor);
+    scanDataRelay.accept(vendorPeripheral);
+    scanDataRelay.accept(scanData(BEACON));
+
+    hrm.assertValue(heartRateMonitor);
+    hrmExact.assertValue(heartRateMonitor);
+    tooLong.assertEmpty();
+    any.assertValues(heartRateMonitor, vendorPeripheral);
+  }
+
+  @Test
+  public void matchPredicate() {
+    TestObserver<ScanData> predicate = compositeScanMatcher
+        .match(new ServiceScanMatcher(Utils.uuidFromInteger(0x180D)))
+        .test();
+
+    ScanData heartRateMonitor = scanData(HEART_RATE_MONITOR);
+    scanDataRelay.accept(heartRateMonitor);
+    scanDataRelay.accept(scanData(VENDOR));
+
+    predicate.assertValue(heartRateMonitor);
+  }
+
+  @Test
+  public void match_emitsOncePerAdvertisement() {
+    TestObserver<ScanData> battery = compositeScanMatcher.matchService(Utils.uuidFromInteger(0x180F)).test();
+
+    // Battery service listed in both a 16bit and a 128bit list.
+    UUID batteryUuid = Utils.uuidFromInteger(0x180F);
+    List<Integer> payload = new ArrayList<>();
+    for (int value : new int[] {0x03, 0x03, 0x0F, 0x18, 0x11, 0x07}) {
+      payload.add(value);
+    }
+    for (int i = 0; i < 8; i++) {
+      payload.add((int) (batteryUuid.getLeastSignificantBits() >>> (8 * i)) & 0xFF);
+    }
+    for (int i = 0; i < 8; i++) {
+      payload.add((int) (batteryUuid.getMostSignificantBits() >>> (8 * i)) & 0xFF);
+    }
+
+    scanDataRelay.accept(scanData(bytes(payload.stream().mapToInt(Integer::intValue).toArray())));
+    battery.assertValueCount(1);
+  }
+
+  @Test
+  public void match_subscribesWhileMatching() {
+    assertTrue(subscriptions.isEmpty());
+
+    TestObserver<ScanData> heartRate = compositeScanMatcher.matchService(Utils.uuidFromInteger(0x180D)).test();
+    TestObserver<ScanData> beacon = compositeScanMatcher.matchManufacturer(0x004C).test();
+    assertEquals(Collections.singletonList(true), subscriptions);
+
+    heartRate.dispose();
+    scanDataRelay.accept(scanData(HEART_RATE_MONITOR));
+    heartRate.assertEmpty();
+
+    beacon.dispose();
+    assertEquals(Arrays.asList(true, false), subscriptions);
+    assertFalse(scanDataRelay.hasObservers());
+  }
+
+  /**
+   * Routes advertisements to many service criteria through the composite index, and checks that
+   * each criterion receives what composing a filter per criterion would.
+   */
+  @Test
+  public void match_manyMatchers() {
+    ScanData[] corpus = new ScanData[] {scanData(HEART_RATE_MONITOR), scanData(VENDOR), scanData(BEACON)};
+
+    PublishRelay<ScanData> relay = PublishRelay.create();
+    List<TestObserver<ScanData>> filters = new ArrayList<>();
+    for (int i = 0; i < MANY_MATCHERS; i++) {
+      filters.add(relay.compose(new ServiceScanMatcher(Utils.uuidFromInteger(0x1800 + i)).match()).test());
+    }
+    route(relay, corpus);
+
+    relay = PublishRelay.create();
+    CompositeScanMatcher composite = new CompositeScanMatcher(relay);
+    List<TestObserver<ScanData>> routes = new ArrayList<>();
+    for (int i = 0; i < MANY_MATCHERS; i++) {
+      routes.add(composite.matchService(Utils.uuidFromInteger(0x1800 + i)).test());
+    }
+    route(relay, corpus);
+
+    for (int i = 0; i < MANY_MATCHERS; i++) {
+      assertEquals(filters.get(i).valueCount(), routes.get(i).valueCount());
+    }
+    assertEquals(2 * ROUTE_ITERATIONS, matchCount(filters));
+    assertEquals(2 * ROUTE_ITERATIONS, matchCount(routes));
+  }
+
+  private static void route(PublishRelay<ScanData> relay, ScanData[] corpus) {
+    for (int i = 0; i < ROUTE_ITERATIONS; i++) {
+      for (ScanData scanData : corpus) {
+        relay.accept(scanData);
+      }
+    }
+  }
+
+  private static int matchCount(List<TestObserver<ScanData>> observers) {
+    int count = 0;
+    for (TestObserver<ScanData> observer : observers) {
+      count += observer.valueCount();
+      observer.dispose();
+    }
+
+    return count;
+  }
+
+  private static ScanData scanData(byte[] advertisement) {
+    return recordedScanData(new CoreParsedAdvertisement(advertisement));
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+
+    return bytes;
+  }
+}
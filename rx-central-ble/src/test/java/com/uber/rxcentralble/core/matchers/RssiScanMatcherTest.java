@@ -20,7 +20,9 @@ import io.reactivex.ObservableTransformer;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.plugins.RxJavaPlugins;
 import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
 
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
@@ -97,4 +99,104 @@ public class RssiScanMatcherTest {
 
     scanDataTestObserver.assertValue(scanData2);
   }
+
+  @Test
+  public void match_oncePerWindow() {
+    ObservableTransformer<ScanData, ScanData> serviceMatch = scanData -> scanData.filter(sd -> true);
+    when(serviceScanMatcher.match()).thenReturn(serviceMatch);
+
+    scanDataTestObserver = scanDataRelay
+            .compose(rssiScanMatcher.match())
+            .test();
+
+    when(scanData1.getRssi()).thenReturn(-60);
+    for (int i = 0; i < 100; i++) {
+      scanDataRelay.accept(scanData1);
+      testScheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+    }
+
+    scanDataTestObserver.assertValues(scanData1);
+  }
+
+  @Test
+  public void match_smoothed() {
+    ObservableTransformer<ScanData, ScanData> serviceMatch = scanData -> scanData.filter(sd -> true);
+    when(serviceScanMatcher.match()).thenReturn(serviceMatch);
+
+    scanDataTestObserver = scanDataRelay
+            .compose(rssiScanMatcher.match())
+            .test();
+
+    when(scanData1.getRssi()).thenReturn(-60);
+    when(scanData2.getRssi()).thenReturn(-70);
+    for (int i = 0; i < 10; i++) {
+      scanDataRelay.accept(scanData1);
+      scanDataRelay.accept(scanData2);
+    }
+
+    // A single strong sample from a farther peripheral does not win.
+    when(scanData2.getRssi()).thenReturn(-40);
+    scanDataRelay.accept(scanData2);
+
+    testScheduler.advanceTimeBy(RssiScanMatcher.DEFAULT_MATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+    scanDataTestObserver.assertValue(scanData1);
+  }
+
+  @Test
+  public void match_evictsStale() {
+    ObservableTransformer<ScanData, ScanData> serviceMatch = scanData -> scanData.filter(sd -> true);
+    when(serviceScanMatcher.match()).thenReturn(serviceMatch);
+
+    scanDataTestObserver = scanDataRelay
+            .compose(rssiScanMatcher.match())
+            .test();
+
+    when(scanData1.getRssi()).thenReturn(-50);
+    when(scanData2.getRssi()).thenReturn(-70);
+    scanDataRelay.accept(scanData1);
+    testScheduler.advanceTimeBy(RssiScanMatcher.DEFAULT_MATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+
+    // The closer peripheral is gone; the farther one is still advertising.
+    scanDataRelay.accept(scanData2);
+    testScheduler.advanceTimeBy(RssiScanMatcher.DEFAULT_MATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+
+    scanDataTestObserver.assertValues(scanData1, scanData2);
+  }
+
+  @Test
+  public void match_completesWithScanData() {
+    ObservableTransformer<ScanData, ScanData> serviceMatch = scanData -> scanData.filter(sd -> true);
+    when(serviceScanMatcher.match()).thenReturn(serviceMatch);
+
+    PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+    scanDataTestObserver = scanDataSubject
+            .compose(rssiScanMatcher.match())
+            .test();
+
+    scanDataSubject.onNext(scanData1);
+    scanDataSubject.onComplete();
+
+    scanDataTestObserver.assertNoValues();
+    scanDataTestObserver.assertComplete();
+    assertFalse(scanDataSubject.hasObservers());
+    testScheduler.advanceTimeBy(RssiScanMatcher.DEFAULT_MATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+    scanDataTestObserver.assertNoValues();
+  }
+
+  @Test
+  public void match_errorsWithScanData() {
+    ObservableTransformer<ScanData, ScanData> serviceMatch = scanData -> scanData.filter(sd -> true);
+    when(serviceScanMatcher.match()).thenReturn(serviceMatch);
+
+    PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+    scanDataTestObserver = scanDataSubject
+            .compose(rssiScanMatcher.match())
+            .test();
+
+    IllegalStateException error = new IllegalStateException();
+    scanDataSubject.onError(error);
+
+    scanDataTestObserver.assertError(error);
+    assertFalse(scanDataSubject.hasObservers());
+  }
 }
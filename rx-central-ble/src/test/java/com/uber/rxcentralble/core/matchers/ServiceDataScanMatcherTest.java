@@ -0,0 +1,110 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.matchers;
+
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.os.ParcelUuid;
+
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CoreParsedAdvertisement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ServiceDataScanMatcherTest {
+
+  private static final UUID EDDYSTONE = Utils.uuidFromInteger(0xFEAA);
+
+  /** An Eddystone-UID beacon, whose service data starts with frame type 0x00 and TX power 0xEB. */
+  private static final byte[] EDDYSTONE_UID = new byte[] {
+      0x02, 0x01, 0x06, 0x03, 0x03, (byte) 0xAA, (byte) 0xFE, 0x07, 0x16, (byte) 0xAA, (byte) 0xFE, 0x00,
+      (byte) 0xEB, (byte) 0xED, (byte) 0xD1
+  };
+
+  @Mock ScanData scanData;
+  @Mock ScanResult scanResult;
+  @Mock ScanRecord scanRecord;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    when(scanData.getScanResult()).thenReturn(scanResult);
+    when(scanResult.getScanRecord()).thenReturn(scanRecord);
+    when(scanData.getParsedAdvertisement()).thenReturn(new CoreParsedAdvertisement(EDDYSTONE_UID));
+  }
+
+  @Test
+  public void match_parsedAdvertisement() {
+    assertTrue(new ServiceDataScanMatcher(EDDYSTONE).matches(scanData));
+    assertTrue(new ServiceDataScanMatcher(EDDYSTONE, new byte[] {0x00, (byte) 0xEB}).matches(scanData));
+    assertFalse(new ServiceDataScanMatcher(EDDYSTONE, new byte[] {0x10}).matches(scanData));
+    assertFalse(new ServiceDataScanMatcher(Utils.uuidFromInteger(0xFEAB)).matches(scanData));
+  }
+
+  @Test
+  public void match_mask() {
+    byte[] prefix = new byte[] {0x00, (byte) 0xE0};
+
+    assertTrue(new ServiceDataScanMatcher(EDDYSTONE, prefix, new byte[] {(byte) 0xFF, (byte) 0xF0})
+        .matches(scanData));
+    assertFalse(new ServiceDataScanMatcher(EDDYSTONE, prefix, new byte[] {(byte) 0xFF, (byte) 0xFF})
+        .matches(scanData));
+  }
+
+  @Test
+  public void match_scanRecord() {
+    when(scanData.getParsedAdvertisement()).thenReturn(null);
+    when(scanRecord.getServiceData(new ParcelUuid(EDDYSTONE))).thenReturn(new byte[] {0x20, 0x00});
+
+    assertTrue(new ServiceDataScanMatcher(EDDYSTONE, new byte[] {0x20}).matches(scanData));
+    assertFalse(new ServiceDataScanMatcher(EDDYSTONE, new byte[] {0x00}).matches(scanData));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidMask() {
+    new ServiceDataScanMatcher(EDDYSTONE, new byte[] {0x00}, new byte[] {0x00, 0x00});
+  }
+
+  @Test
+  public void hardwareFilters() {
+    byte[] prefix = new byte[] {0x00};
+    byte[] mask = new byte[] {(byte) 0xF0};
+    List<ScanFilter> filters = new ServiceDataScanMatcher(EDDYSTONE, prefix, mask).hardwareFilters();
+
+    assertEquals(1, filters.size());
+    assertEquals(new ParcelUuid(EDDYSTONE), filters.get(0).getServiceDataUuid());
+    assertArrayEquals(prefix, filters.get(0).getServiceData());
+    assertArrayEquals(mask, filters.get(0).getServiceDataMask());
+  }
+}
@@ -9,6 +9,8 @@ import com.jakewharton.rxrelay2.BehaviorRelay;
 import com.jakewharton.rxrelay2.Relay;
 import com.uber.rxcentralble.ParsedAdvertisement;
 import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CoreParsedAdvertisement;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -24,11 +26,36 @@ import java.util.UUID;
 
 import io.reactivex.observers.TestObserver;
 
+import static com.uber.rxcentralble.Allocations.allocatedBytes;
+import static com.uber.rxcentralble.ScanDataFixtures.recordedScanData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 public class ServiceScanMatcherTest {
 
+  private static final int BENCHMARK_ITERATIONS = 200000;
+
+  /**
+   * Advertisements recorded from common peripherals: an iBeacon, an Eddystone-UID beacon, a heart
+   * rate monitor, a peripheral with a vendor 128bit service, and a fitness band with several
+   * 16bit services and a name.
+   */
+  private static final byte[][] CORPUS = new byte[][] {
+      bytes(0x02, 0x01, 0x06, 0x1A, 0xFF, 0x4C, 0x00, 0x02, 0x15, 0xE2, 0xC5, 0x6D, 0xB5, 0xDF, 0xFB, 0x48,
+          0xD2, 0xB0, 0x60, 0xD0, 0xF5, 0xA7, 0x10, 0x96, 0xE0, 0x00, 0x01, 0x00, 0x02, 0xC5),
+      bytes(0x02, 0x01, 0x06, 0x03, 0x03, 0xAA, 0xFE, 0x15, 0x16, 0xAA, 0xFE, 0x00, 0xEB, 0xED, 0xD1, 0x4A,
+          0xA6, 0x19, 0x21, 0x97, 0x53, 0x7A, 0x67, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06),
+      bytes(0x02, 0x01, 0x06, 0x05, 0x03, 0x0D, 0x18, 0x0F, 0x18, 0x08, 0x09, 0x48, 0x52, 0x4D, 0x2D, 0x31,
+          0x32, 0x33),
+      bytes(0x02, 0x01, 0x06, 0x11, 0x07, 0x97, 0x4A, 0xA1, 0x75, 0x15, 0xC7, 0x65, 0x81, 0x36, 0x4F, 0x42,
+          0x79, 0x00, 0x10, 0x97, 0xC7, 0x05, 0x09, 0x55, 0x62, 0x65, 0x72),
+      bytes(0x02, 0x01, 0x06, 0x07, 0x02, 0x0A, 0x18, 0x0F, 0x18, 0x0D, 0x18, 0x05, 0x08, 0x42, 0x61, 0x6E,
+          0x64, 0x03, 0xFF, 0x59, 0x00)
+  };
+
   @Mock ScanData scanData;
   @Mock BluetoothDevice bluetoothDevice;
   @Mock ScanResult scanResult;
@@ -91,4 +118,102 @@ public class ServiceScanMatcherTest {
     scanDataRelay.accept(scanData);
     scanDataTestObserver.assertValue(scanData);
   }
+
+  @Test
+  public void match_parsedAdvertisement16Bit() {
+    serviceScanMatcher = new ServiceScanMatcher(Utils.uuidFromInteger(0x180D));
+    when(parsedAdvertisement.hasService16(0x180D)).thenReturn(true);
+
+    assertTrue(serviceScanMatcher.matches(scanData));
+  }
+
+  @Test
+  public void match_corpus() {
+    ServiceScanMatcher heartRateMatcher = new ServiceScanMatcher(Utils.uuidFromInteger(0x180D));
+    ServiceScanMatcher vendorMatcher =
+        new ServiceScanMatcher(UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97"));
+
+    int heartRateMatches = 0;
+    int vendorMatches = 0;
+    for (byte[] advertisement : CORPUS) {
+      ScanData corpusScanData = recordedScanData(new CoreParsedAdvertisement(advertisement));
+      heartRateMatches += heartRateMatcher.matches(corpusScanData) ? 1 : 0;
+      vendorMatches += vendorMatcher.matches(corpusScanData) ? 1 : 0;
+    }
+
+    assertEquals(2, heartRateMatches);
+    assertEquals(1, vendorMatches);
+    assertFalse(heartRateMatcher.matches(recordedScanData(null)));
+  }
+
+  /**
+   * Measures bytes allocated per match over the recorded corpus, for a 16bit and a
+   * 128bit service, with each advertisement parsed once as the caching parser factory does,
+   * against a baseline measured in the same run that parses the advertisement for every match.
+   */
+  @Test
+  public void benchmark_matchCorpus() {
+    ScanData[] corpus = new ScanData[CORPUS.length];
+    for (int i = 0; i < CORPUS.length; i++) {
+      corpus[i] = recordedScanData(new CoreParsedAdvertisement(CORPUS[i]));
+    }
+
+    ParsedAdvertisement[] parsed = new ParsedAdvertisement[CORPUS.length];
+    Runnable parse = () -> {
+      for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+        parsed[i % CORPUS.length] = new CoreParsedAdvertisement(CORPUS[i % CORPUS.length]);
+      }
+    };
+
+    // Warm up.
+    allocatedBytes(parse);
+    long parseBytes = allocatedBytes(parse);
+
+    ServiceScanMatcher[] matchers = new ServiceScanMatcher[] {
+        new ServiceScanMatcher(Utils.uuidFromInteger(0x180D)),
+        new ServiceScanMatcher(UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97"))
+    };
+
+    for (ServiceScanMatcher matcher : matchers) {
+      // Warm up.
+      runMatches(matcher, corpus);
+
+      assertTrue(allocatedBytes(() -> runMatches(matcher, corpus)) * 100 < parseBytes);
+    }
+  }
+
+  @Test
+  public void match_bondedDeviceWithoutAdvertisedService() {
+    uuidList.add(new ParcelUuid(UUID.randomUUID()));
+    when(scanRecord.getServiceUuids()).thenReturn(uuidList);
+    uuidArray[0] = parcelUuid;
+    when(bluetoothDevice.getUuids()).thenReturn(uuidArray);
+
+    // The advertisement must not be dropped by a hardware filter before reaching the matcher.
+    assertTrue(serviceScanMatcher.hardwareFilters().isEmpty());
+
+    scanDataRelay.accept(scanData);
+    scanDataTestObserver.assertValue(scanData);
+  }
+
+  private static int runMatches(ServiceScanMatcher matcher, ScanData[] corpus) {
+    int matches = 0;
+    for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+      if (matcher.matches(corpus[i % corpus.length])) {
+        matches++;
+      }
+    }
+
+    assertTrue(matches > 0);
+    return matches;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+
+    return bytes;
+  }
 }
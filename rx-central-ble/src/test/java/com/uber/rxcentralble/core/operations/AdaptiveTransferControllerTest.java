@@ -0,0 +1,177 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral.WriteType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+
+import static com.uber.rxcentralble.core.operations.AdaptiveTransferController.PROBE_CHUNKS;
+import static com.uber.rxcentralble.core.operations.AdaptiveTransferController.REPROBE_INTERVAL_CHUNKS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTransferControllerTest {
+
+  private static final long MS = 1_000_000;
+
+  private AdaptiveTransferController controller;
+
+  @Before
+  public void setup() {
+    controller = new AdaptiveTransferController();
+    controller.begin(244);
+  }
+
+  @Test
+  public void chunkLength_convergesOnReceiveBuffer() {
+    int receiveBuffer = 100;
+    int maxSuccess = 0;
+    int consecutiveErrors = 0;
+    int maxConsecutiveErrors = 0;
+
+    for (int i = 0; i < 500; i++) {
+      int length = controller.chunkLength();
+      if (length > receiveBuffer) {
+        assertTrue(controller.onError(length));
+        maxConsecutiveErrors = Math.max(maxConsecutiveErrors, ++consecutiveErrors);
+      } else {
+        controller.onSuccess(length, MS);
+        maxSuccess = Math.max(maxSuccess, length);
+        consecutiveErrors = 0;
+      }
+    }
+
+    assertEquals(receiveBuffer, maxSuccess);
+    assertEquals(1, maxConsecutiveErrors);
+  }
+
+  @Test
+  public void chunkLength_growsAfterTransientError() {
+    controller.onError(244);
+    assertEquals(AdaptiveTransferController.DEFAULT_MIN_CHUNK_LENGTH, controller.chunkLength());
+
+    for (int i = 0; i < 1000; i++) {
+      controller.onSuccess(controller.chunkLength(), MS);
+    }
+
+    assertEquals(244, controller.chunkLength());
+  }
+
+  @Test
+  public void onError_givesUpAfterConsecutiveErrors() {
+    assertTrue(controller.onError(controller.chunkLength()));
+    assertTrue(controller.onError(controller.chunkLength()));
+    assertFalse(controller.onError(controller.chunkLength()));
+  }
+
+  @Test
+  public void writeType_choosesHigherThroughput() {
+    for (int i = 0; i < 2 * PROBE_CHUNKS; i++) {
+      long latency = controller.writeType() == WriteType.WITH_RESPONSE ? 2 * MS : 10 * MS;
+      controller.onSuccess(controller.chunkLength(), latency);
+    }
+
+    assertEquals(WriteType.WITH_RESPONSE, controller.writeType());
+    assertEquals(WriteType.WITH_RESPONSE, controller.metrics().getWriteType());
+    assertEquals(2, controller.metrics().getLatencyMs(), 0.001);
+  }
+
+  @Test
+  public void writeType_discountsErrors() {
+    for (int i = 0; i < 2 * PROBE_CHUNKS; i++) {
+      if (controller.writeType() == WriteType.WITHOUT_RESPONSE && i % 2 == 0) {
+        controller.onError(controller.chunkLength());
+      } else {
+        long latency = controller.writeType() == WriteType.WITH_RESPONSE ? 10 * MS : 6 * MS;
+        controller.onSuccess(controller.chunkLength(), latency);
+      }
+    }
+
+    assertEquals(WriteType.WITH_RESPONSE, controller.writeType());
+  }
+
+  @Test
+  public void writeType_reprobes() {
+    for (int i = 0; i < 2 * PROBE_CHUNKS; i++) {
+      long latency = controller.writeType() == WriteType.WITH_RESPONSE ? 10 * MS : 2 * MS;
+      controller.onSuccess(controller.chunkLength(), latency);
+    }
+
+    assertEquals(WriteType.WITHOUT_RESPONSE, controller.writeType());
+
+    for (int i = 0; i < REPROBE_INTERVAL_CHUNKS; i++) {
+      controller.onSuccess(controller.chunkLength(), 2 * MS);
+    }
+
+    assertEquals(WriteType.WITH_RESPONSE, controller.writeType());
+
+    // The link has improved for writes with response.
+    for (int i = 0; i < PROBE_CHUNKS; i++) {
+      controller.onSuccess(controller.chunkLength(), MS);
+    }
+
+    assertEquals(WriteType.WITH_RESPONSE, controller.writeType());
+  }
+
+  @Test
+  public void writeType_fixed() {
+    controller = new AdaptiveTransferController(AdaptiveTransferController.DEFAULT_MIN_CHUNK_LENGTH, false);
+    controller.begin(244);
+
+    for (int i = 0; i < 2 * PROBE_CHUNKS + REPROBE_INTERVAL_CHUNKS; i++) {
+      assertEquals(WriteType.DEFAULT, controller.writeType());
+      controller.onSuccess(controller.chunkLength(), MS);
+    }
+  }
+
+  @Test
+  public void begin_newMaxWriteLength_resetsChunkLength() {
+    controller.onError(244);
+    controller.begin(244);
+    assertEquals(AdaptiveTransferController.DEFAULT_MIN_CHUNK_LENGTH, controller.chunkLength());
+
+    controller.begin(512);
+    assertEquals(512, controller.chunkLength());
+  }
+
+  @Test
+  public void parameterChanges() {
+    List<Integer> chunkLengths = new ArrayList<>();
+    TestObserver<AdaptiveTransferController.Metrics> metricsObserver = controller.parameterChanges().test();
+
+    controller.onError(244);
+    for (int i = 0; i < AdaptiveTransferController.GROW_AFTER_CHUNKS; i++) {
+      controller.onSuccess(controller.chunkLength(), MS);
+    }
+
+    for (AdaptiveTransferController.Metrics metrics : metricsObserver.values()) {
+      chunkLengths.add(metrics.getChunkLength());
+    }
+
+    assertEquals(AdaptiveTransferController.DEFAULT_MIN_CHUNK_LENGTH, (int) chunkLengths.get(0));
+    assertEquals(
+        (AdaptiveTransferController.DEFAULT_MIN_CHUNK_LENGTH + 243 + 1) / 2,
+        (int) chunkLengths.get(chunkLengths.size() - 1));
+  }
+}
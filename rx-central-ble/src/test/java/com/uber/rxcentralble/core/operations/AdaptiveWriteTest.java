@@ -0,0 +1,140 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Irrelevant;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.PeripheralError;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.util.UUID;
+
+import io.reactivex.Completable;
+import io.reactivex.observers.TestObserver;
+
+import static com.uber.rxcentralble.PeripheralError.Code.CONNECTION_LOST;
+import static com.uber.rxcentralble.PeripheralError.Code.WRITE_CHARACTERISTIC_FAILED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveWriteTest {
+
+  @Mock
+  Peripheral peripheral;
+
+  private final UUID svcUuid = UUID.randomUUID();
+  private final UUID chrUuid = UUID.randomUUID();
+  private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+  private AdaptiveTransferController controller;
+  private TestObserver<Irrelevant> writeResult;
+  private byte[] data;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    controller = new AdaptiveTransferController();
+    when(peripheral.getMaxWriteLength()).thenReturn(244);
+
+    data = new byte[10000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+  }
+
+  @Test
+  public void write_success_adaptsToReceiveBuffer() {
+    // Simulate a peripheral whose receive buffer is smaller than the MTU allows.
+    when(peripheral.write(any(), any(), any(), any())).thenAnswer(invocation -> {
+      byte[] chunk = invocation.getArgument(2);
+      if (chunk.length > 100) {
+        return Completable.error(new PeripheralError(WRITE_CHARACTERISTIC_FAILED, 13));
+      }
+
+      received.write(chunk, 0, chunk.length);
+      return Completable.complete();
+    });
+
+    writeResult = new AdaptiveWrite(svcUuid, chrUuid, data, controller, 5000)
+        .executeWithResult(peripheral)
+        .test();
+
+    writeResult.assertComplete();
+    assertArrayEquals(data, received.toByteArray());
+    assertTrue(controller.metrics().getChunkLength() <= 100);
+    assertEquals(244, controller.metrics().getMaxWriteLength());
+  }
+
+  @Test
+  public void write_success_probesWriteTypes() {
+    when(peripheral.write(any(), any(), any(), any())).thenAnswer(invocation -> {
+      byte[] chunk = invocation.getArgument(2);
+      received.write(chunk, 0, chunk.length);
+      return Completable.complete();
+    });
+
+    writeResult = new AdaptiveWrite(svcUuid, chrUuid, data, controller, 5000)
+        .executeWithResult(peripheral)
+        .test();
+
+    writeResult.assertComplete();
+    assertArrayEquals(data, received.toByteArray());
+    verify(peripheral, atLeast(AdaptiveTransferController.PROBE_CHUNKS))
+        .write(any(), any(), any(), eq(Peripheral.WriteType.WITH_RESPONSE));
+    verify(peripheral, atLeast(AdaptiveTransferController.PROBE_CHUNKS))
+        .write(any(), any(), any(), eq(Peripheral.WriteType.WITHOUT_RESPONSE));
+  }
+
+  @Test
+  public void write_writeFailures_givesUp() {
+    when(peripheral.write(any(), any(), any(), any()))
+        .thenReturn(Completable.error(new PeripheralError(WRITE_CHARACTERISTIC_FAILED, 13)));
+
+    writeResult = new AdaptiveWrite(svcUuid, chrUuid, data, controller, 5000)
+        .executeWithResult(peripheral)
+        .test();
+
+    writeResult.assertError(PeripheralError.class);
+    verify(peripheral, times(AdaptiveTransferController.MAX_CONSECUTIVE_ERRORS))
+        .write(any(), any(), any(), any());
+  }
+
+  @Test
+  public void write_otherError() {
+    when(peripheral.write(any(), any(), any(), any()))
+        .thenReturn(Completable.error(new PeripheralError(CONNECTION_LOST)));
+
+    writeResult = new AdaptiveWrite(svcUuid, chrUuid, data, controller, 5000)
+        .executeWithResult(peripheral)
+        .test();
+
+    writeResult.assertError(PeripheralError.class);
+    verify(peripheral, times(1)).write(any(), any(), any(), any());
+  }
+}
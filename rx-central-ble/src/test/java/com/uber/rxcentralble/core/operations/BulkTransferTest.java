@@ -0,0 +1,318 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import androidx.annotation.Nullable;
+
+import com.uber.rxcentralble.Peripheral;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static com.uber.rxcentralble.core.operations.BasicBulkTransferProtocol.OP_FINISH;
+import static com.uber.rxcentralble.core.operations.BasicBulkTransferProtocol.OP_SEEK;
+import static com.uber.rxcentralble.core.operations.BasicBulkTransferProtocol.OP_START;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+public class BulkTransferTest {
+
+  // Simulated link: 7.5ms connection interval, 6 packets per connection event.
+  private static final long CONNECTION_INTERVAL_US = 7500;
+  private static final long PACKET_US = CONNECTION_INTERVAL_US / 6;
+  private static final long ROUND_TRIP_US = 2 * CONNECTION_INTERVAL_US;
+
+  @Mock
+  Peripheral peripheral;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final UUID svcUuid = UUID.randomUUID();
+  private final UUID controlUuid = UUID.randomUUID();
+  private final UUID dataUuid = UUID.randomUUID();
+
+  private SimulatedTarget target;
+  private byte[] data;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    data = new byte[5000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void transfer_success() {
+    target = new SimulatedTarget(20, null);
+
+    TestObserver<TransferProgress> transferResult = transfer(4, 16).test();
+
+    transferResult.assertComplete();
+    assertEquals(data.length, transferResult.values().get(0).getBytesSent());
+    assertArrayEquals(data, target.received);
+    assertEquals(crc32(data), target.finishCrc32);
+    assertEquals(0, target.seeks);
+  }
+
+  @Test
+  public void transfer_progress() {
+    target = new SimulatedTarget(20, null);
+
+    BulkTransfer bulkTransfer = new BulkTransfer(protocol(), data, 4, 16, 60000);
+    TestObserver<TransferProgress> progressObserver = bulkTransfer.progress().test();
+    bulkTransfer.executeWithResult(peripheral).test().assertComplete();
+
+    // 5000 bytes in segments of 4 * 20 bytes.
+    progressObserver.assertValueCount(63);
+    assertEquals(data.length, progressObserver.values().get(62).getBytesSent());
+  }
+
+  @Test
+  public void transfer_corruptSegment_retransmits() {
+    target = new SimulatedTarget(20, null);
+    target.corruptOnce.add(3);
+    target.corruptOnce.add(40);
+
+    TestObserver<TransferProgress> transferResult = transfer(4, 16).test();
+
+    transferResult.assertComplete();
+    assertArrayEquals(data, target.received);
+    assertEquals(crc32(data), target.finishCrc32);
+    // Receipts are immediate, so each corrupt segment is resent right after it, with a single seek.
+    assertEquals(2, target.seeks);
+  }
+
+  @Test
+  public void transfer_corruptSegment_fails() {
+    target = new SimulatedTarget(20, null);
+    target.corruptAlways = 5;
+
+    TestObserver<TransferProgress> transferResult = transfer(4, 16).test();
+
+    transferResult.assertError(throwable -> {
+      BulkTransferError error = (BulkTransferError) throwable;
+      return error.getCode() == BulkTransferError.Code.INTEGRITY_CHECK_FAILED
+          && error.getSegmentIndex() == 5;
+    });
+    assertEquals(-1, target.finishCrc32);
+  }
+
+  @Test
+  public void transfer_window() {
+    target = new SimulatedTarget(20, null);
+    target.holdReceipts = true;
+
+    TestObserver<TransferProgress> transferResult = transfer(4, 16).test();
+
+    // Four segments fill the window of 16 packets.
+    assertEquals(16, target.packets);
+    assertEquals(4, target.heldReceipts.size());
+
+    target.releaseReceipt();
+    assertEquals(20, target.packets);
+
+    target.holdReceipts = false;
+    while (!target.heldReceipts.isEmpty()) {
+      target.releaseReceipt();
+    }
+
+    transferResult.assertComplete();
+    assertArrayEquals(data, target.received);
+  }
+
+  @Test
+  public void transfer_empty() {
+    target = new SimulatedTarget(20, null);
+    data = new byte[0];
+
+    transfer(4, 16).test().assertComplete();
+    assertEquals(0, target.packets);
+    assertEquals(crc32(data), target.finishCrc32);
+  }
+
+  /**
+   * Compares the simulated transfer time of 64KB to that of a Write of the same data over the same
+   * link, measured in the same run.
+   */
+  @Test
+  public void transfer_fasterThanWrite() {
+    data = new byte[64 * 1024];
+    target = new SimulatedTarget(244, testScheduler);
+
+    long bulkUs = elapsedUs(transfer(8, 32).test());
+    assertArrayEquals(data, target.received);
+
+    when(peripheral.write(any(), any(), any()))
+        .thenReturn(Completable.timer(ROUND_TRIP_US, TimeUnit.MICROSECONDS, testScheduler));
+    long writeUs = elapsedUs(new Write(svcUuid, dataUuid, data, 60000).executeWithResult(peripheral).test());
+
+    // Simulated time, so the comparison does not depend on the machine running it.
+    assertTrue(bulkUs * 5 < writeUs);
+  }
+
+  private Single<TransferProgress> transfer(int packetsPerReceipt, int windowPackets) {
+    return new BulkTransfer(protocol(), data, packetsPerReceipt, windowPackets, 60000)
+        .executeWithResult(peripheral);
+  }
+
+  private BulkTransferProtocol protocol() {
+    return new BasicBulkTransferProtocol(svcUuid, controlUuid, dataUuid);
+  }
+
+  private <T> long elapsedUs(TestObserver<T> observer) {
+    long start = testScheduler.now(TimeUnit.MICROSECONDS);
+    while (observer.valueCount() == 0 && observer.errorCount() == 0) {
+      testScheduler.advanceTimeBy(100, TimeUnit.MICROSECONDS);
+    }
+
+    observer.assertComplete();
+    return testScheduler.now(TimeUnit.MICROSECONDS) - start;
+  }
+
+  private static long crc32(byte[] bytes) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes, 0, bytes.length);
+    return crc32.getValue();
+  }
+
+  /** A DFU target speaking the BasicBulkTransferProtocol, optionally over a delayed link. */
+  private final class SimulatedTarget {
+
+    final PublishSubject<byte[]> notifications = PublishSubject.create();
+    final Set<Integer> corruptOnce = new HashSet<>();
+    final List<byte[]> heldReceipts = new ArrayList<>();
+    final CRC32 segmentCrc32 = new CRC32();
+
+    @Nullable final TestScheduler scheduler;
+
+    byte[] received = new byte[0];
+    int corruptAlways = -1;
+    boolean holdReceipts;
+    long finishCrc32 = -1;
+    int segmentLength;
+    int segmentStart;
+    int position;
+    int packets;
+    int seeks;
+
+    SimulatedTarget(int maxWriteLength, @Nullable TestScheduler scheduler) {
+      this.scheduler = scheduler;
+
+      when(peripheral.getMaxWriteLength()).thenReturn(maxWriteLength);
+      when(peripheral.registerNotification(any(), any())).thenReturn(Completable.complete());
+      when(peripheral.notification(controlUuid)).thenReturn(notifications);
+      when(peripheral.write(any(), any(), any())).thenAnswer(invocation ->
+          delay(ROUND_TRIP_US).andThen(Completable.fromAction(() -> onControl(invocation.getArgument(2)))));
+      when(peripheral.write(any(), any(), any(), any())).thenAnswer(invocation ->
+          delay(PACKET_US).andThen(Completable.fromAction(() -> onPacket(invocation.getArgument(2)))));
+    }
+
+    void releaseReceipt() {
+      notifications.onNext(heldReceipts.remove(0));
+    }
+
+    private Completable delay(long us) {
+      return scheduler != null
+          ? Completable.timer(us, TimeUnit.MICROSECONDS, scheduler)
+          : Completable.complete();
+    }
+
+    private void onControl(byte[] command) {
+      ByteBuffer buffer = ByteBuffer.wrap(command).order(ByteOrder.LITTLE_ENDIAN);
+      switch (buffer.get()) {
+        case OP_START:
+          received = new byte[buffer.getInt()];
+          segmentLength = buffer.getInt();
+          break;
+        case OP_SEEK:
+          position = buffer.getInt();
+          segmentStart = position;
+          segmentCrc32.reset();
+          seeks++;
+          break;
+        case OP_FINISH:
+          finishCrc32 = buffer.getInt() & 0xFFFFFFFFL;
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void onPacket(byte[] packet) {
+      int segment = segmentStart / segmentLength;
+      System.arraycopy(packet, 0, received, position, packet.length);
+      if (segment == corruptAlways || corruptOnce.remove(segment)) {
+        packet = packet.clone();
+        packet[0]++;
+      }
+
+      segmentCrc32.update(packet, 0, packet.length);
+      position += packet.length;
+      packets++;
+
+      if (position - segmentStart == segmentLength || position == received.length) {
+        byte[] receipt = ByteBuffer.allocate(8)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(position)
+            .putInt((int) segmentCrc32.getValue())
+            .array();
+        segmentStart = position;
+        segmentCrc32.reset();
+
+        if (holdReceipts) {
+          heldReceipts.add(receipt);
+        } else if (scheduler != null) {
+          scheduler.scheduleDirect(
+              () -> notifications.onNext(receipt), CONNECTION_INTERVAL_US, TimeUnit.MICROSECONDS);
+        } else {
+          notifications.onNext(receipt);
+        }
+      }
+    }
+  }
+}
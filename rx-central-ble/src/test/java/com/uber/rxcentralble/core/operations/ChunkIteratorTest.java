@@ -0,0 +1,120 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.uber.rxcentralble.Allocations.allocatedBytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkIteratorTest {
+
+  private static final int ONE_MB = 1024 * 1024;
+  private static final int MAX_WRITE_LENGTH = 247 - Peripheral.MTU_OVERHEAD;
+
+  @Test
+  public void chunk_copies() {
+    byte[] data = data(50);
+    ChunkIterator chunks = new ChunkIterator(data, false);
+    chunks.reset(20);
+
+    byte[] first = chunks.next();
+    byte[] second = chunks.next();
+    byte[] third = chunks.next();
+
+    assertFalse(chunks.hasNext());
+    assertNotSame(first, second);
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 20), first);
+    assertArrayEquals(Arrays.copyOfRange(data, 20, 40), second);
+    assertArrayEquals(Arrays.copyOfRange(data, 40, 50), third);
+  }
+
+  @Test
+  public void chunk_reusesBuffers() {
+    byte[] data = data(50);
+    ChunkIterator chunks = new ChunkIterator(data, true);
+    chunks.reset(20);
+
+    byte[] first = chunks.next();
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 20), first);
+
+    byte[] second = chunks.next();
+    assertSame(first, second);
+    assertArrayEquals(Arrays.copyOfRange(data, 20, 40), second);
+
+    byte[] tail = chunks.next();
+    assertEquals(10, tail.length);
+    assertArrayEquals(Arrays.copyOfRange(data, 40, 50), tail);
+    assertFalse(chunks.hasNext());
+
+    // Rewinding must not allocate new buffers.
+    chunks.reset(20);
+    assertTrue(chunks.hasNext());
+    assertSame(first, chunks.next());
+    chunks.next();
+    assertSame(tail, chunks.next());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void chunk_invalidMaxWriteLength() {
+    new ChunkIterator(data(10), true).reset(0);
+  }
+
+  /**
+   * Compares bytes allocated per MB chunked at an MTU of 247, between allocating a new array per
+   * chunk and reusing buffers. Both are measured in the same run, as absolute counts vary by JVM.
+   */
+  @Test
+  public void benchmark_allocationsPerMb() {
+    byte[] data = data(ONE_MB);
+    ChunkIterator copying = new ChunkIterator(data, false);
+    ChunkIterator pooled = new ChunkIterator(data, true);
+
+    // Warm up.
+    allocatedBytes(() -> chunk(copying));
+    allocatedBytes(() -> chunk(pooled));
+
+    long copyingBytes = allocatedBytes(() -> chunk(copying));
+    long pooledBytes = allocatedBytes(() -> chunk(pooled));
+
+    assertTrue(pooledBytes * 100 < copyingBytes);
+  }
+
+  private static void chunk(ChunkIterator chunks) {
+    chunks.reset(MAX_WRITE_LENGTH);
+    while (chunks.hasNext()) {
+      chunks.next();
+    }
+  }
+
+  private static byte[] data(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+
+    return data;
+  }
+}
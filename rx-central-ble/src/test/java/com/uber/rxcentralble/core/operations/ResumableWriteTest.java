@@ -0,0 +1,178 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Irrelevant;
+import com.uber.rxcentralble.Peripheral;
+import com.uber.rxcentralble.PeripheralError;
+import com.uber.rxcentralble.core.CorePeripheralManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResumableWriteTest {
+
+  @Mock Peripheral peripheral;
+  @Mock Peripheral reconnectedPeripheral;
+
+  private final UUID svcUuid = UUID.randomUUID();
+  private final UUID chrUuid = UUID.randomUUID();
+  private final TransferCheckpoint checkpoint = new TransferCheckpoint();
+
+  private byte[] data;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    when(peripheral.getMaxWriteLength()).thenReturn(20);
+    when(reconnectedPeripheral.getMaxWriteLength()).thenReturn(20);
+    when(reconnectedPeripheral.write(any(), any(), any())).thenReturn(Completable.complete());
+
+    data = new byte[128];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+  }
+
+  @Test
+  public void write_resumesAfterReconnect() {
+    // The link drops after three chunks are written.
+    when(peripheral.write(any(), any(), any())).thenReturn(
+        Completable.complete(),
+        Completable.complete(),
+        Completable.complete(),
+        Completable.error(new PeripheralError(PeripheralError.Code.DISCONNECTED)));
+
+    CorePeripheralManager peripheralManager = new CorePeripheralManager();
+    peripheralManager.setPeripheral(peripheral);
+
+    ResumableWrite write = new ResumableWrite(svcUuid, chrUuid, data, checkpoint, 5000);
+    TestObserver<Irrelevant> writeResultTestObserver = peripheralManager
+        .queueOperation(write)
+        .retryWhen(errors -> errors.doOnNext(error -> peripheralManager.setPeripheral(reconnectedPeripheral)))
+        .test();
+
+    writeResultTestObserver.assertComplete();
+    verify(peripheral, times(4)).write(any(), any(), any());
+
+    // The remaining chunks are written to the reconnected peripheral, starting at the 4th chunk.
+    List<byte[]> chunks = verifyChunks(reconnectedPeripheral, 4);
+    assertArrayEquals(Arrays.copyOfRange(data, 60, 80), chunks.get(0));
+    assertArrayEquals(Arrays.copyOfRange(data, 120, 128), chunks.get(3));
+
+    verifyCheckpoint(data.length);
+  }
+
+  @Test
+  public void write_resumesFromCheckpoint() {
+    checkpoint.resume(data, 100);
+
+    TestObserver<Irrelevant> writeResultTestObserver =
+        new ResumableWrite(svcUuid, chrUuid, data, checkpoint, 5000)
+            .executeWithResult(reconnectedPeripheral)
+            .test();
+
+    writeResultTestObserver.assertComplete();
+    List<byte[]> chunks = verifyChunks(reconnectedPeripheral, 2);
+    assertArrayEquals(Arrays.copyOfRange(data, 100, 120), chunks.get(0));
+
+    verifyCheckpoint(data.length);
+  }
+
+  @Test
+  public void write_resumesFromHandshake() {
+    checkpoint.resume(data, 100);
+
+    // The peripheral only committed the first 40 bytes.
+    ResumeHandshake handshake = (peripheral, checkpoint) -> Single.just(40L);
+
+    TestObserver<Irrelevant> writeResultTestObserver =
+        new ResumableWrite(svcUuid, chrUuid, data, checkpoint, handshake, 5000)
+            .executeWithResult(reconnectedPeripheral)
+            .test();
+
+    writeResultTestObserver.assertComplete();
+    List<byte[]> chunks = verifyChunks(reconnectedPeripheral, 5);
+    assertArrayEquals(Arrays.copyOfRange(data, 40, 60), chunks.get(0));
+
+    verifyCheckpoint(data.length);
+  }
+
+  @Test
+  public void write_handshakeCompleted() {
+    ResumeHandshake handshake = (peripheral, checkpoint) -> Single.just((long) data.length);
+
+    TestObserver<Irrelevant> writeResultTestObserver =
+        new ResumableWrite(svcUuid, chrUuid, data, checkpoint, handshake, 5000)
+            .executeWithResult(reconnectedPeripheral)
+            .test();
+
+    writeResultTestObserver.assertComplete();
+    verify(reconnectedPeripheral, never()).write(any(), any(), any());
+
+    verifyCheckpoint(data.length);
+  }
+
+  @Test
+  public void write_handshakeError() {
+    ResumeHandshake handshake = (peripheral, checkpoint) ->
+        Single.error(new PeripheralError(PeripheralError.Code.READ_CHARACTERISTIC_FAILED));
+
+    TestObserver<Irrelevant> writeResultTestObserver =
+        new ResumableWrite(svcUuid, chrUuid, data, checkpoint, handshake, 5000)
+            .executeWithResult(reconnectedPeripheral)
+            .test();
+
+    writeResultTestObserver.assertError(PeripheralError.class);
+    verify(reconnectedPeripheral, never()).write(any(), any(), any());
+    assertEquals(0, checkpoint.getOffset());
+  }
+
+  private List<byte[]> verifyChunks(Peripheral peripheral, int count) {
+    ArgumentCaptor<byte[]> chunkCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(peripheral, times(count)).write(any(), any(), chunkCaptor.capture());
+    return chunkCaptor.getAllValues();
+  }
+
+  private void verifyCheckpoint(int offset) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(data, 0, offset);
+
+    assertEquals(offset, checkpoint.getOffset());
+    assertEquals(crc32.getValue(), checkpoint.getCrc32());
+  }
+}
@@ -0,0 +1,202 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.operations;
+
+import com.uber.rxcentralble.Peripheral;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.CompletableSubject;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+public class StreamingWriteTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Mock
+  Peripheral peripheral;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final UUID svcUuid = UUID.randomUUID();
+  private final UUID chrUuid = UUID.randomUUID();
+  private final List<byte[]> chunks = new ArrayList<>();
+
+  private byte[] data;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    when(peripheral.getMaxWriteLength()).thenReturn(20);
+    when(peripheral.write(any(), any(), any())).thenAnswer(invocation -> {
+      chunks.add(invocation.getArgument(2));
+      return Completable.complete();
+    });
+
+    data = new byte[1000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void write_inputStream() {
+    StreamingWrite.Source source =
+        StreamSources.inputStream(() -> new ByteArrayInputStream(data), data.length);
+
+    writeAndVerify(source);
+  }
+
+  @Test
+  public void write_file() throws IOException {
+    writeAndVerify(StreamSources.file(writeFile()));
+  }
+
+  @Test
+  public void write_mappedFile() throws IOException {
+    writeAndVerify(StreamSources.mappedFile(writeFile()));
+  }
+
+  @Test
+  public void write_flowable() {
+    // Buffers smaller than, equal to and larger than the max write length.
+    Flowable<ByteBuffer> buffers = Flowable.just(7, 20, 45, 3, 925)
+        .scan(new int[] {0, 0}, (range, length) -> new int[] {range[1], range[1] + length})
+        .skip(1)
+        .map(range -> ByteBuffer.wrap(data, range[0], range[1] - range[0]));
+
+    writeAndVerify(StreamSources.flowable(buffers, data.length));
+  }
+
+  @Test
+  public void write_progress() {
+    StreamingWrite write = new StreamingWrite(
+        svcUuid, chrUuid, StreamSources.inputStream(() -> new ByteArrayInputStream(data), data.length), 5000);
+
+    TestObserver<TransferProgress> progressTestObserver = write.progress().test();
+    TestObserver<TransferProgress> resultTestObserver = write.executeWithResult(peripheral).test();
+
+    progressTestObserver.assertValueCount(50);
+    assertEquals(20, progressTestObserver.values().get(0).getBytesSent());
+    assertEquals(data.length, progressTestObserver.values().get(0).getTotalBytes());
+    assertEquals(0, progressTestObserver.values().get(49).getEtaMs());
+
+    resultTestObserver.assertValue(progress -> progress.getBytesSent() == data.length
+        && progress.getCrc32() == TransferProgress.UNKNOWN);
+  }
+
+  @Test
+  public void write_backpressure() {
+    CompletableSubject writeCompletable = CompletableSubject.create();
+    when(peripheral.write(any(), any(), any())).thenReturn(writeCompletable);
+
+    AtomicInteger emitted = new AtomicInteger();
+    Flowable<ByteBuffer> buffers = Flowable.range(0, 100)
+        .map(i -> ByteBuffer.wrap(data, i * 10, 10))
+        .doOnNext(buffer -> emitted.incrementAndGet());
+
+    StreamingWrite write = new StreamingWrite(
+        svcUuid, chrUuid, StreamSources.flowable(buffers, data.length), 5000);
+    TestObserver<TransferProgress> resultTestObserver = write.executeWithResult(peripheral).test();
+
+    // The first chunk is in flight; reads ahead are bounded by a few chunks, not the payload.
+    assertTrue(emitted.get() * 10 <= 3 * 20);
+
+    writeCompletable.onComplete();
+
+    assertEquals(100, emitted.get());
+    resultTestObserver.assertValue(progress -> progress.getBytesSent() == data.length);
+  }
+
+  @Test
+  public void write_timeout() {
+    when(peripheral.write(any(), any(), any())).thenReturn(CompletableSubject.create());
+
+    StreamingWrite write = new StreamingWrite(
+        svcUuid, chrUuid, StreamSources.inputStream(() -> new ByteArrayInputStream(data), data.length), 5000);
+    TestObserver<TransferProgress> resultTestObserver = write.executeWithResult(peripheral).test();
+
+    testScheduler.advanceTimeBy(5000 + 1000, TimeUnit.MILLISECONDS);
+
+    resultTestObserver.assertError(TimeoutException.class);
+  }
+
+  private void writeAndVerify(StreamingWrite.Source source) {
+    StreamingWrite write = new StreamingWrite(svcUuid, chrUuid, source, true, 5000);
+    TestObserver<TransferProgress> resultTestObserver = write.executeWithResult(peripheral).test();
+
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+    for (byte[] chunk : chunks) {
+      assertTrue(chunk.length <= 20);
+      written.write(chunk, 0, chunk.length);
+    }
+
+    assertEquals(50, chunks.size());
+    assertArrayEquals(data, written.toByteArray());
+
+    CRC32 crc32 = new CRC32();
+    crc32.update(data, 0, data.length);
+    resultTestObserver.assertValue(progress -> progress.getBytesSent() == data.length
+        && progress.getCrc32() == crc32.getValue());
+  }
+
+  private File writeFile() throws IOException {
+    File file = temporaryFolder.newFile();
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+
+    return file;
+  }
+}
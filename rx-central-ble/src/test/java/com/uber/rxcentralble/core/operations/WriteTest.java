@@ -26,7 +26,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -37,6 +39,7 @@ import io.reactivex.plugins.RxJavaPlugins;
 import io.reactivex.schedulers.TestScheduler;
 import io.reactivex.subjects.CompletableSubject;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
@@ -172,6 +175,29 @@ public class WriteTest {
     writeResultTestObserver.assertComplete();
   }
 
+  @Test
+  public void write_success_reuseChunkBuffers() {
+    prepareWrite(20, 128);
+    write = new Write(svcUuid, chrUuid, data, 5000, true);
+
+    // Reused buffers are only valid until the write completes; snapshot each chunk as it's written.
+    List<byte[]> chunks = new ArrayList<>();
+    when(peripheral.write(any(), any(), any())).thenAnswer(invocation -> {
+      byte[] chunk = invocation.getArgument(2);
+      chunks.add(Arrays.copyOf(chunk, chunk.length));
+      return Completable.complete();
+    });
+
+    writeResultTestObserver = write.executeWithResult(peripheral).test();
+
+    writeResultTestObserver.assertComplete();
+    assertEquals(7, chunks.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      byte[] original = Arrays.copyOfRange(data, i * 20, Math.min(i * 20 + 20, 128));
+      assertArrayEquals(original, chunks.get(i));
+    }
+  }
+
   private void prepareWrite(int mtu, int length) {
     when(peripheral.getMaxWriteLength()).thenReturn(mtu);
 
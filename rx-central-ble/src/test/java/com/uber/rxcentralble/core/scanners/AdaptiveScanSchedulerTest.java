@@ -0,0 +1,162 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+import com.uber.rxcentralble.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_BALANCED;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_LATENCY;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_POWER;
+import static android.bluetooth.le.ScanSettings.SCAN_MODE_OPPORTUNISTIC;
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static com.uber.rxcentralble.core.scanners.AdaptiveScanScheduler.NO_LATENCY_BUDGET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveScanSchedulerTest {
+
+  private static final long EVALUATION_INTERVAL_MS = 1000;
+  private static final int STALLED_EVALUATIONS = 2;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final PublishRelay<ScanData> scanDataRelay = PublishRelay.create();
+  private final List<Integer> scanModes = new ArrayList<>();
+  private final ScanMatcher allMatcher = () -> scanData -> scanData;
+
+  @Mock Scanner scanner;
+
+  private AdaptiveScanScheduler adaptiveScanScheduler;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    when(scanner.scan(anyInt())).thenAnswer(invocation -> {
+      scanModes.add(invocation.getArgument(0));
+      return scanDataRelay;
+    });
+
+    adaptiveScanScheduler = new AdaptiveScanScheduler(scanner, EVALUATION_INTERVAL_MS, STALLED_EVALUATIONS);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void scan_backsOffWhenStalled() {
+    TestObserver<ScanData> scanDataTestObserver = adaptiveScanScheduler.scan(allMatcher, NO_LATENCY_BUDGET).test();
+
+    testScheduler.advanceTimeBy(6 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    assertEquals(
+        Arrays.asList(SCAN_MODE_LOW_LATENCY, SCAN_MODE_BALANCED, SCAN_MODE_LOW_POWER, SCAN_MODE_OPPORTUNISTIC),
+        scanModes);
+    scanDataTestObserver.assertNoErrors();
+  }
+
+  @Test
+  public void scan_stepsUpForNewDevices() {
+    adaptiveScanScheduler.scan(allMatcher, NO_LATENCY_BUDGET).test();
+    testScheduler.advanceTimeBy(4 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    scanDataRelay.accept(scanData("00:00:00:00:00:01", -60));
+    testScheduler.advanceTimeBy(EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    // A device already seen is not new.
+    scanDataRelay.accept(scanData("00:00:00:00:00:01", -60));
+    testScheduler.advanceTimeBy(EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    assertEquals(
+        Arrays.asList(SCAN_MODE_LOW_LATENCY, SCAN_MODE_BALANCED, SCAN_MODE_LOW_POWER, SCAN_MODE_BALANCED),
+        scanModes);
+  }
+
+  @Test
+  public void scan_latencyBudgetFloor() {
+    adaptiveScanScheduler.scan(allMatcher, NO_LATENCY_BUDGET).test();
+    TestObserver<ScanData> budgeted = adaptiveScanScheduler.scan(allMatcher, 4500).test();
+
+    testScheduler.advanceTimeBy(10 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    assertEquals(Arrays.asList(SCAN_MODE_LOW_LATENCY, SCAN_MODE_BALANCED), scanModes);
+
+    budgeted.dispose();
+    assertEquals(SCAN_MODE_OPPORTUNISTIC, (int) scanModes.get(scanModes.size() - 1));
+  }
+
+  @Test
+  public void scan_floorAppliedOnJoin() {
+    adaptiveScanScheduler.scan(allMatcher, NO_LATENCY_BUDGET).test();
+    testScheduler.advanceTimeBy(6 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    assertEquals(SCAN_MODE_OPPORTUNISTIC, (int) scanModes.get(scanModes.size() - 1));
+
+    // Raised without waiting for the next evaluation.
+    adaptiveScanScheduler.scan(allMatcher, 4500).test();
+    assertEquals(SCAN_MODE_BALANCED, (int) scanModes.get(scanModes.size() - 1));
+  }
+
+  @Test
+  public void metrics_timeInMode() {
+    TestObserver<ScanData> scanDataTestObserver = adaptiveScanScheduler.scan(allMatcher, NO_LATENCY_BUDGET).test();
+    testScheduler.advanceTimeBy(3 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    AdaptiveScanScheduler.Metrics metrics = adaptiveScanScheduler.metrics();
+    assertEquals(SCAN_MODE_BALANCED, (int) metrics.getScanMode());
+    assertEquals(2 * EVALUATION_INTERVAL_MS, metrics.getTimeInModeMs(SCAN_MODE_LOW_LATENCY));
+    assertEquals(EVALUATION_INTERVAL_MS, metrics.getTimeInModeMs(SCAN_MODE_BALANCED));
+
+    scanDataTestObserver.dispose();
+    testScheduler.advanceTimeBy(3 * EVALUATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    metrics = adaptiveScanScheduler.metrics();
+    assertNull(metrics.getScanMode());
+    assertEquals(EVALUATION_INTERVAL_MS, metrics.getTimeInModeMs(SCAN_MODE_BALANCED));
+    assertEquals(1, metrics.getModeChanges());
+  }
+
+  @Test
+  public void scanModeFloor() {
+    assertEquals(SCAN_MODE_OPPORTUNISTIC, AdaptiveScanScheduler.scanModeFloor(NO_LATENCY_BUDGET));
+    assertEquals(SCAN_MODE_LOW_POWER, AdaptiveScanScheduler.scanModeFloor(60000));
+    assertEquals(SCAN_MODE_BALANCED, AdaptiveScanScheduler.scanModeFloor(4500));
+    assertEquals(SCAN_MODE_LOW_LATENCY, AdaptiveScanScheduler.scanModeFloor(1000));
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static com.uber.rxcentralble.core.scanners.AdvertisementSampler.NO_RSSI_CHANGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdvertisementSamplerTest {
+
+  private static final String DEVICE_A = "00:00:00:00:00:01";
+  private static final String DEVICE_B = "00:00:00:00:00:02";
+  private static final byte[] PAYLOAD = new byte[] {0x02, 0x01, 0x06};
+  private static final long INTERVAL_MS = 1000;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void sample_interval() {
+    AdvertisementSampler sampler = new AdvertisementSampler(INTERVAL_MS, NO_RSSI_CHANGE, false);
+
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertTrue(sampler.sample(DEVICE_B, -60, PAYLOAD));
+    assertFalse(sampler.sample(DEVICE_A, -90, new byte[] {0x01}));
+
+    testScheduler.advanceTimeBy(INTERVAL_MS - 1, TimeUnit.MILLISECONDS);
+    assertFalse(sampler.sample(DEVICE_A, -60, PAYLOAD));
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertFalse(sampler.sample(DEVICE_A, -60, PAYLOAD));
+
+    assertEquals(3, sampler.getKept());
+    assertEquals(3, sampler.getDropped());
+  }
+
+  @Test
+  public void sample_rssiChange() {
+    AdvertisementSampler sampler = new AdvertisementSampler(INTERVAL_MS, 6, false);
+
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertFalse(sampler.sample(DEVICE_A, -65, PAYLOAD));
+    assertTrue(sampler.sample(DEVICE_A, -66, PAYLOAD));
+    assertFalse(sampler.sample(DEVICE_A, -61, PAYLOAD));
+  }
+
+  @Test
+  public void sample_payloadChange() {
+    AdvertisementSampler sampler = new AdvertisementSampler(INTERVAL_MS, NO_RSSI_CHANGE, true);
+
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertFalse(sampler.sample(DEVICE_A, -60, PAYLOAD.clone()));
+    assertTrue(sampler.sample(DEVICE_A, -60, new byte[] {0x02, 0x01, 0x04}));
+    assertTrue(sampler.sample(DEVICE_A, -60, null));
+    assertFalse(sampler.sample(DEVICE_A, -60, null));
+  }
+
+  @Test
+  public void sample_noInterval() {
+    AdvertisementSampler sampler = new AdvertisementSampler(0, NO_RSSI_CHANGE, false);
+
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+  }
+
+  @Test
+  public void sample_capacity() {
+    AdvertisementSampler sampler = new AdvertisementSampler(INTERVAL_MS, NO_RSSI_CHANGE, false, 1);
+
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertTrue(sampler.sample(DEVICE_B, -60, PAYLOAD));
+    // Device A was forgotten to make room.
+    assertTrue(sampler.sample(DEVICE_A, -60, PAYLOAD));
+    assertTrue(sampler.sample(DEVICE_B, -60, PAYLOAD));
+  }
+}
@@ -64,9 +64,9 @@ public class JellyBeanScannerTest {
     mockStatic(BluetoothAdapter.class);
 
     when(bluetoothAdapter.startLeScan(any())).thenReturn(true);
-    when(adDataFactory.produce(any())).thenReturn(parsedAdvertisement);
+    when(adDataFactory.produce(any(), any())).thenReturn(parsedAdvertisement);
 
-    scanner = new JellyBeanScanner(adDataFactory);
+    scanner = new JellyBeanScanner(adDataFactory, new ScanStartLimiter());
   }
 
   @Test
@@ -0,0 +1,230 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.content.Intent;
+
+import com.uber.rxcentralble.ConnectionError;
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.core.matchers.ServiceDataScanMatcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static com.uber.rxcentralble.core.scanners.PendingIntentScanner.ACTION_SCAN_RESULTS;
+import static com.uber.rxcentralble.core.scanners.PendingIntentScanner.EXTRA_REQUEST_CODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@RunWith(RobolectricTestRunner.class)
+@PowerMockIgnore({"org.powermock.*", "org.mockito.*", "org.robolectric.*", "android.*"})
+@PrepareForTest({BluetoothAdapter.class})
+public class PendingIntentScannerTest {
+
+  private static final int REQUEST_CODE = 7;
+
+  @Rule
+  public PowerMockRule rule = new PowerMockRule();
+
+  @Mock ParsedAdvertisement.Factory adDataFactory;
+  @Mock ParsedAdvertisement parsedAdvertisement;
+
+  @Mock BluetoothAdapter bluetoothAdapter;
+  @Mock BluetoothLeScanner bluetoothLeScanner;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  private PendingIntentScanner scanner;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    mockStatic(BluetoothAdapter.class);
+
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(bluetoothAdapter.getBluetoothLeScanner()).thenReturn(bluetoothLeScanner);
+    when(adDataFactory.produce(any(), any())).thenReturn(parsedAdvertisement);
+
+    scanner = new PendingIntentScanner(
+        RuntimeEnvironment.getApplication(), adDataFactory, REQUEST_CODE, new ScanStartLimiter());
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void scan_startsAndStopsWithPendingIntent() {
+    UUID svc = UUID.randomUUID();
+    TestObserver<ScanData> scanObserver = scanner.scan(new ServiceDataScanMatcher(svc)).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(
+        argThat(filters -> filters != null && filters.size() == 1
+            && svc.equals(((ScanFilter) filters.get(0)).getServiceDataUuid().getUuid())),
+        any(),
+        any(PendingIntent.class));
+
+    scanObserver.dispose();
+
+    // Stopped once before starting, in case a previous process left the scan running, and once on dispose.
+    verify(bluetoothLeScanner, times(2)).stopScan(any(PendingIntent.class));
+  }
+
+  @Test
+  public void scan_decodesDeliveredResults() {
+    TestObserver<ScanData> scanObserver = scanner.scan().test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    deliver(resultIntent(REQUEST_CODE, scanResult("00:00:00:00:00:01", -60), scanResult("00:00:00:00:00:02", -70)));
+
+    scanObserver.assertValueCount(2);
+    assertEquals("00:00:00:00:00:01", scanObserver.values().get(0).getBluetoothDevice().getAddress());
+    assertSame(parsedAdvertisement, scanObserver.values().get(1).getParsedAdvertisement());
+  }
+
+  @Test
+  public void scan_ignoresOtherScanners() {
+    TestObserver<ScanData> scanObserver = scanner.scan().test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    deliver(resultIntent(REQUEST_CODE + 1, scanResult("00:00:00:00:00:01", -60)));
+
+    scanObserver.assertNoValues();
+    verify(adDataFactory, never()).produce(any(), any());
+  }
+
+  @Test
+  public void scan_distinctRequestCodes() {
+    PendingIntentScanner scannerA = new PendingIntentScanner(RuntimeEnvironment.getApplication());
+    PendingIntentScanner scannerB = new PendingIntentScanner(RuntimeEnvironment.getApplication());
+
+    TestObserver<ScanData> scanA = scannerA.scan().test();
+    TestObserver<ScanData> scanB = scannerB.scan().test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    ArgumentCaptor<PendingIntent> pendingIntents = ArgumentCaptor.forClass(PendingIntent.class);
+    verify(bluetoothLeScanner, times(2)).startScan(any(), any(), pendingIntents.capture());
+    assertNotEquals(pendingIntents.getAllValues().get(0), pendingIntents.getAllValues().get(1));
+
+    scanA.dispose();
+    scanB.dispose();
+  }
+
+  @Test
+  public void scan_failed_errorCode() {
+    TestObserver<ScanData> scanObserver = scanner.scan().test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    deliver(resultIntent(REQUEST_CODE).putExtra(BluetoothLeScanner.EXTRA_ERROR_CODE, 2));
+
+    scanObserver.assertError(throwable -> throwable instanceof ConnectionError
+        && ((ConnectionError) throwable).getCode() == ConnectionError.Code.SCAN_FAILED);
+  }
+
+  @Test
+  public void scanBatches_offloaded() {
+    when(bluetoothAdapter.isOffloadedScanBatchingSupported()).thenReturn(true);
+
+    TestObserver<List<ScanData>> batchObserver = scanner.scanBatches(0, 5000).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(
+        anyList(), argThat(settings -> settings != null && settings.getReportDelayMillis() == 5000),
+        any(PendingIntent.class));
+
+    deliver(resultIntent(REQUEST_CODE,
+        scanResult("00:00:00:00:00:01", -80),
+        scanResult("00:00:00:00:00:02", -70),
+        scanResult("00:00:00:00:00:01", -60)));
+
+    // Strongest result per device, parsed once each.
+    batchObserver.assertValueCount(1);
+    List<ScanData> batch = batchObserver.values().get(0);
+    assertEquals(2, batch.size());
+    assertEquals(-60, batch.get(0).getRssi());
+    verify(adDataFactory, times(2)).produce(any(), any());
+  }
+
+  private void deliver(Intent intent) {
+    new PendingIntentScanner.Receiver().onReceive(RuntimeEnvironment.getApplication(), intent);
+  }
+
+  private static Intent resultIntent(int requestCode, ScanResult... scanResults) {
+    return new Intent(ACTION_SCAN_RESULTS)
+        .putExtra(EXTRA_REQUEST_CODE, requestCode)
+        .putParcelableArrayListExtra(BluetoothLeScanner.EXTRA_LIST_SCAN_RESULT,
+            new ArrayList<>(Arrays.asList(scanResults)));
+  }
+
+  private static ScanResult scanResult(String address, int rssi) {
+    BluetoothDevice device = mock(BluetoothDevice.class);
+    when(device.getAddress()).thenReturn(address);
+
+    ScanRecord scanRecord = mock(ScanRecord.class);
+    when(scanRecord.getBytes()).thenReturn(new byte[] {0x00});
+
+    ScanResult scanResult = mock(ScanResult.class);
+    when(scanResult.getDevice()).thenReturn(device);
+    when(scanResult.getScanRecord()).thenReturn(scanRecord);
+    when(scanResult.getRssi()).thenReturn(rssi);
+    return scanResult;
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScanMetricsTest {
+
+  private static final String DEVICE_A = "00:00:00:00:00:01";
+  private static final String DEVICE_B = "00:00:00:00:00:02";
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void snapshot_counters() {
+    ScanMetrics metrics = new ScanMetrics();
+
+    metrics.recordCallback();
+    metrics.recordCallback();
+    metrics.recordBatchCallback(5);
+    metrics.recordSampledOut();
+    metrics.recordDevice(DEVICE_A);
+    metrics.recordDevice(DEVICE_A);
+    metrics.recordDevice(DEVICE_B);
+    metrics.recordDevice(null);
+    metrics.recordStop();
+
+    ScanMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(2, snapshot.getCallbacks());
+    assertEquals(1, snapshot.getBatchCallbacks());
+    assertEquals(5, snapshot.getBatchResults());
+    assertEquals(1, snapshot.getSampledOut());
+    assertEquals(1, snapshot.getScanStops());
+    assertEquals(2, snapshot.getDeviceAdvertisements().size());
+    assertEquals(Long.valueOf(2), snapshot.getDeviceAdvertisements().get(DEVICE_A));
+    assertEquals(Long.valueOf(1), snapshot.getDeviceAdvertisements().get(DEVICE_B));
+  }
+
+  @Test
+  public void snapshot_parseHistogram() {
+    ScanMetrics metrics = new ScanMetrics();
+
+    for (int i = 0; i < 9; i++) {
+      metrics.recordParse(1000);
+    }
+    metrics.recordParse(100000);
+
+    ScanMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(10, snapshot.getParsed());
+    assertEquals(9 * 1000 + 100000, snapshot.getParseNanos());
+    assertEquals(9, snapshot.getParseHistogram()[9]);
+    assertEquals(1, snapshot.getParseHistogram()[16]);
+    assertEquals(1024, snapshot.getParseNanosPercentile(50));
+    assertEquals(1024, snapshot.getParseNanosPercentile(90));
+    assertEquals(131072, snapshot.getParseNanosPercentile(99));
+  }
+
+  @Test
+  public void recordStart_throttleDelay() {
+    ScanMetrics metrics = new ScanMetrics();
+
+    metrics.recordStart(Completable.complete()).test().assertComplete();
+    metrics.recordStart(Completable.timer(2000, TimeUnit.MILLISECONDS)).test();
+    testScheduler.advanceTimeBy(2000, TimeUnit.MILLISECONDS);
+
+    ScanMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(2, snapshot.getScanStarts());
+    assertEquals(1, snapshot.getThrottledStarts());
+    assertEquals(2000, snapshot.getThrottleDelayMs());
+  }
+
+  @Test
+  public void instrument_predicateMatcher() {
+    ScanMetrics metrics = new ScanMetrics();
+    ScanMatcher matcher = metrics.instrument("strong", (PredicateScanMatcher) scanData -> scanData.getRssi() > -70);
+
+    assertTrue(matcher instanceof PredicateScanMatcher);
+
+    TestObserver<ScanData> matches = Observable.just(scanData(-60), scanData(-80), scanData(-65))
+        .compose(matcher.match())
+        .test();
+
+    matches.assertValueCount(2);
+    ScanMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(Long.valueOf(3), snapshot.getMatcherEvaluations().get("strong"));
+    assertEquals(Long.valueOf(2), snapshot.getMatches().get("strong"));
+  }
+
+  @Test
+  public void instrument_streamMatcher() {
+    ScanMetrics metrics = new ScanMetrics();
+    ScanMatcher matcher = metrics.instrument("first", () -> scanData -> scanData.take(1));
+
+    Observable.just(scanData(-60), scanData(-80)).compose(matcher.match()).test().assertValueCount(1);
+
+    ScanMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(Long.valueOf(1), snapshot.getMatches().get("first"));
+  }
+
+  @Test
+  public void snapshots_interval() {
+    ScanMetrics metrics = new ScanMetrics();
+    metrics.recordCallback();
+    metrics.recordDevice(DEVICE_A);
+
+    TestObserver<ScanMetrics.Snapshot> snapshots = metrics.snapshots(1000).test();
+
+    for (int i = 0; i < 4; i++) {
+      metrics.recordCallback();
+    }
+    metrics.recordDevice(DEVICE_A);
+    metrics.recordDevice(DEVICE_B);
+    testScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+    testScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+    snapshots.assertValueCount(2);
+    ScanMetrics.Snapshot first = snapshots.values().get(0);
+    assertEquals(1000, first.getIntervalMs());
+    assertEquals(4, first.getCallbacks());
+    assertEquals(4.0, first.perSecond(first.getCallbacks()), 0.001);
+    assertEquals(Long.valueOf(1), first.getDeviceAdvertisements().get(DEVICE_A));
+    assertEquals(Long.valueOf(1), first.getDeviceAdvertisements().get(DEVICE_B));
+
+    ScanMetrics.Snapshot second = snapshots.values().get(1);
+    assertEquals(0, second.getCallbacks());
+    assertEquals(Long.valueOf(0), second.getDeviceAdvertisements().get(DEVICE_A));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void snapshots_invalidInterval() {
+    new ScanMetrics().snapshots(0);
+  }
+
+  private static ScanData scanData(int rssi) {
+    ScanData scanData = mock(ScanData.class);
+    when(scanData.getRssi()).thenReturn(rssi);
+    return scanData;
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+import com.uber.rxcentralble.PredicateScanMatcher;
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.ScanMatcher;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScanPrefilterTest {
+
+  private static final PredicateScanMatcher STRONG = scanData -> scanData.getRssi() > -70;
+  private static final PredicateScanMatcher WEAK = scanData -> scanData.getRssi() < -90;
+
+  private final ScanPrefilter scanPrefilter = new ScanPrefilter();
+
+  @Test
+  public void accepts_withoutSubscribers() {
+    assertTrue(scanPrefilter.accepts(scanData(-80)));
+  }
+
+  @Test
+  public void accepts_anyPredicate() {
+    Object strongKey = new Object();
+    scanPrefilter.add(strongKey, STRONG);
+    scanPrefilter.add(new Object(), WEAK);
+
+    assertTrue(scanPrefilter.accepts(scanData(-60)));
+    assertTrue(scanPrefilter.accepts(scanData(-95)));
+    assertFalse(scanPrefilter.accepts(scanData(-80)));
+
+    scanPrefilter.remove(strongKey);
+    assertFalse(scanPrefilter.accepts(scanData(-60)));
+  }
+
+  @Test
+  public void accepts_allWhileUnfilteredOrStreamMatcher() {
+    scanPrefilter.add(new Object(), STRONG);
+
+    Object unfilteredKey = new Object();
+    scanPrefilter.add(unfilteredKey, null);
+    assertTrue(scanPrefilter.accepts(scanData(-80)));
+
+    scanPrefilter.remove(unfilteredKey);
+    assertFalse(scanPrefilter.accepts(scanData(-80)));
+
+    ScanMatcher streamMatcher = () -> scanData -> scanData.take(1);
+    scanPrefilter.add(new Object(), streamMatcher);
+    assertTrue(scanPrefilter.accepts(scanData(-80)));
+  }
+
+  @Test
+  public void accepts_instrumentedWithoutCounting() {
+    ScanMetrics scanMetrics = new ScanMetrics();
+    scanPrefilter.add(new Object(), scanMetrics.instrument("strong", STRONG));
+
+    assertTrue(scanPrefilter.accepts(scanData(-60)));
+    assertFalse(scanPrefilter.accepts(scanData(-80)));
+    assertEquals(Long.valueOf(0), scanMetrics.snapshot().getMatcherEvaluations().get("strong"));
+  }
+
+  private static ScanData scanData(int rssi) {
+    ScanData scanData = mock(ScanData.class);
+    when(scanData.getRssi()).thenReturn(rssi);
+    return scanData;
+  }
+}
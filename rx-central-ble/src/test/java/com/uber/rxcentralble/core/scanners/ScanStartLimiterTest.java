@@ -0,0 +1,192 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.scanners;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScanStartLimiterTest {
+
+  private static final int CAPACITY = 2;
+  private static final long REFILL_INTERVAL_MS = 1000;
+  private static final long START_SPACING_MS = REFILL_INTERVAL_MS / CAPACITY;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  private ScanStartLimiter limiter;
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    limiter = new ScanStartLimiter(CAPACITY, REFILL_INTERVAL_MS);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void acquire_burst() {
+    limiter.acquire(new Object()).test().assertComplete();
+    limiter.acquire(new Object()).test().assertComplete();
+    TestObserver<Void> throttled = limiter.acquire(new Object()).test();
+
+    throttled.assertNotComplete();
+
+    // A start exactly one interval ago still counts.
+    testScheduler.advanceTimeBy(REFILL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    throttled.assertNotComplete();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    throttled.assertComplete();
+
+    ScanStartLimiter.Metrics metrics = limiter.metrics();
+    assertEquals(3, metrics.getStarts());
+    assertEquals(1, metrics.getThrottledStarts());
+    assertEquals(REFILL_INTERVAL_MS + 1, metrics.getTotalThrottleDelayMs());
+    assertEquals(REFILL_INTERVAL_MS + 1, metrics.getMaxThrottleDelayMs());
+  }
+
+  @Test
+  public void acquire_slidingWindow() {
+    limiter = new ScanStartLimiter();
+    long windowMs = ScanStartLimiter.DEFAULT_REFILL_INTERVAL_MS;
+
+    for (int i = 0; i < ScanStartLimiter.DEFAULT_CAPACITY; i++) {
+      limiter.acquire(new Object()).test().assertComplete();
+      testScheduler.advanceTimeBy(windowMs / 5, TimeUnit.MILLISECONDS);
+    }
+
+    TestObserver<Void> fifth = limiter.acquire(new Object()).test();
+    TestObserver<Void> sixth = limiter.acquire(new Object()).test();
+
+    testScheduler.advanceTimeBy(windowMs / 5 + 1, TimeUnit.MILLISECONDS);
+    fifth.assertComplete();
+    sixth.assertNotComplete();
+
+    // The token of the second start is returned next, rather than a token one interval later.
+    testScheduler.advanceTimeBy(windowMs / 5, TimeUnit.MILLISECONDS);
+    sixth.assertComplete();
+    assertEquals(windowMs * 6 / 5 + 1, testScheduler.now(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void acquire_refillsUpToCapacity() {
+    drain();
+
+    testScheduler.advanceTimeBy(REFILL_INTERVAL_MS * 10, TimeUnit.MILLISECONDS);
+
+    limiter.acquire(new Object()).test().assertComplete();
+    limiter.acquire(new Object()).test().assertComplete();
+    limiter.acquire(new Object()).test().assertNotComplete();
+  }
+
+  @Test
+  public void acquire_queuedInOrder() {
+    drain();
+
+    TestObserver<Void> first = limiter.acquire(new Object()).test();
+    TestObserver<Void> second = limiter.acquire(new Object()).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    first.assertComplete();
+    second.assertNotComplete();
+
+    testScheduler.advanceTimeBy(START_SPACING_MS, TimeUnit.MILLISECONDS);
+    second.assertComplete();
+
+    assertEquals(START_SPACING_MS + 1, limiter.metrics().getMaxThrottleDelayMs());
+  }
+
+  @Test
+  public void acquire_mergedBySameRequester() {
+    drain();
+
+    Object requester = new Object();
+    TestObserver<Void> first = limiter.acquire(requester).test();
+    TestObserver<Void> other = limiter.acquire(new Object()).test();
+    TestObserver<Void> merged = limiter.acquire(requester).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    first.assertComplete();
+    merged.assertComplete();
+    other.assertNotComplete();
+
+    ScanStartLimiter.Metrics metrics = limiter.metrics();
+    assertEquals(3, metrics.getStarts());
+    assertEquals(1, metrics.getMergedRequests());
+    assertEquals(1, metrics.getQueuedRequests());
+  }
+
+  @Test
+  public void acquire_disposedKeepsPlaceForRequester() {
+    drain();
+
+    Object requester = new Object();
+    limiter.acquire(requester).test().dispose();
+    TestObserver<Void> other = limiter.acquire(new Object()).test();
+    TestObserver<Void> restarted = limiter.acquire(requester).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    restarted.assertComplete();
+    other.assertNotComplete();
+  }
+
+  @Test
+  public void acquire_disposedSkipped() {
+    drain();
+
+    limiter.acquire(new Object()).test().dispose();
+    TestObserver<Void> other = limiter.acquire(new Object()).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    other.assertComplete();
+
+    assertEquals(3, limiter.metrics().getStarts());
+  }
+
+  @Test
+  public void acquire_deferredUntilSubscribed() {
+    Completable acquire = limiter.acquire(new Object());
+    drain();
+
+    TestObserver<Void> throttled = acquire.test();
+    throttled.assertNotComplete();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+    throttled.assertComplete();
+  }
+
+  /** Take every token, a start spacing apart, so that the first is returned in a millisecond. */
+  private void drain() {
+    for (int i = 0; i < CAPACITY; i++) {
+      limiter.acquire(new Object()).test().assertComplete();
+      testScheduler.advanceTimeBy(START_SPACING_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -19,13 +19,18 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
 import android.bluetooth.le.ScanSettings;
+import android.os.ParcelUuid;
 
 import com.uber.rxcentralble.ConnectionError;
+import com.uber.rxcentralble.HardwareScanMatcher;
 import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.PredicateScanMatcher;
 import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.core.CachingParsedAdvertisementFactory;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -40,16 +45,26 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.reactivex.ObservableTransformer;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.plugins.RxJavaPlugins;
 import io.reactivex.schedulers.TestScheduler;
 
+import static android.bluetooth.BluetoothDevice.PHY_LE_CODED;
 import static com.uber.rxcentralble.core.scanners.ThrottledLollipopScanner.ANDROID_7_MAX_SCAN_DURATION_MS;
+import static com.uber.rxcentralble.core.scanners.ThrottledLollipopScanner.PAUSE_INTERVAL_MS;
 import static com.uber.rxcentralble.core.scanners.ThrottledLollipopScanner.SCAN_WINDOW_MS;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -86,13 +101,17 @@ public class ThrottledLollipopScannerTest {
     mockStatic(BluetoothAdapter.class);
 
     when(bluetoothAdapter.getBluetoothLeScanner()).thenReturn(bluetoothLeScanner);
-    when(adDataFactory.produce(any())).thenReturn(parsedAdvertisement);
+    when(adDataFactory.produce(any(), any())).thenReturn(parsedAdvertisement);
     when(scanResult.getDevice()).thenReturn(bluetoothDevice);
     when(scanResult.getScanRecord()).thenReturn(scanRecord);
     when(scanRecord.getBytes()).thenReturn(new byte[] {0x00});
     when(scanResult.getRssi()).thenReturn(0);
 
-    scanner = new ThrottledLollipopScanner();
+    scanner = new ThrottledLollipopScanner(
+        new CachingParsedAdvertisementFactory(),
+        ANDROID_7_MAX_SCAN_DURATION_MS,
+        PAUSE_INTERVAL_MS,
+        new ScanStartLimiter());
   }
 
   @Test
@@ -181,6 +200,237 @@ public class ThrottledLollipopScannerTest {
     scanDataTestObserver.assertValueCount(1);
   }
 
+  @Test
+  public void scan_sampledBeforeParsing() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+    when(bluetoothDevice.getAddress()).thenReturn("AA:AA:AA:AA:AA:AA");
+
+    scanner = new ThrottledLollipopScanner(
+        adDataFactory,
+        ANDROID_7_MAX_SCAN_DURATION_MS,
+        PAUSE_INTERVAL_MS,
+        new ScanStartLimiter(),
+        new AdvertisementSampler(1000, AdvertisementSampler.NO_RSSI_CHANGE, true));
+    AtomicInteger matches = new AtomicInteger();
+    scanDataTestObserver = scanner.scan((PredicateScanMatcher) scanData -> {
+      matches.incrementAndGet();
+      return scanData.getParsedAdvertisement() != null;
+    }).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    ArgumentCaptor<ScanCallback> argument = ArgumentCaptor.forClass(ScanCallback.class);
+    verify(bluetoothLeScanner).startScan(any(), any(), argument.capture());
+
+    argument.getValue().onScanResult(0, scanResult);
+    argument.getValue().onScanResult(0, scanResult);
+
+    // The sampled out advertisement is neither matched nor parsed.
+    scanDataTestObserver.assertValueCount(1);
+    assertEquals(1, matches.get());
+    verify(adDataFactory, times(1)).produce(any(), any());
+    assertEquals(1, scanner.getMetrics().snapshot().getSampledOut());
+
+    testScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+    argument.getValue().onScanResult(0, scanResult);
+
+    scanDataTestObserver.assertValueCount(2);
+  }
+
+  @Test
+  public void scan_rejectedBeforeMaterializing() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+    when(bluetoothDevice.getAddress()).thenReturn("AA:AA:AA:AA:AA:AA");
+
+    scanner = new ThrottledLollipopScanner(
+        adDataFactory, ANDROID_7_MAX_SCAN_DURATION_MS, PAUSE_INTERVAL_MS, new ScanStartLimiter());
+    TestObserver<ScanData> strong = scanner.scan((PredicateScanMatcher) scanData -> scanData.getRssi() > -70).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    ArgumentCaptor<ScanCallback> argument = ArgumentCaptor.forClass(ScanCallback.class);
+    verify(bluetoothLeScanner).startScan(any(), any(), argument.capture());
+
+    // Rejected on RSSI alone, so never parsed.
+    when(scanResult.getRssi()).thenReturn(-80);
+    argument.getValue().onScanResult(0, scanResult);
+
+    strong.assertNoValues();
+    verify(adDataFactory, times(0)).produce(any(), any());
+    assertEquals(1, scanner.getMetrics().snapshot().getFilteredOut());
+
+    when(scanResult.getRssi()).thenReturn(-60);
+    argument.getValue().onScanResult(0, scanResult);
+
+    strong.assertValueCount(1);
+    assertEquals(-60, strong.values().get(0).getRssi());
+    verify(adDataFactory, times(1)).produce(any(), any());
+
+    // An unfiltered subscriber requires every advertisement.
+    TestObserver<ScanData> all = scanner.scan().test();
+    when(scanResult.getRssi()).thenReturn(-80);
+    argument.getValue().onScanResult(0, scanResult);
+
+    all.assertValueCount(1);
+    strong.assertValueCount(1);
+    assertEquals(1, scanner.getMetrics().snapshot().getFilteredOut());
+  }
+
+  @Test
+  public void scan_hardwareFilters_merged() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+
+    UUID svcA = UUID.randomUUID();
+    UUID svcB = UUID.randomUUID();
+
+    TestObserver<ScanData> scanA = scanner.scan(serviceFilterMatcher(svcA)).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner, times(1))
+            .startScan(argThat(filters -> hasServiceFilters(filters, svcA)), any(), any(ScanCallback.class));
+
+    TestObserver<ScanData> scanB = scanner.scan(serviceFilterMatcher(svcB)).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner, times(1))
+            .startScan(argThat(filters -> hasServiceFilters(filters, svcA, svcB)), any(), any(ScanCallback.class));
+
+    // An equal matcher does not change the merged set of filters, so the scan is not restarted.
+    TestObserver<ScanData> scanA2 = scanner.scan(serviceFilterMatcher(svcA)).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner, times(2)).startScan(any(), any(), any(ScanCallback.class));
+
+    // An unfiltered subscriber requires all advertisements.
+    scanDataTestObserver = scanner.scan().test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner, times(1))
+            .startScan(argThat(filters -> hasServiceFilters(filters, (UUID) null)), any(), any(ScanCallback.class));
+
+    scanDataTestObserver.dispose();
+    scanB.dispose();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner, times(2))
+            .startScan(argThat(filters -> hasServiceFilters(filters, svcA)), any(), any(ScanCallback.class));
+
+    scanA.dispose();
+    scanA2.dispose();
+  }
+
+  @Test
+  public void scanExtended_merged() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(bluetoothAdapter.isLeExtendedAdvertisingSupported()).thenReturn(true);
+    when(bluetoothAdapter.isLeCodedPhySupported()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+
+    UUID svc = UUID.randomUUID();
+
+    TestObserver<ScanData> legacyScan = scanner.scan(serviceFilterMatcher(svc)).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings ->
+            settings != null && settings.getLegacy()), any(ScanCallback.class));
+
+    // Legacy advertisements are on the 1M PHY, so both PHYs are scanned.
+    TestObserver<ScanData> codedScan =
+            scanner.scanExtended(serviceFilterMatcher(svc), ScanSettings.SCAN_MODE_LOW_LATENCY, PHY_LE_CODED).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings -> settings != null
+            && !settings.getLegacy() && settings.getPhy() == ScanSettings.PHY_LE_ALL_SUPPORTED),
+            any(ScanCallback.class));
+
+    legacyScan.dispose();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings -> settings != null
+            && !settings.getLegacy() && settings.getPhy() == PHY_LE_CODED), any(ScanCallback.class));
+
+    codedScan.dispose();
+  }
+
+  @Test
+  public void scanExtended_unsupported() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+
+    scanDataTestObserver = scanner.scanExtended(
+            serviceFilterMatcher(UUID.randomUUID()), ScanSettings.SCAN_MODE_LOW_LATENCY, PHY_LE_CODED).test();
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings ->
+            settings != null && settings.getLegacy()), any(ScanCallback.class));
+  }
+
+  @Test
+  public void scanBatches_offloaded() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(bluetoothAdapter.isOffloadedScanBatchingSupported()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+
+    BluetoothDevice otherDevice = mock(BluetoothDevice.class);
+    ScanResult otherResult = mock(ScanResult.class);
+    ScanResult strongerResult = mock(ScanResult.class);
+    when(bluetoothDevice.getAddress()).thenReturn("AA:AA:AA:AA:AA:AA");
+    when(otherDevice.getAddress()).thenReturn("BB:BB:BB:BB:BB:BB");
+    when(otherResult.getDevice()).thenReturn(otherDevice);
+    when(otherResult.getRssi()).thenReturn(-70);
+    when(strongerResult.getDevice()).thenReturn(bluetoothDevice);
+    when(strongerResult.getRssi()).thenReturn(10);
+
+    TestObserver<List<ScanData>> batchTestObserver =
+            scanner.scanBatches(ScanSettings.SCAN_MODE_LOW_POWER, 5000).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    ArgumentCaptor<ScanCallback> argument = ArgumentCaptor.forClass(ScanCallback.class);
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings ->
+            settings != null && settings.getReportDelayMillis() == 5000), argument.capture());
+
+    argument.getValue().onBatchScanResults(Arrays.asList(scanResult, otherResult, strongerResult));
+
+    batchTestObserver.assertValueCount(1);
+    List<ScanData> batch = batchTestObserver.values().get(0);
+    assertEquals(2, batch.size());
+    assertEquals(10, batch.get(0).getRssi());
+    assertEquals(-70, batch.get(1).getRssi());
+    // Each device is parsed once.
+    verify(adDataFactory, times(2)).produce(any(), any());
+  }
+
+  @Test
+  public void scanBatches_liveSubscriber() {
+    when(bluetoothAdapter.isEnabled()).thenReturn(true);
+    when(bluetoothAdapter.isOffloadedScanBatchingSupported()).thenReturn(true);
+    when(BluetoothAdapter.getDefaultAdapter()).thenReturn(bluetoothAdapter);
+
+    TestObserver<List<ScanData>> batchTestObserver =
+            scanner.scanBatches(ScanSettings.SCAN_MODE_LOW_POWER, 5000).test();
+    scanDataTestObserver = scanner.scan(ScanSettings.SCAN_MODE_LOW_POWER).test();
+
+    testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+    // The live subscriber requires results without a report delay; batches are buffered in software.
+    ArgumentCaptor<ScanCallback> argument = ArgumentCaptor.forClass(ScanCallback.class);
+    verify(bluetoothLeScanner).startScan(any(), argThat(settings ->
+            settings != null && settings.getReportDelayMillis() == 0), argument.capture());
+
+    argument.getValue().onScanResult(0, scanResult);
+    argument.getValue().onScanResult(0, scanResult);
+
+    scanDataTestObserver.assertValueCount(2);
+    batchTestObserver.assertValueCount(0);
+
+    testScheduler.advanceTimeBy(5000, TimeUnit.MILLISECONDS);
+
+    batchTestObserver.assertValueCount(1);
+    assertEquals(1, batchTestObserver.values().get(0).size());
+  }
+
   @Test
   public void scan_duration_throttling() {
     when(bluetoothAdapter.isEnabled()).thenReturn(true);
@@ -294,4 +544,42 @@ public class ThrottledLollipopScannerTest {
               return scanSettings.getScanMode() == ScanSettings.SCAN_MODE_LOW_LATENCY;
             }), any(ScanCallback.class));
   }
+
+  /** A matcher that pushes down a service UUID filter and accepts every advertisement. */
+  private static HardwareScanMatcher serviceFilterMatcher(UUID serviceUuid) {
+    return new HardwareScanMatcher() {
+      @Override
+      public ObservableTransformer<ScanData, ScanData> match() {
+        return scanData -> scanData;
+      }
+
+      @Override
+      public List<ScanFilter> hardwareFilters() {
+        return Collections.singletonList(
+            new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+      }
+    };
+  }
+
+  private static boolean hasServiceFilters(List<ScanFilter> filters, UUID... serviceUuids) {
+    if (filters == null || filters.size() != serviceUuids.length) {
+      return false;
+    }
+
+    for (UUID serviceUuid : serviceUuids) {
+      boolean found = false;
+      for (ScanFilter filter : filters) {
+        ParcelUuid filterUuid = filter.getServiceUuid();
+        found |= serviceUuid == null
+            ? filterUuid == null
+            : filterUuid != null && filterUuid.getUuid().equals(serviceUuid);
+      }
+
+      if (!found) {
+        return false;
+      }
+    }
+
+    return true;
+  }
 }
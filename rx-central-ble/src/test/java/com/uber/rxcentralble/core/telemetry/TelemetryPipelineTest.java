@@ -0,0 +1,190 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.telemetry;
+
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Utils;
+import com.uber.rxcentralble.core.CoreParsedAdvertisement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class TelemetryPipelineTest {
+
+  private static final int MFG_ID = 0x0415;
+  private static final String DEVICE_A = "00:00:00:00:00:01";
+  private static final String DEVICE_B = "00:00:00:00:00:02";
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+  private final AtomicInteger decodes = new AtomicInteger();
+  private final TelemetryDecoder<Integer> decoder = payload -> {
+    decodes.incrementAndGet();
+    return payload[payload.length - 1] & 0xFF;
+  };
+
+  private TelemetryPipeline pipeline;
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    pipeline = new TelemetryPipeline(scanDataSubject, 2, 2);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void manufacturerData_decodedOnChange() {
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, decoder).test();
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -61, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -62, manufacturerData(MFG_ID, 0, 2)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -63, manufacturerData(MFG_ID + 1, 0, 3)));
+
+    readings.assertValueCount(2);
+    assertEquals(1, (int) readings.values().get(0).getValue());
+    assertEquals(-60, readings.values().get(0).getRssi());
+    assertEquals(DEVICE_A, readings.values().get(0).getAddress());
+    assertEquals(2, (int) readings.values().get(1).getValue());
+    assertEquals(2, decodes.get());
+  }
+
+  @Test
+  public void manufacturerData_perDevice() {
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, decoder).test();
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_B, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+
+    readings.assertValueCount(2);
+    assertEquals(DEVICE_B, readings.values().get(1).getAddress());
+  }
+
+  @Test
+  public void manufacturerData_sequenceChangeKey() {
+    TelemetryDecoder<Integer> sequenced = new TelemetryDecoder<Integer>() {
+      @Override
+      public Integer decode(byte[] payload) {
+        return decoder.decode(payload);
+      }
+
+      @Override
+      public int changeKey(byte[] payload) {
+        return payload[0];
+      }
+    };
+
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, sequenced).test();
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+    // A new reading is only advertised with a new sequence number.
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 2)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 1, 3)));
+
+    readings.assertValueCount(2);
+    assertEquals(3, (int) readings.values().get(1).getValue());
+  }
+
+  @Test
+  public void manufacturerData_repeatedAdvertisementSkipped() {
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, decoder).test();
+
+    CoreParsedAdvertisement advertisement = manufacturerData(MFG_ID, 0, 1);
+    ScanData scanData = scanData(DEVICE_A, -60, advertisement);
+    scanDataSubject.onNext(scanData);
+    scanDataSubject.onNext(scanData);
+
+    readings.assertValueCount(1);
+    assertEquals(1, decodes.get());
+  }
+
+  @Test
+  public void manufacturerData_devicesForgottenWhenFull() {
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, decoder).test();
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_B, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:03", -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_B, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+
+    readings.assertValueCount(4);
+    assertEquals(DEVICE_A, readings.values().get(3).getAddress());
+  }
+
+  @Test
+  public void serviceData() {
+    UUID longUuid = UUID.fromString("c7971000-7942-4f36-8165-c71575a14a97");
+    TestSubscriber<TelemetryReading<Integer>> shortReadings =
+        pipeline.serviceData(Utils.uuidFromInteger(0x181A), decoder).test();
+    TestSubscriber<TelemetryReading<Integer>> longReadings = pipeline.serviceData(longUuid, decoder).test();
+
+    ByteBuffer byteBuffer = ByteBuffer.allocate(4 + 1 + 18 + 1).order(ByteOrder.LITTLE_ENDIAN);
+    byteBuffer.put((byte) 0x04).put((byte) 0x16).putShort((short) 0x181A).put((byte) 7);
+    byteBuffer.put((byte) 0x12).put((byte) 0x21);
+    byteBuffer.putLong(longUuid.getLeastSignificantBits()).putLong(longUuid.getMostSignificantBits());
+    byteBuffer.put((byte) 9);
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, new CoreParsedAdvertisement(byteBuffer.array())));
+
+    shortReadings.assertValueCount(1);
+    assertEquals(7, (int) shortReadings.values().get(0).getValue());
+    longReadings.assertValueCount(1);
+    assertEquals(9, (int) longReadings.values().get(0).getValue());
+  }
+
+  @Test
+  public void bufferBounded() {
+    TestSubscriber<TelemetryReading<Integer>> readings = pipeline.manufacturerData(MFG_ID, decoder).test(0);
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 1)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 2)));
+    scanDataSubject.onNext(scanData(DEVICE_A, -60, manufacturerData(MFG_ID, 0, 3)));
+
+    readings.request(Long.MAX_VALUE);
+
+    readings.assertValueCount(2);
+    assertEquals(2, (int) readings.values().get(0).getValue());
+    assertEquals(1, pipeline.getDroppedReadings());
+  }
+
+  private static CoreParsedAdvertisement manufacturerData(int manufacturerId, int sequence, int value) {
+    return new CoreParsedAdvertisement(new byte[] {0x05, (byte) 0xFF, (byte) manufacturerId,
+        (byte) (manufacturerId >> 8), (byte) sequence, (byte) value});
+  }
+}
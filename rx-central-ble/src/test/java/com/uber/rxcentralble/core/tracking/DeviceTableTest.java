@@ -0,0 +1,123 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ScanData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static com.uber.rxcentralble.ScanDataFixtures.rawAdvertisement;
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeviceTableTest {
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+
+  private DeviceTable deviceTable;
+  private TestObserver<DeviceEvent> eventObserver;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    deviceTable = new DeviceTable(2, 1000, 10);
+    eventObserver = scanDataSubject.compose(deviceTable.track()).test();
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void track_newAndUpdated() {
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -65, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -75, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -75, rawAdvertisement(new byte[] {2})));
+
+    eventObserver.assertValueCount(3);
+    assertEquals(DeviceEvent.Type.NEW, eventObserver.values().get(0).getType());
+    assertEquals(DeviceEvent.Type.UPDATED, eventObserver.values().get(1).getType());
+    assertEquals(DeviceEvent.Type.UPDATED, eventObserver.values().get(2).getType());
+
+    DeviceRecord record = deviceTable.get("00:00:00:00:00:01");
+    assertEquals(4, record.getAdvertisementCount());
+    assertEquals(-75, record.getRssiMin());
+    assertEquals(-60, record.getRssiMax());
+    assertEquals(-75, record.getRssi());
+  }
+
+  @Test
+  public void track_capacityEvictsLeastRecentlySeen() {
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:02", -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData("00:00:00:00:00:03", -60, rawAdvertisement(new byte[] {1})));
+
+    eventObserver.assertValueCount(4);
+    DeviceEvent lost = eventObserver.values().get(2);
+    assertEquals(DeviceEvent.Type.LOST, lost.getType());
+    assertEquals("00:00:00:00:00:02", lost.getRecord().getAddress());
+
+    List<DeviceRecord> snapshot = deviceTable.snapshot();
+    assertEquals(2, snapshot.size());
+    assertEquals("00:00:00:00:00:03", snapshot.get(0).getAddress());
+    assertEquals("00:00:00:00:00:01", snapshot.get(1).getAddress());
+  }
+
+  @Test
+  public void track_ttlExpiry() {
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -60, rawAdvertisement(new byte[] {1})));
+    testScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+    scanDataSubject.onNext(scanData("00:00:00:00:00:02", -60, rawAdvertisement(new byte[] {1})));
+
+    testScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+    eventObserver.assertValueCount(3);
+    assertEquals(DeviceEvent.Type.LOST, eventObserver.values().get(2).getType());
+    assertEquals(1, deviceTable.size());
+
+    testScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+    eventObserver.assertValueCount(4);
+    assertEquals(0, deviceTable.size());
+  }
+
+  @Test
+  public void track_disposeClears() {
+    scanDataSubject.onNext(scanData("00:00:00:00:00:01", -60, rawAdvertisement(new byte[] {1})));
+    assertEquals(1, deviceTable.size());
+
+    eventObserver.dispose();
+    assertEquals(0, deviceTable.size());
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ScanData;
+import com.uber.rxcentralble.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static com.uber.rxcentralble.ScanDataFixtures.rawAdvertisement;
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PresenceTrackerTest {
+
+  private static final int ENTER_RSSI = -80;
+  private static final int EXIT_RSSI = -90;
+  private static final long ABSENCE_TIMEOUT_MS = 1600;
+  private static final String ADDRESS = "00:00:00:00:00:01";
+
+  private final TestScheduler testScheduler = new TestScheduler();
+  private final PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+
+  @Mock Scanner scanner;
+
+  private PresenceTracker presenceTracker;
+  private TestObserver<PresenceEvent> eventObserver;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    when(scanner.scan()).thenReturn(scanDataSubject);
+
+    presenceTracker = new PresenceTracker(scanner, null, ENTER_RSSI, EXIT_RSSI, ABSENCE_TIMEOUT_MS, 4096);
+    eventObserver = presenceTracker.events().test();
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void events_enterAndExitWithHysteresis() {
+    scanDataSubject.onNext(scanData(ADDRESS, -85, rawAdvertisement(new byte[] {1})));
+    eventObserver.assertNoValues();
+
+    for (int i = 0; i < 10; i++) {
+      scanDataSubject.onNext(scanData(ADDRESS, -70, rawAdvertisement(new byte[] {1})));
+    }
+
+    assertEquals(PresenceEvent.Type.ENTER, eventObserver.values().get(0).getType());
+    assertEquals(ADDRESS, eventObserver.values().get(0).getRecord().getAddress());
+    assertEquals(1, presenceTracker.snapshot().size());
+
+    // Between the thresholds, the device stays present.
+    for (int i = 0; i < 20; i++) {
+      scanDataSubject.onNext(scanData(ADDRESS, -88, rawAdvertisement(new byte[] {1})));
+    }
+
+    assertEquals(PresenceEvent.Type.UPDATE, eventObserver.values().get(eventObserver.valueCount() - 1).getType());
+
+    for (int i = 0; i < 20; i++) {
+      scanDataSubject.onNext(scanData(ADDRESS, -100, rawAdvertisement(new byte[] {1})));
+    }
+
+    assertEquals(PresenceEvent.Type.EXIT, eventObserver.values().get(eventObserver.valueCount() - 1).getType());
+    assertEquals(0, presenceTracker.snapshot().size());
+  }
+
+  @Test
+  public void events_updateOnPayloadChange() {
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {2})));
+
+    eventObserver.assertValueCount(2);
+    assertEquals(PresenceEvent.Type.UPDATE, eventObserver.values().get(1).getType());
+  }
+
+  @Test
+  public void events_absenceTimeout() {
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+
+    testScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+
+    // Seen again, so the first deadline passes.
+    testScheduler.advanceTimeBy(ABSENCE_TIMEOUT_MS - 1, TimeUnit.MILLISECONDS);
+    eventObserver.assertValueCount(1);
+
+    testScheduler.advanceTimeBy(ABSENCE_TIMEOUT_MS / 8, TimeUnit.MILLISECONDS);
+    eventObserver.assertValueCount(2);
+    PresenceEvent exit = eventObserver.values().get(1);
+    assertEquals(PresenceEvent.Type.EXIT, exit.getType());
+    assertEquals(1000, exit.getRecord().getLastSeenMs());
+    assertEquals(0, presenceTracker.size());
+  }
+
+  @Test
+  public void events_thousandsOfDevices() {
+    int devices = 3000;
+    for (int i = 0; i < devices; i++) {
+      scanDataSubject.onNext(scanData(address(i), -60, rawAdvertisement(new byte[] {1})));
+    }
+
+    assertEquals(devices, presenceTracker.snapshot().size());
+
+    testScheduler.advanceTimeBy(2 * ABSENCE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    eventObserver.assertValueCount(2 * devices);
+    assertEquals(0, presenceTracker.snapshot().size());
+    assertEquals(0, presenceTracker.size());
+  }
+
+  @Test
+  public void events_capacity() {
+    eventObserver.dispose();
+    presenceTracker = new PresenceTracker(scanner, null, ENTER_RSSI, EXIT_RSSI, ABSENCE_TIMEOUT_MS, 1);
+    eventObserver = presenceTracker.events().test();
+
+    scanDataSubject.onNext(scanData(address(1), -60, rawAdvertisement(new byte[] {1})));
+    scanDataSubject.onNext(scanData(address(2), -60, rawAdvertisement(new byte[] {1})));
+
+    eventObserver.assertValueCount(1);
+
+    testScheduler.advanceTimeBy(2 * ABSENCE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    scanDataSubject.onNext(scanData(address(2), -60, rawAdvertisement(new byte[] {1})));
+
+    eventObserver.assertValueCount(3);
+    assertEquals(address(2), eventObserver.values().get(2).getRecord().getAddress());
+  }
+
+  @Test
+  public void snapshot_reusedBetweenEvents() {
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+
+    List<PresenceRecord> snapshot = presenceTracker.snapshot();
+    assertEquals(1, snapshot.size());
+    assertEquals(ADDRESS, snapshot.get(0).getAddress());
+
+    scanDataSubject.onNext(scanData(ADDRESS, -60, rawAdvertisement(new byte[] {1})));
+    assertSame(snapshot, presenceTracker.snapshot());
+  }
+
+  private static String address(int i) {
+    return String.format("00:00:00:00:%02X:%02X", i >> 8, i & 0xFF);
+  }
+}
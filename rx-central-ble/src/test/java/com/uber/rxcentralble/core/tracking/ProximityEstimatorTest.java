@@ -0,0 +1,202 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ParsedAdvertisement;
+import com.uber.rxcentralble.ScanData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static com.uber.rxcentralble.ParsedAdvertisement.TX_POWER_LEVEL_NOT_PRESENT;
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProximityEstimatorTest {
+
+  private static final long WINDOW_MS = 5000;
+  private static final String DEVICE_A = "00:00:00:00:00:01";
+  private static final String DEVICE_B = "00:00:00:00:00:02";
+  private static final String DEVICE_C = "00:00:00:00:00:03";
+  // Advertised TX power level of a device whose RSSI at 1 meter is -59 dBm.
+  private static final int TX_POWER_LEVEL = -18;
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  private ProximityEstimator estimator;
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    estimator = new ProximityEstimator(WINDOW_MS, 2f, 16);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void add_advertisedTxPower() {
+    estimator.add(scanData(DEVICE_A, -59, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_B, -79, advertisement(TX_POWER_LEVEL)));
+
+    ProximityEstimate estimateA = estimator.get(DEVICE_A);
+    assertEquals(-59, estimateA.getMeasuredPower());
+    assertEquals(1f, estimateA.getDistanceM(), 0.01f);
+    assertEquals(10f, estimator.get(DEVICE_B).getDistanceM(), 0.01f);
+    assertNull(estimator.get(DEVICE_C));
+  }
+
+  @Test
+  public void add_assumedPowerHasLowerConfidence() {
+    estimator.add(scanData(DEVICE_A, -59, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_B, -59, advertisement(TX_POWER_LEVEL_NOT_PRESENT)));
+
+    ProximityEstimate estimateB = estimator.get(DEVICE_B);
+    assertEquals(ProximityEstimator.DEFAULT_MEASURED_POWER, estimateB.getMeasuredPower());
+    assertTrue(estimateB.getConfidence() < estimator.get(DEVICE_A).getConfidence());
+  }
+
+  @Test
+  public void add_smoothedWithGrowingConfidence() {
+    estimator.add(scanData(DEVICE_A, -59, advertisement(TX_POWER_LEVEL)));
+    float firstConfidence = estimator.get(DEVICE_A).getConfidence();
+
+    testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+    estimator.add(scanData(DEVICE_A, -69, advertisement(TX_POWER_LEVEL)));
+
+    ProximityEstimate estimate = estimator.get(DEVICE_A);
+    assertTrue(estimate.getRssi() < -59 && estimate.getRssi() > -69);
+    assertTrue(estimate.getConfidence() > firstConfidence);
+
+    // Confidence decays while the device is not seen.
+    testScheduler.advanceTimeBy(4000, TimeUnit.MILLISECONDS);
+    assertTrue(estimator.get(DEVICE_A).getConfidence() < estimate.getConfidence());
+  }
+
+  @Test
+  public void calibrate_overridesAdvertisedTxPower() {
+    estimator.calibrate(DEVICE_A, -65, 3f);
+    estimator.add(scanData(DEVICE_A, -95, advertisement(TX_POWER_LEVEL)));
+
+    ProximityEstimate estimate = estimator.get(DEVICE_A);
+    assertEquals(-65, estimate.getMeasuredPower());
+    assertEquals(10f, estimate.getDistanceM(), 0.01f);
+  }
+
+  @Test
+  public void calibrateAtDistance() {
+    assertFalse(estimator.calibrateAtDistance(DEVICE_A, 2f));
+
+    estimator.add(scanData(DEVICE_A, -70, advertisement(TX_POWER_LEVEL_NOT_PRESENT)));
+    assertTrue(estimator.calibrateAtDistance(DEVICE_A, 2f));
+
+    ProximityEstimate estimate = estimator.get(DEVICE_A);
+    assertEquals(-64, estimate.getMeasuredPower());
+    assertEquals(2f, estimate.getDistanceM(), 0.05f);
+  }
+
+  @Test
+  public void nearest_orderedAndExpired() {
+    estimator.add(scanData(DEVICE_A, -79, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_B, -59, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_C, -62, advertisement(TX_POWER_LEVEL)));
+
+    List<ProximityEstimate> nearest = estimator.nearest(2);
+    assertEquals(2, nearest.size());
+    assertEquals(DEVICE_B, nearest.get(0).getAddress());
+    assertEquals(DEVICE_C, nearest.get(1).getAddress());
+
+    testScheduler.advanceTimeBy(WINDOW_MS - 1000, TimeUnit.MILLISECONDS);
+    estimator.add(scanData(DEVICE_A, -79, advertisement(TX_POWER_LEVEL)));
+    testScheduler.advanceTimeBy(2000, TimeUnit.MILLISECONDS);
+
+    nearest = estimator.nearest(2);
+    assertEquals(1, nearest.size());
+    assertEquals(DEVICE_A, nearest.get(0).getAddress());
+    assertEquals(1, estimator.size());
+  }
+
+  @Test
+  public void nearest_followsMovement() {
+    estimator.add(scanData(DEVICE_A, -59, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_B, -75, advertisement(TX_POWER_LEVEL)));
+    assertEquals(DEVICE_A, estimator.nearest(1).get(0).getAddress());
+
+    for (int i = 0; i < 20; i++) {
+      testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+      estimator.add(scanData(DEVICE_A, -85, advertisement(TX_POWER_LEVEL)));
+      estimator.add(scanData(DEVICE_B, -55, advertisement(TX_POWER_LEVEL)));
+    }
+
+    assertEquals(DEVICE_B, estimator.nearest(1).get(0).getAddress());
+  }
+
+  @Test
+  public void add_ignoredAtCapacityUntilExpired() {
+    estimator = new ProximityEstimator(WINDOW_MS, 2f, 1);
+
+    estimator.add(scanData(DEVICE_A, -59, advertisement(TX_POWER_LEVEL)));
+    estimator.add(scanData(DEVICE_B, -59, advertisement(TX_POWER_LEVEL)));
+    assertNull(estimator.get(DEVICE_B));
+
+    testScheduler.advanceTimeBy(WINDOW_MS + 1, TimeUnit.MILLISECONDS);
+    estimator.add(scanData(DEVICE_B, -59, advertisement(TX_POWER_LEVEL)));
+    assertNull(estimator.get(DEVICE_A));
+    assertEquals(DEVICE_B, estimator.get(DEVICE_B).getAddress());
+  }
+
+  @Test
+  public void estimates_emitsUpdates() {
+    PublishSubject<ScanData> scanDataSubject = PublishSubject.create();
+    TestObserver<ProximityEstimate> estimates = scanDataSubject.compose(estimator.estimates()).test();
+
+    scanDataSubject.onNext(scanData(DEVICE_A, -79, advertisement(TX_POWER_LEVEL)));
+
+    estimates.assertValueCount(1);
+    assertEquals(10f, estimates.values().get(0).getDistanceM(), 0.01f);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nearest_invalidCount() {
+    estimator.nearest(0);
+  }
+
+  private static ParsedAdvertisement advertisement(int txPowerLevel) {
+    ParsedAdvertisement advertisement = mock(ParsedAdvertisement.class);
+    when(advertisement.getTxPowerLevel()).thenReturn(txPowerLevel);
+    return advertisement;
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ *  Copyright (c) 2018 Uber Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.uber.rxcentralble.core.tracking;
+
+import com.uber.rxcentralble.ScanData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.TestScheduler;
+
+import static com.uber.rxcentralble.ScanDataFixtures.scanData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProximityWindowTest {
+
+  private final TestScheduler testScheduler = new TestScheduler();
+
+  private ProximityWindow proximityWindow;
+
+  @Before
+  public void setup() {
+    RxJavaPlugins.setComputationSchedulerHandler(schedulerCallable -> testScheduler);
+
+    proximityWindow = new ProximityWindow(1000, 0.5f);
+  }
+
+  @After
+  public void after() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test
+  public void nearest_empty() {
+    assertNull(proximityWindow.nearest());
+  }
+
+  @Test
+  public void add_smoothed() {
+    proximityWindow.add(scanData("00:00:00:00:00:01", -60));
+    proximityWindow.add(scanData("00:00:00:00:00:01", -40));
+    proximityWindow.add(scanData("00:00:00:00:00:01", -40));
+
+    assertEquals(-45f, proximityWindow.getSmoothedRssi("00:00:00:00:00:01"), 0.001f);
+  }
+
+  @Test
+  public void nearest_evictsStale() {
+    ScanData near = scanData("00:00:00:00:00:01", -40);
+    ScanData far = scanData("00:00:00:00:00:02", -80);
+
+    proximityWindow.add(near);
+    testScheduler.advanceTimeBy(600, TimeUnit.MILLISECONDS);
+    proximityWindow.add(far);
+    assertSame(near, proximityWindow.nearest());
+
+    testScheduler.advanceTimeBy(600, TimeUnit.MILLISECONDS);
+    assertSame(far, proximityWindow.nearest());
+    assertEquals(1, proximityWindow.size());
+    assertNull(proximityWindow.getSmoothedRssi("00:00:00:00:00:01"));
+  }
+}